@@ -35,6 +35,7 @@ import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -128,6 +129,7 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
   private final Clock clock;
 
   @Nullable private Predicate<String> contentTypePredicate;
+  private int readAheadBufferSize;
 
   // Accessed by the calling thread only.
   private boolean opened;
@@ -138,12 +140,16 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
   // to reads made by the Cronet thread.
   @Nullable private UrlRequest currentUrlRequest;
   @Nullable private DataSpec currentDataSpec;
+  @Nullable private ReadAheadQueue readAheadQueue;
 
   // Reference written and read by calling thread only. Passed to Cronet thread as a local variable.
   // operation.open() calls ensure writes into the buffer are visible to reads made by the calling
   // thread.
   @Nullable private ByteBuffer readBuffer;
 
+  // Accessed by the calling thread only. Holds the read ahead buffer being consumed, if any.
+  @Nullable private ByteBuffer readAheadBuffer;
+
   // Written from the Cronet thread only. operation.open() calls ensure writes are visible to reads
   // made by the calling thread.
   @Nullable private UrlResponseInfo responseInfo;
@@ -377,6 +383,26 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     this.contentTypePredicate = contentTypePredicate;
   }
 
+  /**
+   * Sets the total size of the buffers into which data is read ahead of calls to {@link
+   * #read(byte[], int, int)}, or 0 to disable reading ahead. The default is 0. Takes effect from
+   * the next call to {@link #open(DataSpec)}.
+   *
+   * <p>When reading ahead, the next Cronet read is issued as soon as the previous one completes,
+   * into a pool of direct buffers, while the calling thread consumes data that was read earlier.
+   * This avoids waiting for a full callback round trip before each read, which improves throughput
+   * on high bandwidth, high latency connections. The pool always contains at least two buffers.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param readAheadBufferSize The maximum total size of the read ahead buffers, in bytes, or 0 to
+   *     disable reading ahead.
+   */
+  public void experimental_setReadAheadBufferSize(int readAheadBufferSize) {
+    Assertions.checkArgument(readAheadBufferSize >= 0);
+    this.readAheadBufferSize = readAheadBufferSize;
+  }
+
   // HttpDataSource implementation.
 
   @Override
@@ -420,6 +446,14 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     operation.close();
     resetConnectTimeout();
     currentDataSpec = dataSpec;
+    if (readAheadBufferSize == 0) {
+      readAheadQueue = null;
+    } else {
+      int bufferCount = Math.max(2, readAheadBufferSize / READ_BUFFER_SIZE_BYTES);
+      if (readAheadQueue == null || readAheadQueue.bufferCount != bufferCount) {
+        readAheadQueue = new ReadAheadQueue(bufferCount);
+      }
+    }
     UrlRequest urlRequest;
     try {
       urlRequest = buildRequestBuilder(dataSpec).build();
@@ -490,6 +524,10 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     opened = true;
     transferStarted(dataSpec);
 
+    if (readAheadQueue != null && bytesRemaining != 0) {
+      readAheadQueue.start(castNonNull(currentUrlRequest));
+      maybeStartReadAhead(readAheadQueue);
+    }
     return bytesRemaining;
   }
 
@@ -503,6 +541,21 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
       return C.RESULT_END_OF_INPUT;
     }
 
+    if (readAheadQueue != null) {
+      ByteBuffer readAheadBuffer = getReadAheadBuffer(readAheadQueue);
+      if (readAheadBuffer == null) {
+        bytesRemaining = 0;
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead = Math.min(readAheadBuffer.remaining(), readLength);
+      readAheadBuffer.get(buffer, offset, bytesRead);
+      if (bytesRemaining != C.LENGTH_UNSET) {
+        bytesRemaining -= bytesRead;
+      }
+      bytesTransferred(bytesRead);
+      return bytesRead;
+    }
+
     ByteBuffer readBuffer = this.readBuffer;
     if (readBuffer == null) {
       readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE_BYTES);
@@ -578,6 +631,20 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     }
     int readLength = buffer.remaining();
 
+    if (readAheadQueue != null) {
+      ByteBuffer readAheadBuffer = getReadAheadBuffer(readAheadQueue);
+      if (readAheadBuffer == null) {
+        bytesRemaining = 0;
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead = copyByteBuffer(/* src= */ readAheadBuffer, /* dst= */ buffer);
+      if (bytesRemaining != C.LENGTH_UNSET) {
+        bytesRemaining -= bytesRead;
+      }
+      bytesTransferred(bytesRead);
+      return bytesRead;
+    }
+
     if (readBuffer != null) {
       // Skip all the bytes we can from readBuffer if there are still bytes to skip.
       if (bytesToSkip != 0) {
@@ -658,6 +725,13 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     if (readBuffer != null) {
       readBuffer.limit(0);
     }
+    if (readAheadQueue != null) {
+      if (readAheadBuffer != null) {
+        readAheadQueue.recycle(readAheadBuffer);
+        readAheadBuffer = null;
+      }
+      readAheadQueue.reset();
+    }
     currentDataSpec = null;
     responseInfo = null;
     exception = null;
@@ -788,6 +862,70 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     }
   }
 
+  /**
+   * Returns the read ahead buffer from which data should be consumed next, blocking until data is
+   * available, or {@code null} if the end of the response has been reached. Bytes that need to be
+   * skipped are discarded.
+   *
+   * @param readAheadQueue The {@link ReadAheadQueue} for the current request.
+   * @return The buffer to read from, with at least one byte remaining, or {@code null}.
+   * @throws HttpDataSourceException If an error occurs reading from the source.
+   */
+  @Nullable
+  private ByteBuffer getReadAheadBuffer(ReadAheadQueue readAheadQueue)
+      throws HttpDataSourceException {
+    @Nullable ByteBuffer readAheadBuffer = this.readAheadBuffer;
+    while (readAheadBuffer == null || !readAheadBuffer.hasRemaining()) {
+      if (readAheadBuffer != null) {
+        // Return the consumed buffer to the pool, and read into it if Cronet is idle.
+        readAheadQueue.recycle(readAheadBuffer);
+        this.readAheadBuffer = null;
+        maybeStartReadAhead(readAheadQueue);
+      }
+      // Close before polling so that a read completing after the poll opens the condition.
+      operation.close();
+      readAheadBuffer = readAheadQueue.pollFilledBuffer();
+      if (readAheadBuffer == null) {
+        if (exception != null) {
+          throw new HttpDataSourceException(
+              exception, castNonNull(currentDataSpec), HttpDataSourceException.TYPE_READ);
+        } else if (finished) {
+          return null;
+        }
+        try {
+          if (!operation.block(readTimeoutMs)) {
+            throw new SocketTimeoutException();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new HttpDataSourceException(
+              new InterruptedIOException(e),
+              castNonNull(currentDataSpec),
+              HttpDataSourceException.TYPE_READ);
+        } catch (SocketTimeoutException e) {
+          throw new HttpDataSourceException(
+              e, castNonNull(currentDataSpec), HttpDataSourceException.TYPE_READ);
+        }
+        continue;
+      }
+      this.readAheadBuffer = readAheadBuffer;
+      if (bytesToSkip > 0) {
+        int bytesSkipped = (int) Math.min(readAheadBuffer.remaining(), bytesToSkip);
+        readAheadBuffer.position(readAheadBuffer.position() + bytesSkipped);
+        bytesToSkip -= bytesSkipped;
+      }
+    }
+    return readAheadBuffer;
+  }
+
+  /** Issues a Cronet read into a free read ahead buffer, if Cronet is idle and one is free. */
+  private void maybeStartReadAhead(ReadAheadQueue readAheadQueue) {
+    @Nullable ByteBuffer buffer = readAheadQueue.obtainBufferForRead();
+    if (buffer != null) {
+      castNonNull(currentUrlRequest).read(buffer);
+    }
+  }
+
   private static boolean isCompressed(UrlResponseInfo info) {
     for (Map.Entry<String, String> entry : info.getAllHeadersAsList()) {
       if (entry.getKey().equalsIgnoreCase("Content-Encoding")) {
@@ -965,6 +1103,17 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
       if (request != currentUrlRequest) {
         return;
       }
+      @Nullable ReadAheadQueue readAheadQueue = CronetDataSource.this.readAheadQueue;
+      if (readAheadQueue != null) {
+        if (!readAheadQueue.onReadCompleted(request, buffer)) {
+          return;
+        }
+        // Keep Cronet busy while the calling thread consumes the data that has been read.
+        @Nullable ByteBuffer nextBuffer = readAheadQueue.obtainBufferForRead();
+        if (nextBuffer != null) {
+          request.read(nextBuffer);
+        }
+      }
       operation.open();
     }
 
@@ -973,6 +1122,9 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
       if (request != currentUrlRequest) {
         return;
       }
+      if (readAheadQueue != null) {
+        readAheadQueue.onRequestEnded(request);
+      }
       finished = true;
       operation.open();
     }
@@ -990,7 +1142,112 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
       } else {
         exception = error;
       }
+      if (readAheadQueue != null) {
+        readAheadQueue.onRequestEnded(request);
+      }
       operation.open();
     }
   }
+
+  /**
+   * A pool of direct buffers into which Cronet reads ahead of the calling thread. At most one
+   * buffer is being read into at a time, as required by {@link UrlRequest#read(ByteBuffer)}.
+   */
+  private static final class ReadAheadQueue {
+
+    public final int bufferCount;
+
+    private final ArrayDeque<ByteBuffer> freeBuffers;
+    private final ArrayDeque<ByteBuffer> filledBuffers;
+
+    private int allocatedBufferCount;
+    @Nullable private UrlRequest request;
+    @Nullable private ByteBuffer pendingBuffer;
+    private boolean ended;
+
+    public ReadAheadQueue(int bufferCount) {
+      this.bufferCount = bufferCount;
+      freeBuffers = new ArrayDeque<>(bufferCount);
+      filledBuffers = new ArrayDeque<>(bufferCount);
+    }
+
+    /** Starts reading ahead for {@code request}, whose response has started. */
+    public synchronized void start(UrlRequest request) {
+      this.request = request;
+      ended = false;
+    }
+
+    /**
+     * Returns a cleared buffer for the next Cronet read, or {@code null} if a read is already in
+     * progress, no request is started, the request has ended or all buffers are in use. The caller
+     * must pass the buffer to {@link UrlRequest#read(ByteBuffer)} of the started request.
+     */
+    @Nullable
+    public synchronized ByteBuffer obtainBufferForRead() {
+      if (request == null || pendingBuffer != null || ended) {
+        return null;
+      }
+      ByteBuffer buffer = freeBuffers.poll();
+      if (buffer == null) {
+        if (allocatedBufferCount == bufferCount) {
+          return null;
+        }
+        buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE_BYTES);
+        allocatedBufferCount++;
+      }
+      buffer.clear();
+      pendingBuffer = buffer;
+      return buffer;
+    }
+
+    /**
+     * Called on the Cronet thread when a read into {@code buffer} has completed. Returns whether
+     * the read belongs to the started request, rather than to one that has since been cancelled.
+     */
+    public synchronized boolean onReadCompleted(UrlRequest request, ByteBuffer buffer) {
+      if (request != this.request) {
+        return false;
+      }
+      buffer.flip();
+      filledBuffers.add(buffer);
+      pendingBuffer = null;
+      return true;
+    }
+
+    /** Called on the Cronet thread when {@code request} has succeeded or failed. */
+    public synchronized void onRequestEnded(UrlRequest request) {
+      if (request != this.request) {
+        return;
+      }
+      if (pendingBuffer != null) {
+        freeBuffers.add(pendingBuffer);
+        pendingBuffer = null;
+      }
+      ended = true;
+    }
+
+    /** Returns the oldest buffer containing data that hasn't been consumed, if any. */
+    @Nullable
+    public synchronized ByteBuffer pollFilledBuffer() {
+      return filledBuffers.poll();
+    }
+
+    /** Returns a buffer obtained from {@link #pollFilledBuffer()} to the pool. */
+    public synchronized void recycle(ByteBuffer buffer) {
+      freeBuffers.add(buffer);
+    }
+
+    /** Discards all data, making the queue ready for a new request. */
+    public synchronized void reset() {
+      freeBuffers.addAll(filledBuffers);
+      filledBuffers.clear();
+      if (pendingBuffer != null) {
+        // Cronet may still write into a buffer after its request is cancelled, so drop it.
+        pendingBuffer = null;
+        allocatedBufferCount--;
+      }
+      request = null;
+      ended = false;
+    }
+  }
 }
@@ -49,6 +49,8 @@ public final class CronetDataSourceFactory extends BaseFactory {
   private final boolean resetTimeoutOnRedirects;
   private final HttpDataSource.Factory fallbackFactory;
 
+  private int readAheadBufferSize;
+
   /**
    * Constructs a CronetDataSourceFactory.
    *
@@ -308,6 +310,19 @@ public final class CronetDataSourceFactory extends BaseFactory {
     this.fallbackFactory = fallbackFactory;
   }
 
+  /**
+   * Sets the total size of the read ahead buffers of created {@link CronetDataSource} instances, or
+   * 0 to disable reading ahead. The default is 0.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param readAheadBufferSize The maximum total size of the read ahead buffers, in bytes.
+   * @see CronetDataSource#experimental_setReadAheadBufferSize(int)
+   */
+  public void experimental_setReadAheadBufferSize(int readAheadBufferSize) {
+    this.readAheadBufferSize = readAheadBufferSize;
+  }
+
   @Override
   protected HttpDataSource createDataSourceInternal(HttpDataSource.RequestProperties
       defaultRequestProperties) {
@@ -323,6 +338,7 @@ public final class CronetDataSourceFactory extends BaseFactory {
             readTimeoutMs,
             resetTimeoutOnRedirects,
             defaultRequestProperties);
+    dataSource.experimental_setReadAheadBufferSize(readAheadBufferSize);
     if (transferListener != null) {
       dataSource.addTransferListener(transferListener);
     }
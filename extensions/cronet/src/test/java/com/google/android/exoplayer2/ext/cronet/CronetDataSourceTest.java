@@ -1278,6 +1278,80 @@ public final class CronetDataSourceTest {
     verify(mockUrlRequestBuilder).allowDirectExecutor();
   }
 
+  @Test
+  public void testReadAheadIssuesReadsBeforeDataIsConsumed() throws HttpDataSourceException {
+    testResponseHeader.remove("Content-Length");
+    mockResponseStartSuccess();
+    mockReadSuccess(0, 100000);
+    dataSourceUnderTest.experimental_setReadAheadBufferSize(64 * 1024);
+
+    dataSourceUnderTest.open(testDataSpec);
+
+    // Both read ahead buffers are filled without waiting for the caller.
+    verify(mockUrlRequest, times(2)).read(any(ByteBuffer.class));
+    byte[] returnedBuffer = new byte[100000];
+    int bytesRead = 0;
+    int result;
+    while ((result = dataSourceUnderTest.read(returnedBuffer, bytesRead, 10000))
+        != C.RESULT_END_OF_INPUT) {
+      bytesRead += result;
+    }
+    assertThat(bytesRead).isEqualTo(100000);
+    assertThat(returnedBuffer).isEqualTo(buildTestDataArray(0, 100000));
+  }
+
+  @Test
+  public void testReadAheadWith200ResponseSkipsToRequestedPosition()
+      throws HttpDataSourceException {
+    mockResponseStartSuccess();
+    mockReadSuccess(0, 70000);
+    testUrlResponseInfo = createUrlResponseInfo(200); // Server does not support range requests.
+    testDataSpec = new DataSpec(Uri.parse(TEST_URL), 40000, 5000, null);
+    dataSourceUnderTest.experimental_setReadAheadBufferSize(64 * 1024);
+
+    dataSourceUnderTest.open(testDataSpec);
+
+    ByteBuffer returnedBuffer = ByteBuffer.allocateDirect(16);
+    int bytesRead = dataSourceUnderTest.read(returnedBuffer);
+    assertThat(bytesRead).isEqualTo(16);
+    returnedBuffer.flip();
+    assertThat(copyByteBufferToArray(returnedBuffer)).isEqualTo(buildTestDataArray(40000, 16));
+  }
+
+  @Test
+  public void testReadAheadAfterCloseDiscardsPreviousData() throws HttpDataSourceException {
+    mockResponseStartSuccess();
+    mockReadSuccess(0, 16000);
+    dataSourceUnderTest.experimental_setReadAheadBufferSize(64 * 1024);
+    dataSourceUnderTest.open(testDataSpec);
+    dataSourceUnderTest.read(new byte[8], 0, 8);
+    dataSourceUnderTest.close();
+
+    mockReadSuccess(1000, 16000);
+    dataSourceUnderTest.open(testDataSpec);
+
+    byte[] returnedBuffer = new byte[8];
+    int bytesRead = dataSourceUnderTest.read(returnedBuffer, 0, 8);
+    assertThat(bytesRead).isEqualTo(8);
+    assertThat(returnedBuffer).isEqualTo(buildTestDataArray(1000, 8));
+  }
+
+  @Test
+  public void testReadAheadFailure() throws HttpDataSourceException {
+    mockResponseStartSuccess();
+    mockReadFailure();
+    dataSourceUnderTest.experimental_setReadAheadBufferSize(64 * 1024);
+
+    dataSourceUnderTest.open(testDataSpec);
+    byte[] returnedBuffer = new byte[8];
+    try {
+      dataSourceUnderTest.read(returnedBuffer, 0, 8);
+      fail("dataSourceUnderTest.read() returned, but IOException expected");
+    } catch (HttpDataSourceException e) {
+      assertThat(e.type).isEqualTo(HttpDataSourceException.TYPE_READ);
+    }
+  }
+
   // Helper methods.
 
   private void mockStatusResponse() {
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * A {@link LivePlaybackSpeedControl} that adjusts the playback speed proportionally to the
+ * difference between the current and the target live offset, within a small range around 1 so
+ * that the change isn't noticeable.
+ *
+ * <p>Playback isn't sped up while the buffered duration is small, to avoid causing rebuffers. Each
+ * rebuffer increases the target live offset by a fixed increment.
+ */
+public final class DefaultLivePlaybackSpeedControl implements LivePlaybackSpeedControl {
+
+  /** The default minimum playback speed. */
+  public static final float DEFAULT_MIN_PLAYBACK_SPEED = 0.97f;
+  /** The default maximum playback speed. */
+  public static final float DEFAULT_MAX_PLAYBACK_SPEED = 1.03f;
+  /** The default minimum interval between playback speed changes, in milliseconds. */
+  public static final long DEFAULT_MIN_UPDATE_INTERVAL_MS = 1_000;
+  /**
+   * The default proportional control factor, used to adjust the playback speed by this amount per
+   * second of difference between the current and the target live offset.
+   */
+  public static final float DEFAULT_PROPORTIONAL_CONTROL_FACTOR = 0.05f;
+  /**
+   * The default maximum difference between the current and the target live offset, in
+   * milliseconds, for which unit speed (1.0f) is used.
+   */
+  public static final long DEFAULT_MAX_LIVE_OFFSET_ERROR_MS_FOR_UNIT_SPEED = 20;
+  /** The default minimum buffered duration required to increase the speed, in milliseconds. */
+  public static final long DEFAULT_MIN_BUFFERED_DURATION_FOR_SPEED_UP_MS = 500;
+  /** The default increment applied to the target live offset on each rebuffer, in milliseconds. */
+  public static final long DEFAULT_TARGET_LIVE_OFFSET_INCREMENT_ON_REBUFFER_MS = 500;
+
+  /** Builder for a {@link DefaultLivePlaybackSpeedControl}. */
+  public static final class Builder {
+
+    private float minPlaybackSpeed;
+    private float maxPlaybackSpeed;
+    private long minUpdateIntervalMs;
+    private float proportionalControlFactor;
+    private long maxLiveOffsetErrorMsForUnitSpeed;
+    private long minBufferedDurationForSpeedUpMs;
+    private long targetLiveOffsetIncrementOnRebufferMs;
+    private Clock clock;
+    private boolean buildCalled;
+
+    /** Creates a builder with the default parameters. */
+    public Builder() {
+      minPlaybackSpeed = DEFAULT_MIN_PLAYBACK_SPEED;
+      maxPlaybackSpeed = DEFAULT_MAX_PLAYBACK_SPEED;
+      minUpdateIntervalMs = DEFAULT_MIN_UPDATE_INTERVAL_MS;
+      proportionalControlFactor = DEFAULT_PROPORTIONAL_CONTROL_FACTOR;
+      maxLiveOffsetErrorMsForUnitSpeed = DEFAULT_MAX_LIVE_OFFSET_ERROR_MS_FOR_UNIT_SPEED;
+      minBufferedDurationForSpeedUpMs = DEFAULT_MIN_BUFFERED_DURATION_FOR_SPEED_UP_MS;
+      targetLiveOffsetIncrementOnRebufferMs = DEFAULT_TARGET_LIVE_OFFSET_INCREMENT_ON_REBUFFER_MS;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the range of playback speeds that may be used.
+     *
+     * @param minPlaybackSpeed The minimum playback speed. Must be greater than zero and at most 1.
+     * @param maxPlaybackSpeed The maximum playback speed. Must be at least 1.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setPlaybackSpeedRange(float minPlaybackSpeed, float maxPlaybackSpeed) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(0 < minPlaybackSpeed && minPlaybackSpeed <= 1f);
+      Assertions.checkArgument(maxPlaybackSpeed >= 1f);
+      this.minPlaybackSpeed = minPlaybackSpeed;
+      this.maxPlaybackSpeed = maxPlaybackSpeed;
+      return this;
+    }
+
+    /**
+     * Sets the minimum interval between playback speed changes, in milliseconds.
+     *
+     * @param minUpdateIntervalMs The minimum interval between playback speed changes, in
+     *     milliseconds.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setMinUpdateIntervalMs(long minUpdateIntervalMs) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(minUpdateIntervalMs >= 0);
+      this.minUpdateIntervalMs = minUpdateIntervalMs;
+      return this;
+    }
+
+    /**
+     * Sets the proportional control factor, which is the change in playback speed per second of
+     * difference between the current and the target live offset.
+     *
+     * @param proportionalControlFactor The proportional control factor. Must be greater than zero.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setProportionalControlFactor(float proportionalControlFactor) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(proportionalControlFactor > 0);
+      this.proportionalControlFactor = proportionalControlFactor;
+      return this;
+    }
+
+    /**
+     * Sets the maximum difference between the current and the target live offset for which unit
+     * speed (1.0f) is used, in milliseconds.
+     *
+     * @param maxLiveOffsetErrorMsForUnitSpeed The maximum live offset error for which unit speed is
+     *     used, in milliseconds.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setMaxLiveOffsetErrorMsForUnitSpeed(long maxLiveOffsetErrorMsForUnitSpeed) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(maxLiveOffsetErrorMsForUnitSpeed >= 0);
+      this.maxLiveOffsetErrorMsForUnitSpeed = maxLiveOffsetErrorMsForUnitSpeed;
+      return this;
+    }
+
+    /**
+     * Sets the minimum buffered duration required to increase the playback speed, in milliseconds.
+     *
+     * @param minBufferedDurationForSpeedUpMs The minimum buffered duration required to increase the
+     *     playback speed, in milliseconds.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setMinBufferedDurationForSpeedUpMs(long minBufferedDurationForSpeedUpMs) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(minBufferedDurationForSpeedUpMs >= 0);
+      this.minBufferedDurationForSpeedUpMs = minBufferedDurationForSpeedUpMs;
+      return this;
+    }
+
+    /**
+     * Sets the increment applied to the target live offset on each rebuffer, in milliseconds.
+     *
+     * @param targetLiveOffsetIncrementOnRebufferMs The increment applied to the target live offset
+     *     on each rebuffer, in milliseconds.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setTargetLiveOffsetIncrementOnRebufferMs(
+        long targetLiveOffsetIncrementOnRebufferMs) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(targetLiveOffsetIncrementOnRebufferMs >= 0);
+      this.targetLiveOffsetIncrementOnRebufferMs = targetLiveOffsetIncrementOnRebufferMs;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Clock} used to limit the frequency of playback speed changes. Should only be
+     * set for testing purposes.
+     *
+     * @param clock The {@link Clock}.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setClock(Clock clock) {
+      Assertions.checkState(!buildCalled);
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Builds the {@link DefaultLivePlaybackSpeedControl}.
+     *
+     * @throws IllegalStateException If this method has already been called.
+     */
+    public DefaultLivePlaybackSpeedControl build() {
+      Assertions.checkState(!buildCalled);
+      buildCalled = true;
+      return new DefaultLivePlaybackSpeedControl(
+          minPlaybackSpeed,
+          maxPlaybackSpeed,
+          minUpdateIntervalMs,
+          proportionalControlFactor,
+          C.msToUs(maxLiveOffsetErrorMsForUnitSpeed),
+          C.msToUs(minBufferedDurationForSpeedUpMs),
+          C.msToUs(targetLiveOffsetIncrementOnRebufferMs),
+          clock);
+    }
+  }
+
+  private final float minPlaybackSpeed;
+  private final float maxPlaybackSpeed;
+  private final long minUpdateIntervalMs;
+  private final float proportionalControlFactor;
+  private final long maxLiveOffsetErrorUsForUnitSpeed;
+  private final long minBufferedDurationForSpeedUpUs;
+  private final long targetLiveOffsetIncrementOnRebufferUs;
+  private final Clock clock;
+
+  private long mediaTargetLiveOffsetUs;
+  private long targetLiveOffsetOverrideUs;
+  private long targetLiveOffsetRebufferIncrementUs;
+  private long lastPlaybackSpeedUpdateMs;
+  private float adjustedPlaybackSpeed;
+
+  /** Creates an instance with the default parameters. */
+  public DefaultLivePlaybackSpeedControl() {
+    this(
+        DEFAULT_MIN_PLAYBACK_SPEED,
+        DEFAULT_MAX_PLAYBACK_SPEED,
+        DEFAULT_MIN_UPDATE_INTERVAL_MS,
+        DEFAULT_PROPORTIONAL_CONTROL_FACTOR,
+        C.msToUs(DEFAULT_MAX_LIVE_OFFSET_ERROR_MS_FOR_UNIT_SPEED),
+        C.msToUs(DEFAULT_MIN_BUFFERED_DURATION_FOR_SPEED_UP_MS),
+        C.msToUs(DEFAULT_TARGET_LIVE_OFFSET_INCREMENT_ON_REBUFFER_MS),
+        Clock.DEFAULT);
+  }
+
+  private DefaultLivePlaybackSpeedControl(
+      float minPlaybackSpeed,
+      float maxPlaybackSpeed,
+      long minUpdateIntervalMs,
+      float proportionalControlFactor,
+      long maxLiveOffsetErrorUsForUnitSpeed,
+      long minBufferedDurationForSpeedUpUs,
+      long targetLiveOffsetIncrementOnRebufferUs,
+      Clock clock) {
+    this.minPlaybackSpeed = minPlaybackSpeed;
+    this.maxPlaybackSpeed = maxPlaybackSpeed;
+    this.minUpdateIntervalMs = minUpdateIntervalMs;
+    this.proportionalControlFactor = proportionalControlFactor;
+    this.maxLiveOffsetErrorUsForUnitSpeed = maxLiveOffsetErrorUsForUnitSpeed;
+    this.minBufferedDurationForSpeedUpUs = minBufferedDurationForSpeedUpUs;
+    this.targetLiveOffsetIncrementOnRebufferUs = targetLiveOffsetIncrementOnRebufferUs;
+    this.clock = clock;
+    mediaTargetLiveOffsetUs = C.TIME_UNSET;
+    targetLiveOffsetOverrideUs = C.TIME_UNSET;
+    lastPlaybackSpeedUpdateMs = C.TIME_UNSET;
+    adjustedPlaybackSpeed = 1f;
+  }
+
+  @Override
+  public void setMediaTargetLiveOffsetUs(long mediaTargetLiveOffsetUs) {
+    this.mediaTargetLiveOffsetUs = mediaTargetLiveOffsetUs;
+  }
+
+  @Override
+  public void setTargetLiveOffsetOverrideUs(long targetLiveOffsetOverrideUs) {
+    this.targetLiveOffsetOverrideUs = targetLiveOffsetOverrideUs;
+    // The user chose a new position, so previous rebuffers are no longer relevant.
+    targetLiveOffsetRebufferIncrementUs = 0;
+    lastPlaybackSpeedUpdateMs = C.TIME_UNSET;
+  }
+
+  @Override
+  public void notifyRebuffer() {
+    if (getTargetLiveOffsetUs() != C.TIME_UNSET) {
+      targetLiveOffsetRebufferIncrementUs += targetLiveOffsetIncrementOnRebufferUs;
+      lastPlaybackSpeedUpdateMs = C.TIME_UNSET;
+    }
+  }
+
+  @Override
+  public float getAdjustedPlaybackSpeed(long liveOffsetUs, long bufferedDurationUs) {
+    long targetLiveOffsetUs = getTargetLiveOffsetUs();
+    if (targetLiveOffsetUs == C.TIME_UNSET) {
+      return 1f;
+    }
+    long nowMs = clock.elapsedRealtime();
+    if (lastPlaybackSpeedUpdateMs != C.TIME_UNSET
+        && nowMs - lastPlaybackSpeedUpdateMs < minUpdateIntervalMs) {
+      return adjustedPlaybackSpeed;
+    }
+    lastPlaybackSpeedUpdateMs = nowMs;
+
+    long liveOffsetErrorUs = liveOffsetUs - targetLiveOffsetUs;
+    if (Math.abs(liveOffsetErrorUs) <= maxLiveOffsetErrorUsForUnitSpeed) {
+      adjustedPlaybackSpeed = 1f;
+    } else {
+      float calculatedSpeed =
+          1f + proportionalControlFactor * liveOffsetErrorUs / C.MICROS_PER_SECOND;
+      adjustedPlaybackSpeed =
+          Util.constrainValue(calculatedSpeed, minPlaybackSpeed, maxPlaybackSpeed);
+      if (adjustedPlaybackSpeed > 1f && bufferedDurationUs < minBufferedDurationForSpeedUpUs) {
+        // Speeding up would drain the small buffer and cause a rebuffer.
+        adjustedPlaybackSpeed = 1f;
+      }
+    }
+    return adjustedPlaybackSpeed;
+  }
+
+  @Override
+  public long getTargetLiveOffsetUs() {
+    long targetLiveOffsetUs =
+        targetLiveOffsetOverrideUs != C.TIME_UNSET
+            ? targetLiveOffsetOverrideUs
+            : mediaTargetLiveOffsetUs;
+    return targetLiveOffsetUs == C.TIME_UNSET
+        ? C.TIME_UNSET
+        : targetLiveOffsetUs + targetLiveOffsetRebufferIncrementUs;
+  }
+}
@@ -401,4 +401,79 @@ public interface ExoPlayer extends Player {
    *     idle state.
    */
   void setForegroundMode(boolean foregroundMode);
+
+  /**
+   * Sets whether the playback thread schedules its work dynamically, based on when the enabled
+   * renderers report that they can next make progress (see {@link
+   * Renderer#getDurationToProgressUs(long, long)}), rather than at a fixed 10ms interval. When
+   * paused and buffering, the playback thread instead wakes up when loading makes progress. This
+   * reduces CPU wakeups and power consumption, particularly for audio-only playback.
+   *
+   * <p>Enabling dynamic scheduling reduces the frequency at which the playback position is updated
+   * and at which {@link PlayerMessage}s with a delivery position are delivered.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param dynamicSchedulingEnabled Whether dynamic scheduling is enabled.
+   */
+  void experimental_setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled);
+
+  /**
+   * Sets the duration of media to preload for the next media period in the playlist. If greater
+   * than zero, the next media period is created and prepared as soon as the current loading media
+   * period is prepared, rather than when it has been fully buffered, and up to the specified
+   * duration of its media is loaded whenever the current loading media period isn't loading. Once
+   * the current loading media period is fully buffered, the preloaded media period is used in place
+   * of creating a new one, which reduces the latency of transitions between playlist items.
+   *
+   * <p>Preloaded media is allocated from the {@link LoadControl}'s allocator, so it counts towards
+   * the memory budget of the load control. Preloaded media is discarded if the next media period
+   * changes, for example due to a playlist or repeat mode change. The default value is zero, which
+   * disables preloading.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param preloadDurationMs The duration of media to preload, in milliseconds, or zero to disable
+   *     preloading.
+   */
+  void experimental_setPreloadDurationMs(long preloadDurationMs);
+
+  /**
+   * Sets whether seeks within the currently playing media period should retain the media periods
+   * that follow it in the playlist. By default, any seek discards all buffered media after the
+   * playing period. If enabled, seeking within a playing period that is fully buffered keeps the
+   * following periods and their buffered media, so that short seeks such as rewinds near the end
+   * of a playlist item don't cause the next item to be reloaded.
+   *
+   * <p>Seeks within a media period are always served from already buffered media where possible,
+   * including media in the back buffer retained by the {@link LoadControl}.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param seekInBufferEnabled Whether following media periods are retained when seeking within
+   *     the playing media period.
+   */
+  void experimental_setSeekInBufferEnabled(boolean seekInBufferEnabled);
+
+  /**
+   * Sets the {@link LivePlaybackSpeedControl} used to adjust the playback speed while playing live
+   * content, so that playback holds a steady offset from the live edge. By default, no live
+   * playback speed control is used.
+   *
+   * <p>The speed is only adjusted while playing a live window with a known start time (see {@link
+   * Timeline.Window#windowStartTimeMs}), and while the playback speed requested using {@link
+   * #setPlaybackParameters(PlaybackParameters)} is 1. Adjusted playback parameters are reported to
+   * {@link Player.EventListener#onPlaybackParametersChanged(PlaybackParameters)}. The pitch and
+   * skip silence settings of the requested playback parameters are kept.
+   *
+   * <p>Seeking to a specific position in a live window makes its live offset the new target,
+   * whereas seeking to the default position restores the target defined by the media.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param livePlaybackSpeedControl The {@link LivePlaybackSpeedControl}, or {@code null} to play
+   *     live content at the requested speed.
+   */
+  void experimental_setLivePlaybackSpeedControl(
+      @Nullable LivePlaybackSpeedControl livePlaybackSpeedControl);
 }
@@ -406,6 +406,28 @@ import java.util.concurrent.CopyOnWriteArrayList;
     }
   }
 
+  @Override
+  public void experimental_setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    internalPlayer.setDynamicSchedulingEnabled(dynamicSchedulingEnabled);
+  }
+
+  @Override
+  public void experimental_setPreloadDurationMs(long preloadDurationMs) {
+    Assertions.checkArgument(preloadDurationMs >= 0);
+    internalPlayer.setPreloadDurationUs(C.msToUs(preloadDurationMs));
+  }
+
+  @Override
+  public void experimental_setSeekInBufferEnabled(boolean seekInBufferEnabled) {
+    internalPlayer.setSeekInBufferEnabled(seekInBufferEnabled);
+  }
+
+  @Override
+  public void experimental_setLivePlaybackSpeedControl(
+      @Nullable LivePlaybackSpeedControl livePlaybackSpeedControl) {
+    internalPlayer.setLivePlaybackSpeedControl(livePlaybackSpeedControl);
+  }
+
   @Override
   public void stop(boolean reset) {
     if (reset) {
@@ -39,6 +39,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.HandlerWrapper;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.PlaybackInstrumentation;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
@@ -80,6 +81,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private static final int MSG_SEND_MESSAGE = 15;
   private static final int MSG_SEND_MESSAGE_TO_TARGET_THREAD = 16;
   private static final int MSG_PLAYBACK_PARAMETERS_CHANGED_INTERNAL = 17;
+  private static final int MSG_SET_DYNAMIC_SCHEDULING_ENABLED = 18;
+  private static final int MSG_SET_PRELOAD_DURATION = 19;
+  private static final int MSG_SET_SEEK_IN_BUFFER_ENABLED = 20;
+  private static final int MSG_SET_LIVE_PLAYBACK_SPEED_CONTROL = 21;
 
   private static final int ACTIVE_INTERVAL_MS = 10;
   private static final int IDLE_INTERVAL_MS = 1000;
@@ -116,6 +121,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
   @Player.RepeatMode private int repeatMode;
   private boolean shuffleModeEnabled;
   private boolean foregroundMode;
+  private boolean dynamicSchedulingEnabled;
+  private long preloadDurationUs;
+  private boolean seekInBufferEnabled;
+  @Nullable private LivePlaybackSpeedControl livePlaybackSpeedControl;
+  private PlaybackParameters requestedPlaybackParameters;
+  private float livePlaybackSpeed;
+  @Nullable private Timeline liveTargetTimeline;
+  private int liveTargetWindowIndex;
 
   private int pendingPrepareCount;
   private SeekPosition pendingInitialSeekPosition;
@@ -150,6 +163,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
     retainBackBufferFromKeyframe = loadControl.retainBackBufferFromKeyframe();
 
     seekParameters = SeekParameters.DEFAULT;
+    requestedPlaybackParameters = PlaybackParameters.DEFAULT;
+    livePlaybackSpeed = 1f;
     playbackInfo =
         PlaybackInfo.createDummy(/* startPositionUs= */ C.TIME_UNSET, emptyTrackSelectorResult);
     playbackInfoUpdate = new PlaybackInfoUpdate();
@@ -210,6 +225,29 @@ import java.util.concurrent.atomic.AtomicBoolean;
     handler.obtainMessage(MSG_STOP, reset ? 1 : 0, 0).sendToTarget();
   }
 
+  public void setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    handler
+        .obtainMessage(MSG_SET_DYNAMIC_SCHEDULING_ENABLED, dynamicSchedulingEnabled ? 1 : 0, 0)
+        .sendToTarget();
+  }
+
+  public void setPreloadDurationUs(long preloadDurationUs) {
+    handler.obtainMessage(MSG_SET_PRELOAD_DURATION, preloadDurationUs).sendToTarget();
+  }
+
+  public void setSeekInBufferEnabled(boolean seekInBufferEnabled) {
+    handler
+        .obtainMessage(MSG_SET_SEEK_IN_BUFFER_ENABLED, seekInBufferEnabled ? 1 : 0, 0)
+        .sendToTarget();
+  }
+
+  public void setLivePlaybackSpeedControl(
+      @Nullable LivePlaybackSpeedControl livePlaybackSpeedControl) {
+    handler
+        .obtainMessage(MSG_SET_LIVE_PLAYBACK_SPEED_CONTROL, livePlaybackSpeedControl)
+        .sendToTarget();
+  }
+
   @Override
   public synchronized void sendMessage(PlayerMessage message) {
     if (released || !internalPlaybackThread.isAlive()) {
@@ -341,6 +379,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
           setForegroundModeInternal(
               /* foregroundMode= */ msg.arg1 != 0, /* processedFlag= */ (AtomicBoolean) msg.obj);
           break;
+        case MSG_SET_DYNAMIC_SCHEDULING_ENABLED:
+          setDynamicSchedulingEnabledInternal(/* dynamicSchedulingEnabled= */ msg.arg1 != 0);
+          break;
+        case MSG_SET_PRELOAD_DURATION:
+          setPreloadDurationUsInternal((Long) msg.obj);
+          break;
+        case MSG_SET_SEEK_IN_BUFFER_ENABLED:
+          seekInBufferEnabled = msg.arg1 != 0;
+          break;
+        case MSG_SET_LIVE_PLAYBACK_SPEED_CONTROL:
+          setLivePlaybackSpeedControlInternal((LivePlaybackSpeedControl) msg.obj);
+          break;
         case MSG_STOP:
           stopInternal(
               /* forceResetRenderers= */ false,
@@ -579,11 +629,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
 
     TraceUtil.beginSection("doSomeWork");
+    long doSomeWorkStartTimeNs = TraceUtil.startStage();
 
     updatePlaybackPositions();
 
     boolean renderersEnded = true;
     boolean renderersAllowPlayback = true;
+    long durationToProgressUs = Long.MAX_VALUE;
+    // While paused, renderers only make progress once more data has been loaded, which wakes the
+    // playback thread early. Renderers that don't report when they'll progress are polled less
+    // often in that case.
+    long defaultDurationToProgressUs =
+        C.msToUs(playWhenReady ? ACTIVE_INTERVAL_MS : IDLE_INTERVAL_MS);
     if (playingPeriodHolder.prepared) {
       long rendererPositionElapsedRealtimeUs = SystemClock.elapsedRealtime() * 1000;
       playingPeriodHolder.mediaPeriod.discardBuffer(
@@ -593,10 +650,20 @@ import java.util.concurrent.atomic.AtomicBoolean;
         if (renderer.getState() == Renderer.STATE_DISABLED) {
           continue;
         }
-        // TODO: Each renderer should return the maximum delay before which it wishes to be called
-        // again. The minimum of these values should then be used as the delay before the next
-        // invocation of this method.
+        long renderStartTimeNs = TraceUtil.startStage();
         renderer.render(rendererPositionUs, rendererPositionElapsedRealtimeUs);
+        TraceUtil.endStage(PlaybackInstrumentation.STAGE_RENDERER_RENDER, renderStartTimeNs);
+        if (dynamicSchedulingEnabled) {
+          long rendererDurationToProgressUs =
+              renderer.getDurationToProgressUs(
+                  rendererPositionUs, rendererPositionElapsedRealtimeUs);
+          durationToProgressUs =
+              Math.min(
+                  durationToProgressUs,
+                  rendererDurationToProgressUs == C.TIME_UNSET
+                      ? defaultDurationToProgressUs
+                      : rendererDurationToProgressUs);
+        }
         renderersEnded = renderersEnded && renderer.isEnded();
         // Determine whether the renderer allows playback to continue. Playback can continue if the
         // renderer is ready or ended. Also continue playback if the renderer is reading ahead into
@@ -638,7 +705,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
       rebuffering = playWhenReady;
       setState(Player.STATE_BUFFERING);
       stopRenderers();
+      if (rebuffering && livePlaybackSpeedControl != null && isPlayingLiveWindow()) {
+        livePlaybackSpeedControl.notifyRebuffer();
+      }
     }
+    updateLivePlaybackSpeed();
 
     if (playbackInfo.playbackState == Player.STATE_BUFFERING) {
       for (Renderer renderer : enabledRenderers) {
@@ -646,7 +717,19 @@ import java.util.concurrent.atomic.AtomicBoolean;
       }
     }
 
-    if ((playWhenReady && playbackInfo.playbackState == Player.STATE_READY)
+    if (dynamicSchedulingEnabled
+        && enabledRenderers.length != 0
+        && playWhenReady
+        && playbackInfo.playbackState == Player.STATE_READY) {
+      scheduleNextWork(operationStartTimeMs, getDynamicIntervalMs(durationToProgressUs));
+    } else if (dynamicSchedulingEnabled
+        && !playWhenReady
+        && playbackInfo.playbackState == Player.STATE_BUFFERING) {
+      // Renderers are paused, so they can only make progress once more data has been loaded. The
+      // playback thread is woken up early if loading makes progress, and polls at the idle
+      // interval otherwise unless a renderer reported an earlier time.
+      scheduleNextWork(operationStartTimeMs, getDynamicIntervalMs(durationToProgressUs));
+    } else if ((playWhenReady && playbackInfo.playbackState == Player.STATE_READY)
         || playbackInfo.playbackState == Player.STATE_BUFFERING) {
       scheduleNextWork(operationStartTimeMs, ACTIVE_INTERVAL_MS);
     } else if (enabledRenderers.length != 0 && playbackInfo.playbackState != Player.STATE_ENDED) {
@@ -655,16 +738,131 @@ import java.util.concurrent.atomic.AtomicBoolean;
       handler.removeMessages(MSG_DO_SOME_WORK);
     }
 
+    if (doSomeWorkStartTimeNs != C.TIME_UNSET
+        && clock.uptimeMillis() - operationStartTimeMs > ACTIVE_INTERVAL_MS) {
+      TraceUtil.incrementCounter(PlaybackInstrumentation.COUNTER_DO_SOME_WORK_OVERRUNS, 1);
+    }
+    TraceUtil.endStage(PlaybackInstrumentation.STAGE_DO_SOME_WORK, doSomeWorkStartTimeNs);
     TraceUtil.endSection();
   }
 
+  /**
+   * Adjusts the playback speed using the {@link LivePlaybackSpeedControl} while playing a live
+   * window at the requested speed of 1, or restores the requested speed otherwise. The adjusted
+   * speed is applied to the media clock, renderers and track selections only, and isn't reported
+   * as a change of playback parameters.
+   */
+  private void updateLivePlaybackSpeed() throws ExoPlaybackException {
+    float speed = 1f;
+    if (livePlaybackSpeedControl != null
+        && requestedPlaybackParameters.speed == 1f
+        && playWhenReady
+        && playbackInfo.playbackState == Player.STATE_READY
+        && isPlayingLiveWindow()) {
+      // isPlayingLiveWindow populated window and period for the playing period.
+      if (playbackInfo.timeline != liveTargetTimeline
+          || period.windowIndex != liveTargetWindowIndex) {
+        liveTargetTimeline = playbackInfo.timeline;
+        liveTargetWindowIndex = period.windowIndex;
+        livePlaybackSpeedControl.setMediaTargetLiveOffsetUs(
+            window.defaultPositionUs == C.TIME_UNSET
+                ? C.TIME_UNSET
+                : getLiveOffsetUs(window, window.defaultPositionUs));
+      }
+      long positionInWindowUs = playbackInfo.positionUs + period.getPositionInWindowUs();
+      speed =
+          livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+              getLiveOffsetUs(window, positionInWindowUs), getTotalBufferedDurationUs());
+    }
+    if (speed != livePlaybackSpeed) {
+      livePlaybackSpeed = speed;
+      PlaybackParameters playbackParameters = mediaClock.getPlaybackParameters();
+      mediaClock.setPlaybackParameters(
+          new PlaybackParameters(speed, playbackParameters.pitch, playbackParameters.skipSilence));
+      updatePlaybackSpeed(mediaClock.getPlaybackParameters().speed);
+    }
+  }
+
+  /**
+   * Returns the playback parameters to report to the application, which have the requested speed
+   * in place of a speed adjusted by the {@link LivePlaybackSpeedControl}.
+   */
+  private PlaybackParameters getReportedPlaybackParameters(PlaybackParameters playbackParameters) {
+    if (livePlaybackSpeed == 1f || playbackParameters.speed != livePlaybackSpeed) {
+      return playbackParameters;
+    }
+    return new PlaybackParameters(
+        requestedPlaybackParameters.speed,
+        playbackParameters.pitch,
+        playbackParameters.skipSilence);
+  }
+
+  private void updateTargetLiveOffsetOverride(SeekPosition seekPosition) {
+    if (livePlaybackSpeedControl == null) {
+      return;
+    }
+    long targetLiveOffsetOverrideUs = C.TIME_UNSET;
+    Timeline timeline = seekPosition.timeline;
+    if (seekPosition.windowPositionUs != C.TIME_UNSET
+        && seekPosition.windowIndex < timeline.getWindowCount()) {
+      // Hold the live offset of the position the user seeked to.
+      timeline.getWindow(seekPosition.windowIndex, window);
+      if (isLiveWindowWithKnownStartTime(window)) {
+        targetLiveOffsetOverrideUs = getLiveOffsetUs(window, seekPosition.windowPositionUs);
+      }
+    }
+    livePlaybackSpeedControl.setTargetLiveOffsetOverrideUs(targetLiveOffsetOverrideUs);
+  }
+
+  /**
+   * Returns whether the playing period belongs to a live window with a known start time, and
+   * populates {@link #window} and {@link #period} with the playing window and period if so.
+   */
+  private boolean isPlayingLiveWindow() {
+    Timeline timeline = playbackInfo.timeline;
+    MediaPeriodId periodId = playbackInfo.periodId;
+    if (timeline.isEmpty() || periodId.isAd()) {
+      return false;
+    }
+    int periodIndex = timeline.getIndexOfPeriod(periodId.periodUid);
+    if (periodIndex == C.INDEX_UNSET) {
+      return false;
+    }
+    timeline.getPeriod(periodIndex, period);
+    timeline.getWindow(period.windowIndex, window);
+    return isLiveWindowWithKnownStartTime(window);
+  }
+
+  private static boolean isLiveWindowWithKnownStartTime(Timeline.Window window) {
+    return window.isLive && window.windowStartTimeMs != C.TIME_UNSET;
+  }
+
+  private static long getLiveOffsetUs(Timeline.Window window, long positionInWindowUs) {
+    return C.msToUs(window.getCurrentUnixTimeMs() - window.windowStartTimeMs)
+        - positionInWindowUs;
+  }
+
   private void scheduleNextWork(long thisOperationStartTimeMs, long intervalMs) {
     handler.removeMessages(MSG_DO_SOME_WORK);
     handler.sendEmptyMessageAtTime(MSG_DO_SOME_WORK, thisOperationStartTimeMs + intervalMs);
   }
 
+  private static long getDynamicIntervalMs(long durationToProgressUs) {
+    return Util.constrainValue(
+        C.usToMs(durationToProgressUs), /* min= */ ACTIVE_INTERVAL_MS, /* max= */ IDLE_INTERVAL_MS);
+  }
+
+  private void maybeScheduleWorkForLoadingProgress() {
+    if (dynamicSchedulingEnabled
+        && !playWhenReady
+        && playbackInfo.playbackState == Player.STATE_BUFFERING) {
+      scheduleNextWork(clock.uptimeMillis(), /* intervalMs= */ 0);
+    }
+  }
+
   private void seekToInternal(SeekPosition seekPosition) throws ExoPlaybackException {
     playbackInfoUpdate.incrementPendingOperationAcks(/* operationAcks= */ 1);
+    updateTargetLiveOffsetOverride(seekPosition);
 
     MediaPeriodId periodId;
     long periodPositionUs;
@@ -724,7 +922,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
             return;
           }
         }
-        newPeriodPositionUs = seekToPeriodPosition(periodId, newPeriodPositionUs);
+        // Force disable renderers if they are reading ahead of the playing period.
+        newPeriodPositionUs =
+            seekToPeriodPosition(
+                periodId,
+                newPeriodPositionUs,
+                /* forceDisableRenderers= */ queue.getPlayingPeriod() != queue.getReadingPeriod(),
+                /* allowRetainingFollowingPeriods= */ seekInBufferEnabled);
         seekPositionAdjusted |= periodPositionUs != newPeriodPositionUs;
         periodPositionUs = newPeriodPositionUs;
       }
@@ -746,6 +950,19 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private long seekToPeriodPosition(
       MediaPeriodId periodId, long periodPositionUs, boolean forceDisableRenderers)
       throws ExoPlaybackException {
+    return seekToPeriodPosition(
+        periodId,
+        periodPositionUs,
+        forceDisableRenderers,
+        /* allowRetainingFollowingPeriods= */ false);
+  }
+
+  private long seekToPeriodPosition(
+      MediaPeriodId periodId,
+      long periodPositionUs,
+      boolean forceDisableRenderers,
+      boolean allowRetainingFollowingPeriods)
+      throws ExoPlaybackException {
     stopRenderers();
     rebuffering = false;
     if (playbackInfo.playbackState != Player.STATE_IDLE && !playbackInfo.timeline.isEmpty()) {
@@ -755,9 +972,19 @@ import java.util.concurrent.atomic.AtomicBoolean;
     // Clear the timeline, but keep the requested period if it is already prepared.
     MediaPeriodHolder oldPlayingPeriodHolder = queue.getPlayingPeriod();
     MediaPeriodHolder newPlayingPeriodHolder = oldPlayingPeriodHolder;
+    boolean retainedFollowingPeriods = false;
     while (newPlayingPeriodHolder != null) {
       if (periodId.equals(newPlayingPeriodHolder.info.id) && newPlayingPeriodHolder.prepared) {
-        queue.removeAfter(newPlayingPeriodHolder);
+        // Keep the following periods if the seek stays within the playing period and renderers
+        // haven't started reading ahead, so that their buffered media can still be played.
+        retainedFollowingPeriods =
+            allowRetainingFollowingPeriods
+                && !forceDisableRenderers
+                && newPlayingPeriodHolder == oldPlayingPeriodHolder
+                && canRetainFollowingPeriods(newPlayingPeriodHolder);
+        if (!retainedFollowingPeriods) {
+          queue.removeAfter(newPlayingPeriodHolder);
+        }
         break;
       }
       newPlayingPeriodHolder = queue.advancePlayingPeriod();
@@ -775,6 +1002,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
       enabledRenderers = new Renderer[0];
       oldPlayingPeriodHolder = null;
       if (newPlayingPeriodHolder != null) {
+        if (retainedFollowingPeriods) {
+          // The renderer offsets of the following periods are based on the current one.
+          queue.removeAfter(newPlayingPeriodHolder);
+          retainedFollowingPeriods = false;
+        }
         newPlayingPeriodHolder.setRendererOffset(/* rendererPositionOffsetUs= */ 0);
       }
     }
@@ -787,6 +1019,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
         newPlayingPeriodHolder.mediaPeriod.discardBuffer(
             periodPositionUs - backBufferDurationUs, retainBackBufferFromKeyframe);
       }
+      if (retainedFollowingPeriods && !newPlayingPeriodHolder.isFullyBuffered()) {
+        // The seek couldn't be served from the buffer, so the playing period needs to load again.
+        queue.removeAfter(newPlayingPeriodHolder);
+      }
       resetRendererPosition(periodPositionUs);
       maybeContinueLoading();
     } else {
@@ -802,6 +1038,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
     return periodPositionUs;
   }
 
+  private static boolean canRetainFollowingPeriods(MediaPeriodHolder playingPeriodHolder) {
+    MediaPeriodHolder nextPeriodHolder = playingPeriodHolder.getNext();
+    return nextPeriodHolder != null
+        && !playingPeriodHolder.info.id.isAd()
+        && !nextPeriodHolder.uid.equals(playingPeriodHolder.uid)
+        && playingPeriodHolder.isFullyBuffered();
+  }
+
   private void resetRendererPosition(long periodPositionUs) throws ExoPlaybackException {
     MediaPeriodHolder playingMediaPeriod = queue.getPlayingPeriod();
     rendererPositionUs =
@@ -816,6 +1060,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
   }
 
   private void setPlaybackParametersInternal(PlaybackParameters playbackParameters) {
+    requestedPlaybackParameters = playbackParameters;
+    livePlaybackSpeed = 1f;
     mediaClock.setPlaybackParameters(playbackParameters);
     sendPlaybackParametersChangedInternal(
         mediaClock.getPlaybackParameters(), /* acknowledgeCommand= */ true);
@@ -825,6 +1071,31 @@ import java.util.concurrent.atomic.AtomicBoolean;
     this.seekParameters = seekParameters;
   }
 
+  private void setDynamicSchedulingEnabledInternal(boolean dynamicSchedulingEnabled) {
+    this.dynamicSchedulingEnabled = dynamicSchedulingEnabled;
+    if (playbackInfo.playbackState == Player.STATE_READY
+        || playbackInfo.playbackState == Player.STATE_BUFFERING) {
+      handler.sendEmptyMessage(MSG_DO_SOME_WORK);
+    }
+  }
+
+  private void setPreloadDurationUsInternal(long preloadDurationUs) {
+    this.preloadDurationUs = preloadDurationUs;
+    if (preloadDurationUs == 0) {
+      queue.releasePreloadingPeriod();
+    } else {
+      maybeContinuePreloading();
+    }
+  }
+
+  private void setLivePlaybackSpeedControlInternal(
+      @Nullable LivePlaybackSpeedControl livePlaybackSpeedControl) throws ExoPlaybackException {
+    this.livePlaybackSpeedControl = livePlaybackSpeedControl;
+    liveTargetTimeline = null;
+    // If the previous control adjusted the speed, the next update restores the requested speed.
+    updateLivePlaybackSpeed();
+  }
+
   private void setForegroundModeInternal(
       boolean foregroundMode, @Nullable AtomicBoolean processedFlag) {
     if (this.foregroundMode != foregroundMode) {
@@ -1137,6 +1408,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
   }
 
   private void reselectTracksInternal() throws ExoPlaybackException {
+    // The preloading period's track selection may be stale, so preload it again if needed.
+    queue.releasePreloadingPeriod();
     float playbackSpeed = mediaClock.getPlaybackParameters().speed;
     // Reselect tracks on each period in turn, until the selection changes.
     MediaPeriodHolder periodHolder = queue.getPlayingPeriod();
@@ -1537,6 +1810,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
       if (info == null) {
         maybeThrowSourceInfoRefreshError();
       } else {
+        MediaPeriodHolder preloadingPeriodHolder = queue.getPreloadingPeriod();
         MediaPeriodHolder mediaPeriodHolder =
             queue.enqueueNextMediaPeriodHolder(
                 rendererCapabilities,
@@ -1545,11 +1819,30 @@ import java.util.concurrent.atomic.AtomicBoolean;
                 mediaSource,
                 info,
                 emptyTrackSelectorResult);
-        mediaPeriodHolder.mediaPeriod.prepare(this, info.startPositionUs);
+        if (mediaPeriodHolder != preloadingPeriodHolder) {
+          mediaPeriodHolder.mediaPeriod.prepare(this, info.startPositionUs);
+        }
         if (queue.getPlayingPeriod() == mediaPeriodHolder) {
           resetRendererPosition(mediaPeriodHolder.getStartPositionRendererTime());
         }
         handleLoadingMediaPeriodChanged(/* loadingTrackSelectionChanged= */ false);
+        if (mediaPeriodHolder.prepared) {
+          // The preloading period was enqueued after it finished preparing.
+          handleLoadingPeriodPrepared(mediaPeriodHolder);
+        }
+      }
+    } else if (preloadDurationUs > 0 && queue.shouldPreloadNextMediaPeriod()) {
+      MediaPeriodInfo info = queue.getNextMediaPeriodInfo(rendererPositionUs, playbackInfo);
+      if (info != null) {
+        MediaPeriodHolder mediaPeriodHolder =
+            queue.preloadNextMediaPeriodHolder(
+                rendererCapabilities,
+                trackSelector,
+                loadControl.getAllocator(),
+                mediaSource,
+                info,
+                emptyTrackSelectorResult);
+        mediaPeriodHolder.mediaPeriod.prepare(this, info.startPositionUs);
       }
     }
     if (shouldContinueLoading) {
@@ -1558,6 +1851,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
     } else {
       maybeContinueLoading();
     }
+    maybeContinuePreloading();
   }
 
   private void maybeUpdateReadingPeriod() throws ExoPlaybackException {
@@ -1713,6 +2007,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
   }
 
   private void handlePeriodPrepared(MediaPeriod mediaPeriod) throws ExoPlaybackException {
+    if (queue.isPreloading(mediaPeriod)) {
+      // Track selection for the load control is updated when the period is enqueued.
+      queue
+          .getPreloadingPeriod()
+          .handlePrepared(mediaClock.getPlaybackParameters().speed, playbackInfo.timeline);
+      maybeContinuePreloading();
+      return;
+    }
     if (!queue.isLoading(mediaPeriod)) {
       // Stale event.
       return;
@@ -1720,6 +2022,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
     MediaPeriodHolder loadingPeriodHolder = queue.getLoadingPeriod();
     loadingPeriodHolder.handlePrepared(
         mediaClock.getPlaybackParameters().speed, playbackInfo.timeline);
+    handleLoadingPeriodPrepared(loadingPeriodHolder);
+    maybeContinueLoading();
+    maybeScheduleWorkForLoadingProgress();
+  }
+
+  private void handleLoadingPeriodPrepared(MediaPeriodHolder loadingPeriodHolder)
+      throws ExoPlaybackException {
     updateLoadControlTrackSelection(
         loadingPeriodHolder.getTrackGroups(), loadingPeriodHolder.getTrackSelectorResult());
     if (loadingPeriodHolder == queue.getPlayingPeriod()) {
@@ -1727,16 +2036,20 @@ import java.util.concurrent.atomic.AtomicBoolean;
       resetRendererPosition(loadingPeriodHolder.info.startPositionUs);
       updatePlayingPeriodRenderers(/* oldPlayingPeriodHolder= */ null);
     }
-    maybeContinueLoading();
   }
 
   private void handleContinueLoadingRequested(MediaPeriod mediaPeriod) {
+    if (queue.isPreloading(mediaPeriod)) {
+      maybeContinuePreloading();
+      return;
+    }
     if (!queue.isLoading(mediaPeriod)) {
       // Stale event.
       return;
     }
     queue.reevaluateBuffer(rendererPositionUs);
     maybeContinueLoading();
+    maybeScheduleWorkForLoadingProgress();
   }
 
   private void handlePlaybackParameters(
@@ -1744,12 +2057,19 @@ import java.util.concurrent.atomic.AtomicBoolean;
       throws ExoPlaybackException {
     eventHandler
         .obtainMessage(
-            MSG_PLAYBACK_PARAMETERS_CHANGED, acknowledgeCommand ? 1 : 0, 0, playbackParameters)
+            MSG_PLAYBACK_PARAMETERS_CHANGED,
+            acknowledgeCommand ? 1 : 0,
+            0,
+            getReportedPlaybackParameters(playbackParameters))
         .sendToTarget();
-    updateTrackSelectionPlaybackSpeed(playbackParameters.speed);
+    updatePlaybackSpeed(playbackParameters.speed);
+  }
+
+  private void updatePlaybackSpeed(float playbackSpeed) throws ExoPlaybackException {
+    updateTrackSelectionPlaybackSpeed(playbackSpeed);
     for (Renderer renderer : renderers) {
       if (renderer != null) {
-        renderer.setOperatingRate(playbackParameters.speed);
+        renderer.setOperatingRate(playbackSpeed);
       }
     }
   }
@@ -1762,6 +2082,30 @@ import java.util.concurrent.atomic.AtomicBoolean;
     updateIsLoading();
   }
 
+  private void maybeContinuePreloading() {
+    MediaPeriodHolder preloadingPeriodHolder = queue.getPreloadingPeriod();
+    MediaPeriodHolder loadingPeriodHolder = queue.getLoadingPeriod();
+    if (preloadingPeriodHolder == null
+        || !preloadingPeriodHolder.prepared
+        || loadingPeriodHolder == null
+        || loadingPeriodHolder.mediaPeriod.isLoading()) {
+      // Preloading doesn't compete with the loading period for bandwidth.
+      return;
+    }
+    long nextLoadPositionUs = preloadingPeriodHolder.getNextLoadPositionUs();
+    if (nextLoadPositionUs == C.TIME_END_OF_SOURCE) {
+      return;
+    }
+    long preloadedDurationUs = nextLoadPositionUs - preloadingPeriodHolder.info.startPositionUs;
+    // Preloaded media counts towards the buffer managed by the load control.
+    if (preloadedDurationUs < preloadDurationUs
+        && loadControl.shouldContinueLoading(
+            getTotalBufferedDurationUs() + preloadedDurationUs,
+            mediaClock.getPlaybackParameters().speed)) {
+      preloadingPeriodHolder.continueLoading(rendererPositionUs);
+    }
+  }
+
   private boolean shouldContinueLoading() {
     if (!isLoadingPossible()) {
       return false;
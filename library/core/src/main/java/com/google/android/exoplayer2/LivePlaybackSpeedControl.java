@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+/**
+ * Controls the playback speed while playing live content in order to maintain a steady target live
+ * offset.
+ *
+ * <p>The live offset is the duration between the current wall-clock time and the media time being
+ * played, as defined by {@link Timeline.Window#getCurrentUnixTimeMs()} and {@link
+ * Timeline.Window#windowStartTimeMs}.
+ *
+ * <p>All methods are called on the playback thread.
+ */
+public interface LivePlaybackSpeedControl {
+
+  /**
+   * Sets the target live offset defined by the media, in microseconds. The media target is derived
+   * from the default position of the live window, and is used unless an override is set.
+   *
+   * @param mediaTargetLiveOffsetUs The target live offset defined by the media, or {@link
+   *     C#TIME_UNSET} if unknown.
+   */
+  void setMediaTargetLiveOffsetUs(long mediaTargetLiveOffsetUs);
+
+  /**
+   * Sets a target live offset that overrides the one defined by the media, in microseconds. The
+   * player sets an override when the user seeks to a specific position in a live window, and clears
+   * it when seeking to the default position.
+   *
+   * @param targetLiveOffsetOverrideUs The override target live offset, or {@link C#TIME_UNSET} to
+   *     use the target defined by the media.
+   */
+  void setTargetLiveOffsetOverrideUs(long targetLiveOffsetOverrideUs);
+
+  /**
+   * Notifies the controller that a rebuffer occurred while playing live content. The controller
+   * may use this to increase its target live offset.
+   */
+  void notifyRebuffer();
+
+  /**
+   * Returns the playback speed that should be used to move towards the target live offset.
+   *
+   * <p>Called repeatedly while playing live content. The returned speed is applied in place of a
+   * playback speed of 1.
+   *
+   * @param liveOffsetUs The current live offset, in microseconds.
+   * @param bufferedDurationUs The duration of media that's currently buffered, in microseconds.
+   * @return The playback speed to use.
+   */
+  float getAdjustedPlaybackSpeed(long liveOffsetUs, long bufferedDurationUs);
+
+  /**
+   * Returns the current target live offset in microseconds, or {@link C#TIME_UNSET} if no target
+   * live offset is defined.
+   */
+  long getTargetLiveOffsetUs();
+}
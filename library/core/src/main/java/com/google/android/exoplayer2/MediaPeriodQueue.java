@@ -30,6 +30,11 @@ import com.google.android.exoplayer2.util.Assertions;
  * Holds a queue of media periods, from the currently playing media period at the front to the
  * loading media period at the end of the queue, with methods for controlling loading and updating
  * the queue. Also has a reference to the media period currently being read.
+ *
+ * <p>The queue may also hold a preloading media period, which is created for the media period that
+ * follows the loading media period before the loading media period is fully buffered. The
+ * preloading media period is not part of the queue, but is enqueued in place of a new media period
+ * if it still matches the next media period to load when that media period is enqueued.
  */
 /* package */ final class MediaPeriodQueue {
 
@@ -50,6 +55,7 @@ import com.google.android.exoplayer2.util.Assertions;
   @Nullable private MediaPeriodHolder playing;
   @Nullable private MediaPeriodHolder reading;
   @Nullable private MediaPeriodHolder loading;
+  @Nullable private MediaPeriodHolder preloading;
   private int length;
   @Nullable private Object oldFrontPeriodUid;
   private long oldFrontPeriodWindowSequenceNumber;
@@ -92,6 +98,11 @@ import com.google.android.exoplayer2.util.Assertions;
     return loading != null && loading.mediaPeriod == mediaPeriod;
   }
 
+  /** Returns whether {@code mediaPeriod} is the current preloading media period. */
+  public boolean isPreloading(MediaPeriod mediaPeriod) {
+    return preloading != null && preloading.mediaPeriod == mediaPeriod;
+  }
+
   /**
    * If there is a loading period, reevaluates its buffer.
    *
@@ -112,6 +123,20 @@ import com.google.android.exoplayer2.util.Assertions;
             && length < MAXIMUM_BUFFER_AHEAD_PERIODS);
   }
 
+  /**
+   * Returns whether the media period following the loading media period should be preloaded, if
+   * available.
+   */
+  public boolean shouldPreloadNextMediaPeriod() {
+    return preloading == null
+        && loading != null
+        && loading.prepared
+        && !loading.info.isFinal
+        && !loading.isFullyBuffered()
+        && loading.info.durationUs != C.TIME_UNSET
+        && length < MAXIMUM_BUFFER_AHEAD_PERIODS;
+  }
+
   /**
    * Returns the {@link MediaPeriodInfo} for the next media period to load.
    *
@@ -146,21 +171,28 @@ import com.google.android.exoplayer2.util.Assertions;
       MediaSource mediaSource,
       MediaPeriodInfo info,
       TrackSelectorResult emptyTrackSelectorResult) {
-    long rendererPositionOffsetUs =
-        loading == null
-            ? (info.id.isAd() && info.contentPositionUs != C.TIME_UNSET
-                ? info.contentPositionUs
-                : 0)
-            : (loading.getRendererOffset() + loading.info.durationUs - info.startPositionUs);
-    MediaPeriodHolder newPeriodHolder =
-        new MediaPeriodHolder(
-            rendererCapabilities,
-            rendererPositionOffsetUs,
-            trackSelector,
-            allocator,
-            mediaSource,
-            info,
-            emptyTrackSelectorResult);
+    long rendererPositionOffsetUs = getRendererPositionOffsetUs(info);
+    MediaPeriodHolder newPeriodHolder;
+    if (loading != null
+        && preloading != null
+        && canKeepMediaPeriodHolder(preloading.info, info)) {
+      // Adopt the preloading period, which was created for the same media period.
+      newPeriodHolder = preloading;
+      newPeriodHolder.setRendererOffset(rendererPositionOffsetUs);
+      newPeriodHolder.info = info;
+      preloading = null;
+    } else {
+      releasePreloadingPeriod();
+      newPeriodHolder =
+          new MediaPeriodHolder(
+              rendererCapabilities,
+              rendererPositionOffsetUs,
+              trackSelector,
+              allocator,
+              mediaSource,
+              info,
+              emptyTrackSelectorResult);
+    }
     if (loading != null) {
       loading.setNext(newPeriodHolder);
     } else {
@@ -173,6 +205,53 @@ import com.google.android.exoplayer2.util.Assertions;
     return newPeriodHolder;
   }
 
+  /**
+   * Creates a media period holder based on the specified information as the new preloading media
+   * period, and returns it. Must only be called if {@link #shouldPreloadNextMediaPeriod()} returns
+   * {@code true}.
+   *
+   * @param rendererCapabilities The renderer capabilities.
+   * @param trackSelector The track selector.
+   * @param allocator The allocator.
+   * @param mediaSource The media source that produced the media period.
+   * @param info Information used to identify this media period in its timeline period.
+   * @param emptyTrackSelectorResult A {@link TrackSelectorResult} with empty selections for each
+   *     renderer.
+   */
+  public MediaPeriodHolder preloadNextMediaPeriodHolder(
+      RendererCapabilities[] rendererCapabilities,
+      TrackSelector trackSelector,
+      Allocator allocator,
+      MediaSource mediaSource,
+      MediaPeriodInfo info,
+      TrackSelectorResult emptyTrackSelectorResult) {
+    Assertions.checkState(preloading == null && loading != null);
+    preloading =
+        new MediaPeriodHolder(
+            rendererCapabilities,
+            getRendererPositionOffsetUs(info),
+            trackSelector,
+            allocator,
+            mediaSource,
+            info,
+            emptyTrackSelectorResult);
+    return preloading;
+  }
+
+  /** Returns the preloading period holder, or null if there is no preloading period. */
+  @Nullable
+  public MediaPeriodHolder getPreloadingPeriod() {
+    return preloading;
+  }
+
+  /** Releases the preloading period holder, if there is one. */
+  public void releasePreloadingPeriod() {
+    if (preloading != null) {
+      preloading.release();
+      preloading = null;
+    }
+  }
+
   /**
    * Returns the loading period holder which is at the end of the queue, or null if the queue is
    * empty.
@@ -225,6 +304,7 @@ import com.google.android.exoplayer2.util.Assertions;
     playing.release();
     length--;
     if (length == 0) {
+      releasePreloadingPeriod();
       loading = null;
       oldFrontPeriodUid = playing.uid;
       oldFrontPeriodWindowSequenceNumber = playing.info.id.windowSequenceNumber;
@@ -244,6 +324,10 @@ import com.google.android.exoplayer2.util.Assertions;
   public boolean removeAfter(MediaPeriodHolder mediaPeriodHolder) {
     Assertions.checkState(mediaPeriodHolder != null);
     boolean removedReading = false;
+    if (mediaPeriodHolder != loading) {
+      // The preloading period follows the loading period, which is being removed.
+      releasePreloadingPeriod();
+    }
     loading = mediaPeriodHolder;
     while (mediaPeriodHolder.getNext() != null) {
       mediaPeriodHolder = mediaPeriodHolder.getNext();
@@ -265,6 +349,7 @@ import com.google.android.exoplayer2.util.Assertions;
    *     of queue (typically the playing one) for later reuse.
    */
   public void clear(boolean keepFrontPeriodUid) {
+    releasePreloadingPeriod();
     MediaPeriodHolder front = playing;
     if (front != null) {
       oldFrontPeriodUid = keepFrontPeriodUid ? front.uid : null;
@@ -341,6 +426,17 @@ import com.google.android.exoplayer2.util.Assertions;
       previousPeriodHolder = periodHolder;
       periodHolder = periodHolder.getNext();
     }
+    if (preloading != null && previousPeriodHolder != null) {
+      MediaPeriodInfo newPreloadingPeriodInfo =
+          getFollowingMediaPeriodInfo(previousPeriodHolder, rendererPositionUs);
+      if (newPreloadingPeriodInfo == null
+          || !canKeepMediaPeriodHolder(preloading.info, newPreloadingPeriodInfo)) {
+        releasePreloadingPeriod();
+      } else {
+        preloading.info =
+            newPreloadingPeriodInfo.copyWithContentPositionUs(preloading.info.contentPositionUs);
+      }
+    }
     return true;
   }
 
@@ -389,6 +485,12 @@ import com.google.android.exoplayer2.util.Assertions;
 
   // Internal methods.
 
+  private long getRendererPositionOffsetUs(MediaPeriodInfo info) {
+    return loading == null
+        ? (info.id.isAd() && info.contentPositionUs != C.TIME_UNSET ? info.contentPositionUs : 0)
+        : (loading.getRendererOffset() + loading.info.durationUs - info.startPositionUs);
+  }
+
   /**
    * Resolves the specified timeline period and position to a {@link MediaPeriodId} that should be
    * played, returning an identifier for an ad group if one needs to be played before the specified
@@ -484,6 +586,8 @@ import com.google.android.exoplayer2.util.Assertions;
    */
   private boolean updateForPlaybackModeChange() {
     // Find the last existing period holder that matches the new period order.
+    // The next media period may have changed, so the preloading period can't be kept.
+    releasePreloadingPeriod();
     MediaPeriodHolder lastValidPeriodHolder = playing;
     if (lastValidPeriodHolder == null) {
       return true;
@@ -582,7 +686,8 @@ import com.google.android.exoplayer2.util.Assertions;
         }
         nextPeriodUid = defaultPosition.first;
         startPositionUs = defaultPosition.second;
-        MediaPeriodHolder nextMediaPeriodHolder = mediaPeriodHolder.getNext();
+        MediaPeriodHolder nextMediaPeriodHolder =
+            mediaPeriodHolder == loading ? preloading : mediaPeriodHolder.getNext();
         if (nextMediaPeriodHolder != null && nextMediaPeriodHolder.uid.equals(nextPeriodUid)) {
           windowSequenceNumber = nextMediaPeriodHolder.info.id.windowSequenceNumber;
         } else {
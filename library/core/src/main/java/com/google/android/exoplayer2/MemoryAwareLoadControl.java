@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import android.content.ComponentCallbacks2;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * A {@link LoadControl} that adapts the amount of buffered media to the memory available to the
+ * app.
+ *
+ * <p>The target buffer size is derived from the bitrates of the selected tracks and the maximum
+ * buffer duration, and is capped at a fraction of the maximum heap size. This allows devices with
+ * a large heap to buffer much more than {@link DefaultLoadControl}, while high bitrate content
+ * doesn't exhaust the heap of low memory devices.
+ *
+ * <p>Apps should relay memory pressure signals through {@link #onTrimMemory(int)} and {@link
+ * #onLowMemory()}, for example from their {@link ComponentCallbacks2}. Each signal reduces the
+ * maximum buffer duration and target buffer size and releases unused allocations. While under
+ * memory pressure, the target buffer size takes precedence over the minimum buffer duration. The
+ * buffer grows back step by step once no further memory pressure has been reported for a while.
+ */
+public final class MemoryAwareLoadControl implements LoadControl {
+
+  /** Builder for {@link MemoryAwareLoadControl}. */
+  public static final class Builder {
+
+    private DefaultAllocator allocator;
+    private int minBufferMs;
+    private int maxBufferMs;
+    private int bufferForPlaybackMs;
+    private int bufferForPlaybackAfterRebufferMs;
+    private float maxHeapFraction;
+    private int maxTargetBufferBytes;
+    private long memoryPressureRecoveryIntervalMs;
+    private int backBufferDurationMs;
+    private boolean retainBackBufferFromKeyframe;
+    private Clock clock;
+
+    /** Constructs a new instance. */
+    public Builder() {
+      allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+      minBufferMs = DEFAULT_MIN_BUFFER_MS;
+      maxBufferMs = DEFAULT_MAX_BUFFER_MS;
+      bufferForPlaybackMs = DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS;
+      bufferForPlaybackAfterRebufferMs =
+          DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS;
+      maxHeapFraction = DEFAULT_MAX_HEAP_FRACTION;
+      maxTargetBufferBytes = C.LENGTH_UNSET;
+      memoryPressureRecoveryIntervalMs = DEFAULT_MEMORY_PRESSURE_RECOVERY_INTERVAL_MS;
+      backBufferDurationMs = DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS;
+      retainBackBufferFromKeyframe = DefaultLoadControl.DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the {@link DefaultAllocator} used by the loader.
+     *
+     * @param allocator The {@link DefaultAllocator}.
+     * @return This builder, for convenience.
+     */
+    public Builder setAllocator(DefaultAllocator allocator) {
+      this.allocator = allocator;
+      return this;
+    }
+
+    /**
+     * Sets the buffer duration parameters.
+     *
+     * @param minBufferMs The minimum duration of media that the player will attempt to ensure is
+     *     buffered at all times, in milliseconds.
+     * @param maxBufferMs The maximum duration of media that the player will attempt to buffer when
+     *     there is no memory pressure, in milliseconds.
+     * @param bufferForPlaybackMs The duration of media that must be buffered for playback to start
+     *     or resume following a user action such as a seek, in milliseconds.
+     * @param bufferForPlaybackAfterRebufferMs The default duration of media that must be buffered
+     *     for playback to resume after a rebuffer, in milliseconds.
+     * @return This builder, for convenience.
+     */
+    public Builder setBufferDurationsMs(
+        int minBufferMs,
+        int maxBufferMs,
+        int bufferForPlaybackMs,
+        int bufferForPlaybackAfterRebufferMs) {
+      Assertions.checkArgument(bufferForPlaybackMs >= 0);
+      Assertions.checkArgument(bufferForPlaybackAfterRebufferMs >= 0);
+      Assertions.checkArgument(minBufferMs >= bufferForPlaybackMs);
+      Assertions.checkArgument(minBufferMs >= bufferForPlaybackAfterRebufferMs);
+      Assertions.checkArgument(maxBufferMs >= minBufferMs);
+      this.minBufferMs = minBufferMs;
+      this.maxBufferMs = maxBufferMs;
+      this.bufferForPlaybackMs = bufferForPlaybackMs;
+      this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+      return this;
+    }
+
+    /**
+     * Sets the fraction of the maximum heap size (see {@link Runtime#maxMemory()}) that may be
+     * used for buffered media when there is no memory pressure. Ignored if a maximum target buffer
+     * size is set with {@link #setMaxTargetBufferBytes(int)}.
+     *
+     * @param maxHeapFraction The fraction of the maximum heap size that may be used for buffered
+     *     media.
+     * @return This builder, for convenience.
+     */
+    public Builder setMaxHeapFraction(float maxHeapFraction) {
+      Assertions.checkArgument(maxHeapFraction > 0 && maxHeapFraction <= 1);
+      this.maxHeapFraction = maxHeapFraction;
+      return this;
+    }
+
+    /**
+     * Sets the maximum target buffer size in bytes when there is no memory pressure, overriding
+     * the size derived from the maximum heap size.
+     *
+     * @param maxTargetBufferBytes The maximum target buffer size in bytes, or {@link
+     *     C#LENGTH_UNSET} to derive it from the maximum heap size.
+     * @return This builder, for convenience.
+     */
+    public Builder setMaxTargetBufferBytes(int maxTargetBufferBytes) {
+      Assertions.checkArgument(maxTargetBufferBytes > 0 || maxTargetBufferBytes == C.LENGTH_UNSET);
+      this.maxTargetBufferBytes = maxTargetBufferBytes;
+      return this;
+    }
+
+    /**
+     * Sets the time without memory pressure signals after which the buffer is allowed to grow by
+     * one step.
+     *
+     * @param memoryPressureRecoveryIntervalMs The recovery interval, in milliseconds.
+     * @return This builder, for convenience.
+     */
+    public Builder setMemoryPressureRecoveryIntervalMs(long memoryPressureRecoveryIntervalMs) {
+      Assertions.checkArgument(memoryPressureRecoveryIntervalMs >= 0);
+      this.memoryPressureRecoveryIntervalMs = memoryPressureRecoveryIntervalMs;
+      return this;
+    }
+
+    /**
+     * Sets the back buffer duration, and whether the back buffer is retained from the previous
+     * keyframe.
+     *
+     * @param backBufferDurationMs The back buffer duration in milliseconds.
+     * @param retainBackBufferFromKeyframe Whether the back buffer is retained from the previous
+     *     keyframe.
+     * @return This builder, for convenience.
+     */
+    public Builder setBackBuffer(int backBufferDurationMs, boolean retainBackBufferFromKeyframe) {
+      Assertions.checkArgument(backBufferDurationMs >= 0);
+      this.backBufferDurationMs = backBufferDurationMs;
+      this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+      return this;
+    }
+
+    /**
+     * Sets the clock used to recover from memory pressure. Should only be set for testing
+     * purposes.
+     *
+     * @param clock The {@link Clock}.
+     * @return This builder, for convenience.
+     */
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /** Builds a {@link MemoryAwareLoadControl}. */
+    public MemoryAwareLoadControl build() {
+      long maxTargetBufferBytes =
+          this.maxTargetBufferBytes != C.LENGTH_UNSET
+              ? this.maxTargetBufferBytes
+              : (long) (Runtime.getRuntime().maxMemory() * maxHeapFraction);
+      return new MemoryAwareLoadControl(
+          allocator,
+          minBufferMs,
+          maxBufferMs,
+          bufferForPlaybackMs,
+          bufferForPlaybackAfterRebufferMs,
+          (int) Math.min(maxTargetBufferBytes, Integer.MAX_VALUE),
+          memoryPressureRecoveryIntervalMs,
+          backBufferDurationMs,
+          retainBackBufferFromKeyframe,
+          clock);
+    }
+  }
+
+  /**
+   * The default minimum duration of media that the player will attempt to ensure is buffered at all
+   * times, in milliseconds.
+   */
+  public static final int DEFAULT_MIN_BUFFER_MS = DefaultLoadControl.DEFAULT_MIN_BUFFER_MS;
+
+  /**
+   * The default maximum duration of media that the player will attempt to buffer when there is no
+   * memory pressure, in milliseconds.
+   */
+  public static final int DEFAULT_MAX_BUFFER_MS = 120_000;
+
+  /** The default fraction of the maximum heap size that may be used for buffered media. */
+  public static final float DEFAULT_MAX_HEAP_FRACTION = 0.25f;
+
+  /**
+   * The default time without memory pressure signals after which the buffer is allowed to grow by
+   * one step, in milliseconds.
+   */
+  public static final long DEFAULT_MEMORY_PRESSURE_RECOVERY_INTERVAL_MS = 30_000;
+
+  /** Each memory pressure level halves the maximum buffer duration and target buffer size. */
+  private static final int MAX_MEMORY_PRESSURE_LEVEL = 3;
+  /** Headroom on top of the selected bitrates, for container overhead and bitrate variation. */
+  private static final float BITRATE_HEADROOM_FACTOR = 1.25f;
+
+  private final DefaultAllocator allocator;
+  private final long minBufferUs;
+  private final long maxBufferUs;
+  private final long bufferForPlaybackUs;
+  private final long bufferForPlaybackAfterRebufferUs;
+  private final int maxTargetBufferBytes;
+  private final long memoryPressureRecoveryIntervalMs;
+  private final long backBufferDurationUs;
+  private final boolean retainBackBufferFromKeyframe;
+  private final Clock clock;
+
+  private boolean isBuffering;
+  private boolean hasTrackSelection;
+  private long selectedBitrate;
+  private int unknownBitrateBufferSize;
+
+  private volatile int memoryPressureLevel;
+  private volatile long lastMemoryPressureTimeMs;
+  private volatile long currentMaxBufferUs;
+  private volatile int targetBufferSize;
+
+  private MemoryAwareLoadControl(
+      DefaultAllocator allocator,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int maxTargetBufferBytes,
+      long memoryPressureRecoveryIntervalMs,
+      int backBufferDurationMs,
+      boolean retainBackBufferFromKeyframe,
+      Clock clock) {
+    this.allocator = allocator;
+    this.minBufferUs = C.msToUs(minBufferMs);
+    this.maxBufferUs = C.msToUs(maxBufferMs);
+    this.bufferForPlaybackUs = C.msToUs(bufferForPlaybackMs);
+    this.bufferForPlaybackAfterRebufferUs = C.msToUs(bufferForPlaybackAfterRebufferMs);
+    this.maxTargetBufferBytes = maxTargetBufferBytes;
+    this.memoryPressureRecoveryIntervalMs = memoryPressureRecoveryIntervalMs;
+    this.backBufferDurationUs = C.msToUs(backBufferDurationMs);
+    this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+    this.clock = clock;
+    currentMaxBufferUs = maxBufferUs;
+  }
+
+  /**
+   * Reports a memory trim signal, as received by {@link ComponentCallbacks2#onTrimMemory(int)}.
+   * May be called from any thread.
+   *
+   * @param level The trim level.
+   */
+  public void onTrimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+        || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+      increaseMemoryPressure(MAX_MEMORY_PRESSURE_LEVEL);
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+        || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      increaseMemoryPressure(/* level= */ 2);
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+        || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+      increaseMemoryPressure(/* level= */ 1);
+    }
+    // Other levels (e.g. TRIM_MEMORY_UI_HIDDEN) don't indicate memory pressure.
+  }
+
+  /**
+   * Reports that the system is running low on memory, as received by {@link
+   * ComponentCallbacks2#onLowMemory()}. May be called from any thread.
+   */
+  public void onLowMemory() {
+    increaseMemoryPressure(MAX_MEMORY_PRESSURE_LEVEL);
+  }
+
+  /** Returns the current target buffer size in bytes. */
+  public int getTargetBufferBytes() {
+    return targetBufferSize;
+  }
+
+  @Override
+  public void onPrepared() {
+    reset(false);
+  }
+
+  @Override
+  public synchronized void onTracksSelected(
+      Renderer[] renderers, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+    selectedBitrate = 0;
+    unknownBitrateBufferSize = 0;
+    for (int i = 0; i < renderers.length; i++) {
+      @Nullable TrackSelection trackSelection = trackSelections.get(i);
+      if (trackSelection == null) {
+        continue;
+      }
+      int maxBitrate = getMaxBitrate(trackSelection);
+      if (maxBitrate != Format.NO_VALUE) {
+        selectedBitrate += maxBitrate;
+      } else {
+        unknownBitrateBufferSize += getDefaultBufferSize(renderers[i].getTrackType());
+      }
+    }
+    hasTrackSelection = true;
+    updateTargets();
+  }
+
+  @Override
+  public void onStopped() {
+    reset(true);
+  }
+
+  @Override
+  public void onReleased() {
+    reset(true);
+  }
+
+  @Override
+  public Allocator getAllocator() {
+    return allocator;
+  }
+
+  @Override
+  public long getBackBufferDurationUs() {
+    return backBufferDurationUs;
+  }
+
+  @Override
+  public boolean retainBackBufferFromKeyframe() {
+    return retainBackBufferFromKeyframe;
+  }
+
+  @Override
+  public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+    if (memoryPressureLevel > 0) {
+      maybeDecreaseMemoryPressure();
+      // Drop allocations that were released back to the allocator beyond the reduced target.
+      allocator.trim();
+    }
+    long maxBufferUs = currentMaxBufferUs;
+    boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferSize;
+    boolean prioritizeTimeOverSizeThresholds = memoryPressureLevel == 0;
+    long minBufferUs = Math.min(this.minBufferUs, maxBufferUs);
+    if (playbackSpeed > 1) {
+      // The playback speed is faster than real time, so scale up the minimum required media
+      // duration to keep enough media buffered for a playout duration of minBufferUs.
+      long mediaDurationMinBufferUs =
+          Util.getMediaDurationForPlayoutDuration(minBufferUs, playbackSpeed);
+      minBufferUs = Math.min(mediaDurationMinBufferUs, maxBufferUs);
+    }
+    if (bufferedDurationUs < minBufferUs) {
+      isBuffering = prioritizeTimeOverSizeThresholds || !targetBufferSizeReached;
+    } else if (bufferedDurationUs >= maxBufferUs || targetBufferSizeReached) {
+      isBuffering = false;
+    } // Else don't change the buffering state
+    return isBuffering;
+  }
+
+  @Override
+  public boolean shouldStartPlayback(
+      long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+    bufferedDurationUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+    long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+    return minBufferDurationUs <= 0
+        || bufferedDurationUs >= minBufferDurationUs
+        || (memoryPressureLevel > 0 && allocator.getTotalBytesAllocated() >= targetBufferSize);
+  }
+
+  private synchronized void increaseMemoryPressure(int level) {
+    lastMemoryPressureTimeMs = clock.elapsedRealtime();
+    if (level > memoryPressureLevel) {
+      memoryPressureLevel = level;
+      updateTargets();
+    }
+    allocator.trim();
+  }
+
+  private synchronized void maybeDecreaseMemoryPressure() {
+    long nowMs = clock.elapsedRealtime();
+    if (memoryPressureLevel > 0
+        && nowMs - lastMemoryPressureTimeMs >= memoryPressureRecoveryIntervalMs) {
+      memoryPressureLevel--;
+      lastMemoryPressureTimeMs = nowMs;
+      updateTargets();
+    }
+  }
+
+  private synchronized void updateTargets() {
+    int memoryPressureDivisor = 1 << memoryPressureLevel;
+    long maxBufferUs = Math.max(minBufferUs, this.maxBufferUs / memoryPressureDivisor);
+    currentMaxBufferUs = maxBufferUs;
+    if (!hasTrackSelection) {
+      return;
+    }
+    long bitrateBufferSize =
+        (long)
+            ((double) selectedBitrate
+                * BITRATE_HEADROOM_FACTOR
+                * maxBufferUs
+                / (C.BITS_PER_BYTE * C.MICROS_PER_SECOND));
+    long targetBufferSize =
+        Math.min(
+            bitrateBufferSize + unknownBitrateBufferSize,
+            maxTargetBufferBytes / memoryPressureDivisor);
+    this.targetBufferSize = (int) targetBufferSize;
+    allocator.setTargetBufferSize(this.targetBufferSize);
+  }
+
+  private synchronized void reset(boolean resetAllocator) {
+    hasTrackSelection = false;
+    selectedBitrate = 0;
+    unknownBitrateBufferSize = 0;
+    targetBufferSize = 0;
+    isBuffering = false;
+    if (resetAllocator) {
+      allocator.reset();
+    }
+  }
+
+  private static int getMaxBitrate(TrackSelection trackSelection) {
+    int maxBitrate = Format.NO_VALUE;
+    for (int i = 0; i < trackSelection.length(); i++) {
+      int bitrate = trackSelection.getFormat(i).bitrate;
+      if (bitrate == Format.NO_VALUE) {
+        return Format.NO_VALUE;
+      }
+      maxBitrate = Math.max(maxBitrate, bitrate);
+    }
+    return maxBitrate;
+  }
+
+  private static int getDefaultBufferSize(int trackType) {
+    switch (trackType) {
+      case C.TRACK_TYPE_DEFAULT:
+        return DefaultLoadControl.DEFAULT_MUXED_BUFFER_SIZE;
+      case C.TRACK_TYPE_AUDIO:
+        return DefaultLoadControl.DEFAULT_AUDIO_BUFFER_SIZE;
+      case C.TRACK_TYPE_VIDEO:
+        return DefaultLoadControl.DEFAULT_VIDEO_BUFFER_SIZE;
+      case C.TRACK_TYPE_TEXT:
+        return DefaultLoadControl.DEFAULT_TEXT_BUFFER_SIZE;
+      case C.TRACK_TYPE_METADATA:
+        return DefaultLoadControl.DEFAULT_METADATA_BUFFER_SIZE;
+      case C.TRACK_TYPE_CAMERA_MOTION:
+        return DefaultLoadControl.DEFAULT_CAMERA_MOTION_BUFFER_SIZE;
+      default:
+        return 0;
+    }
+  }
+}
@@ -224,6 +224,33 @@ public interface Renderer extends PlayerMessage.Target {
    */
   default void setOperatingRate(float operatingRate) throws ExoPlaybackException {}
 
+  /**
+   * Returns the duration after which the renderer expects to be able to make further progress, in
+   * microseconds, measured from the start of the most recent call to {@link #render(long, long)}.
+   * The player may use this to delay the next call to {@link #render(long, long)} when dynamic
+   * scheduling is enabled. See {@link ExoPlayer#experimental_setDynamicSchedulingEnabled(boolean)}.
+   *
+   * <p>{@link Long#MAX_VALUE} may be returned if the renderer cannot make progress until its state
+   * changes or more data becomes available. Returning {@link C#TIME_UNSET} indicates that the
+   * duration is unknown, in which case the renderer will be called again after a short default
+   * interval.
+   *
+   * <p>The default implementation returns {@link C#TIME_UNSET}.
+   *
+   * <p>This method may be called when the renderer is in the following states: {@link
+   * #STATE_ENABLED}, {@link #STATE_STARTED}.
+   *
+   * @param positionUs The current media time in microseconds, as passed to the most recent call to
+   *     {@link #render(long, long)}.
+   * @param elapsedRealtimeUs {@link android.os.SystemClock#elapsedRealtime()} in microseconds, as
+   *     passed to the most recent call to {@link #render(long, long)}.
+   * @return The duration after which the renderer expects to be able to make further progress, in
+   *     microseconds, or {@link C#TIME_UNSET} if unknown.
+   */
+  default long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    return C.TIME_UNSET;
+  }
+
   /**
    * Incrementally renders the {@link SampleStream}.
    * <p>
@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Divides a global buffer budget in bytes among several players, for example the tiles of a
+ * multi-view UI.
+ *
+ * <p>Each player must be built with its own {@link PlayerLoadControl}, obtained from {@link
+ * #createLoadControl(int)}. All of them allocate from a single shared pool of memory, which retains
+ * at most the total budget of unused allocations for reuse between players. Players that have
+ * selected tracks share the budget according to their priority: every player is first granted a
+ * minimum share, so that it can keep playing, and the remainder is then handed out to players in
+ * order of decreasing priority, up to the target buffer size each player would use on its own.
+ * Players with the same priority split what's left equally.
+ *
+ * <p>When a player's priority is raised, or a higher priority player starts playback, lower
+ * priority players are trimmed first: their shares shrink and they stop loading until they've
+ * played out enough media to fit in their new share. Media that's already buffered is not
+ * discarded.
+ */
+public final class SharedBufferBudget {
+
+  /** Builder for {@link SharedBufferBudget}. */
+  public static final class Builder {
+
+    private int totalBufferBytes;
+    private int minPlayerBufferBytes;
+    private int minBufferMs;
+    private int maxBufferMs;
+    private int bufferForPlaybackMs;
+    private int bufferForPlaybackAfterRebufferMs;
+    private int backBufferDurationMs;
+    private boolean retainBackBufferFromKeyframe;
+    private boolean buildCalled;
+
+    /** Constructs a new instance. */
+    public Builder() {
+      totalBufferBytes = DEFAULT_TOTAL_BUFFER_BYTES;
+      minPlayerBufferBytes = DEFAULT_MIN_PLAYER_BUFFER_BYTES;
+      minBufferMs = DefaultLoadControl.DEFAULT_MIN_BUFFER_MS;
+      maxBufferMs = DefaultLoadControl.DEFAULT_MAX_BUFFER_MS;
+      bufferForPlaybackMs = DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS;
+      bufferForPlaybackAfterRebufferMs =
+          DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS;
+      backBufferDurationMs = DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS;
+      retainBackBufferFromKeyframe = DefaultLoadControl.DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME;
+    }
+
+    /**
+     * Sets the total number of bytes that may be buffered by all players together.
+     *
+     * @param totalBufferBytes The total buffer budget in bytes.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setTotalBufferBytes(int totalBufferBytes) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(totalBufferBytes > 0);
+      this.totalBufferBytes = totalBufferBytes;
+      return this;
+    }
+
+    /**
+     * Sets the number of bytes granted to every player before the rest of the budget is divided
+     * by priority. If the budget doesn't cover this amount for every player, the budget is split
+     * equally instead.
+     *
+     * @param minPlayerBufferBytes The minimum share of each player, in bytes.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setMinPlayerBufferBytes(int minPlayerBufferBytes) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(minPlayerBufferBytes >= 0);
+      this.minPlayerBufferBytes = minPlayerBufferBytes;
+      return this;
+    }
+
+    /**
+     * Sets the buffer duration parameters used by every player.
+     *
+     * @param minBufferMs The minimum duration of media that a player will attempt to ensure is
+     *     buffered at all times, in milliseconds, as long as its share of the budget allows.
+     * @param maxBufferMs The maximum duration of media that a player will attempt to buffer, in
+     *     milliseconds.
+     * @param bufferForPlaybackMs The duration of media that must be buffered for playback to start
+     *     or resume following a user action such as a seek, in milliseconds.
+     * @param bufferForPlaybackAfterRebufferMs The default duration of media that must be buffered
+     *     for playback to resume after a rebuffer, in milliseconds.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setBufferDurationsMs(
+        int minBufferMs,
+        int maxBufferMs,
+        int bufferForPlaybackMs,
+        int bufferForPlaybackAfterRebufferMs) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(bufferForPlaybackMs >= 0);
+      Assertions.checkArgument(bufferForPlaybackAfterRebufferMs >= 0);
+      Assertions.checkArgument(minBufferMs >= bufferForPlaybackMs);
+      Assertions.checkArgument(minBufferMs >= bufferForPlaybackAfterRebufferMs);
+      Assertions.checkArgument(maxBufferMs >= minBufferMs);
+      this.minBufferMs = minBufferMs;
+      this.maxBufferMs = maxBufferMs;
+      this.bufferForPlaybackMs = bufferForPlaybackMs;
+      this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+      return this;
+    }
+
+    /**
+     * Sets the back buffer duration used by every player, and whether the back buffer is retained
+     * from the previous keyframe.
+     *
+     * @param backBufferDurationMs The back buffer duration in milliseconds.
+     * @param retainBackBufferFromKeyframe Whether the back buffer is retained from the previous
+     *     keyframe.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setBackBuffer(int backBufferDurationMs, boolean retainBackBufferFromKeyframe) {
+      Assertions.checkState(!buildCalled);
+      Assertions.checkArgument(backBufferDurationMs >= 0);
+      this.backBufferDurationMs = backBufferDurationMs;
+      this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+      return this;
+    }
+
+    /**
+     * Builds a {@link SharedBufferBudget}.
+     *
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public SharedBufferBudget build() {
+      Assertions.checkState(!buildCalled);
+      buildCalled = true;
+      return new SharedBufferBudget(
+          totalBufferBytes,
+          minPlayerBufferBytes,
+          minBufferMs,
+          maxBufferMs,
+          bufferForPlaybackMs,
+          bufferForPlaybackAfterRebufferMs,
+          backBufferDurationMs,
+          retainBackBufferFromKeyframe);
+    }
+  }
+
+  /** The default total buffer budget of all players, in bytes. */
+  public static final int DEFAULT_TOTAL_BUFFER_BYTES = 1024 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
+
+  /** The default minimum share of each player, in bytes. */
+  public static final int DEFAULT_MIN_PLAYER_BUFFER_BYTES = 64 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
+
+  /** Priority of a player in the background, for example a tile that isn't focused. */
+  public static final int PRIORITY_BACKGROUND = 0;
+
+  /** Priority of a player in the foreground, for example the focused tile. */
+  public static final int PRIORITY_FOCUSED = 1;
+
+  private final DefaultAllocator allocator;
+  private final int totalBufferBytes;
+  private final int minPlayerBufferBytes;
+  private final long minBufferUs;
+  private final long maxBufferUs;
+  private final long bufferForPlaybackUs;
+  private final long bufferForPlaybackAfterRebufferUs;
+  private final long backBufferDurationUs;
+  private final boolean retainBackBufferFromKeyframe;
+  private final List<PlayerLoadControl> loadControls;
+
+  private SharedBufferBudget(
+      int totalBufferBytes,
+      int minPlayerBufferBytes,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int backBufferDurationMs,
+      boolean retainBackBufferFromKeyframe) {
+    this.totalBufferBytes = totalBufferBytes;
+    this.minPlayerBufferBytes = minPlayerBufferBytes;
+    this.minBufferUs = C.msToUs(minBufferMs);
+    this.maxBufferUs = C.msToUs(maxBufferMs);
+    this.bufferForPlaybackUs = C.msToUs(bufferForPlaybackMs);
+    this.bufferForPlaybackAfterRebufferUs = C.msToUs(bufferForPlaybackAfterRebufferMs);
+    this.backBufferDurationUs = C.msToUs(backBufferDurationMs);
+    this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+    allocator = new DefaultAllocator(/* trimOnReset= */ false, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    allocator.setTargetBufferSize(totalBufferBytes);
+    loadControls = new ArrayList<>();
+  }
+
+  /**
+   * Creates a {@link PlayerLoadControl} that takes part in this budget. Each instance must be used
+   * by a single player.
+   *
+   * @param priority The initial priority of the player. Players with a higher priority are granted
+   *     their share of the budget first. See {@link #PRIORITY_BACKGROUND} and {@link
+   *     #PRIORITY_FOCUSED}.
+   * @return The {@link PlayerLoadControl}.
+   */
+  public PlayerLoadControl createLoadControl(int priority) {
+    return new PlayerLoadControl(priority);
+  }
+
+  /** Returns the total number of bytes allocated by all players. */
+  public int getTotalBytesAllocated() {
+    return allocator.getTotalBytesAllocated();
+  }
+
+  private synchronized void register(PlayerLoadControl loadControl, int targetBufferSize) {
+    loadControl.requestedBufferSize = targetBufferSize;
+    if (!loadControls.contains(loadControl)) {
+      loadControls.add(loadControl);
+    }
+    updateTargetBufferSizes();
+  }
+
+  private synchronized void unregister(PlayerLoadControl loadControl) {
+    loadControl.targetBufferSize = 0;
+    if (loadControls.remove(loadControl)) {
+      updateTargetBufferSizes();
+    }
+    // Drop unused allocations beyond the budget, e.g. those released by the unregistered player.
+    allocator.trim();
+  }
+
+  private synchronized void updateTargetBufferSizes() {
+    int playerCount = loadControls.size();
+    if (playerCount == 0) {
+      return;
+    }
+    // Sort by decreasing priority, and by increasing request within each priority so that the
+    // equal split of a priority level can hand out what smaller requests leave unused.
+    Collections.sort(
+        loadControls,
+        (first, second) ->
+            first.priority != second.priority
+                ? Util.compareLong(second.priority, first.priority)
+                : Util.compareLong(first.requestedBufferSize, second.requestedBufferSize));
+    int minShare = Math.min(minPlayerBufferBytes, totalBufferBytes / playerCount);
+    long remainingBytes = totalBufferBytes;
+    int[] shares = new int[playerCount];
+    for (int i = 0; i < playerCount; i++) {
+      shares[i] = Math.min(minShare, loadControls.get(i).requestedBufferSize);
+      remainingBytes -= shares[i];
+    }
+    int levelStartIndex = 0;
+    while (levelStartIndex < playerCount) {
+      int priority = loadControls.get(levelStartIndex).priority;
+      int levelEndIndex = levelStartIndex;
+      while (levelEndIndex < playerCount && loadControls.get(levelEndIndex).priority == priority) {
+        levelEndIndex++;
+      }
+      for (int i = levelStartIndex; i < levelEndIndex; i++) {
+        long equalShare = remainingBytes / (levelEndIndex - i);
+        int extraBytes =
+            (int) Math.min(equalShare, loadControls.get(i).requestedBufferSize - shares[i]);
+        shares[i] += extraBytes;
+        remainingBytes -= extraBytes;
+      }
+      levelStartIndex = levelEndIndex;
+    }
+    for (int i = 0; i < playerCount; i++) {
+      loadControls.get(i).targetBufferSize = shares[i];
+    }
+  }
+
+  /**
+   * A {@link LoadControl} whose target buffer size is its share of a {@link SharedBufferBudget}.
+   *
+   * <p>A player is only granted a share while it has selected tracks, between {@link
+   * #onTracksSelected(Renderer[], TrackGroupArray, TrackSelectionArray)} and {@link #onStopped()}
+   * or {@link #onReleased()}. Its share is a strict limit: once the player's buffer reaches it, the
+   * player stops loading even if less than the minimum buffer duration is buffered.
+   */
+  public final class PlayerLoadControl implements LoadControl {
+
+    private final PlayerAllocator playerAllocator;
+
+    private int priority;
+    private int requestedBufferSize;
+    private boolean isBuffering;
+
+    private volatile int targetBufferSize;
+
+    private PlayerLoadControl(int priority) {
+      this.priority = priority;
+      playerAllocator = new PlayerAllocator(allocator);
+    }
+
+    /**
+     * Sets the priority of the player, and redistributes the budget accordingly. May be called
+     * from any thread.
+     *
+     * @param priority The priority of the player. See {@link #PRIORITY_BACKGROUND} and {@link
+     *     #PRIORITY_FOCUSED}.
+     */
+    public void setPriority(int priority) {
+      synchronized (SharedBufferBudget.this) {
+        this.priority = priority;
+        updateTargetBufferSizes();
+      }
+    }
+
+    /** Returns the priority of the player. */
+    public int getPriority() {
+      synchronized (SharedBufferBudget.this) {
+        return priority;
+      }
+    }
+
+    /** Returns the player's current share of the budget in bytes. */
+    public int getTargetBufferBytes() {
+      return targetBufferSize;
+    }
+
+    @Override
+    public void onPrepared() {
+      reset();
+    }
+
+    @Override
+    public void onTracksSelected(
+        Renderer[] renderers, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+      int requestedBufferSize = 0;
+      for (int i = 0; i < renderers.length; i++) {
+        if (trackSelections.get(i) != null) {
+          requestedBufferSize +=
+              DefaultLoadControl.getDefaultBufferSize(renderers[i].getTrackType());
+        }
+      }
+      register(this, requestedBufferSize);
+    }
+
+    @Override
+    public void onStopped() {
+      reset();
+    }
+
+    @Override
+    public void onReleased() {
+      reset();
+    }
+
+    @Override
+    public Allocator getAllocator() {
+      return playerAllocator;
+    }
+
+    @Override
+    public long getBackBufferDurationUs() {
+      return backBufferDurationUs;
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe() {
+      return retainBackBufferFromKeyframe;
+    }
+
+    @Override
+    public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+      boolean targetBufferSizeReached =
+          playerAllocator.getTotalBytesAllocated() >= targetBufferSize;
+      long minBufferUs = SharedBufferBudget.this.minBufferUs;
+      if (playbackSpeed > 1) {
+        // The playback speed is faster than real time, so scale up the minimum required media
+        // duration to keep enough media buffered for a playout duration of minBufferUs.
+        long mediaDurationMinBufferUs =
+            Util.getMediaDurationForPlayoutDuration(minBufferUs, playbackSpeed);
+        minBufferUs = Math.min(mediaDurationMinBufferUs, maxBufferUs);
+      }
+      if (bufferedDurationUs < minBufferUs) {
+        isBuffering = !targetBufferSizeReached;
+      } else if (bufferedDurationUs >= maxBufferUs || targetBufferSizeReached) {
+        isBuffering = false;
+      } // Else don't change the buffering state
+      return isBuffering;
+    }
+
+    @Override
+    public boolean shouldStartPlayback(
+        long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+      bufferedDurationUs =
+          Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+      long minBufferDurationUs =
+          rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+      return minBufferDurationUs <= 0
+          || bufferedDurationUs >= minBufferDurationUs
+          || playerAllocator.getTotalBytesAllocated() >= targetBufferSize;
+    }
+
+    private void reset() {
+      isBuffering = false;
+      unregister(this);
+    }
+  }
+
+  /** An {@link Allocator} that allocates from the shared pool and counts a player's allocations. */
+  private static final class PlayerAllocator implements Allocator {
+
+    private final DefaultAllocator allocator;
+    private final int allocationLength;
+
+    private int allocatedBytes;
+
+    public PlayerAllocator(DefaultAllocator allocator) {
+      this.allocator = allocator;
+      allocationLength = allocator.getIndividualAllocationLength();
+    }
+
+    @Override
+    public synchronized Allocation allocate() {
+      Allocation allocation = allocator.allocate();
+      allocatedBytes += allocationLength;
+      return allocation;
+    }
+
+    @Override
+    public synchronized void release(Allocation allocation) {
+      allocator.release(allocation);
+      allocatedBytes -= allocationLength;
+    }
+
+    @Override
+    public synchronized void release(Allocation[] allocations) {
+      allocator.release(allocations);
+      allocatedBytes -= allocations.length * allocationLength;
+    }
+
+    @Override
+    public void trim() {
+      allocator.trim();
+    }
+
+    @Override
+    public synchronized int getTotalBytesAllocated() {
+      return allocatedBytes;
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+      return allocationLength;
+    }
+  }
+}
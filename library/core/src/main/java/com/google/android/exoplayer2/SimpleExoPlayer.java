@@ -1273,6 +1273,31 @@ public class SimpleExoPlayer extends BasePlayer
     player.setForegroundMode(foregroundMode);
   }
 
+  @Override
+  public void experimental_setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    verifyApplicationThread();
+    player.experimental_setDynamicSchedulingEnabled(dynamicSchedulingEnabled);
+  }
+
+  @Override
+  public void experimental_setPreloadDurationMs(long preloadDurationMs) {
+    verifyApplicationThread();
+    player.experimental_setPreloadDurationMs(preloadDurationMs);
+  }
+
+  @Override
+  public void experimental_setSeekInBufferEnabled(boolean seekInBufferEnabled) {
+    verifyApplicationThread();
+    player.experimental_setSeekInBufferEnabled(seekInBufferEnabled);
+  }
+
+  @Override
+  public void experimental_setLivePlaybackSpeedControl(
+      @Nullable LivePlaybackSpeedControl livePlaybackSpeedControl) {
+    verifyApplicationThread();
+    player.experimental_setLivePlaybackSpeedControl(livePlaybackSpeedControl);
+  }
+
   @Override
   public void stop(boolean reset) {
     verifyApplicationThread();
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2;
 
+import android.os.SystemClock;
 import android.util.Pair;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.source.ads.AdPlaybackState;
@@ -145,6 +146,15 @@ public abstract class Timeline {
      */
     public long windowStartTimeMs;
 
+    /**
+     * The offset between {@link SystemClock#elapsedRealtime()} and the time since the epoch
+     * according to the clock of the media origin server, in milliseconds, or {@link C#TIME_UNSET}
+     * if unknown or not applicable.
+     *
+     * <p>Note that the current Unix time can be retrieved using {@link #getCurrentUnixTimeMs()}.
+     */
+    public long elapsedRealtimeEpochOffsetMs;
+
     /**
      * Whether it's possible to seek within this window.
      */
@@ -197,6 +207,41 @@ public abstract class Timeline {
       uid = SINGLE_WINDOW_UID;
     }
 
+    /**
+     * Sets the data held by this window, with {@link #elapsedRealtimeEpochOffsetMs} set to {@link
+     * C#TIME_UNSET}.
+     */
+    public Window set(
+        Object uid,
+        @Nullable Object tag,
+        @Nullable Object manifest,
+        long presentationStartTimeMs,
+        long windowStartTimeMs,
+        boolean isSeekable,
+        boolean isDynamic,
+        boolean isLive,
+        long defaultPositionUs,
+        long durationUs,
+        int firstPeriodIndex,
+        int lastPeriodIndex,
+        long positionInFirstPeriodUs) {
+      return set(
+          uid,
+          tag,
+          manifest,
+          presentationStartTimeMs,
+          windowStartTimeMs,
+          /* elapsedRealtimeEpochOffsetMs= */ C.TIME_UNSET,
+          isSeekable,
+          isDynamic,
+          isLive,
+          defaultPositionUs,
+          durationUs,
+          firstPeriodIndex,
+          lastPeriodIndex,
+          positionInFirstPeriodUs);
+    }
+
     /** Sets the data held by this window. */
     public Window set(
         Object uid,
@@ -204,6 +249,7 @@ public abstract class Timeline {
         @Nullable Object manifest,
         long presentationStartTimeMs,
         long windowStartTimeMs,
+        long elapsedRealtimeEpochOffsetMs,
         boolean isSeekable,
         boolean isDynamic,
         boolean isLive,
@@ -217,6 +263,7 @@ public abstract class Timeline {
       this.manifest = manifest;
       this.presentationStartTimeMs = presentationStartTimeMs;
       this.windowStartTimeMs = windowStartTimeMs;
+      this.elapsedRealtimeEpochOffsetMs = elapsedRealtimeEpochOffsetMs;
       this.isSeekable = isSeekable;
       this.isDynamic = isDynamic;
       this.isLive = isLive;
@@ -278,6 +325,17 @@ public abstract class Timeline {
       return positionInFirstPeriodUs;
     }
 
+    /**
+     * Returns the current time in milliseconds since the epoch, according to the clock of the media
+     * origin server if {@link #elapsedRealtimeEpochOffsetMs} is known, or the device clock
+     * otherwise.
+     */
+    public long getCurrentUnixTimeMs() {
+      return elapsedRealtimeEpochOffsetMs == C.TIME_UNSET
+          ? System.currentTimeMillis()
+          : SystemClock.elapsedRealtime() + elapsedRealtimeEpochOffsetMs;
+    }
+
   }
 
   /**
@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import android.os.Process;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link AudioProcessor} that runs a chain of other audio processors on a dedicated audio
+ * processing thread.
+ *
+ * <p>Input is copied into a preallocated single-producer, single-consumer ring buffer, processed
+ * by the wrapped audio processors on the processing thread, and copied back to the caller through
+ * a second ring buffer. Queueing input and reading output never blocks on the wrapped audio
+ * processors, so the cost of expensive effects (for example, equalizers or vocal removal) is moved
+ * off the playback thread. The audio track and its position tracking remain on the playback
+ * thread, so playback position is reported exactly as without this processor. Data that is being
+ * processed adds to the latency of the audio sink in the same way as data buffered by other audio
+ * processors.
+ *
+ * <p>Pass an instance wrapping the effects to {@link DefaultAudioSink} in place of the effects
+ * themselves. The wrapped audio processors must not be accessed by the application while this
+ * processor is in use, except through thread-safe setters of their own.
+ *
+ * <p>This audio processor is experimental, and may be changed or removed in a future release.
+ */
+public final class AsyncAudioProcessor implements AudioProcessor {
+
+  /** The default capacity of each of the input and output ring buffers, in bytes. */
+  public static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+  /** The maximum number of bytes passed to the wrapped audio processors at a time. */
+  private static final int MAX_CHUNK_SIZE = 8 * 1024;
+
+  private final AudioProcessor[] audioProcessors;
+  private final PcmRingBuffer inputRingBuffer;
+  private final PcmRingBuffer outputRingBuffer;
+  private final ByteBuffer outputBuffer;
+  private final Object lock;
+
+  // Accessed on the processing thread, and on the calling thread while holding the lock.
+
+  @GuardedBy("lock")
+  private AudioProcessor[] activeAudioProcessors;
+
+  @GuardedBy("lock")
+  private ByteBuffer[] processorOutputBuffers;
+
+  @GuardedBy("lock")
+  private final ByteBuffer chunkBuffer;
+
+  @GuardedBy("lock")
+  private int drainingAudioProcessorIndex;
+
+  @GuardedBy("lock")
+  private boolean madeProgress;
+
+  // Accessed on the calling thread only.
+
+  private AudioFormat pendingInputAudioFormat;
+  private AudioFormat pendingOutputAudioFormat;
+  @Nullable private Thread processingThread;
+
+  // Accessed on both threads.
+
+  private volatile boolean inputEnded;
+  private volatile boolean outputEnded;
+  private volatile boolean released;
+  @Nullable private volatile RuntimeException processingException;
+
+  /**
+   * Creates an audio processor that runs the given audio processors in order on a dedicated
+   * thread, using ring buffers of {@link #DEFAULT_BUFFER_SIZE} bytes.
+   *
+   * @param audioProcessors The audio processors to run on the processing thread.
+   */
+  public AsyncAudioProcessor(AudioProcessor... audioProcessors) {
+    this(DEFAULT_BUFFER_SIZE, audioProcessors);
+  }
+
+  /**
+   * Creates an audio processor that runs the given audio processors in order on a dedicated
+   * thread.
+   *
+   * @param bufferSize The capacity of each of the input and output ring buffers, in bytes. Larger
+   *     buffers absorb more variation in processing time at the cost of latency.
+   * @param audioProcessors The audio processors to run on the processing thread.
+   */
+  public AsyncAudioProcessor(int bufferSize, AudioProcessor... audioProcessors) {
+    this.audioProcessors = audioProcessors.clone();
+    inputRingBuffer = new PcmRingBuffer(bufferSize);
+    outputRingBuffer = new PcmRingBuffer(bufferSize);
+    outputBuffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+    chunkBuffer =
+        ByteBuffer.allocateDirect(Math.min(bufferSize, MAX_CHUNK_SIZE))
+            .order(ByteOrder.nativeOrder());
+    chunkBuffer.limit(0);
+    lock = new Object();
+    activeAudioProcessors = new AudioProcessor[0];
+    processorOutputBuffers = new ByteBuffer[0];
+    drainingAudioProcessorIndex = C.INDEX_UNSET;
+    pendingInputAudioFormat = AudioFormat.NOT_SET;
+    pendingOutputAudioFormat = AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public AudioFormat configure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    AudioFormat outputAudioFormat = inputAudioFormat;
+    boolean anyActive = false;
+    synchronized (lock) {
+      for (AudioProcessor audioProcessor : audioProcessors) {
+        AudioFormat nextFormat = audioProcessor.configure(outputAudioFormat);
+        if (audioProcessor.isActive()) {
+          outputAudioFormat = nextFormat;
+          anyActive = true;
+        }
+      }
+    }
+    pendingInputAudioFormat = inputAudioFormat;
+    pendingOutputAudioFormat = anyActive ? outputAudioFormat : AudioFormat.NOT_SET;
+    return pendingOutputAudioFormat;
+  }
+
+  @Override
+  public boolean isActive() {
+    return pendingOutputAudioFormat != AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer buffer) {
+    maybeThrowProcessingException();
+    if (inputRingBuffer.write(buffer) > 0) {
+      wakeProcessingThread();
+    }
+  }
+
+  @Override
+  public void queueEndOfStream() {
+    inputEnded = true;
+    wakeProcessingThread();
+  }
+
+  @Override
+  public ByteBuffer getOutput() {
+    maybeThrowProcessingException();
+    outputBuffer.clear();
+    if (outputRingBuffer.read(outputBuffer) == 0) {
+      return EMPTY_BUFFER;
+    }
+    // Space was freed in the output ring buffer, so the processing thread may be able to continue.
+    wakeProcessingThread();
+    outputBuffer.flip();
+    return outputBuffer;
+  }
+
+  @Override
+  public boolean isEnded() {
+    return outputEnded && outputRingBuffer.isEmpty();
+  }
+
+  @Override
+  public void flush() {
+    synchronized (lock) {
+      ArrayList<AudioProcessor> activeAudioProcessorList = new ArrayList<>();
+      for (AudioProcessor audioProcessor : audioProcessors) {
+        if (audioProcessor.isActive()) {
+          activeAudioProcessorList.add(audioProcessor);
+        }
+        audioProcessor.flush();
+      }
+      activeAudioProcessors = activeAudioProcessorList.toArray(new AudioProcessor[0]);
+      processorOutputBuffers = new ByteBuffer[activeAudioProcessors.length];
+      for (int i = 0; i < processorOutputBuffers.length; i++) {
+        processorOutputBuffers[i] = EMPTY_BUFFER;
+      }
+      chunkBuffer.limit(0);
+      drainingAudioProcessorIndex = C.INDEX_UNSET;
+      if (isActive()) {
+        inputRingBuffer.reset(pendingInputAudioFormat.bytesPerFrame);
+        outputRingBuffer.reset(pendingOutputAudioFormat.bytesPerFrame);
+      }
+      inputEnded = false;
+      outputEnded = false;
+    }
+    if (isActive() && processingThread == null) {
+      processingThread = new Thread(this::runProcessingLoop, "ExoPlayer:AudioProcessing");
+      processingThread.start();
+    }
+  }
+
+  @Override
+  public void reset() {
+    stopProcessingThread();
+    synchronized (lock) {
+      for (AudioProcessor audioProcessor : audioProcessors) {
+        audioProcessor.reset();
+      }
+      activeAudioProcessors = new AudioProcessor[0];
+      processorOutputBuffers = new ByteBuffer[0];
+      chunkBuffer.limit(0);
+      drainingAudioProcessorIndex = C.INDEX_UNSET;
+    }
+    pendingInputAudioFormat = AudioFormat.NOT_SET;
+    pendingOutputAudioFormat = AudioFormat.NOT_SET;
+    inputEnded = false;
+    outputEnded = false;
+    processingException = null;
+  }
+
+  // Calling thread methods.
+
+  private void wakeProcessingThread() {
+    if (processingThread != null) {
+      LockSupport.unpark(processingThread);
+    }
+  }
+
+  private void maybeThrowProcessingException() {
+    RuntimeException exception = processingException;
+    if (exception != null) {
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  private void stopProcessingThread() {
+    Thread thread = processingThread;
+    if (thread == null) {
+      return;
+    }
+    released = true;
+    LockSupport.unpark(thread);
+    boolean wasInterrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        wasInterrupted = true;
+      }
+    }
+    if (wasInterrupted) {
+      Thread.currentThread().interrupt();
+    }
+    processingThread = null;
+    released = false;
+  }
+
+  // Processing thread methods.
+
+  private void runProcessingLoop() {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+    try {
+      while (!released) {
+        boolean madeProgress;
+        synchronized (lock) {
+          madeProgress = !released && processAvailableData();
+        }
+        if (!madeProgress) {
+          // The calling thread unparks this thread after queueing input, freeing output space or
+          // stopping, so a wake-up can't be missed.
+          LockSupport.park(this);
+        }
+      }
+    } catch (RuntimeException e) {
+      processingException = e;
+    }
+  }
+
+  /** Processes data until input runs out or output space is full. Returns whether it progressed. */
+  @GuardedBy("lock")
+  private boolean processAvailableData() {
+    if (activeAudioProcessors.length == 0 || outputEnded) {
+      return false;
+    }
+    // Read the end of stream flag first, so that all input queued before it is visible.
+    boolean inputEnded = this.inputEnded;
+    madeProgress = false;
+    if (!chunkBuffer.hasRemaining()) {
+      chunkBuffer.clear();
+      if (inputRingBuffer.read(chunkBuffer) > 0) {
+        madeProgress = true;
+      }
+      chunkBuffer.flip();
+    }
+    int chunkBytesRemaining = chunkBuffer.remaining();
+    processBuffers();
+    if (chunkBuffer.remaining() != chunkBytesRemaining) {
+      madeProgress = true;
+    }
+    if (inputEnded && inputRingBuffer.isEmpty() && !chunkBuffer.hasRemaining()) {
+      drainToEndOfStream();
+    }
+    return madeProgress;
+  }
+
+  /**
+   * Passes data through the active audio processors into the output ring buffer, in the same way
+   * as {@link DefaultAudioSink} passes data through its audio processors to the audio track.
+   */
+  @GuardedBy("lock")
+  private void processBuffers() {
+    int count = activeAudioProcessors.length;
+    int index = count;
+    while (index >= 0) {
+      ByteBuffer input = index > 0 ? processorOutputBuffers[index - 1] : chunkBuffer;
+      if (index == count) {
+        if (outputRingBuffer.write(input) > 0) {
+          madeProgress = true;
+        }
+      } else {
+        AudioProcessor audioProcessor = activeAudioProcessors[index];
+        audioProcessor.queueInput(input);
+        ByteBuffer output = audioProcessor.getOutput();
+        processorOutputBuffers[index] = output;
+        if (output.hasRemaining()) {
+          // Handle the output as input to the next audio processor or the output ring buffer.
+          index++;
+          continue;
+        }
+      }
+      if (input.hasRemaining()) {
+        // The input wasn't consumed and no output was produced, so give up for now.
+        return;
+      }
+      // Get more input from upstream.
+      index--;
+    }
+  }
+
+  @GuardedBy("lock")
+  private void drainToEndOfStream() {
+    boolean audioProcessorNeedsEndOfStream = false;
+    if (drainingAudioProcessorIndex == C.INDEX_UNSET) {
+      drainingAudioProcessorIndex = 0;
+      audioProcessorNeedsEndOfStream = true;
+      madeProgress = true;
+    }
+    while (drainingAudioProcessorIndex < activeAudioProcessors.length) {
+      AudioProcessor audioProcessor = activeAudioProcessors[drainingAudioProcessorIndex];
+      if (audioProcessorNeedsEndOfStream) {
+        audioProcessor.queueEndOfStream();
+      }
+      processBuffers();
+      if (!audioProcessor.isEnded()) {
+        return;
+      }
+      audioProcessorNeedsEndOfStream = true;
+      drainingAudioProcessorIndex++;
+      madeProgress = true;
+    }
+    processBuffers();
+    if (processorOutputBuffers[processorOutputBuffers.length - 1].hasRemaining()) {
+      return;
+    }
+    outputEnded = true;
+    madeProgress = true;
+  }
+}
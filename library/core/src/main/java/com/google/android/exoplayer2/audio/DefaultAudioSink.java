@@ -122,6 +122,21 @@ public final class DefaultAudioSink implements AudioSink {
      * audioProcessors} applied before silence skipping and playback parameters.
      */
     public DefaultAudioProcessorChain(AudioProcessor... audioProcessors) {
+      this(/* useFloatSpeedEngine= */ false, audioProcessors);
+    }
+
+    /**
+     * Creates a new default chain of audio processors, with the user-defined {@code
+     * audioProcessors} applied before silence skipping and playback parameters.
+     *
+     * @param useFloatSpeedEngine Whether playback parameters should be applied using the float
+     *     engine of {@link SonicAudioProcessor}. The chain always receives 16-bit integer PCM, so
+     *     the float input support of the engine isn't used. The float engine is experimental, and
+     *     may be changed or removed in a future release.
+     * @param audioProcessors The user-defined audio processors.
+     */
+    public DefaultAudioProcessorChain(
+        boolean useFloatSpeedEngine, AudioProcessor... audioProcessors) {
       // The passed-in type may be more specialized than AudioProcessor[], so allocate a new array
       // rather than using Arrays.copyOf.
       this.audioProcessors = new AudioProcessor[audioProcessors.length + 2];
@@ -132,7 +147,7 @@ public final class DefaultAudioSink implements AudioSink {
           /* destPos= */ 0,
           /* length= */ audioProcessors.length);
       silenceSkippingAudioProcessor = new SilenceSkippingAudioProcessor();
-      sonicAudioProcessor = new SonicAudioProcessor();
+      sonicAudioProcessor = new SonicAudioProcessor(useFloatSpeedEngine);
       this.audioProcessors[audioProcessors.length] = silenceSkippingAudioProcessor;
       this.audioProcessors[audioProcessors.length + 1] = sonicAudioProcessor;
     }
@@ -238,8 +253,9 @@ public final class DefaultAudioSink implements AudioSink {
   @Nullable private final AudioCapabilities audioCapabilities;
   private final AudioProcessorChain audioProcessorChain;
   private final boolean enableConvertHighResIntPcmToFloat;
-  private final ChannelMappingAudioProcessor channelMappingAudioProcessor;
-  private final TrimmingAudioProcessor trimmingAudioProcessor;
+  @Nullable private final ChannelMappingAudioProcessor channelMappingAudioProcessor;
+  @Nullable private final TrimmingAudioProcessor trimmingAudioProcessor;
+  @Nullable private final FusedPcmAudioProcessor fusedPcmAudioProcessor;
   private final AudioProcessor[] toIntPcmAvailableAudioProcessors;
   private final AudioProcessor[] toFloatPcmAvailableAudioProcessors;
   private final ConditionVariable releasingConditionVariable;
@@ -340,19 +356,56 @@ public final class DefaultAudioSink implements AudioSink {
       @Nullable AudioCapabilities audioCapabilities,
       AudioProcessorChain audioProcessorChain,
       boolean enableConvertHighResIntPcmToFloat) {
+    this(
+        audioCapabilities,
+        audioProcessorChain,
+        enableConvertHighResIntPcmToFloat,
+        /* enableFusedPcmProcessing= */ false);
+  }
+
+  /**
+   * Creates a new default audio sink, optionally using float output for high resolution PCM and
+   * optionally fusing integer PCM conversion, channel mapping and trimming into a single pass.
+   *
+   * @param audioCapabilities The audio capabilities for playback on this device. May be null if the
+   *     default capabilities (no encoded audio passthrough support) should be assumed.
+   * @param audioProcessorChain An {@link AudioProcessorChain} which is used to apply playback
+   *     parameters adjustments. The instance passed in must not be reused in other sinks.
+   * @param enableConvertHighResIntPcmToFloat Whether to enable conversion of high resolution
+   *     integer PCM to 32-bit float for output, if possible. Functionality that uses 16-bit integer
+   *     audio processing (for example, speed and pitch adjustment) will not be available when float
+   *     output is in use.
+   * @param enableFusedPcmProcessing Whether to convert integer PCM to 16-bit, apply the channel
+   *     mapping and trim audio in a single pass over each input buffer, rather than in three
+   *     separate audio processors. The output is the same in both cases, but the fused pass avoids
+   *     writing intermediate buffers, which is noticeably cheaper for multichannel audio.
+   */
+  public DefaultAudioSink(
+      @Nullable AudioCapabilities audioCapabilities,
+      AudioProcessorChain audioProcessorChain,
+      boolean enableConvertHighResIntPcmToFloat,
+      boolean enableFusedPcmProcessing) {
     this.audioCapabilities = audioCapabilities;
     this.audioProcessorChain = Assertions.checkNotNull(audioProcessorChain);
     this.enableConvertHighResIntPcmToFloat = enableConvertHighResIntPcmToFloat;
     releasingConditionVariable = new ConditionVariable(true);
     audioTrackPositionTracker = new AudioTrackPositionTracker(new PositionTrackerListener());
-    channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
-    trimmingAudioProcessor = new TrimmingAudioProcessor();
     ArrayList<AudioProcessor> toIntPcmAudioProcessors = new ArrayList<>();
-    Collections.addAll(
-        toIntPcmAudioProcessors,
-        new ResamplingAudioProcessor(),
-        channelMappingAudioProcessor,
-        trimmingAudioProcessor);
+    if (enableFusedPcmProcessing) {
+      channelMappingAudioProcessor = null;
+      trimmingAudioProcessor = null;
+      fusedPcmAudioProcessor = new FusedPcmAudioProcessor();
+      toIntPcmAudioProcessors.add(fusedPcmAudioProcessor);
+    } else {
+      channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
+      trimmingAudioProcessor = new TrimmingAudioProcessor();
+      fusedPcmAudioProcessor = null;
+      Collections.addAll(
+          toIntPcmAudioProcessors,
+          new ResamplingAudioProcessor(),
+          channelMappingAudioProcessor,
+          trimmingAudioProcessor);
+    }
     Collections.addAll(toIntPcmAudioProcessors, audioProcessorChain.getAudioProcessors());
     toIntPcmAvailableAudioProcessors = toIntPcmAudioProcessors.toArray(new AudioProcessor[0]);
     toFloatPcmAvailableAudioProcessors = new AudioProcessor[] {new FloatResamplingAudioProcessor()};
@@ -434,8 +487,14 @@ public final class DefaultAudioSink implements AudioSink {
             ? toFloatPcmAvailableAudioProcessors
             : toIntPcmAvailableAudioProcessors;
     if (processingEnabled) {
-      trimmingAudioProcessor.setTrimFrameCount(trimStartFrames, trimEndFrames);
-      channelMappingAudioProcessor.setChannelMap(outputChannels);
+      if (fusedPcmAudioProcessor != null) {
+        fusedPcmAudioProcessor.setTrimFrameCount(trimStartFrames, trimEndFrames);
+        fusedPcmAudioProcessor.setChannelMap(outputChannels);
+      } else {
+        Assertions.checkNotNull(trimmingAudioProcessor)
+            .setTrimFrameCount(trimStartFrames, trimEndFrames);
+        Assertions.checkNotNull(channelMappingAudioProcessor).setChannelMap(outputChannels);
+      }
       AudioProcessor.AudioFormat inputAudioFormat =
           new AudioProcessor.AudioFormat(sampleRate, channelCount, encoding);
       AudioProcessor.AudioFormat outputAudioFormat = inputAudioFormat;
@@ -646,7 +705,7 @@ public final class DefaultAudioSink implements AudioSink {
         long expectedPresentationTimeUs =
             startMediaTimeUs
                 + configuration.inputFramesToDurationUs(
-                    getSubmittedFrames() - trimmingAudioProcessor.getTrimmedFrameCount());
+                    getSubmittedFrames() - getTrimmedFrameCount());
         if (startMediaTimeState == START_IN_SYNC
             && Math.abs(expectedPresentationTimeUs - presentationTimeUs) > 200000) {
           Log.e(TAG, "Discontinuity detected [expected " + expectedPresentationTimeUs + ", got "
@@ -963,7 +1022,11 @@ public final class DefaultAudioSink implements AudioSink {
       playbackParametersCheckpoints.clear();
       playbackParametersOffsetUs = 0;
       playbackParametersPositionUs = 0;
-      trimmingAudioProcessor.resetTrimmedFrameCount();
+      if (fusedPcmAudioProcessor != null) {
+        fusedPcmAudioProcessor.resetTrimmedFrameCount();
+      } else {
+        Assertions.checkNotNull(trimmingAudioProcessor).resetTrimmedFrameCount();
+      }
       flushAudioProcessors();
       inputBuffer = null;
       outputBuffer = null;
@@ -1090,6 +1153,12 @@ public final class DefaultAudioSink implements AudioSink {
         : submittedEncodedFrames;
   }
 
+  private long getTrimmedFrameCount() {
+    return fusedPcmAudioProcessor != null
+        ? fusedPcmAudioProcessor.getTrimmedFrameCount()
+        : Assertions.checkNotNull(trimmingAudioProcessor).getTrimmedFrameCount();
+  }
+
   private long getWrittenFrames() {
     return configuration.isInputPcm
         ? (writtenPcmBytes / configuration.outputPcmFrameSize)
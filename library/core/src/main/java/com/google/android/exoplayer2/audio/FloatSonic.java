@@ -0,0 +1,550 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import androidx.annotation.Nullable;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Audio stream processor for time/pitch stretching, using the same pitch synchronous overlap-add
+ * algorithm as {@link Sonic} but operating on float samples.
+ *
+ * <p>Unlike {@link Sonic}, all buffers are allocated up front. Input is only consumed while there
+ * is space to buffer it, so callers must be prepared for {@link #queueInput(ShortBuffer)} and
+ * {@link #queueInput(FloatBuffer)} to leave data in the input buffer. The pitch period is found
+ * with a coarse-to-fine search, which evaluates far fewer candidate periods at full resolution.
+ */
+/* package */ final class FloatSonic {
+
+  private static final int MINIMUM_PITCH = 65;
+  private static final int MAXIMUM_PITCH = 400;
+  private static final int AMDF_FREQUENCY = 4000;
+  /** The capacity of each buffer, as a multiple of the maximum frame count needed per step. */
+  private static final int BUFFER_CAPACITY_MULTIPLIER = 4;
+
+  private final int channelCount;
+  private final float speed;
+  private final float rate;
+  private final int minPeriod;
+  private final int maxPeriod;
+  private final int maxRequiredFrameCount;
+  private final int skip;
+  private final int midLevelStep;
+  private final int maxRateOutputFramesPerInputFrame;
+  private final float[] downSampleBuffer;
+  private final float[] monoBuffer;
+  private final short[] shortBuffer;
+  private final FrameBuffer inputBuffer;
+  @Nullable private final FrameBuffer pitchBuffer;
+  private final FrameBuffer outputBuffer;
+
+  private int remainingInputToCopyFrameCount;
+  private double ratePosition;
+  private int prevPeriod;
+  private float prevMinDiff;
+  private float minDiff;
+  private float maxDiff;
+  private boolean inputEnded;
+  private int silenceFramesToAdd;
+  private int remainingEndOfStreamOutputFrameCount;
+
+  /**
+   * Creates a new float Sonic audio stream processor.
+   *
+   * @param inputSampleRateHz The sample rate of input audio, in hertz.
+   * @param channelCount The number of channels in the input audio.
+   * @param speed The speedup factor for output audio.
+   * @param pitch The pitch factor for output audio.
+   * @param outputSampleRateHz The sample rate for output audio, in hertz.
+   */
+  public FloatSonic(
+      int inputSampleRateHz, int channelCount, float speed, float pitch, int outputSampleRateHz) {
+    this.channelCount = channelCount;
+    this.speed = speed / pitch;
+    rate = (float) inputSampleRateHz / outputSampleRateHz * pitch;
+    minPeriod = inputSampleRateHz / MAXIMUM_PITCH;
+    maxPeriod = inputSampleRateHz / MINIMUM_PITCH;
+    maxRequiredFrameCount = 2 * maxPeriod;
+    skip = inputSampleRateHz > AMDF_FREQUENCY ? inputSampleRateHz / AMDF_FREQUENCY : 1;
+    midLevelStep = Math.max(1, skip / 4);
+    maxRateOutputFramesPerInputFrame = (int) Math.ceil(1 / rate) + 1;
+    downSampleBuffer = new float[maxRequiredFrameCount / skip];
+    monoBuffer = new float[maxRequiredFrameCount];
+    int capacityFrames = BUFFER_CAPACITY_MULTIPLIER * maxRequiredFrameCount;
+    inputBuffer = new FrameBuffer(capacityFrames, channelCount);
+    if (rate != 1f) {
+      pitchBuffer = new FrameBuffer(capacityFrames, channelCount);
+      outputBuffer =
+          new FrameBuffer(capacityFrames + maxRateOutputFramesPerInputFrame, channelCount);
+    } else {
+      pitchBuffer = null;
+      outputBuffer = new FrameBuffer(capacityFrames, channelCount);
+    }
+    shortBuffer = new short[outputBuffer.samples.length];
+  }
+
+  /**
+   * Queues as much remaining 16-bit data from {@code buffer} as can be buffered, and advances its
+   * position by the number of samples consumed.
+   *
+   * @param buffer A {@link ShortBuffer} containing input data between its position and limit.
+   */
+  public void queueInput(ShortBuffer buffer) {
+    process();
+    int frameCount = Math.min(buffer.remaining() / channelCount, inputBuffer.getFreeFrameCount());
+    float[] samples = inputBuffer.prepareToAppend(frameCount);
+    int position = inputBuffer.getEndPosition();
+    int sampleCount = frameCount * channelCount;
+    buffer.get(shortBuffer, 0, sampleCount);
+    for (int i = 0; i < sampleCount; i++) {
+      samples[position + i] = shortBuffer[i] / 32768f;
+    }
+    inputBuffer.frameCount += frameCount;
+    process();
+  }
+
+  /**
+   * Queues as much remaining float data from {@code buffer} as can be buffered, and advances its
+   * position by the number of samples consumed.
+   *
+   * @param buffer A {@link FloatBuffer} containing input data between its position and limit.
+   */
+  public void queueInput(FloatBuffer buffer) {
+    process();
+    int frameCount = Math.min(buffer.remaining() / channelCount, inputBuffer.getFreeFrameCount());
+    float[] samples = inputBuffer.prepareToAppend(frameCount);
+    buffer.get(samples, inputBuffer.getEndPosition(), frameCount * channelCount);
+    inputBuffer.frameCount += frameCount;
+    process();
+  }
+
+  /**
+   * Gets available output as 16-bit samples, writing to {@code buffer} from its position. The
+   * buffer's position will be advanced by the number of samples written.
+   *
+   * @param buffer A {@link ShortBuffer} into which output will be written.
+   */
+  public void getOutput(ShortBuffer buffer) {
+    int frameCount = Math.min(buffer.remaining() / channelCount, outputBuffer.frameCount);
+    float[] samples = outputBuffer.samples;
+    int position = outputBuffer.getStartPosition();
+    int sampleCount = frameCount * channelCount;
+    for (int i = 0; i < sampleCount; i++) {
+      float sample = samples[position + i] * 32768f;
+      shortBuffer[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+    }
+    buffer.put(shortBuffer, 0, sampleCount);
+    onOutputRead(frameCount);
+  }
+
+  /**
+   * Gets available output as float samples, writing to {@code buffer} from its position. The
+   * buffer's position will be advanced by the number of samples written.
+   *
+   * @param buffer A {@link FloatBuffer} into which output will be written.
+   */
+  public void getOutput(FloatBuffer buffer) {
+    int frameCount = Math.min(buffer.remaining() / channelCount, outputBuffer.frameCount);
+    buffer.put(outputBuffer.samples, outputBuffer.getStartPosition(), frameCount * channelCount);
+    onOutputRead(frameCount);
+  }
+
+  /**
+   * Forces generating output using whatever data has been queued already. No extra delay will be
+   * added to the output, but flushing in the middle of words could introduce distortion.
+   */
+  public void queueEndOfStream() {
+    int pitchFrameCount = pitchBuffer != null ? pitchBuffer.frameCount : 0;
+    remainingEndOfStreamOutputFrameCount =
+        outputBuffer.frameCount
+            + (int) ((inputBuffer.frameCount / speed + pitchFrameCount) / rate + 0.5f);
+    // Add enough silence to flush both input and pitch buffers.
+    silenceFramesToAdd = 2 * maxRequiredFrameCount;
+    inputEnded = true;
+    process();
+  }
+
+  /** Clears state in preparation for receiving a new stream of input buffers. */
+  public void flush() {
+    inputBuffer.clear();
+    if (pitchBuffer != null) {
+      pitchBuffer.clear();
+    }
+    outputBuffer.clear();
+    remainingInputToCopyFrameCount = 0;
+    ratePosition = 0;
+    prevPeriod = 0;
+    prevMinDiff = 0;
+    minDiff = 0;
+    maxDiff = 0;
+    inputEnded = false;
+    silenceFramesToAdd = 0;
+    remainingEndOfStreamOutputFrameCount = 0;
+  }
+
+  /** Returns the number of frames of output that can be read with {@code getOutput}. */
+  public int getOutputFrameCount() {
+    return outputBuffer.frameCount;
+  }
+
+  // Internal methods.
+
+  private void onOutputRead(int frameCount) {
+    outputBuffer.remove(frameCount);
+    if (inputEnded) {
+      remainingEndOfStreamOutputFrameCount -= frameCount;
+    }
+    process();
+  }
+
+  private void process() {
+    FrameBuffer stretchOutputBuffer = pitchBuffer != null ? pitchBuffer : outputBuffer;
+    boolean madeProgress;
+    do {
+      madeProgress = false;
+      if (silenceFramesToAdd > 0) {
+        int frameCount = Math.min(silenceFramesToAdd, inputBuffer.getFreeFrameCount());
+        float[] samples = inputBuffer.prepareToAppend(frameCount);
+        int position = inputBuffer.getEndPosition();
+        Arrays.fill(samples, position, position + frameCount * channelCount, 0f);
+        inputBuffer.frameCount += frameCount;
+        silenceFramesToAdd -= frameCount;
+        madeProgress = frameCount > 0;
+      }
+      if (isChangingSpeed()) {
+        madeProgress |= changeSpeed(stretchOutputBuffer);
+      } else {
+        int frameCount =
+            Math.min(inputBuffer.frameCount, stretchOutputBuffer.getFreeFrameCount());
+        stretchOutputBuffer.append(inputBuffer, frameCount);
+        inputBuffer.remove(frameCount);
+        madeProgress |= frameCount > 0;
+      }
+      if (pitchBuffer != null) {
+        madeProgress |= adjustRate(pitchBuffer);
+      }
+    } while (madeProgress);
+
+    if (inputEnded) {
+      // Once all silence has been added, any input left over is silence that can't be processed.
+      boolean inputStarved =
+          silenceFramesToAdd == 0
+              && inputBuffer.frameCount < (isChangingSpeed() ? maxRequiredFrameCount : 1)
+              && (pitchBuffer == null || pitchBuffer.frameCount <= 1);
+      if (inputStarved || outputBuffer.frameCount >= remainingEndOfStreamOutputFrameCount) {
+        // Throw away any extra frames we generated due to the silence we added, and empty the input
+        // and pitch buffers.
+        outputBuffer.frameCount =
+            Math.max(0, Math.min(outputBuffer.frameCount, remainingEndOfStreamOutputFrameCount));
+        inputBuffer.clear();
+        if (pitchBuffer != null) {
+          pitchBuffer.clear();
+        }
+        silenceFramesToAdd = 0;
+        remainingInputToCopyFrameCount = 0;
+      }
+    }
+  }
+
+  private boolean isChangingSpeed() {
+    return speed > 1.00001f || speed < 0.99999f;
+  }
+
+  private boolean changeSpeed(FrameBuffer destination) {
+    boolean madeProgress = false;
+    while (inputBuffer.frameCount >= maxRequiredFrameCount
+        && destination.getFreeFrameCount() >= maxRequiredFrameCount) {
+      int consumedFrameCount;
+      if (remainingInputToCopyFrameCount > 0) {
+        consumedFrameCount = Math.min(maxRequiredFrameCount, remainingInputToCopyFrameCount);
+        destination.append(inputBuffer, consumedFrameCount);
+        remainingInputToCopyFrameCount -= consumedFrameCount;
+      } else {
+        int period = findPitchPeriod();
+        if (speed > 1f) {
+          consumedFrameCount = period + skipPitchPeriod(destination, period);
+        } else {
+          consumedFrameCount = insertPitchPeriod(destination, period);
+        }
+      }
+      inputBuffer.remove(consumedFrameCount);
+      madeProgress = true;
+    }
+    return madeProgress;
+  }
+
+  private int skipPitchPeriod(FrameBuffer destination, int period) {
+    // Skip over a pitch period, and copy period/speed samples to the output.
+    int newFrameCount;
+    if (speed >= 2f) {
+      newFrameCount = (int) (period / (speed - 1f));
+    } else {
+      newFrameCount = period;
+      remainingInputToCopyFrameCount = (int) (period * (2f - speed) / (speed - 1f));
+    }
+    float[] out = destination.prepareToAppend(newFrameCount);
+    int position = inputBuffer.getStartPosition();
+    overlapAdd(
+        newFrameCount,
+        out,
+        destination.getEndPosition(),
+        inputBuffer.samples,
+        position,
+        inputBuffer.samples,
+        position + period * channelCount);
+    destination.frameCount += newFrameCount;
+    return newFrameCount;
+  }
+
+  private int insertPitchPeriod(FrameBuffer destination, int period) {
+    // Insert a pitch period, and determine how much input to copy directly.
+    int newFrameCount;
+    if (speed < 0.5f) {
+      newFrameCount = (int) (period * speed / (1f - speed));
+    } else {
+      newFrameCount = period;
+      remainingInputToCopyFrameCount = (int) (period * (2f * speed - 1f) / (1f - speed));
+    }
+    destination.append(inputBuffer, period);
+    float[] out = destination.prepareToAppend(newFrameCount);
+    int position = inputBuffer.getStartPosition();
+    overlapAdd(
+        newFrameCount,
+        out,
+        destination.getEndPosition(),
+        inputBuffer.samples,
+        position + period * channelCount,
+        inputBuffer.samples,
+        position);
+    destination.frameCount += newFrameCount;
+    return newFrameCount;
+  }
+
+  private boolean adjustRate(FrameBuffer pitchBuffer) {
+    // Leave at least one pitch frame in the buffer, so there is always a frame to interpolate to.
+    int frameCount = 0;
+    float[] in = pitchBuffer.samples;
+    int inPosition = pitchBuffer.getStartPosition();
+    while (frameCount < pitchBuffer.frameCount - 1
+        && outputBuffer.getFreeFrameCount() >= maxRateOutputFramesPerInputFrame) {
+      float[] out = outputBuffer.prepareToAppend(maxRateOutputFramesPerInputFrame);
+      int outPosition = outputBuffer.getEndPosition();
+      while (ratePosition < 1) {
+        float rightWeight = (float) ratePosition;
+        for (int i = 0; i < channelCount; i++) {
+          float left = in[inPosition + i];
+          float right = in[inPosition + channelCount + i];
+          out[outPosition++] = left + (right - left) * rightWeight;
+        }
+        outputBuffer.frameCount++;
+        ratePosition += rate;
+      }
+      ratePosition -= 1;
+      inPosition += channelCount;
+      frameCount++;
+    }
+    pitchBuffer.remove(frameCount);
+    return frameCount > 0;
+  }
+
+  private int findPitchPeriod() {
+    // Find the pitch period using AMDF, searching coarse to fine. First search the whole range on a
+    // mono mix down sampled to around 4 kHz, then search around the best period at full resolution,
+    // skipping every other sample and candidate period, and finally check the candidates next to
+    // the best period found so far without skipping.
+    int position = inputBuffer.getStartPosition();
+    float[] samples = inputBuffer.samples;
+    int frameCount = maxRequiredFrameCount / skip;
+    int samplesPerValue = channelCount * skip;
+    for (int i = 0; i < frameCount; i++) {
+      float value = 0;
+      for (int j = 0; j < samplesPerValue; j++) {
+        value += samples[position++];
+      }
+      downSampleBuffer[i] = value / samplesPerValue;
+    }
+    int period =
+        findPitchPeriodInRange(
+            downSampleBuffer, minPeriod / skip, maxPeriod / skip, /* step= */ 1);
+    // The range of differences in the coarse search is used to decide whether to keep the previous
+    // period, as it covers all candidate periods.
+    float minDiff = this.minDiff;
+    float maxDiff = this.maxDiff;
+
+    if (skip != 1) {
+      position = inputBuffer.getStartPosition();
+      for (int i = 0; i < maxRequiredFrameCount; i++) {
+        float value = 0;
+        for (int j = 0; j < channelCount; j++) {
+          value += samples[position++];
+        }
+        monoBuffer[i] = value / channelCount;
+      }
+      period *= skip;
+      int midLevelRange = 2 * skip;
+      period =
+          findPitchPeriodInRange(
+              monoBuffer,
+              Math.max(minPeriod, period - midLevelRange),
+              Math.min(maxPeriod, period + midLevelRange),
+              midLevelStep);
+      period =
+          findPitchPeriodInRange(
+              monoBuffer,
+              Math.max(minPeriod, period - midLevelStep + 1),
+              Math.min(maxPeriod, period + midLevelStep - 1),
+              /* step= */ 1);
+    }
+
+    int retPeriod = previousPeriodBetter(minDiff, maxDiff) ? prevPeriod : period;
+    prevMinDiff = minDiff;
+    prevPeriod = period;
+    return retPeriod;
+  }
+
+  /**
+   * Returns the period in the range with the lowest average magnitude difference, setting {@link
+   * #minDiff} and {@link #maxDiff} to the lowest and highest average differences. Candidate periods
+   * and samples are both evaluated with the given {@code step}.
+   */
+  private int findPitchPeriodInRange(float[] samples, int minPeriod, int maxPeriod, int step) {
+    int bestPeriod = minPeriod;
+    float minDiff = Float.MAX_VALUE;
+    float maxDiff = 0;
+    for (int period = minPeriod; period <= maxPeriod; period += step) {
+      float diff = 0;
+      for (int i = 0; i < period; i += step) {
+        diff += Math.abs(samples[i] - samples[i + period]);
+      }
+      diff = diff * step / period;
+      if (diff < minDiff) {
+        minDiff = diff;
+        bestPeriod = period;
+      }
+      if (diff > maxDiff) {
+        maxDiff = diff;
+      }
+    }
+    this.minDiff = minDiff;
+    this.maxDiff = maxDiff;
+    return bestPeriod;
+  }
+
+  /**
+   * Returns whether the previous pitch period estimate is a better approximation, which can occur
+   * at the abrupt end of voiced words.
+   */
+  private boolean previousPeriodBetter(float minDiff, float maxDiff) {
+    if (minDiff == 0 || prevPeriod == 0) {
+      return false;
+    }
+    if (maxDiff > minDiff * 3) {
+      // Got a reasonable match this period.
+      return false;
+    }
+    if (minDiff * 2 <= prevMinDiff * 3) {
+      // Mismatch is not that much greater this period.
+      return false;
+    }
+    return true;
+  }
+
+  private void overlapAdd(
+      int frameCount,
+      float[] out,
+      int outPosition,
+      float[] rampDown,
+      int rampDownPosition,
+      float[] rampUp,
+      int rampUpPosition) {
+    float step = 1f / frameCount;
+    for (int t = 0; t < frameCount; t++) {
+      float upWeight = t * step;
+      for (int i = 0; i < channelCount; i++) {
+        float down = rampDown[rampDownPosition++];
+        out[outPosition++] = down + (rampUp[rampUpPosition++] - down) * upWeight;
+      }
+    }
+  }
+
+  /**
+   * A fixed capacity buffer of interleaved frames. Frames are appended at the end and removed from
+   * the start, and the remaining frames are only moved to the start of the array when there isn't
+   * enough contiguous space left to append.
+   */
+  private static final class FrameBuffer {
+
+    public final float[] samples;
+    public final int capacityFrames;
+    public final int channelCount;
+    public int startFrame;
+    public int frameCount;
+
+    public FrameBuffer(int capacityFrames, int channelCount) {
+      this.capacityFrames = capacityFrames;
+      this.channelCount = channelCount;
+      samples = new float[capacityFrames * channelCount];
+    }
+
+    public int getFreeFrameCount() {
+      return capacityFrames - frameCount;
+    }
+
+    public int getStartPosition() {
+      return startFrame * channelCount;
+    }
+
+    public int getEndPosition() {
+      return (startFrame + frameCount) * channelCount;
+    }
+
+    /**
+     * Makes sure {@code additionalFrameCount} frames can be written from {@link #getEndPosition()},
+     * and returns the sample array to write them to.
+     */
+    public float[] prepareToAppend(int additionalFrameCount) {
+      if (startFrame + frameCount + additionalFrameCount > capacityFrames) {
+        System.arraycopy(samples, getStartPosition(), samples, 0, frameCount * channelCount);
+        startFrame = 0;
+      }
+      return samples;
+    }
+
+    /** Appends the first {@code count} frames of {@code source}, without removing them. */
+    public void append(FrameBuffer source, int count) {
+      prepareToAppend(count);
+      System.arraycopy(
+          source.samples,
+          source.getStartPosition(),
+          samples,
+          getEndPosition(),
+          count * channelCount);
+      frameCount += count;
+    }
+
+    public void remove(int count) {
+      frameCount -= count;
+      startFrame = frameCount == 0 ? 0 : startFrame + count;
+    }
+
+    public void clear() {
+      startFrame = 0;
+      frameCount = 0;
+    }
+  }
+}
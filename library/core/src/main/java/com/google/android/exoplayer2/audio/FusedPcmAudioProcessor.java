@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link AudioProcessor} that converts integer PCM to 16-bit PCM, applies a channel mapping and
+ * trims frames from the start/end of data in a single pass over each input buffer.
+ *
+ * <p>The output is identical to the output of a {@link ResamplingAudioProcessor}, a {@link
+ * ChannelMappingAudioProcessor} and a {@link TrimmingAudioProcessor} applied in sequence, but no
+ * intermediate buffers are written.
+ */
+/* package */ final class FusedPcmAudioProcessor extends BaseAudioProcessor {
+
+  @Nullable private int[] pendingOutputChannels;
+  private int trimStartFrames;
+  private int trimEndFrames;
+  private boolean reconfigurationPending;
+
+  /**
+   * The offset within an input frame of the two most significant bytes of each output sample, or
+   * of the single byte of each output sample for 8-bit input.
+   */
+  private int[] sampleOffsets;
+
+  private int pendingTrimStartFrames;
+  private byte[] endBuffer;
+  private ByteBuffer endBufferWrapper;
+  private int endBufferSize;
+  private long trimmedFrameCount;
+
+  /** Creates a new fused audio processor. */
+  public FusedPcmAudioProcessor() {
+    sampleOffsets = new int[0];
+    endBuffer = Util.EMPTY_BYTE_ARRAY;
+    endBufferWrapper = ByteBuffer.wrap(endBuffer);
+  }
+
+  /**
+   * Resets the channel mapping. After calling this method, call {@link #configure(AudioFormat)} to
+   * start using the new channel map.
+   *
+   * @param outputChannels The mapping from input to output channel indices, or {@code null} to
+   *     leave the input unchanged.
+   * @see ChannelMappingAudioProcessor#setChannelMap(int[])
+   */
+  public void setChannelMap(@Nullable int[] outputChannels) {
+    pendingOutputChannels = outputChannels;
+  }
+
+  /**
+   * Sets the number of audio frames to trim from the start and end of audio passed to this
+   * processor. After calling this method, call {@link #configure(AudioFormat)} to apply the new
+   * trimming frame counts.
+   *
+   * @param trimStartFrames The number of audio frames to trim from the start of audio.
+   * @param trimEndFrames The number of audio frames to trim from the end of audio.
+   * @see TrimmingAudioProcessor#setTrimFrameCount(int, int)
+   */
+  public void setTrimFrameCount(int trimStartFrames, int trimEndFrames) {
+    this.trimStartFrames = trimStartFrames;
+    this.trimEndFrames = trimEndFrames;
+  }
+
+  /** Sets the trimmed frame count returned by {@link #getTrimmedFrameCount()} to zero. */
+  public void resetTrimmedFrameCount() {
+    trimmedFrameCount = 0;
+  }
+
+  /**
+   * Returns the number of audio frames trimmed since the last call to {@link
+   * #resetTrimmedFrameCount()}.
+   */
+  public long getTrimmedFrameCount() {
+    return trimmedFrameCount;
+  }
+
+  @Override
+  public AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    @C.PcmEncoding int encoding = inputAudioFormat.encoding;
+    if (encoding != C.ENCODING_PCM_8BIT
+        && encoding != C.ENCODING_PCM_16BIT
+        && encoding != C.ENCODING_PCM_24BIT
+        && encoding != C.ENCODING_PCM_32BIT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    reconfigurationPending = true;
+
+    boolean active =
+        encoding != C.ENCODING_PCM_16BIT || trimStartFrames != 0 || trimEndFrames != 0;
+    int outputChannelCount = inputAudioFormat.channelCount;
+    @Nullable int[] outputChannels = pendingOutputChannels;
+    if (outputChannels != null) {
+      active |= inputAudioFormat.channelCount != outputChannels.length;
+      for (int i = 0; i < outputChannels.length; i++) {
+        int channelIndex = outputChannels[i];
+        if (channelIndex >= inputAudioFormat.channelCount) {
+          throw new UnhandledAudioFormatException(inputAudioFormat);
+        }
+        active |= (channelIndex != i);
+      }
+      outputChannelCount = outputChannels.length;
+    }
+    return active
+        ? new AudioFormat(inputAudioFormat.sampleRate, outputChannelCount, C.ENCODING_PCM_16BIT)
+        : AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int position = inputBuffer.position();
+    int limit = inputBuffer.limit();
+    int inputBytesPerFrame = inputAudioFormat.bytesPerFrame;
+    int remainingFrames = (limit - position) / inputBytesPerFrame;
+
+    if (remainingFrames == 0) {
+      return;
+    }
+
+    // Trim any pending start frames from the input buffer.
+    int trimFrames = Math.min(remainingFrames, pendingTrimStartFrames);
+    trimmedFrameCount += trimFrames;
+    pendingTrimStartFrames -= trimFrames;
+    position += trimFrames * inputBytesPerFrame;
+    if (pendingTrimStartFrames > 0) {
+      // Nothing to output yet.
+      inputBuffer.position(limit);
+      return;
+    }
+    remainingFrames -= trimFrames;
+
+    // As in TrimmingAudioProcessor, endBuffer must be kept as full as possible. The output is any
+    // surplus bytes currently in endBuffer followed by the surplus frames of the new input, which
+    // are converted and mapped straight into the output buffer.
+    int outputBytesPerFrame = outputAudioFormat.bytesPerFrame;
+    int remainingBytesToOutput =
+        endBufferSize + remainingFrames * outputBytesPerFrame - endBuffer.length;
+    ByteBuffer buffer = replaceOutputBuffer(Math.max(0, remainingBytesToOutput));
+
+    // Output from endBuffer.
+    int endBufferBytesToOutput = Util.constrainValue(remainingBytesToOutput, 0, endBufferSize);
+    buffer.put(endBuffer, 0, endBufferBytesToOutput);
+    remainingBytesToOutput -= endBufferBytesToOutput;
+
+    // Output from inputBuffer.
+    int inputFramesToOutput =
+        Util.constrainValue(remainingBytesToOutput / outputBytesPerFrame, 0, remainingFrames);
+    processFrames(inputBuffer, position, inputFramesToOutput, buffer);
+    position += inputFramesToOutput * inputBytesPerFrame;
+    remainingFrames -= inputFramesToOutput;
+
+    // Compact endBuffer, then repopulate it using the new input.
+    endBufferSize -= endBufferBytesToOutput;
+    System.arraycopy(endBuffer, endBufferBytesToOutput, endBuffer, 0, endBufferSize);
+    endBufferWrapper.position(endBufferSize);
+    processFrames(inputBuffer, position, remainingFrames, endBufferWrapper);
+    endBufferSize += remainingFrames * outputBytesPerFrame;
+
+    inputBuffer.position(limit);
+    buffer.flip();
+  }
+
+  @Override
+  public ByteBuffer getOutput() {
+    if (super.isEnded() && endBufferSize > 0) {
+      // See TrimmingAudioProcessor.getOutput.
+      replaceOutputBuffer(endBufferSize).put(endBuffer, 0, endBufferSize).flip();
+      endBufferSize = 0;
+    }
+    return super.getOutput();
+  }
+
+  @Override
+  public boolean isEnded() {
+    return super.isEnded() && endBufferSize == 0;
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    if (reconfigurationPending) {
+      // Trim audio in the end buffer.
+      if (endBufferSize > 0) {
+        trimmedFrameCount += endBufferSize / outputAudioFormat.bytesPerFrame;
+      }
+      endBufferSize = 0;
+    }
+  }
+
+  @Override
+  protected void onFlush() {
+    if (reconfigurationPending) {
+      reconfigurationPending = false;
+      sampleOffsets =
+          isActive() ? getSampleOffsets(inputAudioFormat, pendingOutputChannels) : new int[0];
+      endBuffer = new byte[trimEndFrames * outputAudioFormat.bytesPerFrame];
+      endBufferWrapper = ByteBuffer.wrap(endBuffer);
+      pendingTrimStartFrames = trimStartFrames;
+    } else {
+      // See TrimmingAudioProcessor.onFlush.
+      pendingTrimStartFrames = 0;
+    }
+    endBufferSize = 0;
+  }
+
+  @Override
+  protected void onReset() {
+    pendingOutputChannels = null;
+    sampleOffsets = new int[0];
+    endBuffer = Util.EMPTY_BYTE_ARRAY;
+    endBufferWrapper = ByteBuffer.wrap(endBuffer);
+  }
+
+  /**
+   * Converts and maps {@code frameCount} little endian input frames starting at {@code position}
+   * in {@code inputBuffer}, writing 16-bit output frames to {@code output}.
+   */
+  private void processFrames(
+      ByteBuffer inputBuffer, int position, int frameCount, ByteBuffer output) {
+    int[] sampleOffsets = this.sampleOffsets;
+    int inputBytesPerFrame = inputAudioFormat.bytesPerFrame;
+    int limit = position + frameCount * inputBytesPerFrame;
+    if (inputAudioFormat.encoding == C.ENCODING_PCM_8BIT) {
+      for (; position < limit; position += inputBytesPerFrame) {
+        for (int sampleOffset : sampleOffsets) {
+          output.put((byte) 0);
+          output.put((byte) ((inputBuffer.get(position + sampleOffset) & 0xFF) - 128));
+        }
+      }
+    } else {
+      for (; position < limit; position += inputBytesPerFrame) {
+        for (int sampleOffset : sampleOffsets) {
+          output.put(inputBuffer.get(position + sampleOffset));
+          output.put(inputBuffer.get(position + sampleOffset + 1));
+        }
+      }
+    }
+  }
+
+  private static int[] getSampleOffsets(
+      AudioFormat inputAudioFormat, @Nullable int[] outputChannels) {
+    int channelCount =
+        outputChannels != null ? outputChannels.length : inputAudioFormat.channelCount;
+    int bytesPerSample = inputAudioFormat.bytesPerFrame / inputAudioFormat.channelCount;
+    // Only the two most significant bytes of each sample are kept when converting to 16-bit.
+    int significantBytesOffset = Math.max(0, bytesPerSample - 2);
+    int[] sampleOffsets = new int[channelCount];
+    for (int i = 0; i < channelCount; i++) {
+      int channelIndex = outputChannels != null ? outputChannels[i] : i;
+      sampleOffsets[i] = channelIndex * bytesPerSample + significantBytesOffset;
+    }
+    return sampleOffsets;
+  }
+}
@@ -91,10 +91,14 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   private boolean codecNeedsEosBufferTimestampWorkaround;
   private android.media.MediaFormat passthroughMediaFormat;
   @Nullable private Format inputFormat;
+  @Nullable private MediaFormat codecOutputMediaFormat;
+  private int configuredEncoderDelay;
+  private int configuredEncoderPadding;
   private long currentPositionUs;
   private boolean allowFirstBufferPositionDiscontinuity;
   private boolean allowPositionDiscontinuity;
   private long lastInputTimeUs;
+  private long unhandledOutputBufferTimeUs;
   private int pendingStreamChangeCount;
 
   /**
@@ -350,6 +354,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     this.context = context.getApplicationContext();
     this.audioSink = audioSink;
     lastInputTimeUs = C.TIME_UNSET;
+    unhandledOutputBufferTimeUs = C.TIME_UNSET;
     pendingStreamChangeTimesUs = new long[MAX_PENDING_STREAM_CHANGE_COUNT];
     eventDispatcher = new EventDispatcher(eventHandler, eventListener);
     audioSink.setListener(new AudioSinkListener());
@@ -476,19 +481,19 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   @Override
   protected @KeepCodecResult int canKeepCodec(
       MediaCodec codec, MediaCodecInfo codecInfo, Format oldFormat, Format newFormat) {
-    // TODO: We currently rely on recreating the codec when encoder delay or padding is non-zero.
-    // Re-creating the codec is necessary to guarantee that onOutputFormatChanged is called, which
-    // is where encoder delay and padding are propagated to the sink. We should find a better way to
-    // propagate these values, and then allow the codec to be re-used in cases where this would
-    // otherwise be possible.
-    if (getCodecMaxInputSize(codecInfo, newFormat) > codecMaxInputSize
-        || oldFormat.encoderDelay != 0
-        || oldFormat.encoderPadding != 0
-        || newFormat.encoderDelay != 0
-        || newFormat.encoderPadding != 0) {
+    // Encoder delay and padding are propagated to the sink when the first output buffer with a new
+    // format is processed. When switching between gapless playlist items the codec is only reused
+    // with a flush, so the new item is decoded without state from the previous one.
+    boolean hasGaplessMetadata =
+        oldFormat.encoderDelay != 0
+            || oldFormat.encoderPadding != 0
+            || newFormat.encoderDelay != 0
+            || newFormat.encoderPadding != 0;
+    if (getCodecMaxInputSize(codecInfo, newFormat) > codecMaxInputSize) {
       return KEEP_CODEC_RESULT_NO;
-    } else if (codecInfo.isSeamlessAdaptationSupported(
-        oldFormat, newFormat, /* isNewFormatComplete= */ true)) {
+    } else if (!hasGaplessMetadata
+        && codecInfo.isSeamlessAdaptationSupported(
+            oldFormat, newFormat, /* isNewFormatComplete= */ true)) {
       return KEEP_CODEC_RESULT_YES_WITHOUT_RECONFIGURATION;
     } else if (canKeepCodecWithFlush(oldFormat, newFormat)) {
       return KEEP_CODEC_RESULT_YES_WITH_FLUSH;
@@ -546,6 +551,26 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     eventDispatcher.decoderInitialized(name, initializedTimestampMs, initializationDurationMs);
   }
 
+  @CallSuper
+  @Override
+  protected void releaseCodec() {
+    try {
+      super.releaseCodec();
+    } finally {
+      unhandledOutputBufferTimeUs = C.TIME_UNSET;
+    }
+  }
+
+  @CallSuper
+  @Override
+  protected boolean flushOrReleaseCodec() {
+    try {
+      return super.flushOrReleaseCodec();
+    } finally {
+      unhandledOutputBufferTimeUs = C.TIME_UNSET;
+    }
+  }
+
   @Override
   protected void onInputFormatChanged(FormatHolder formatHolder) throws ExoPlaybackException {
     super.onInputFormatChanged(formatHolder);
@@ -556,6 +581,12 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   @Override
   protected void onOutputFormatChanged(MediaCodec codec, MediaFormat outputMediaFormat)
       throws ExoPlaybackException {
+    codecOutputMediaFormat = outputMediaFormat;
+    configureAudioSink(outputMediaFormat, inputFormat);
+  }
+
+  private void configureAudioSink(MediaFormat outputMediaFormat, Format format)
+      throws ExoPlaybackException {
     @C.Encoding int encoding;
     MediaFormat mediaFormat;
     if (passthroughMediaFormat != null) {
@@ -566,14 +597,14 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
               mediaFormat.getString(MediaFormat.KEY_MIME));
     } else {
       mediaFormat = outputMediaFormat;
-      encoding = getPcmEncoding(inputFormat);
+      encoding = getPcmEncoding(format);
     }
     int channelCount = mediaFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
     int sampleRate = mediaFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
     int[] channelMap;
-    if (codecNeedsDiscardChannelsWorkaround && channelCount == 6 && inputFormat.channelCount < 6) {
-      channelMap = new int[inputFormat.channelCount];
-      for (int i = 0; i < inputFormat.channelCount; i++) {
+    if (codecNeedsDiscardChannelsWorkaround && channelCount == 6 && format.channelCount < 6) {
+      channelMap = new int[format.channelCount];
+      for (int i = 0; i < format.channelCount; i++) {
         channelMap[i] = i;
       }
     } else {
@@ -587,11 +618,13 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
           sampleRate,
           0,
           channelMap,
-          inputFormat.encoderDelay,
-          inputFormat.encoderPadding);
+          format.encoderDelay,
+          format.encoderPadding);
+      configuredEncoderDelay = format.encoderDelay;
+      configuredEncoderPadding = format.encoderPadding;
     } catch (AudioSink.ConfigurationException e) {
       // TODO(internal: b/145658993) Use outputFormat instead.
-      throw createRendererException(e, inputFormat);
+      throw createRendererException(e, format);
     }
   }
 
@@ -731,6 +764,20 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     return audioSink.hasPendingData() || super.isReady();
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (unhandledOutputBufferTimeUs == C.TIME_UNSET) {
+      return C.TIME_UNSET;
+    }
+    if (getState() != STATE_STARTED) {
+      // The sink is full, and won't accept more data until playback starts.
+      return Long.MAX_VALUE;
+    }
+    // The sink is full. Wait until roughly half of the audio it holds has been played out.
+    long bufferedDurationUs = unhandledOutputBufferTimeUs - positionUs;
+    return (long) (bufferedDurationUs / audioSink.getPlaybackParameters().speed / 2);
+  }
+
   @Override
   public long getPositionUs() {
     if (getState() == STATE_STARTED) {
@@ -811,12 +858,24 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
       return true;
     }
 
+    if (!passthroughEnabled
+        && format != null
+        && codecOutputMediaFormat != null
+        && (format.encoderDelay != configuredEncoderDelay
+            || format.encoderPadding != configuredEncoderPadding)) {
+      // The codec was kept across a change in gapless metadata. The sink applies the new trimming
+      // once it has drained the audio that was output with the previous format.
+      configureAudioSink(codecOutputMediaFormat, format);
+    }
+
     try {
       if (audioSink.handleBuffer(buffer, bufferPresentationTimeUs)) {
         codec.releaseOutputBuffer(bufferIndex, false);
         decoderCounters.renderedOutputBufferCount++;
+        unhandledOutputBufferTimeUs = C.TIME_UNSET;
         return true;
       }
+      unhandledOutputBufferTimeUs = bufferPresentationTimeUs;
     } catch (AudioSink.InitializationException | AudioSink.WriteException e) {
       // TODO(internal: b/145658993) Use outputFormat instead.
       throw createRendererException(e, inputFormat);
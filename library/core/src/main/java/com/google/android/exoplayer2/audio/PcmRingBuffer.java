@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import com.google.android.exoplayer2.util.Assertions;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated single-producer, single-consumer ring buffer of PCM bytes.
+ *
+ * <p>{@link #write(ByteBuffer)} may be called from one thread and {@link #read(ByteBuffer)} from
+ * another without locking. Only whole frames are transferred, so that audio processors on either
+ * side never see a partial frame. {@link #reset(int)} must only be called while neither side is
+ * accessing the buffer.
+ */
+/* package */ final class PcmRingBuffer {
+
+  private final byte[] data;
+  private final AtomicLong writePosition;
+  private final AtomicLong readPosition;
+
+  private int bytesPerFrame;
+
+  /**
+   * Creates a ring buffer.
+   *
+   * @param capacity The capacity of the buffer, in bytes.
+   */
+  public PcmRingBuffer(int capacity) {
+    data = new byte[capacity];
+    writePosition = new AtomicLong();
+    readPosition = new AtomicLong();
+    bytesPerFrame = 1;
+  }
+
+  /** Returns the capacity of the buffer, in bytes. */
+  public int getCapacity() {
+    return data.length;
+  }
+
+  /**
+   * Discards any buffered data and sets the frame size used to align subsequent transfers.
+   *
+   * @param bytesPerFrame The size of a PCM frame, in bytes.
+   */
+  public void reset(int bytesPerFrame) {
+    Assertions.checkArgument(bytesPerFrame > 0 && bytesPerFrame <= data.length);
+    this.bytesPerFrame = bytesPerFrame;
+    writePosition.set(0);
+    readPosition.set(0);
+  }
+
+  /** Returns the number of bytes that can currently be read. */
+  public int getReadableByteCount() {
+    return (int) (writePosition.get() - readPosition.get());
+  }
+
+  /** Returns whether there are no bytes to read. */
+  public boolean isEmpty() {
+    return writePosition.get() == readPosition.get();
+  }
+
+  /**
+   * Copies as many whole frames as fit from {@code source} into the buffer, advancing the position
+   * of {@code source}. Must only be called by the producer.
+   *
+   * @param source The data to write.
+   * @return The number of bytes written.
+   */
+  public int write(ByteBuffer source) {
+    long write = writePosition.get();
+    int free = data.length - (int) (write - readPosition.get());
+    int length = alignToFrame(Math.min(free, source.remaining()));
+    if (length == 0) {
+      return 0;
+    }
+    int offset = (int) (write % data.length);
+    int firstLength = Math.min(length, data.length - offset);
+    source.get(data, offset, firstLength);
+    if (firstLength < length) {
+      source.get(data, 0, length - firstLength);
+    }
+    // Publish the data only once it has been copied.
+    writePosition.lazySet(write + length);
+    return length;
+  }
+
+  /**
+   * Copies as many whole frames as are available and fit from the buffer into {@code target},
+   * advancing the position of {@code target}. Must only be called by the consumer.
+   *
+   * @param target The buffer into which data should be read.
+   * @return The number of bytes read.
+   */
+  public int read(ByteBuffer target) {
+    long read = readPosition.get();
+    int available = (int) (writePosition.get() - read);
+    int length = alignToFrame(Math.min(available, target.remaining()));
+    if (length == 0) {
+      return 0;
+    }
+    int offset = (int) (read % data.length);
+    int firstLength = Math.min(length, data.length - offset);
+    target.put(data, offset, firstLength);
+    if (firstLength < length) {
+      target.put(data, 0, length - firstLength);
+    }
+    // Release the space only once the data has been copied out.
+    readPosition.lazySet(read + length);
+    return length;
+  }
+
+  private int alignToFrame(int length) {
+    return length - length % bytesPerFrame;
+  }
+}
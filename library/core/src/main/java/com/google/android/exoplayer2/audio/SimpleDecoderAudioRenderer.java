@@ -556,6 +556,19 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     }
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (outputBuffer == null || outputBuffer.isEndOfStream()) {
+      return C.TIME_UNSET;
+    }
+    // The pending output buffer was not accepted by the sink because the sink is full.
+    if (getState() != STATE_STARTED) {
+      return Long.MAX_VALUE;
+    }
+    long bufferedDurationUs = outputBuffer.timeUs - positionUs;
+    return (long) (bufferedDurationUs / audioSink.getPlaybackParameters().speed / 2);
+  }
+
   @Override
   protected void onPositionReset(long positionUs, boolean joining) throws ExoPlaybackException {
     audioSink.flush();
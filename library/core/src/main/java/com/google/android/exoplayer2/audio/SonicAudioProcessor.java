@@ -22,10 +22,18 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
 /**
  * An {@link AudioProcessor} that uses the Sonic library to modify audio speed/pitch/sample rate.
+ *
+ * <p>By default 16-bit integer PCM is processed with {@link Sonic}. Optionally a float
+ * implementation of the same algorithm can be used instead, which also supports {@link
+ * C#ENCODING_PCM_FLOAT} input, doesn't allocate while processing and searches for pitch periods
+ * more cheaply. {@link DefaultAudioSink} always converts its input to 16-bit integer PCM before
+ * applying playback parameters, so float input is only processed when the processor is used
+ * directly.
  */
 public final class SonicAudioProcessor implements AudioProcessor {
 
@@ -61,6 +69,8 @@ public final class SonicAudioProcessor implements AudioProcessor {
    */
   private static final int MIN_BYTES_FOR_SPEEDUP_CALCULATION = 1024;
 
+  private final boolean useFloatEngine;
+
   private int pendingOutputSampleRate;
   private float speed;
   private float pitch;
@@ -72,8 +82,10 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   private boolean pendingSonicRecreation;
   @Nullable private Sonic sonic;
+  @Nullable private FloatSonic floatSonic;
   private ByteBuffer buffer;
   private ShortBuffer shortBuffer;
+  private FloatBuffer floatBuffer;
   private ByteBuffer outputBuffer;
   private long inputBytes;
   private long outputBytes;
@@ -83,6 +95,19 @@ public final class SonicAudioProcessor implements AudioProcessor {
    * Creates a new Sonic audio processor.
    */
   public SonicAudioProcessor() {
+    this(/* useFloatEngine= */ false);
+  }
+
+  /**
+   * Creates a new Sonic audio processor.
+   *
+   * @param useFloatEngine Whether to process audio with a float implementation of Sonic, which
+   *     accepts both 16-bit integer and {@link C#ENCODING_PCM_FLOAT} input. Float input is never
+   *     passed to the processor by {@link DefaultAudioSink}. The float engine is experimental, and
+   *     may be changed or removed in a future release.
+   */
+  public SonicAudioProcessor(boolean useFloatEngine) {
+    this.useFloatEngine = useFloatEngine;
     speed = 1f;
     pitch = 1f;
     pendingInputAudioFormat = AudioFormat.NOT_SET;
@@ -91,6 +116,7 @@ public final class SonicAudioProcessor implements AudioProcessor {
     outputAudioFormat = AudioFormat.NOT_SET;
     buffer = EMPTY_BUFFER;
     shortBuffer = buffer.asShortBuffer();
+    floatBuffer = buffer.asFloatBuffer();
     outputBuffer = EMPTY_BUFFER;
     pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
   }
@@ -164,7 +190,8 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   @Override
   public AudioFormat configure(AudioFormat inputAudioFormat) throws UnhandledAudioFormatException {
-    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT
+        && (!useFloatEngine || inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT)) {
       throw new UnhandledAudioFormatException(inputAudioFormat);
     }
     int outputSampleRateHz =
@@ -173,7 +200,8 @@ public final class SonicAudioProcessor implements AudioProcessor {
             : pendingOutputSampleRate;
     pendingInputAudioFormat = inputAudioFormat;
     pendingOutputAudioFormat =
-        new AudioFormat(outputSampleRateHz, inputAudioFormat.channelCount, C.ENCODING_PCM_16BIT);
+        new AudioFormat(
+            outputSampleRateHz, inputAudioFormat.channelCount, inputAudioFormat.encoding);
     pendingSonicRecreation = true;
     return pendingOutputAudioFormat;
   }
@@ -188,6 +216,10 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   @Override
   public void queueInput(ByteBuffer inputBuffer) {
+    if (floatSonic != null) {
+      queueInputToFloatSonic(floatSonic, inputBuffer);
+      return;
+    }
     Sonic sonic = Assertions.checkNotNull(this.sonic);
     if (inputBuffer.hasRemaining()) {
       ShortBuffer shortBuffer = inputBuffer.asShortBuffer();
@@ -217,6 +249,9 @@ public final class SonicAudioProcessor implements AudioProcessor {
     if (sonic != null) {
       sonic.queueEndOfStream();
     }
+    if (floatSonic != null) {
+      floatSonic.queueEndOfStream();
+    }
     inputEnded = true;
   }
 
@@ -229,7 +264,9 @@ public final class SonicAudioProcessor implements AudioProcessor {
 
   @Override
   public boolean isEnded() {
-    return inputEnded && (sonic == null || sonic.getOutputSize() == 0);
+    return inputEnded
+        && (sonic == null || sonic.getOutputSize() == 0)
+        && (floatSonic == null || floatSonic.getOutputFrameCount() == 0);
   }
 
   @Override
@@ -238,15 +275,27 @@ public final class SonicAudioProcessor implements AudioProcessor {
       inputAudioFormat = pendingInputAudioFormat;
       outputAudioFormat = pendingOutputAudioFormat;
       if (pendingSonicRecreation) {
-        sonic =
-            new Sonic(
-                inputAudioFormat.sampleRate,
-                inputAudioFormat.channelCount,
-                speed,
-                pitch,
-                outputAudioFormat.sampleRate);
+        if (useFloatEngine) {
+          floatSonic =
+              new FloatSonic(
+                  inputAudioFormat.sampleRate,
+                  inputAudioFormat.channelCount,
+                  speed,
+                  pitch,
+                  outputAudioFormat.sampleRate);
+        } else {
+          sonic =
+              new Sonic(
+                  inputAudioFormat.sampleRate,
+                  inputAudioFormat.channelCount,
+                  speed,
+                  pitch,
+                  outputAudioFormat.sampleRate);
+        }
       } else if (sonic != null) {
         sonic.flush();
+      } else if (floatSonic != null) {
+        floatSonic.flush();
       }
     }
     outputBuffer = EMPTY_BUFFER;
@@ -265,13 +314,54 @@ public final class SonicAudioProcessor implements AudioProcessor {
     outputAudioFormat = AudioFormat.NOT_SET;
     buffer = EMPTY_BUFFER;
     shortBuffer = buffer.asShortBuffer();
+    floatBuffer = buffer.asFloatBuffer();
     outputBuffer = EMPTY_BUFFER;
     pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
     pendingSonicRecreation = false;
     sonic = null;
+    floatSonic = null;
     inputBytes = 0;
     outputBytes = 0;
     inputEnded = false;
   }
 
+  private void queueInputToFloatSonic(FloatSonic floatSonic, ByteBuffer inputBuffer) {
+    boolean isFloat = inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT;
+    if (inputBuffer.hasRemaining()) {
+      // The float engine may not consume all input if its buffers are full.
+      int consumedBytes;
+      if (isFloat) {
+        FloatBuffer floatBuffer = inputBuffer.asFloatBuffer();
+        floatSonic.queueInput(floatBuffer);
+        consumedBytes = floatBuffer.position() * 4;
+      } else {
+        ShortBuffer shortBuffer = inputBuffer.asShortBuffer();
+        floatSonic.queueInput(shortBuffer);
+        consumedBytes = shortBuffer.position() * 2;
+      }
+      inputBytes += consumedBytes;
+      inputBuffer.position(inputBuffer.position() + consumedBytes);
+    }
+    int outputSize = floatSonic.getOutputFrameCount() * outputAudioFormat.bytesPerFrame;
+    if (outputSize > 0) {
+      if (buffer.capacity() < outputSize) {
+        buffer = ByteBuffer.allocateDirect(outputSize).order(ByteOrder.nativeOrder());
+        shortBuffer = buffer.asShortBuffer();
+        floatBuffer = buffer.asFloatBuffer();
+      } else {
+        buffer.clear();
+        shortBuffer.clear();
+        floatBuffer.clear();
+      }
+      if (isFloat) {
+        floatSonic.getOutput(floatBuffer);
+      } else {
+        floatSonic.getOutput(shortBuffer);
+      }
+      outputBytes += outputSize;
+      buffer.limit(outputSize);
+      outputBuffer = buffer;
+    }
+  }
+
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.decoder;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of direct {@link ByteBuffer ByteBuffers} that decoder buffers can borrow from, so that
+ * buffers can be reused when decoders are released and recreated.
+ *
+ * <p>Pooled buffers are organized into size classes, whose capacities are powers of two. A buffer
+ * that's acquired from the pool has the capacity of the smallest size class that can accommodate
+ * the requested capacity. The total capacity of pooled buffers is bounded, and can be reduced
+ * further by calling {@link #trim()}.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class DecoderBufferPool {
+
+  /** The default maximum total capacity of pooled buffers, in bytes. */
+  public static final int DEFAULT_MAX_POOLED_BYTES = 16 * 1024 * 1024;
+  /** The default total capacity of pooled buffers to retain when trimming, in bytes. */
+  public static final int DEFAULT_TARGET_POOLED_BYTES = 4 * 1024 * 1024;
+
+  private static final int MIN_SIZE_CLASS_LOG2 = 10;
+  private static final int MAX_SIZE_CLASS_LOG2 = 26;
+  private static final int SIZE_CLASS_COUNT = MAX_SIZE_CLASS_LOG2 - MIN_SIZE_CLASS_LOG2 + 1;
+  private static final int NO_SIZE_CLASS = -1;
+
+  @Nullable private static DecoderBufferPool instance;
+
+  private final int maxPooledBytes;
+  private final int targetPooledBytes;
+  private final ArrayDeque<ByteBuffer>[] pooledBuffers;
+
+  private int pooledBytes;
+
+  /** Returns the pool shared by all decoders in the process. */
+  public static synchronized DecoderBufferPool getInstance() {
+    if (instance == null) {
+      instance = new DecoderBufferPool(DEFAULT_MAX_POOLED_BYTES, DEFAULT_TARGET_POOLED_BYTES);
+    }
+    return instance;
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxPooledBytes The maximum total capacity of pooled buffers, in bytes. Buffers released
+   *     when the pool is full are left to be garbage collected.
+   * @param targetPooledBytes The total capacity of pooled buffers to retain when {@link #trim()}
+   *     is called, in bytes.
+   */
+  @SuppressWarnings("unchecked")
+  public DecoderBufferPool(int maxPooledBytes, int targetPooledBytes) {
+    Assertions.checkArgument(targetPooledBytes <= maxPooledBytes);
+    this.maxPooledBytes = maxPooledBytes;
+    this.targetPooledBytes = targetPooledBytes;
+    pooledBuffers = new ArrayDeque[SIZE_CLASS_COUNT];
+    for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+      pooledBuffers[i] = new ArrayDeque<>();
+    }
+  }
+
+  /**
+   * Obtains a cleared, big endian, direct buffer whose capacity is at least {@code
+   * minimumCapacity}. A pooled buffer is returned if one is available. Otherwise a new buffer is
+   * allocated.
+   *
+   * @param minimumCapacity The minimum required capacity, in bytes.
+   * @return The buffer.
+   */
+  public ByteBuffer acquire(int minimumCapacity) {
+    int sizeClass = getSizeClass(minimumCapacity);
+    if (sizeClass == NO_SIZE_CLASS) {
+      return ByteBuffer.allocateDirect(minimumCapacity);
+    }
+    @Nullable ByteBuffer buffer;
+    synchronized (this) {
+      buffer = pooledBuffers[sizeClass].pollLast();
+      if (buffer != null) {
+        pooledBytes -= buffer.capacity();
+      }
+    }
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SIZE_CLASS_LOG2));
+    }
+    buffer.clear();
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to the pool. The caller must not access the buffer after calling this
+   * method. Buffers that were not obtained from {@link #acquire(int)}, or that can't be pooled
+   * because the pool is full, are left to be garbage collected.
+   *
+   * @param buffer The buffer to return.
+   */
+  public synchronized void release(ByteBuffer buffer) {
+    int capacity = buffer.capacity();
+    if (!buffer.isDirect()
+        || Integer.bitCount(capacity) != 1
+        || capacity < (1 << MIN_SIZE_CLASS_LOG2)
+        || getSizeClass(capacity) == NO_SIZE_CLASS
+        || pooledBytes + capacity > maxPooledBytes) {
+      return;
+    }
+    pooledBuffers[getSizeClass(capacity)].addLast(buffer);
+    pooledBytes += capacity;
+  }
+
+  /**
+   * Discards pooled buffers until their total capacity no longer exceeds the target. Buffers in
+   * the largest size classes are discarded first.
+   */
+  public synchronized void trim() {
+    for (int sizeClass = SIZE_CLASS_COUNT - 1;
+        sizeClass >= 0 && pooledBytes > targetPooledBytes;
+        sizeClass--) {
+      ArrayDeque<ByteBuffer> buffers = pooledBuffers[sizeClass];
+      while (!buffers.isEmpty() && pooledBytes > targetPooledBytes) {
+        pooledBytes -= buffers.removeFirst().capacity();
+      }
+    }
+  }
+
+  /** Returns the total capacity of pooled buffers, in bytes. */
+  public synchronized int getPooledBytes() {
+    return pooledBytes;
+  }
+
+  // Internal methods.
+
+  private static int getSizeClass(int capacity) {
+    int capacityLog2 = 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1);
+    if (capacityLog2 > MAX_SIZE_CLASS_LOG2) {
+      return NO_SIZE_CLASS;
+    }
+    return Math.max(capacityLog2, MIN_SIZE_CLASS_LOG2) - MIN_SIZE_CLASS_LOG2;
+  }
+}
@@ -31,15 +31,16 @@ public class DecoderInputBuffer extends Buffer {
 
   /**
    * The buffer replacement mode, which may disable replacement. One of {@link
-   * #BUFFER_REPLACEMENT_MODE_DISABLED}, {@link #BUFFER_REPLACEMENT_MODE_NORMAL} or {@link
-   * #BUFFER_REPLACEMENT_MODE_DIRECT}.
+   * #BUFFER_REPLACEMENT_MODE_DISABLED}, {@link #BUFFER_REPLACEMENT_MODE_NORMAL}, {@link
+   * #BUFFER_REPLACEMENT_MODE_DIRECT} or {@link #BUFFER_REPLACEMENT_MODE_DIRECT_POOLED}.
    */
   @Documented
   @Retention(RetentionPolicy.SOURCE)
   @IntDef({
     BUFFER_REPLACEMENT_MODE_DISABLED,
     BUFFER_REPLACEMENT_MODE_NORMAL,
-    BUFFER_REPLACEMENT_MODE_DIRECT
+    BUFFER_REPLACEMENT_MODE_DIRECT,
+    BUFFER_REPLACEMENT_MODE_DIRECT_POOLED
   })
   public @interface BufferReplacementMode {}
   /**
@@ -54,6 +55,12 @@ public class DecoderInputBuffer extends Buffer {
    * Allows buffer replacement using {@link ByteBuffer#allocateDirect(int)}.
    */
   public static final int BUFFER_REPLACEMENT_MODE_DIRECT = 2;
+  /**
+   * Allows buffer replacement using direct buffers borrowed from {@link
+   * DecoderBufferPool#getInstance()}. Replaced buffers are returned to the pool, as is the current
+   * buffer when {@link #releaseData()} is called.
+   */
+  public static final int BUFFER_REPLACEMENT_MODE_DIRECT_POOLED = 3;
 
   /**
    * {@link CryptoInfo} for encrypted data.
@@ -87,8 +94,8 @@ public class DecoderInputBuffer extends Buffer {
 
   /**
    * @param bufferReplacementMode Determines the behavior of {@link #ensureSpaceForWrite(int)}. One
-   *     of {@link #BUFFER_REPLACEMENT_MODE_DISABLED}, {@link #BUFFER_REPLACEMENT_MODE_NORMAL} and
-   *     {@link #BUFFER_REPLACEMENT_MODE_DIRECT}.
+   *     of {@link #BUFFER_REPLACEMENT_MODE_DISABLED}, {@link #BUFFER_REPLACEMENT_MODE_NORMAL},
+   *     {@link #BUFFER_REPLACEMENT_MODE_DIRECT} and {@link #BUFFER_REPLACEMENT_MODE_DIRECT_POOLED}.
    */
   public DecoderInputBuffer(@BufferReplacementMode int bufferReplacementMode) {
     this.cryptoInfo = new CryptoInfo();
@@ -142,10 +149,25 @@ public class DecoderInputBuffer extends Buffer {
       data.flip();
       newData.put(data);
     }
+    if (bufferReplacementMode == BUFFER_REPLACEMENT_MODE_DIRECT_POOLED) {
+      DecoderBufferPool.getInstance().release(data);
+    }
     // Set the new buffer.
     data = newData;
   }
 
+  /**
+   * Releases {@link #data}, which will be null after this method returns. If the buffer
+   * replacement mode is {@link #BUFFER_REPLACEMENT_MODE_DIRECT_POOLED} then {@link #data} is
+   * returned to the pool, and so must not be accessed by the caller after this method returns.
+   */
+  public void releaseData() {
+    if (data != null && bufferReplacementMode == BUFFER_REPLACEMENT_MODE_DIRECT_POOLED) {
+      DecoderBufferPool.getInstance().release(data);
+    }
+    data = null;
+  }
+
   /**
    * Returns whether the buffer is only able to hold flags, meaning {@link #data} is null and
    * its replacement mode is {@link #BUFFER_REPLACEMENT_MODE_DISABLED}.
@@ -189,6 +211,8 @@ public class DecoderInputBuffer extends Buffer {
       return ByteBuffer.allocate(requiredCapacity);
     } else if (bufferReplacementMode == BUFFER_REPLACEMENT_MODE_DIRECT) {
       return ByteBuffer.allocateDirect(requiredCapacity);
+    } else if (bufferReplacementMode == BUFFER_REPLACEMENT_MODE_DIRECT_POOLED) {
+      return DecoderBufferPool.getInstance().acquire(requiredCapacity);
     } else {
       int currentCapacity = data == null ? 0 : data.capacity();
       throw new IllegalStateException("Buffer too small (" + currentCapacity + " < "
@@ -164,6 +164,17 @@ public abstract class SimpleDecoder<
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
     }
+    // The decode thread has exited, so input buffers owned by the decoder are no longer accessed.
+    // A dequeued input buffer may still be referenced by the caller, so its data is not released.
+    synchronized (lock) {
+      for (int i = 0; i < availableInputBufferCount; i++) {
+        availableInputBuffers[i].releaseData();
+      }
+      while (!queuedInputBuffers.isEmpty()) {
+        queuedInputBuffers.removeFirst().releaseData();
+      }
+    }
+    DecoderBufferPool.getInstance().trim();
   }
 
   /**
@@ -20,6 +20,7 @@ import android.annotation.TargetApi;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
@@ -38,6 +39,8 @@ import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -60,6 +63,8 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
     private int[] useDrmSessionsForClearContentTrackTypes;
     private boolean playClearSamplesWithoutKeys;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
+    private int sessionPoolSize;
+    private long sessionPoolMaxAgeMs;
 
     /**
      * Creates a builder with default values. The default values are:
@@ -74,6 +79,9 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
      *   <li>{@link #setPlayClearSamplesWithoutKeys playClearSamplesWithoutKeys}: {@code false}.
      *   <li>{@link #setLoadErrorHandlingPolicy LoadErrorHandlingPolicy}: {@link
      *       DefaultLoadErrorHandlingPolicy}.
+     *   <li>{@link #setSessionPoolSize sessionPoolSize}: 0 (sessions are not pooled).
+     *   <li>{@link #setSessionPoolMaxAgeMs sessionPoolMaxAgeMs}: {@link
+     *       #DEFAULT_SESSION_POOL_MAX_AGE_MS}.
      * </ul>
      */
     @SuppressWarnings("unchecked")
@@ -83,6 +91,7 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
       exoMediaDrmProvider = (ExoMediaDrm.Provider) FrameworkMediaDrm.DEFAULT_PROVIDER;
       loadErrorHandlingPolicy = new DefaultLoadErrorHandlingPolicy();
       useDrmSessionsForClearContentTrackTypes = new int[0];
+      sessionPoolMaxAgeMs = DEFAULT_SESSION_POOL_MAX_AGE_MS;
     }
 
     /**
@@ -179,6 +188,40 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
       return this;
     }
 
+    /**
+     * Sets the maximum number of sessions kept open by the session pool after they are no longer
+     * used for playback. Pooled sessions keep their keys loaded, so that playing the same content
+     * again (for example when switching back to a previously watched channel) does not need to
+     * wait for a new license request. Sessions can also be added to the pool ahead of playback
+     * using {@link DefaultDrmSessionManager#prefetchSession(Looper, DrmInitData)}.
+     *
+     * <p>Pooling requires {@link #setMultiSession multiSession} to be enabled, and is not used when
+     * an offline license is set with {@link DefaultDrmSessionManager#setMode(int, byte[])}.
+     *
+     * @param sessionPoolSize The maximum number of pooled sessions, or 0 to disable pooling.
+     * @return This builder.
+     */
+    public Builder setSessionPoolSize(int sessionPoolSize) {
+      Assertions.checkArgument(sessionPoolSize >= 0);
+      this.sessionPoolSize = sessionPoolSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum time for which a pooled session is kept open without being used. Note that
+     * licenses typically have a limited duration, so this should be shorter than the license
+     * duration of the content.
+     *
+     * @param sessionPoolMaxAgeMs The maximum time a session is kept in the pool since it was last
+     *     acquired or prefetched, in milliseconds.
+     * @return This builder.
+     */
+    public Builder setSessionPoolMaxAgeMs(long sessionPoolMaxAgeMs) {
+      Assertions.checkArgument(sessionPoolMaxAgeMs > 0);
+      this.sessionPoolMaxAgeMs = sessionPoolMaxAgeMs;
+      return this;
+    }
+
     /** Builds a {@link DefaultDrmSessionManager} instance. */
     public DefaultDrmSessionManager<ExoMediaCrypto> build(MediaDrmCallback mediaDrmCallback) {
       return new DefaultDrmSessionManager<>(
@@ -189,7 +232,9 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
           multiSession,
           useDrmSessionsForClearContentTrackTypes,
           playClearSamplesWithoutKeys,
-          loadErrorHandlingPolicy);
+          loadErrorHandlingPolicy,
+          sessionPoolSize,
+          sessionPoolMaxAgeMs);
     }
   }
 
@@ -231,6 +276,8 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
   public static final int MODE_RELEASE = 3;
   /** Number of times to retry for initial provisioning and key request for reporting error. */
   public static final int INITIAL_DRM_REQUEST_RETRY_COUNT = 3;
+  /** Default maximum time a pooled session is kept open without being used, in milliseconds. */
+  public static final long DEFAULT_SESSION_POOL_MAX_AGE_MS = 5 * 60 * 1000;
 
   private static final String TAG = "DefaultDrmSessionMgr";
 
@@ -244,9 +291,14 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
   private final boolean playClearSamplesWithoutKeys;
   private final ProvisioningManagerImpl provisioningManagerImpl;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
+  private final int sessionPoolSize;
+  private final long sessionPoolMaxAgeMs;
 
   private final List<DefaultDrmSession<T>> sessions;
   private final List<DefaultDrmSession<T>> provisioningSessions;
+  // Pooled sessions mapped to the time they were last used, least recently used first.
+  private final LinkedHashMap<DefaultDrmSession<T>, Long> pooledSessions;
+  private final Runnable evictPooledSessionsRunnable;
 
   private int prepareCallsCount;
   @Nullable private ExoMediaDrm<T> exoMediaDrm;
@@ -255,6 +307,7 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
   @Nullable private Looper playbackLooper;
   private int mode;
   @Nullable private byte[] offlineLicenseKeySetId;
+  private boolean sessionPoolPrepared;
 
   /* package */ volatile @Nullable MediaDrmHandler mediaDrmHandler;
 
@@ -336,7 +389,9 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
         multiSession,
         /* useDrmSessionsForClearContentTrackTypes= */ new int[0],
         /* playClearSamplesWithoutKeys= */ false,
-        new DefaultLoadErrorHandlingPolicy(initialDrmRequestRetryCount));
+        new DefaultLoadErrorHandlingPolicy(initialDrmRequestRetryCount),
+        /* sessionPoolSize= */ 0,
+        DEFAULT_SESSION_POOL_MAX_AGE_MS);
   }
 
   // the constructor does not initialize fields: offlineLicenseKeySetId
@@ -349,7 +404,9 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
       boolean multiSession,
       int[] useDrmSessionsForClearContentTrackTypes,
       boolean playClearSamplesWithoutKeys,
-      LoadErrorHandlingPolicy loadErrorHandlingPolicy) {
+      LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+      int sessionPoolSize,
+      long sessionPoolMaxAgeMs) {
     Assertions.checkNotNull(uuid);
     Assertions.checkArgument(!C.COMMON_PSSH_UUID.equals(uuid), "Use C.CLEARKEY_UUID instead");
     this.uuid = uuid;
@@ -361,10 +418,14 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
     this.useDrmSessionsForClearContentTrackTypes = useDrmSessionsForClearContentTrackTypes;
     this.playClearSamplesWithoutKeys = playClearSamplesWithoutKeys;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
+    this.sessionPoolSize = sessionPoolSize;
+    this.sessionPoolMaxAgeMs = sessionPoolMaxAgeMs;
     provisioningManagerImpl = new ProvisioningManagerImpl();
     mode = MODE_PLAYBACK;
     sessions = new ArrayList<>();
     provisioningSessions = new ArrayList<>();
+    pooledSessions = new LinkedHashMap<>();
+    evictPooledSessionsRunnable = () -> evictPooledSessions(SystemClock.elapsedRealtime());
   }
 
   /**
@@ -419,6 +480,39 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
     this.offlineLicenseKeySetId = offlineLicenseKeySetId;
   }
 
+  /**
+   * Opens a session and requests its license ahead of playback, so that the keys are loaded by the
+   * time content with the given {@link DrmInitData} is played (for example the next item of a
+   * playlist, or channels adjacent to the one being watched). The session is added to the session
+   * pool, and is reused by {@link #acquireSession(Looper, DrmInitData)} until it's evicted.
+   *
+   * <p>This method does nothing if the session pool is disabled (see {@link
+   * Builder#setSessionPoolSize(int)}). May be called from any thread.
+   *
+   * @param playbackLooper The looper of the playback thread that will acquire the session.
+   * @param drmInitData The {@link DrmInitData} of the content to prefetch a license for.
+   */
+  public void prefetchSession(Looper playbackLooper, DrmInitData drmInitData) {
+    if (!isSessionPoolEnabled()) {
+      Log.w(TAG, "Ignoring session prefetch, as the session pool is disabled.");
+      return;
+    }
+    new Handler(playbackLooper).post(() -> prefetchSessionInternal(playbackLooper, drmInitData));
+  }
+
+  /**
+   * Releases all sessions held by the session pool. Sessions that are still acquired for playback
+   * remain open until they are released by their users.
+   *
+   * <p>May be called from any thread.
+   */
+  public void releasePooledSessions() {
+    @Nullable Handler mediaDrmHandler = this.mediaDrmHandler;
+    if (mediaDrmHandler != null) {
+      mediaDrmHandler.post(() -> evictPooledSessions(/* nowMs= */ Long.MAX_VALUE));
+    }
+  }
+
   // DrmSessionManager implementation.
 
   @Override
@@ -515,6 +609,7 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
     if (!multiSession) {
       session = noMultiSessionDrmSession;
     } else {
+      releaseFailedPooledSessions();
       // Only use an existing session if it has matching init data.
       session = null;
       for (DefaultDrmSession<T> existingSession : sessions) {
@@ -534,6 +629,10 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
       sessions.add(session);
     }
     session.acquire();
+    if (isSessionPoolEnabled()) {
+      // Keep the session warm after it's released by the player.
+      addToSessionPool(session);
+    }
     return session;
   }
 
@@ -558,6 +657,93 @@ public class DefaultDrmSessionManager<T extends ExoMediaCrypto> implements DrmSe
     }
   }
 
+  private boolean isSessionPoolEnabled() {
+    return sessionPoolSize > 0 && multiSession && offlineLicenseKeySetId == null;
+  }
+
+  private void prefetchSessionInternal(Looper playbackLooper, DrmInitData drmInitData) {
+    assertExpectedPlaybackLooper(playbackLooper);
+    maybeCreateMediaDrmHandler(playbackLooper);
+    List<SchemeData> schemeDatas = getSchemeDatas(drmInitData, uuid, false);
+    if (schemeDatas.isEmpty()) {
+      Log.w(TAG, "Ignoring session prefetch, as the DrmInitData has no data for: " + uuid);
+      return;
+    }
+    // The pool holds a reference to the ExoMediaDrm, as there may be no player using it yet.
+    maybePrepareSessionPool();
+    releaseFailedPooledSessions();
+    @Nullable DefaultDrmSession<T> session = null;
+    for (DefaultDrmSession<T> existingSession : sessions) {
+      if (Util.areEqual(existingSession.schemeDatas, schemeDatas)) {
+        session = existingSession;
+        break;
+      }
+    }
+    if (session == null) {
+      session = createNewDefaultSession(schemeDatas, /* isPlaceholderSession= */ false);
+      sessions.add(session);
+    }
+    addToSessionPool(session);
+  }
+
+  private void maybePrepareSessionPool() {
+    if (!sessionPoolPrepared) {
+      sessionPoolPrepared = true;
+      prepare();
+    }
+  }
+
+  private void addToSessionPool(DefaultDrmSession<T> session) {
+    maybePrepareSessionPool();
+    if (pooledSessions.remove(session) == null) {
+      // The pool holds its own reference, which opens the session and requests keys if needed.
+      session.acquire();
+    }
+    // Re-inserting moves the session to the end of the iteration order.
+    pooledSessions.put(session, SystemClock.elapsedRealtime());
+    evictPooledSessions(SystemClock.elapsedRealtime());
+  }
+
+  /**
+   * Releases pooled sessions in {@link DrmSession#STATE_ERROR}, for example after a failed prefetch
+   * license request, so that they aren't reused for a new acquisition or prefetch.
+   */
+  private void releaseFailedPooledSessions() {
+    Iterator<DefaultDrmSession<T>> iterator = pooledSessions.keySet().iterator();
+    while (iterator.hasNext()) {
+      DefaultDrmSession<T> session = iterator.next();
+      if (session.getState() == DrmSession.STATE_ERROR) {
+        iterator.remove();
+        session.release();
+      }
+    }
+  }
+
+  private void evictPooledSessions(long nowMs) {
+    Iterator<Map.Entry<DefaultDrmSession<T>, Long>> iterator =
+        pooledSessions.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<DefaultDrmSession<T>, Long> entry = iterator.next();
+      DefaultDrmSession<T> session = entry.getKey();
+      if (pooledSessions.size() > sessionPoolSize
+          || nowMs - entry.getValue() >= sessionPoolMaxAgeMs
+          || session.getState() == DrmSession.STATE_ERROR) {
+        iterator.remove();
+        session.release();
+      }
+    }
+    MediaDrmHandler mediaDrmHandler = Assertions.checkNotNull(this.mediaDrmHandler);
+    mediaDrmHandler.removeCallbacks(evictPooledSessionsRunnable);
+    if (!pooledSessions.isEmpty()) {
+      long oldestUseTimeMs = pooledSessions.values().iterator().next();
+      long delayMs = oldestUseTimeMs + sessionPoolMaxAgeMs - SystemClock.elapsedRealtime();
+      mediaDrmHandler.postDelayed(evictPooledSessionsRunnable, Math.max(0, delayMs));
+    } else if (sessionPoolPrepared) {
+      sessionPoolPrepared = false;
+      release();
+    }
+  }
+
   private DefaultDrmSession<T> createNewDefaultSession(
       @Nullable List<SchemeData> schemeDatas, boolean isPlaceholderSession) {
     Assertions.checkNotNull(exoMediaDrm);
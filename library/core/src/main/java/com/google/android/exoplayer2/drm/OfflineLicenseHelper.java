@@ -29,17 +29,53 @@ import com.google.android.exoplayer2.drm.DrmSession.DrmSessionException;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.upstream.HttpDataSource.Factory;
 import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Helper class to download, renew and release offline licenses. */
 @TargetApi(18)
 @RequiresApi(18)
 public final class OfflineLicenseHelper<T extends ExoMediaCrypto> {
 
+  /** The result of a single license operation performed by one of the batch methods. */
+  public static final class LicenseResult {
+
+    /**
+     * The key set id of the license, or null if the operation failed. For a renewal that was not
+     * required, this is the key set id that was passed in.
+     */
+    @Nullable public final byte[] keySetId;
+    /** Whether the operation renewed the license. */
+    public final boolean renewed;
+    /** The error that caused the operation to fail, or null if it succeeded. */
+    @Nullable public final DrmSessionException error;
+
+    private LicenseResult(
+        @Nullable byte[] keySetId, boolean renewed, @Nullable DrmSessionException error) {
+      this.keySetId = keySetId;
+      this.renewed = renewed;
+      this.error = error;
+    }
+  }
+
+  /** The default maximum number of license operations performed in parallel by a batch. */
+  public static final int DEFAULT_MAX_PARALLEL_LICENSE_OPERATIONS = 4;
+
   private static final DrmInitData DUMMY_DRM_INIT_DATA = new DrmInitData();
 
+  private final UUID uuid;
+  private final ExoMediaDrm.Provider<T> mediaDrmProvider;
+  private final MediaDrmCallback callback;
+  @Nullable private final Map<String, String> optionalKeyRequestParameters;
   private final ConditionVariable conditionVariable;
   private final DefaultDrmSessionManager<T> drmSessionManager;
   private final HandlerThread handlerThread;
@@ -125,6 +161,10 @@ public final class OfflineLicenseHelper<T extends ExoMediaCrypto> {
       ExoMediaDrm.Provider<T> mediaDrmProvider,
       MediaDrmCallback callback,
       @Nullable Map<String, String> optionalKeyRequestParameters) {
+    this.uuid = uuid;
+    this.mediaDrmProvider = mediaDrmProvider;
+    this.callback = callback;
+    this.optionalKeyRequestParameters = optionalKeyRequestParameters;
     handlerThread = new HandlerThread("OfflineLicenseHelper");
     handlerThread.start();
     conditionVariable = new ConditionVariable();
@@ -229,6 +269,76 @@ public final class OfflineLicenseHelper<T extends ExoMediaCrypto> {
     return Assertions.checkNotNull(licenseDurationRemainingSec);
   }
 
+  /**
+   * Downloads offline licenses for several pieces of content, performing up to {@code
+   * maxParallelism} key requests concurrently. Each concurrent request uses its own {@link
+   * ExoMediaDrm} instance. Blocks until all requests have completed.
+   *
+   * @param drmInitDatas The {@link DrmInitData} for the content whose licenses are to be
+   *     downloaded.
+   * @param maxParallelism The maximum number of licenses to download in parallel.
+   * @return The {@link LicenseResult results}, in the same order as {@code drmInitDatas}.
+   */
+  public List<LicenseResult> downloadLicenses(List<DrmInitData> drmInitDatas, int maxParallelism) {
+    return runBatch(
+        drmInitDatas,
+        maxParallelism,
+        (helper, drmInitData) ->
+            new LicenseResult(
+                helper.downloadLicense(drmInitData), /* renewed= */ false, /* error= */ null));
+  }
+
+  /**
+   * Renews several offline licenses, performing up to {@code maxParallelism} key requests
+   * concurrently. Each concurrent request uses its own {@link ExoMediaDrm} instance. Blocks until
+   * all requests have completed.
+   *
+   * @param offlineLicenseKeySetIds The key set ids of the licenses to be renewed.
+   * @param maxParallelism The maximum number of licenses to renew in parallel.
+   * @return The {@link LicenseResult results}, in the same order as {@code
+   *     offlineLicenseKeySetIds}.
+   */
+  public List<LicenseResult> renewLicenses(
+      List<byte[]> offlineLicenseKeySetIds, int maxParallelism) {
+    return runBatch(
+        offlineLicenseKeySetIds,
+        maxParallelism,
+        (helper, keySetId) ->
+            new LicenseResult(
+                helper.renewLicense(keySetId), /* renewed= */ true, /* error= */ null));
+  }
+
+  /**
+   * Renews the offline licenses whose remaining license duration is less than {@code
+   * minLicenseDurationRemainingSec}, performing up to {@code maxParallelism} queries and key
+   * requests concurrently. Blocks until all licenses have been checked.
+   *
+   * @param offlineLicenseKeySetIds The key set ids of the licenses to be checked.
+   * @param minLicenseDurationRemainingSec The remaining license duration below which a license is
+   *     renewed, in seconds.
+   * @param maxParallelism The maximum number of licenses to check or renew in parallel.
+   * @return The {@link LicenseResult results}, in the same order as {@code
+   *     offlineLicenseKeySetIds}. The key set id of a license that did not need renewing is
+   *     returned unchanged, and {@link LicenseResult#renewed} is false.
+   */
+  public List<LicenseResult> renewExpiringLicenses(
+      List<byte[]> offlineLicenseKeySetIds,
+      long minLicenseDurationRemainingSec,
+      int maxParallelism) {
+    return runBatch(
+        offlineLicenseKeySetIds,
+        maxParallelism,
+        (helper, keySetId) -> {
+          long licenseDurationRemainingSec = helper.getLicenseDurationRemainingSec(keySetId).first;
+          if (licenseDurationRemainingSec == C.TIME_UNSET
+              || licenseDurationRemainingSec >= minLicenseDurationRemainingSec) {
+            return new LicenseResult(keySetId, /* renewed= */ false, /* error= */ null);
+          }
+          return new LicenseResult(
+              helper.renewLicense(keySetId), /* renewed= */ true, /* error= */ null);
+        });
+  }
+
   /**
    * Releases the helper. Should be called when the helper is no longer required.
    */
@@ -236,6 +346,69 @@ public final class OfflineLicenseHelper<T extends ExoMediaCrypto> {
     handlerThread.quit();
   }
 
+  private <I> List<LicenseResult> runBatch(
+      List<I> inputs, int maxParallelism, LicenseOperation<I> operation) {
+    Assertions.checkArgument(maxParallelism > 0);
+    if (inputs.isEmpty()) {
+      return Collections.emptyList();
+    }
+    LicenseResult[] results = new LicenseResult[inputs.size()];
+    int workerCount = Math.min(maxParallelism, inputs.size());
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(
+            workerCount, runnable -> new Thread(runnable, "OfflineLicenseHelper:Batch"));
+    AtomicInteger nextIndex = new AtomicInteger();
+    List<Future<?>> futures = new ArrayList<>(workerCount);
+    try {
+      for (int i = 0; i < workerCount; i++) {
+        futures.add(
+            executorService.submit(
+                () -> {
+                  // Each worker uses its own helper, since a session manager has a single mode and
+                  // key set id, and its own ExoMediaDrm, since a session manager sets the event
+                  // listener of its ExoMediaDrm. The ExoMediaDrm is kept for all the licenses
+                  // handled by the worker, rather than being opened for every license.
+                  ExoMediaDrm<T> mediaDrm = mediaDrmProvider.acquireExoMediaDrm(uuid);
+                  OfflineLicenseHelper<T> helper =
+                      new OfflineLicenseHelper<>(
+                          uuid,
+                          new ExoMediaDrm.AppManagedProvider<>(mediaDrm),
+                          callback,
+                          optionalKeyRequestParameters);
+                  try {
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < results.length) {
+                      try {
+                        results[index] = operation.run(helper, inputs.get(index));
+                      } catch (DrmSessionException e) {
+                        results[index] =
+                            new LicenseResult(/* keySetId= */ null, /* renewed= */ false, e);
+                      }
+                    }
+                  } finally {
+                    helper.release();
+                    mediaDrm.release();
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } finally {
+      executorService.shutdownNow();
+    }
+    return Collections.unmodifiableList(Arrays.asList(results));
+  }
+
   private byte[] blockingKeyRequest(
       @Mode int licenseMode, @Nullable byte[] offlineLicenseKeySetId, DrmInitData drmInitData)
       throws DrmSessionException {
@@ -263,4 +436,8 @@ public final class OfflineLicenseHelper<T extends ExoMediaCrypto> {
     return drmSession;
   }
 
+  private interface LicenseOperation<I> {
+
+    LicenseResult run(OfflineLicenseHelper<?> helper, I input) throws DrmSessionException;
+  }
 }
@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.amr.AmrExtractor;
+import com.google.android.exoplayer2.extractor.flv.FlvExtractor;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer2.extractor.ts.Ac3Extractor;
+import com.google.android.exoplayer2.extractor.ts.Ac4Extractor;
+import com.google.android.exoplayer2.extractor.ts.AdtsExtractor;
+import com.google.android.exoplayer2.extractor.ts.PsExtractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.extractor.wav.WavExtractor;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the {@link Extractor} that can read an input from a list of candidates.
+ *
+ * <p>A bounded prefix of the input is peeked once, and each candidate's {@link
+ * Extractor#sniff(ExtractorInput)} is evaluated against an in-memory copy of that prefix. A
+ * candidate whose sniff needs data beyond the prefix is sniffed again against the input itself.
+ * Candidates hinted by the MIME type in the response headers are tried first, followed by those
+ * hinted by the file extension of the {@link Uri}, followed by the remaining candidates in their
+ * original order. As with sequential sniffing, the first candidate whose sniff succeeds is
+ * selected.
+ */
+public final class ExtractorSniffer {
+
+  /** The maximum number of bytes that are peeked from the input before sniffing. */
+  public static final int PREFIX_LENGTH = 16 * 1024;
+
+  private static final int PEEK_CHUNK_LENGTH = 4096;
+
+  private static final String FLAC_EXTRACTOR_CLASS_NAME =
+      "com.google.android.exoplayer2.ext.flac.FlacExtractor";
+
+  private static final int RANK_MIME_TYPE_HINT = 0;
+  private static final int RANK_FILE_EXTENSION_HINT = 1;
+  private static final int RANK_UNHINTED = 2;
+
+  private static final Map<String, List<String>> MIME_TYPE_HINTS = new HashMap<>();
+  private static final Map<String, List<String>> FILE_EXTENSION_HINTS = new HashMap<>();
+
+  static {
+    addHints(
+        MatroskaExtractor.class.getName(),
+        new String[] {
+          MimeTypes.VIDEO_WEBM, MimeTypes.AUDIO_WEBM, "video/x-matroska", "audio/x-matroska"
+        },
+        new String[] {"mkv", "mka", "mks", "webm"});
+    String[] mp4MimeTypes =
+        new String[] {MimeTypes.VIDEO_MP4, MimeTypes.AUDIO_MP4, MimeTypes.APPLICATION_MP4};
+    String[] mp4FileExtensions =
+        new String[] {"mp4", "m4a", "m4v", "mov", "3gp", "3g2", "cmfa", "cmfv", "mp4a", "mp4v"};
+    addHints(FragmentedMp4Extractor.class.getName(), mp4MimeTypes, mp4FileExtensions);
+    addHints(Mp4Extractor.class.getName(), mp4MimeTypes, mp4FileExtensions);
+    addHints(
+        Mp3Extractor.class.getName(),
+        new String[] {MimeTypes.AUDIO_MPEG, "audio/mp3"},
+        new String[] {"mp3"});
+    addHints(
+        AdtsExtractor.class.getName(),
+        new String[] {"audio/aac", "audio/x-aac", "audio/aacp"},
+        new String[] {"aac"});
+    addHints(
+        Ac3Extractor.class.getName(),
+        new String[] {MimeTypes.AUDIO_AC3, MimeTypes.AUDIO_E_AC3},
+        new String[] {"ac3", "ec3", "eac3"});
+    addHints(
+        TsExtractor.class.getName(),
+        new String[] {"video/mp2t"},
+        new String[] {"ts", "m2ts", "mts"});
+    addHints(
+        FlvExtractor.class.getName(), new String[] {"video/x-flv"}, new String[] {"flv"});
+    addHints(
+        OggExtractor.class.getName(),
+        new String[] {"audio/ogg", "video/ogg", "application/ogg", MimeTypes.AUDIO_OPUS},
+        new String[] {"ogg", "oga", "ogv", "opus"});
+    addHints(
+        PsExtractor.class.getName(),
+        new String[] {MimeTypes.VIDEO_MPEG, "video/mp2p"},
+        new String[] {"mpg", "mpeg", "ps", "vob"});
+    addHints(
+        WavExtractor.class.getName(),
+        new String[] {"audio/wav", "audio/x-wav", "audio/wave", "audio/vnd.wave"},
+        new String[] {"wav", "wave"});
+    addHints(
+        AmrExtractor.class.getName(),
+        new String[] {"audio/amr", MimeTypes.AUDIO_AMR_NB, MimeTypes.AUDIO_AMR_WB},
+        new String[] {"amr"});
+    addHints(Ac4Extractor.class.getName(), new String[] {MimeTypes.AUDIO_AC4}, new String[] {"ac4"});
+    addHints(
+        FLAC_EXTRACTOR_CLASS_NAME,
+        new String[] {MimeTypes.AUDIO_FLAC, "audio/x-flac"},
+        new String[] {"flac"});
+  }
+
+  private ExtractorSniffer() {}
+
+  /**
+   * Returns the first of {@code extractors} that can read {@code input}, or null if none of them
+   * can. The peek position of {@code input} is reset before returning.
+   *
+   * @param extractors The candidate extractors.
+   * @param input The {@link ExtractorInput} from which data should be peeked.
+   * @param uri The {@link Uri} of the data, or null if unknown.
+   * @param responseHeaders The response headers of the data, which may be empty.
+   * @return The selected extractor, or null if none of the extractors can read the input.
+   * @throws IOException If an error occurs reading from the input.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  @Nullable
+  public static Extractor sniff(
+      Extractor[] extractors,
+      ExtractorInput input,
+      @Nullable Uri uri,
+      Map<String, List<String>> responseHeaders)
+      throws IOException, InterruptedException {
+    return sniff(extractors, input, uri, responseHeaders, PREFIX_LENGTH);
+  }
+
+  @Nullable
+  /* package */ static Extractor sniff(
+      Extractor[] extractors,
+      ExtractorInput input,
+      @Nullable Uri uri,
+      Map<String, List<String>> responseHeaders,
+      int prefixLength)
+      throws IOException, InterruptedException {
+    List<Extractor> orderedExtractors =
+        orderByHints(extractors, getContentType(responseHeaders), getFileExtension(uri));
+    byte[] prefix = new byte[prefixLength];
+    int prefixBytes;
+    try {
+      prefixBytes = peekPrefix(input, prefix);
+    } finally {
+      input.resetPeekPosition();
+    }
+    PrefixExtractorInput prefixInput =
+        new PrefixExtractorInput(
+            prefix,
+            prefixBytes,
+            /* isTruncated= */ prefixBytes == prefixLength,
+            input.getPosition(),
+            input.getLength());
+    for (int i = 0; i < orderedExtractors.size(); i++) {
+      Extractor extractor = orderedExtractors.get(i);
+      prefixInput.reset();
+      boolean sniffed = sniffQuietly(extractor, prefixInput);
+      if (prefixInput.readBeyondPrefix) {
+        // The result is inconclusive, so sniff the input itself.
+        try {
+          sniffed = sniffQuietly(extractor, input);
+        } finally {
+          input.resetPeekPosition();
+        }
+      }
+      if (sniffed) {
+        return extractor;
+      }
+    }
+    return null;
+  }
+
+  // Internal methods.
+
+  private static void addHints(
+      String extractorClassName, String[] mimeTypes, String[] fileExtensions) {
+    for (String mimeType : mimeTypes) {
+      addHint(MIME_TYPE_HINTS, mimeType, extractorClassName);
+    }
+    for (String fileExtension : fileExtensions) {
+      addHint(FILE_EXTENSION_HINTS, fileExtension, extractorClassName);
+    }
+  }
+
+  private static void addHint(
+      Map<String, List<String>> hints, String key, String extractorClassName) {
+    List<String> extractorClassNames = hints.get(key);
+    if (extractorClassNames == null) {
+      extractorClassNames = new ArrayList<>();
+      hints.put(key, extractorClassNames);
+    }
+    extractorClassNames.add(extractorClassName);
+  }
+
+  private static List<Extractor> orderByHints(
+      Extractor[] extractors, @Nullable String mimeType, @Nullable String fileExtension) {
+    List<String> mimeTypeHints = getHints(MIME_TYPE_HINTS, mimeType);
+    List<String> fileExtensionHints = getHints(FILE_EXTENSION_HINTS, fileExtension);
+    List<Extractor> orderedExtractors = new ArrayList<>(extractors.length);
+    for (int rank = RANK_MIME_TYPE_HINT; rank <= RANK_UNHINTED; rank++) {
+      for (Extractor extractor : extractors) {
+        String extractorClassName = extractor.getClass().getName();
+        int extractorRank =
+            mimeTypeHints.contains(extractorClassName)
+                ? RANK_MIME_TYPE_HINT
+                : fileExtensionHints.contains(extractorClassName)
+                    ? RANK_FILE_EXTENSION_HINT
+                    : RANK_UNHINTED;
+        if (extractorRank == rank) {
+          orderedExtractors.add(extractor);
+        }
+      }
+    }
+    return orderedExtractors;
+  }
+
+  private static List<String> getHints(Map<String, List<String>> hints, @Nullable String key) {
+    @Nullable List<String> extractorClassNames = key == null ? null : hints.get(key);
+    return extractorClassNames == null ? Collections.emptyList() : extractorClassNames;
+  }
+
+  @Nullable
+  private static String getContentType(Map<String, List<String>> responseHeaders) {
+    for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+      List<String> values = header.getValue();
+      if ("Content-Type".equalsIgnoreCase(header.getKey())
+          && values != null
+          && !values.isEmpty()) {
+        String contentType = values.get(0);
+        int parametersIndex = contentType.indexOf(';');
+        if (parametersIndex != C.INDEX_UNSET) {
+          contentType = contentType.substring(0, parametersIndex);
+        }
+        return Util.toLowerInvariant(contentType.trim());
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String getFileExtension(@Nullable Uri uri) {
+    @Nullable String lastPathSegment = uri == null ? null : uri.getLastPathSegment();
+    if (lastPathSegment == null) {
+      return null;
+    }
+    int extensionIndex = lastPathSegment.lastIndexOf('.');
+    return extensionIndex == C.INDEX_UNSET
+        ? null
+        : Util.toLowerInvariant(lastPathSegment.substring(extensionIndex + 1));
+  }
+
+  /**
+   * Peeks up to {@code prefix.length} bytes from {@code input} into {@code prefix}, returning the
+   * number of bytes peeked. Fewer bytes are peeked only if the end of the input is reached.
+   */
+  private static int peekPrefix(ExtractorInput input, byte[] prefix)
+      throws IOException, InterruptedException {
+    int prefixBytes = 0;
+    while (prefixBytes < prefix.length) {
+      int chunkLength = Math.min(PEEK_CHUNK_LENGTH, prefix.length - prefixBytes);
+      try {
+        if (!input.peekFully(prefix, prefixBytes, chunkLength, /* allowEndOfInput= */ true)) {
+          break;
+        }
+        prefixBytes += chunkLength;
+      } catch (EOFException e) {
+        // The input ended part way through the chunk. The partially peeked bytes are buffered by
+        // the input, so peeking them one at a time is cheap.
+        while (input.peekFully(prefix, prefixBytes, /* length= */ 1, /* allowEndOfInput= */ true)) {
+          prefixBytes++;
+        }
+        break;
+      }
+    }
+    return prefixBytes;
+  }
+
+  private static boolean sniffQuietly(Extractor extractor, ExtractorInput input)
+      throws IOException, InterruptedException {
+    try {
+      return extractor.sniff(input);
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  /**
+   * An {@link ExtractorInput} backed by a prefix of another input, which records whether data
+   * beyond the prefix was requested.
+   */
+  private static final class PrefixExtractorInput implements ExtractorInput {
+
+    private final byte[] data;
+    private final int dataLength;
+    private final boolean isTruncated;
+    private final long startPosition;
+    private final long streamLength;
+
+    private int readOffset;
+    private int peekOffset;
+
+    /**
+     * Whether data beyond the end of the prefix was requested when the prefix does not extend to
+     * the end of the input.
+     */
+    public boolean readBeyondPrefix;
+
+    public PrefixExtractorInput(
+        byte[] data, int dataLength, boolean isTruncated, long startPosition, long streamLength) {
+      this.data = data;
+      this.dataLength = dataLength;
+      this.isTruncated = isTruncated;
+      this.startPosition = startPosition;
+      this.streamLength = streamLength;
+    }
+
+    public void reset() {
+      readOffset = 0;
+      peekOffset = 0;
+      readBeyondPrefix = false;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws EOFException {
+      if (length == 0) {
+        return 0;
+      }
+      if (readOffset == dataLength) {
+        checkNotTruncated();
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesRead = Math.min(length, dataLength - readOffset);
+      System.arraycopy(data, readOffset, target, offset, bytesRead);
+      commitRead(bytesRead);
+      return bytesRead;
+    }
+
+    @Override
+    public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
+        throws EOFException {
+      if (!checkAvailable(readOffset, length, allowEndOfInput)) {
+        return false;
+      }
+      System.arraycopy(data, readOffset, target, offset, length);
+      commitRead(length);
+      return true;
+    }
+
+    @Override
+    public void readFully(byte[] target, int offset, int length) throws EOFException {
+      readFully(target, offset, length, /* allowEndOfInput= */ false);
+    }
+
+    @Override
+    public int skip(int length) throws EOFException {
+      if (length == 0) {
+        return 0;
+      }
+      if (readOffset == dataLength) {
+        checkNotTruncated();
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesSkipped = Math.min(length, dataLength - readOffset);
+      commitRead(bytesSkipped);
+      return bytesSkipped;
+    }
+
+    @Override
+    public boolean skipFully(int length, boolean allowEndOfInput) throws EOFException {
+      if (!checkAvailable(readOffset, length, allowEndOfInput)) {
+        return false;
+      }
+      commitRead(length);
+      return true;
+    }
+
+    @Override
+    public void skipFully(int length) throws EOFException {
+      skipFully(length, /* allowEndOfInput= */ false);
+    }
+
+    @Override
+    public boolean peekFully(byte[] target, int offset, int length, boolean allowEndOfInput)
+        throws EOFException {
+      if (!checkAvailable(peekOffset, length, allowEndOfInput)) {
+        return false;
+      }
+      System.arraycopy(data, peekOffset, target, offset, length);
+      peekOffset += length;
+      return true;
+    }
+
+    @Override
+    public void peekFully(byte[] target, int offset, int length) throws EOFException {
+      peekFully(target, offset, length, /* allowEndOfInput= */ false);
+    }
+
+    @Override
+    public boolean advancePeekPosition(int length, boolean allowEndOfInput)
+        throws EOFException {
+      if (!checkAvailable(peekOffset, length, allowEndOfInput)) {
+        return false;
+      }
+      peekOffset += length;
+      return true;
+    }
+
+    @Override
+    public void advancePeekPosition(int length) throws EOFException {
+      advancePeekPosition(length, /* allowEndOfInput= */ false);
+    }
+
+    @Override
+    public void resetPeekPosition() {
+      peekOffset = readOffset;
+    }
+
+    @Override
+    public long getPeekPosition() {
+      return startPosition + peekOffset;
+    }
+
+    @Override
+    public long getPosition() {
+      return startPosition + readOffset;
+    }
+
+    @Override
+    public long getLength() {
+      return streamLength;
+    }
+
+    @Override
+    public <E extends Throwable> void setRetryPosition(long position, E e) throws E {
+      Assertions.checkArgument(position >= 0);
+      throw e;
+    }
+
+    private boolean checkAvailable(int offset, int length, boolean allowEndOfInput)
+        throws EOFException {
+      if (offset + length <= dataLength) {
+        return true;
+      }
+      checkNotTruncated();
+      if (offset == dataLength && allowEndOfInput) {
+        return false;
+      }
+      throw new EOFException();
+    }
+
+    private void checkNotTruncated() throws EOFException {
+      if (isTruncated) {
+        readBeyondPrefix = true;
+        throw new EOFException();
+      }
+    }
+
+    private void commitRead(int length) {
+      readOffset += length;
+      peekOffset = readOffset;
+    }
+  }
+}
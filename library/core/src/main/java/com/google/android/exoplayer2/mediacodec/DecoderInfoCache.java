@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import android.media.MediaCodecInfo.CodecProfileLevel;
+import android.os.Build;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.ExoPlayerLibraryInfo;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A persistent cache of decoder information, used by {@link MediaCodecUtil} to avoid querying
+ * {@link android.media.MediaCodecList} and decoder capabilities in every process. Querying the
+ * decoders can take hundreds of milliseconds on some devices, and the results are needed before
+ * the first frame of a playback can be rendered.
+ *
+ * <p>The cache stores the decoders listed for each queried MIME type, and the results of {@link
+ * MediaCodecInfo#isFormatSupported(Format)} for each queried decoder and format. It's invalidated
+ * if the device's build fingerprint, the platform version or the library version changes. Changes
+ * are written to disk on a background thread.
+ *
+ * <p>To use the cache, pass an instance to {@link MediaCodecUtil#setDecoderInfoCache}.
+ */
+public final class DecoderInfoCache {
+
+  private static final String TAG = "DecoderInfoCache";
+
+  private static final int VERSION = 2;
+
+  private static final int FLAG_HARDWARE_ACCELERATED = 1;
+  private static final int FLAG_SOFTWARE_ONLY = 1 << 1;
+  private static final int FLAG_VENDOR = 1 << 2;
+  private static final int FLAG_ADAPTIVE = 1 << 3;
+  private static final int FLAG_TUNNELING = 1 << 4;
+  private static final int FLAG_SECURE = 1 << 5;
+
+  private final AtomicFile atomicFile;
+  private final String deviceKey;
+  private final HashMap<String, List<MediaCodecInfo>> decoderInfos;
+  private final HashMap<String, Boolean> formatSupport;
+
+  @Nullable private ExecutorService writeExecutor;
+  private boolean loaded;
+  private boolean changed;
+  private boolean writePending;
+
+  /**
+   * Creates an instance. The cache is loaded from the file when it's first used, or when {@link
+   * #load()} is called.
+   *
+   * @param file The file in which to persist the cache, for example in the application's cache
+   *     directory.
+   */
+  public DecoderInfoCache(File file) {
+    atomicFile = new AtomicFile(file);
+    deviceKey = Build.FINGERPRINT + "/" + Util.SDK_INT + "/" + ExoPlayerLibraryInfo.VERSION_INT;
+    decoderInfos = new HashMap<>();
+    formatSupport = new HashMap<>();
+  }
+
+  /**
+   * Loads the cache from disk, if it's not been loaded already. This is done automatically when the
+   * cache is first used, but may be called in advance from a background thread.
+   */
+  public synchronized void load() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    if (!readFile()) {
+      decoderInfos.clear();
+      formatSupport.clear();
+      atomicFile.delete();
+    }
+  }
+
+  /**
+   * Writes any changes to disk on the calling thread. Changes are otherwise written on a background
+   * thread shortly after they're made.
+   *
+   * @throws IOException If an error occurs writing to disk.
+   */
+  public synchronized void flush() throws IOException {
+    writePending = false;
+    if (!changed) {
+      return;
+    }
+    writeFile();
+    changed = false;
+  }
+
+  /** Deletes all cached decoder information, both in memory and on disk. */
+  public synchronized void clear() {
+    loaded = true;
+    changed = false;
+    decoderInfos.clear();
+    formatSupport.clear();
+    atomicFile.delete();
+  }
+
+  /** Releases the background thread used to write changes to disk. Pending changes are written. */
+  public synchronized void release() {
+    try {
+      flush();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to write decoder info cache", e);
+    }
+    if (writeExecutor != null) {
+      writeExecutor.shutdown();
+      writeExecutor = null;
+    }
+  }
+
+  /**
+   * Returns the cached decoder information for the given query, or {@code null} if the query isn't
+   * cached.
+   */
+  @Nullable
+  /* package */ synchronized List<MediaCodecInfo> getDecoderInfos(
+      String mimeType, boolean secure, boolean tunneling) {
+    load();
+    return decoderInfos.get(getDecoderInfosKey(mimeType, secure, tunneling));
+  }
+
+  /** Caches decoder information for the given query. */
+  /* package */ synchronized void putDecoderInfos(
+      String mimeType, boolean secure, boolean tunneling, List<MediaCodecInfo> infos) {
+    load();
+    decoderInfos.put(getDecoderInfosKey(mimeType, secure, tunneling), infos);
+    onChanged();
+  }
+
+  /**
+   * Returns the cached result of {@link MediaCodecInfo#isFormatSupported(Format)} for the given
+   * key, or {@code null} if the result isn't cached.
+   *
+   * @param key A key obtained from {@link #getFormatSupportKey(MediaCodecInfo, Format)}.
+   */
+  @Nullable
+  /* package */ synchronized Boolean getFormatSupport(String key) {
+    load();
+    return formatSupport.get(key);
+  }
+
+  /**
+   * Caches the result of {@link MediaCodecInfo#isFormatSupported(Format)}.
+   *
+   * @param key A key obtained from {@link #getFormatSupportKey(MediaCodecInfo, Format)}.
+   * @param isFormatSupported Whether the format is supported.
+   */
+  /* package */ synchronized void putFormatSupport(String key, boolean isFormatSupported) {
+    load();
+    formatSupport.put(key, isFormatSupported);
+    onChanged();
+  }
+
+  /**
+   * Returns the key identifying a format support query. It consists of the decoder and the format
+   * properties that {@link MediaCodecInfo#isFormatSupported(Format)} depends on.
+   */
+  /* package */ static String getFormatSupportKey(MediaCodecInfo decoderInfo, Format format) {
+    return decoderInfo.name
+        + "|"
+        + decoderInfo.mimeType
+        + "|"
+        + format.sampleMimeType
+        + "|"
+        + format.codecs
+        + "|"
+        + format.width
+        + "x"
+        + format.height
+        + "@"
+        + format.frameRate
+        + "|"
+        + format.sampleRate
+        + "|"
+        + format.channelCount
+        + "|"
+        + format.colorInfo;
+  }
+
+  private static String getDecoderInfosKey(String mimeType, boolean secure, boolean tunneling) {
+    return mimeType + "|" + secure + "|" + tunneling;
+  }
+
+  private void onChanged() {
+    changed = true;
+    if (writePending) {
+      return;
+    }
+    writePending = true;
+    if (writeExecutor == null) {
+      writeExecutor = Util.newSingleThreadExecutor("ExoPlayer:DecoderInfoCache");
+    }
+    writeExecutor.execute(
+        () -> {
+          try {
+            flush();
+          } catch (IOException e) {
+            Log.e(TAG, "Failed to write decoder info cache", e);
+          }
+        });
+  }
+
+  private boolean readFile() {
+    if (!atomicFile.exists()) {
+      return true;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(atomicFile.openRead()));
+      int version = input.readInt();
+      if (version != VERSION || !deviceKey.equals(input.readUTF())) {
+        return false;
+      }
+      int queryCount = input.readInt();
+      for (int i = 0; i < queryCount; i++) {
+        String key = input.readUTF();
+        int infoCount = input.readInt();
+        List<MediaCodecInfo> infos = new ArrayList<>(infoCount);
+        for (int j = 0; j < infoCount; j++) {
+          infos.add(readDecoderInfo(input));
+        }
+        decoderInfos.put(key, Collections.unmodifiableList(infos));
+      }
+      int formatSupportCount = input.readInt();
+      for (int i = 0; i < formatSupportCount; i++) {
+        formatSupport.put(input.readUTF(), input.readBoolean());
+      }
+      return input.read() == -1;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read decoder info cache", e);
+      return false;
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  private void writeFile() throws IOException {
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+      output.writeInt(VERSION);
+      output.writeUTF(deviceKey);
+      output.writeInt(decoderInfos.size());
+      for (Map.Entry<String, List<MediaCodecInfo>> entry : decoderInfos.entrySet()) {
+        output.writeUTF(entry.getKey());
+        List<MediaCodecInfo> infos = entry.getValue();
+        output.writeInt(infos.size());
+        for (int i = 0; i < infos.size(); i++) {
+          writeDecoderInfo(infos.get(i), output);
+        }
+      }
+      output.writeInt(formatSupport.size());
+      for (Map.Entry<String, Boolean> entry : formatSupport.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeBoolean(entry.getValue());
+      }
+      atomicFile.endWrite(output);
+      output = null;
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+
+  private static MediaCodecInfo readDecoderInfo(DataInputStream input) throws IOException {
+    String name = input.readUTF();
+    String mimeType = input.readUTF();
+    String codecMimeType = input.readUTF();
+    int flags = input.readInt();
+    int maxSupportedInstances = input.readInt();
+    CodecProfileLevel[] profileLevels = new CodecProfileLevel[input.readInt()];
+    for (int i = 0; i < profileLevels.length; i++) {
+      CodecProfileLevel profileLevel = new CodecProfileLevel();
+      profileLevel.profile = input.readInt();
+      profileLevel.level = input.readInt();
+      profileLevels[i] = profileLevel;
+    }
+    return MediaCodecInfo.newRestoredInstance(
+        name,
+        mimeType,
+        codecMimeType,
+        /* hardwareAccelerated= */ (flags & FLAG_HARDWARE_ACCELERATED) != 0,
+        /* softwareOnly= */ (flags & FLAG_SOFTWARE_ONLY) != 0,
+        /* vendor= */ (flags & FLAG_VENDOR) != 0,
+        /* adaptive= */ (flags & FLAG_ADAPTIVE) != 0,
+        /* tunneling= */ (flags & FLAG_TUNNELING) != 0,
+        /* secure= */ (flags & FLAG_SECURE) != 0,
+        profileLevels,
+        maxSupportedInstances);
+  }
+
+  private static void writeDecoderInfo(MediaCodecInfo info, DataOutputStream output)
+      throws IOException {
+    output.writeUTF(info.name);
+    output.writeUTF(Util.castNonNull(info.mimeType));
+    output.writeUTF(Util.castNonNull(info.codecMimeType));
+    int flags =
+        (info.hardwareAccelerated ? FLAG_HARDWARE_ACCELERATED : 0)
+            | (info.softwareOnly ? FLAG_SOFTWARE_ONLY : 0)
+            | (info.vendor ? FLAG_VENDOR : 0)
+            | (info.adaptive ? FLAG_ADAPTIVE : 0)
+            | (info.tunneling ? FLAG_TUNNELING : 0)
+            | (info.secure ? FLAG_SECURE : 0);
+    output.writeInt(flags);
+    output.writeInt(info.getMaxSupportedInstances());
+    CodecProfileLevel[] profileLevels = info.getProfileLevels();
+    output.writeInt(profileLevels.length);
+    for (CodecProfileLevel profileLevel : profileLevels) {
+      output.writeInt(profileLevel.profile);
+      output.writeInt(profileLevel.level);
+    }
+  }
+}
@@ -122,6 +122,13 @@ public final class MediaCodecInfo {
 
   private final boolean isVideo;
 
+  // Instances restored from a DecoderInfoCache have no capabilities until they're needed.
+  private final boolean isRestored;
+  @Nullable private final CodecProfileLevel[] restoredProfileLevels;
+  private final int restoredMaxSupportedInstances;
+  @Nullable private CodecCapabilities restoredCapabilities;
+  private boolean restoredCapabilitiesQueried;
+
   /**
    * Creates an instance representing an audio passthrough decoder.
    *
@@ -181,6 +188,37 @@ public final class MediaCodecInfo {
         forceSecure);
   }
 
+  /**
+   * Creates an instance restored from a {@link DecoderInfoCache}. The {@link #capabilities} of the
+   * instance are {@code null}. If they're needed to answer a query, they're queried from {@link
+   * android.media.MediaCodecList} at that point.
+   */
+  /* package */ static MediaCodecInfo newRestoredInstance(
+      String name,
+      String mimeType,
+      String codecMimeType,
+      boolean hardwareAccelerated,
+      boolean softwareOnly,
+      boolean vendor,
+      boolean adaptive,
+      boolean tunneling,
+      boolean secure,
+      CodecProfileLevel[] profileLevels,
+      int maxSupportedInstances) {
+    return new MediaCodecInfo(
+        name,
+        mimeType,
+        codecMimeType,
+        hardwareAccelerated,
+        softwareOnly,
+        vendor,
+        adaptive,
+        tunneling,
+        secure,
+        profileLevels,
+        maxSupportedInstances);
+  }
+
   private MediaCodecInfo(
       String name,
       @Nullable String mimeType,
@@ -204,6 +242,38 @@ public final class MediaCodecInfo {
     tunneling = capabilities != null && isTunneling(capabilities);
     secure = forceSecure || (capabilities != null && isSecure(capabilities));
     isVideo = MimeTypes.isVideo(mimeType);
+    isRestored = false;
+    restoredProfileLevels = null;
+    restoredMaxSupportedInstances = MAX_SUPPORTED_INSTANCES_UNKNOWN;
+  }
+
+  private MediaCodecInfo(
+      String name,
+      String mimeType,
+      String codecMimeType,
+      boolean hardwareAccelerated,
+      boolean softwareOnly,
+      boolean vendor,
+      boolean adaptive,
+      boolean tunneling,
+      boolean secure,
+      CodecProfileLevel[] profileLevels,
+      int maxSupportedInstances) {
+    this.name = name;
+    this.mimeType = mimeType;
+    this.codecMimeType = codecMimeType;
+    this.capabilities = null;
+    this.passthrough = false;
+    this.hardwareAccelerated = hardwareAccelerated;
+    this.softwareOnly = softwareOnly;
+    this.vendor = vendor;
+    this.adaptive = adaptive;
+    this.tunneling = tunneling;
+    this.secure = secure;
+    isVideo = MimeTypes.isVideo(mimeType);
+    isRestored = true;
+    restoredProfileLevels = profileLevels;
+    restoredMaxSupportedInstances = maxSupportedInstances;
   }
 
   @Override
@@ -217,6 +287,9 @@ public final class MediaCodecInfo {
    * @return The profile levels supported by the decoder.
    */
   public CodecProfileLevel[] getProfileLevels() {
+    if (restoredProfileLevels != null) {
+      return restoredProfileLevels;
+    }
     return capabilities == null || capabilities.profileLevels == null ? new CodecProfileLevel[0]
         : capabilities.profileLevels;
   }
@@ -229,6 +302,9 @@ public final class MediaCodecInfo {
    * @see CodecCapabilities#getMaxSupportedInstances()
    */
   public int getMaxSupportedInstances() {
+    if (isRestored) {
+      return restoredMaxSupportedInstances;
+    }
     return (Util.SDK_INT < 23 || capabilities == null)
         ? MAX_SUPPORTED_INSTANCES_UNKNOWN
         : getMaxSupportedInstancesV23(capabilities);
@@ -242,6 +318,22 @@ public final class MediaCodecInfo {
    * @throws MediaCodecUtil.DecoderQueryException Thrown if an error occurs while querying decoders.
    */
   public boolean isFormatSupported(Format format) throws MediaCodecUtil.DecoderQueryException {
+    @Nullable DecoderInfoCache decoderInfoCache = MediaCodecUtil.getDecoderInfoCache();
+    if (decoderInfoCache == null || passthrough) {
+      return isFormatSupportedInternal(format);
+    }
+    String formatSupportKey = DecoderInfoCache.getFormatSupportKey(this, format);
+    @Nullable Boolean cachedFormatSupport = decoderInfoCache.getFormatSupport(formatSupportKey);
+    if (cachedFormatSupport != null) {
+      return cachedFormatSupport;
+    }
+    boolean isFormatSupported = isFormatSupportedInternal(format);
+    decoderInfoCache.putFormatSupport(formatSupportKey, isFormatSupported);
+    return isFormatSupported;
+  }
+
+  private boolean isFormatSupportedInternal(Format format)
+      throws MediaCodecUtil.DecoderQueryException {
     if (!isCodecSupported(format)) {
       return false;
     }
@@ -395,6 +487,7 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isVideoSizeAndRateSupportedV21(int width, int height, double frameRate) {
+    @Nullable CodecCapabilities capabilities = getCapabilities();
     if (capabilities == null) {
       logNoSupport("sizeAndRate.caps");
       return false;
@@ -430,6 +523,7 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public Point alignVideoSizeV21(int width, int height) {
+    @Nullable CodecCapabilities capabilities = getCapabilities();
     if (capabilities == null) {
       return null;
     }
@@ -450,6 +544,7 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isAudioSampleRateSupportedV21(int sampleRate) {
+    @Nullable CodecCapabilities capabilities = getCapabilities();
     if (capabilities == null) {
       logNoSupport("sampleRate.caps");
       return false;
@@ -476,6 +571,7 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isAudioChannelCountSupportedV21(int channelCount) {
+    @Nullable CodecCapabilities capabilities = getCapabilities();
     if (capabilities == null) {
       logNoSupport("channelCount.caps");
       return false;
@@ -494,6 +590,20 @@ public final class MediaCodecInfo {
     return true;
   }
 
+  @Nullable
+  private CodecCapabilities getCapabilities() {
+    if (!isRestored) {
+      return capabilities;
+    }
+    synchronized (this) {
+      if (!restoredCapabilitiesQueried) {
+        restoredCapabilities = MediaCodecUtil.getCodecCapabilities(name, codecMimeType, secure);
+        restoredCapabilitiesQueried = true;
+      }
+      return restoredCapabilities;
+    }
+  }
+
   private void logNoSupport(String message) {
     Log.d(TAG, "NoSupport [" + message + "] [" + name + ", " + mimeType + "] ["
         + Util.DEVICE_DEBUG_INFO + "]");
@@ -44,6 +44,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.NalUnitUtil;
 import com.google.android.exoplayer2.util.TimedValueQueue;
+import com.google.android.exoplayer2.util.PlaybackInstrumentation;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.lang.annotation.Documented;
@@ -706,8 +707,11 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       if (codec != null) {
         long drainStartTimeMs = SystemClock.elapsedRealtime();
         TraceUtil.beginSection("drainAndFeed");
+        long drainAndFeedStartTimeNs = TraceUtil.startStage();
         while (drainOutputBuffer(positionUs, elapsedRealtimeUs)) {}
         while (feedInputBuffer() && shouldContinueFeeding(drainStartTimeMs)) {}
+        TraceUtil.endStage(
+            PlaybackInstrumentation.STAGE_CODEC_DRAIN_AND_FEED, drainAndFeedStartTimeNs);
         TraceUtil.endSection();
       } else {
         decoderCounters.skippedInputBufferCount += skipSource(positionUs);
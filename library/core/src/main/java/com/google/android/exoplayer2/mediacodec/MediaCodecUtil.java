@@ -65,6 +65,8 @@ public final class MediaCodecUtil {
 
   private static final HashMap<CodecKey, List<MediaCodecInfo>> decoderInfosCache = new HashMap<>();
 
+  @Nullable private static volatile DecoderInfoCache decoderInfoCache;
+
   // Codecs to constant mappings.
   // AVC.
   private static final SparseIntArray AVC_PROFILE_NUMBER_TO_CONST;
@@ -115,6 +117,51 @@ public final class MediaCodecUtil {
     }
   }
 
+  /**
+   * Warms the codec cache for the given mime types on a background thread. If a {@link
+   * DecoderInfoCache} is set, it's loaded first, so that the decoder information persisted by a
+   * previous process is available by the time a player needs it.
+   *
+   * <p>This method may be called at application start to take decoder queries off the critical
+   * path of the first playback. Decoders are warmed for non-secure, non-tunneling playback only.
+   *
+   * @param mimeTypes The mime types, for example {@link MimeTypes#VIDEO_H264} and {@link
+   *     MimeTypes#AUDIO_AAC}.
+   */
+  public static void warmDecoderInfoCacheAsync(String... mimeTypes) {
+    String[] mimeTypesCopy = mimeTypes.clone();
+    new Thread("ExoPlayer:DecoderInfoWarmUp") {
+      @Override
+      public void run() {
+        @Nullable DecoderInfoCache decoderInfoCache = MediaCodecUtil.decoderInfoCache;
+        if (decoderInfoCache != null) {
+          decoderInfoCache.load();
+        }
+        for (String mimeType : mimeTypesCopy) {
+          warmDecoderInfoCache(mimeType, /* secure= */ false, /* tunneling= */ false);
+        }
+      }
+    }.start();
+  }
+
+  /**
+   * Sets a {@link DecoderInfoCache} that persists the results of decoder queries across processes.
+   * Decoder information found in the cache is used instead of querying {@link MediaCodecList}, and
+   * the results of new queries are added to it. Should be called before any decoders are queried,
+   * typically at application start.
+   *
+   * @param decoderInfoCache The {@link DecoderInfoCache}, or {@code null} to stop using a cache.
+   */
+  public static synchronized void setDecoderInfoCache(@Nullable DecoderInfoCache decoderInfoCache) {
+    MediaCodecUtil.decoderInfoCache = decoderInfoCache;
+  }
+
+  /** Returns the {@link DecoderInfoCache} that's set, or {@code null} if none is set. */
+  @Nullable
+  /* package */ static DecoderInfoCache getDecoderInfoCache() {
+    return decoderInfoCache;
+  }
+
   /**
    * Returns information about a decoder suitable for audio passthrough.
    *
@@ -167,6 +214,16 @@ public final class MediaCodecUtil {
     if (cachedDecoderInfos != null) {
       return cachedDecoderInfos;
     }
+    @Nullable DecoderInfoCache decoderInfoCache = MediaCodecUtil.decoderInfoCache;
+    if (decoderInfoCache != null) {
+      @Nullable
+      List<MediaCodecInfo> restoredDecoderInfos =
+          decoderInfoCache.getDecoderInfos(mimeType, secure, tunneling);
+      if (restoredDecoderInfos != null) {
+        decoderInfosCache.put(key, restoredDecoderInfos);
+        return restoredDecoderInfos;
+      }
+    }
     MediaCodecListCompat mediaCodecList =
         Util.SDK_INT >= 21
             ? new MediaCodecListCompatV21(secure, tunneling)
@@ -185,6 +242,9 @@ public final class MediaCodecUtil {
     applyWorkarounds(mimeType, decoderInfos);
     List<MediaCodecInfo> unmodifiableDecoderInfos = Collections.unmodifiableList(decoderInfos);
     decoderInfosCache.put(key, unmodifiableDecoderInfos);
+    if (decoderInfoCache != null) {
+      decoderInfoCache.putDecoderInfos(mimeType, secure, tunneling, unmodifiableDecoderInfos);
+    }
     return unmodifiableDecoderInfos;
   }
 
@@ -367,6 +427,42 @@ public final class MediaCodecUtil {
     }
   }
 
+  /**
+   * Returns the capabilities of the codec with the given name for the given MIME type, or {@code
+   * null} if the codec or its capabilities can't be found.
+   *
+   * @param name The name of the codec, as in {@link MediaCodecInfo#name}.
+   * @param codecMimeType The MIME type used by the codec.
+   * @param secure Whether the codec is a secure decoder.
+   */
+  @Nullable
+  /* package */ static CodecCapabilities getCodecCapabilities(
+      String name, @Nullable String codecMimeType, boolean secure) {
+    if (codecMimeType == null) {
+      return null;
+    }
+    MediaCodecListCompat mediaCodecList =
+        Util.SDK_INT >= 21
+            ? new MediaCodecListCompatV21(/* includeSecure= */ true, /* includeTunneling= */ true)
+            : new MediaCodecListCompatV16();
+    if (secure && !mediaCodecList.secureDecodersExplicit() && name.endsWith(".secure")) {
+      // Synthesized secure decoders have the name of the underlying decoder plus a suffix.
+      name = name.substring(0, name.length() - ".secure".length());
+    }
+    try {
+      int numberOfCodecs = mediaCodecList.getCodecCount();
+      for (int i = 0; i < numberOfCodecs; i++) {
+        android.media.MediaCodecInfo codecInfo = mediaCodecList.getCodecInfoAt(i);
+        if (name.equals(codecInfo.getName()) && !codecInfo.isEncoder()) {
+          return codecInfo.getCapabilitiesForType(codecMimeType);
+        }
+      }
+    } catch (Exception e) {
+      Log.e(TAG, "Failed to query codec " + name + " (" + codecMimeType + ")", e);
+    }
+    return null;
+  }
+
   /**
    * Returns the codec's supported MIME type for media of type {@code mimeType}, or {@code null} if
    * the codec can't be used.
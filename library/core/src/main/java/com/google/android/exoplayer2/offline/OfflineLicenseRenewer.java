@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.offline;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.drm.OfflineLicenseHelper;
+import com.google.android.exoplayer2.drm.OfflineLicenseHelper.LicenseResult;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Periodically renews the offline licenses of downloads in a {@link DownloadIndex}, so that they
+ * don't expire while the user is offline. Licenses are renewed in batches using {@link
+ * OfflineLicenseHelper#renewExpiringLicenses(List, long, int)} on a background thread.
+ *
+ * <p>The key set ids of the licenses are not part of the {@link Download} state, so they're
+ * obtained from and written back to an application provided {@link KeySetIdStore}.
+ */
+@RequiresApi(18)
+public final class OfflineLicenseRenewer {
+
+  /** Stores the offline license key set ids of downloads. */
+  public interface KeySetIdStore {
+
+    /**
+     * Returns the key set id of the offline license of a download, or null if the download has no
+     * offline license.
+     *
+     * <p>Called on the renewer's background thread.
+     *
+     * @param download The {@link Download}.
+     * @return The key set id of the download's offline license, or null.
+     */
+    @Nullable
+    byte[] getKeySetId(Download download);
+
+    /**
+     * Called when the offline license of a download has been renewed.
+     *
+     * <p>Called on the renewer's background thread.
+     *
+     * @param download The {@link Download}.
+     * @param keySetId The key set id of the renewed license.
+     */
+    void onKeySetIdRenewed(Download download, byte[] keySetId);
+  }
+
+  /** The default interval between checks for expiring licenses, in milliseconds. */
+  public static final long DEFAULT_CHECK_INTERVAL_MS = 6 * 60 * 60 * 1000;
+  /** The default remaining license duration below which a license is renewed, in seconds. */
+  public static final long DEFAULT_MIN_LICENSE_DURATION_REMAINING_SEC = 24 * 60 * 60;
+
+  private static final String TAG = "OfflineLicenseRenewer";
+
+  private final DownloadIndex downloadIndex;
+  private final OfflineLicenseHelper<?> offlineLicenseHelper;
+  private final KeySetIdStore keySetIdStore;
+  private final long checkIntervalMs;
+  private final long minLicenseDurationRemainingSec;
+  private final int maxParallelRenewals;
+  private final Runnable checkRunnable;
+
+  @Nullable private HandlerThread handlerThread;
+  @Nullable private Handler handler;
+
+  /**
+   * Creates an instance that renews licenses of the downloads managed by a {@link
+   * DownloadManager}, using default parameters.
+   *
+   * @param downloadManager The {@link DownloadManager}.
+   * @param offlineLicenseHelper The {@link OfflineLicenseHelper} used to renew licenses.
+   * @param keySetIdStore The {@link KeySetIdStore}.
+   */
+  public OfflineLicenseRenewer(
+      DownloadManager downloadManager,
+      OfflineLicenseHelper<?> offlineLicenseHelper,
+      KeySetIdStore keySetIdStore) {
+    this(
+        downloadManager.getDownloadIndex(),
+        offlineLicenseHelper,
+        keySetIdStore,
+        DEFAULT_CHECK_INTERVAL_MS,
+        DEFAULT_MIN_LICENSE_DURATION_REMAINING_SEC,
+        OfflineLicenseHelper.DEFAULT_MAX_PARALLEL_LICENSE_OPERATIONS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param downloadIndex The {@link DownloadIndex} containing the downloads.
+   * @param offlineLicenseHelper The {@link OfflineLicenseHelper} used to renew licenses.
+   * @param keySetIdStore The {@link KeySetIdStore}.
+   * @param checkIntervalMs The interval between checks for expiring licenses, in milliseconds.
+   * @param minLicenseDurationRemainingSec The remaining license duration below which a license is
+   *     renewed, in seconds.
+   * @param maxParallelRenewals The maximum number of licenses to check or renew in parallel.
+   */
+  public OfflineLicenseRenewer(
+      DownloadIndex downloadIndex,
+      OfflineLicenseHelper<?> offlineLicenseHelper,
+      KeySetIdStore keySetIdStore,
+      long checkIntervalMs,
+      long minLicenseDurationRemainingSec,
+      int maxParallelRenewals) {
+    Assertions.checkArgument(checkIntervalMs > 0);
+    Assertions.checkArgument(maxParallelRenewals > 0);
+    this.downloadIndex = downloadIndex;
+    this.offlineLicenseHelper = offlineLicenseHelper;
+    this.keySetIdStore = keySetIdStore;
+    this.checkIntervalMs = checkIntervalMs;
+    this.minLicenseDurationRemainingSec = minLicenseDurationRemainingSec;
+    this.maxParallelRenewals = maxParallelRenewals;
+    checkRunnable = this::checkAndReschedule;
+  }
+
+  /**
+   * Starts checking for expiring licenses on a background thread, immediately and then every
+   * check interval. Does nothing if the renewer is already started.
+   */
+  public synchronized void start() {
+    if (handlerThread != null) {
+      return;
+    }
+    handlerThread = new HandlerThread("OfflineLicenseRenewer");
+    handlerThread.start();
+    handler = new Handler(handlerThread.getLooper());
+    handler.post(checkRunnable);
+  }
+
+  /** Stops checking for expiring licenses. A check that is already in progress is completed. */
+  public synchronized void stop() {
+    if (handlerThread == null) {
+      return;
+    }
+    Assertions.checkNotNull(handler).removeCallbacks(checkRunnable);
+    handlerThread.quitSafely();
+    handlerThread = null;
+    handler = null;
+  }
+
+  /**
+   * Renews the licenses of all downloads whose remaining license duration is below the threshold,
+   * blocking until done. Failures are logged, and the affected licenses are retried on the next
+   * check.
+   *
+   * @return The number of licenses that were renewed.
+   * @throws IOException If an error occurs reading the download index.
+   */
+  @WorkerThread
+  public int renewExpiringLicenses() throws IOException {
+    List<Download> downloads = new ArrayList<>();
+    List<byte[]> keySetIds = new ArrayList<>();
+    try (DownloadCursor cursor =
+        downloadIndex.getDownloads(
+            Download.STATE_QUEUED,
+            Download.STATE_STOPPED,
+            Download.STATE_DOWNLOADING,
+            Download.STATE_COMPLETED,
+            Download.STATE_RESTARTING)) {
+      while (cursor.moveToNext()) {
+        Download download = cursor.getDownload();
+        @Nullable byte[] keySetId = keySetIdStore.getKeySetId(download);
+        if (keySetId != null) {
+          downloads.add(download);
+          keySetIds.add(keySetId);
+        }
+      }
+    }
+    List<LicenseResult> results =
+        offlineLicenseHelper.renewExpiringLicenses(
+            keySetIds, minLicenseDurationRemainingSec, maxParallelRenewals);
+    int renewedCount = 0;
+    for (int i = 0; i < results.size(); i++) {
+      LicenseResult result = results.get(i);
+      Download download = downloads.get(i);
+      if (result.error != null) {
+        Log.w(TAG, "Failed to renew license for download: " + download.request.id, result.error);
+      } else if (result.renewed) {
+        keySetIdStore.onKeySetIdRenewed(download, Assertions.checkNotNull(result.keySetId));
+        renewedCount++;
+      }
+    }
+    return renewedCount;
+  }
+
+  private void checkAndReschedule() {
+    try {
+      renewExpiringLicenses();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to read download index", e);
+    }
+    synchronized (this) {
+      if (handler != null) {
+        handler.postDelayed(checkRunnable, checkIntervalMs);
+      }
+    }
+  }
+}
@@ -66,7 +66,6 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   private Handler playbackThreadHandler;
 
   // Accessed on the playback thread only.
-  private final List<MediaSourceHolder> mediaSourceHolders;
   private final Map<MediaPeriod, MediaSourceHolder> mediaSourceByMediaPeriod;
   private final Map<Object, MediaSourceHolder> mediaSourceByUid;
   private final Set<MediaSourceHolder> enabledMediaSourceHolders;
@@ -76,6 +75,7 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   private boolean timelineUpdateScheduled;
   private Set<HandlerAndRunnable> nextTimelineUpdateOnCompletionActions;
   private ShuffleOrder shuffleOrder;
+  private PlaylistIndex playlistIndex;
 
   /**
    * @param mediaSources The {@link MediaSource}s to concatenate. It is valid for the same
@@ -130,7 +130,7 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
     this.mediaSourceByMediaPeriod = new IdentityHashMap<>();
     this.mediaSourceByUid = new HashMap<>();
     this.mediaSourcesPublic = new ArrayList<>();
-    this.mediaSourceHolders = new ArrayList<>();
+    this.playlistIndex = new PlaylistIndex();
     this.nextTimelineUpdateOnCompletionActions = new HashSet<>();
     this.pendingOnCompletionActions = new HashSet<>();
     this.enabledMediaSourceHolders = new HashSet<>();
@@ -487,7 +487,7 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   @Override
   protected synchronized void releaseSourceInternal() {
     super.releaseSourceInternal();
-    mediaSourceHolders.clear();
+    playlistIndex = playlistIndex.cloneAndClear();
     enabledMediaSourceHolders.clear();
     mediaSourceByUid.clear();
     shuffleOrder = shuffleOrder.cloneAndClear();
@@ -525,7 +525,14 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   @Override
   protected int getWindowIndexForChildWindowIndex(
       MediaSourceHolder mediaSourceHolder, int windowIndex) {
-    return windowIndex + mediaSourceHolder.firstWindowIndexInChild;
+    int childIndex =
+        mediaSourceHolder.isRemoved
+            ? C.INDEX_UNSET
+            : playlistIndex.getChildIndex(mediaSourceHolder.uid);
+    return windowIndex
+        + (childIndex == C.INDEX_UNSET
+            ? mediaSourceHolder.firstWindowIndexInChild
+            : playlistIndex.getFirstWindowIndex(childIndex));
   }
 
   // Internal methods. Called from any thread.
@@ -704,7 +711,7 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
     timelineUpdateScheduled = false;
     Set<HandlerAndRunnable> onCompletionActions = nextTimelineUpdateOnCompletionActions;
     nextTimelineUpdateOnCompletionActions = new HashSet<>();
-    refreshSourceInfo(new ConcatenatedTimeline(mediaSourceHolders, shuffleOrder, isAtomic));
+    refreshSourceInfo(new ConcatenatedTimeline(playlistIndex, shuffleOrder, isAtomic));
     getPlaybackThreadHandlerOnPlaybackThread()
         .obtainMessage(MSG_ON_COMPLETION, onCompletionActions)
         .sendToTarget();
@@ -733,17 +740,10 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   }
 
   private void addMediaSourceInternal(int newIndex, MediaSourceHolder newMediaSourceHolder) {
-    if (newIndex > 0) {
-      MediaSourceHolder previousHolder = mediaSourceHolders.get(newIndex - 1);
-      Timeline previousTimeline = previousHolder.mediaSource.getTimeline();
-      newMediaSourceHolder.reset(
-          newIndex, previousHolder.firstWindowIndexInChild + previousTimeline.getWindowCount());
-    } else {
-      newMediaSourceHolder.reset(newIndex, /* firstWindowIndexInChild= */ 0);
-    }
-    Timeline newTimeline = newMediaSourceHolder.mediaSource.getTimeline();
-    correctOffsets(newIndex, /* childIndexUpdate= */ 1, newTimeline.getWindowCount());
-    mediaSourceHolders.add(newIndex, newMediaSourceHolder);
+    newMediaSourceHolder.reset();
+    playlistIndex =
+        playlistIndex.cloneAndInsert(
+            newIndex, newMediaSourceHolder.uid, newMediaSourceHolder.mediaSource.getTimeline());
     mediaSourceByUid.put(newMediaSourceHolder.uid, newMediaSourceHolder);
     prepareChildSource(newMediaSourceHolder, newMediaSourceHolder.mediaSource);
     if (isEnabled() && mediaSourceByMediaPeriod.isEmpty()) {
@@ -757,49 +757,24 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
     if (mediaSourceHolder == null) {
       throw new IllegalArgumentException();
     }
-    if (mediaSourceHolder.childIndex + 1 < mediaSourceHolders.size()) {
-      MediaSourceHolder nextHolder = mediaSourceHolders.get(mediaSourceHolder.childIndex + 1);
-      int windowOffsetUpdate =
-          timeline.getWindowCount()
-              - (nextHolder.firstWindowIndexInChild - mediaSourceHolder.firstWindowIndexInChild);
-      if (windowOffsetUpdate != 0) {
-        correctOffsets(
-            mediaSourceHolder.childIndex + 1, /* childIndexUpdate= */ 0, windowOffsetUpdate);
-      }
+    int childIndex = playlistIndex.getChildIndex(mediaSourceHolder.uid);
+    if (childIndex != C.INDEX_UNSET) {
+      playlistIndex = playlistIndex.cloneAndSetTimeline(childIndex, timeline);
     }
     scheduleTimelineUpdate();
   }
 
   private void removeMediaSourceInternal(int index) {
-    MediaSourceHolder holder = mediaSourceHolders.remove(index);
-    mediaSourceByUid.remove(holder.uid);
-    Timeline oldTimeline = holder.mediaSource.getTimeline();
-    correctOffsets(index, /* childIndexUpdate= */ -1, -oldTimeline.getWindowCount());
+    MediaSourceHolder holder =
+        Assertions.checkNotNull(mediaSourceByUid.remove(playlistIndex.getUid(index)));
+    holder.firstWindowIndexInChild = playlistIndex.getFirstWindowIndex(index);
+    playlistIndex = playlistIndex.cloneAndRemove(index);
     holder.isRemoved = true;
     maybeReleaseChildSource(holder);
   }
 
   private void moveMediaSourceInternal(int currentIndex, int newIndex) {
-    int startIndex = Math.min(currentIndex, newIndex);
-    int endIndex = Math.max(currentIndex, newIndex);
-    int windowOffset = mediaSourceHolders.get(startIndex).firstWindowIndexInChild;
-    mediaSourceHolders.add(newIndex, mediaSourceHolders.remove(currentIndex));
-    for (int i = startIndex; i <= endIndex; i++) {
-      MediaSourceHolder holder = mediaSourceHolders.get(i);
-      holder.childIndex = i;
-      holder.firstWindowIndexInChild = windowOffset;
-      windowOffset += holder.mediaSource.getTimeline().getWindowCount();
-    }
-  }
-
-  private void correctOffsets(int startIndex, int childIndexUpdate, int windowOffsetUpdate) {
-    // TODO: Replace window index with uid in reporting to get rid of this inefficient method and
-    // the childIndex and firstWindowIndexInChild variables.
-    for (int i = startIndex; i < mediaSourceHolders.size(); i++) {
-      MediaSourceHolder holder = mediaSourceHolders.get(i);
-      holder.childIndex += childIndexUpdate;
-      holder.firstWindowIndexInChild += windowOffsetUpdate;
-    }
+    playlistIndex = playlistIndex.cloneAndMove(currentIndex, newIndex);
   }
 
   private void maybeReleaseChildSource(MediaSourceHolder mediaSourceHolder) {
@@ -844,22 +819,22 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   /* package */ static final class MediaSourceHolder {
 
     public final MaskingMediaSource mediaSource;
-    public final Object uid;
+    public final PlaylistIndex.ChildUid uid;
     public final List<MediaPeriodId> activeMediaPeriodIds;
 
-    public int childIndex;
+    /** The index of the first window of the source when it was removed from the playlist. */
     public int firstWindowIndexInChild;
+
     public boolean isRemoved;
 
     public MediaSourceHolder(MediaSource mediaSource, boolean useLazyPreparation) {
       this.mediaSource = new MaskingMediaSource(mediaSource, useLazyPreparation);
       this.activeMediaPeriodIds = new ArrayList<>();
-      this.uid = new Object();
+      this.uid = new PlaylistIndex.ChildUid();
     }
 
-    public void reset(int childIndex, int firstWindowIndexInChild) {
-      this.childIndex = childIndex;
-      this.firstWindowIndexInChild = firstWindowIndexInChild;
+    public void reset() {
+      this.firstWindowIndexInChild = 0;
       this.isRemoved = false;
       this.activeMediaPeriodIds.clear();
     }
@@ -882,85 +857,57 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   /** Timeline exposing concatenated timelines of playlist media sources. */
   private static final class ConcatenatedTimeline extends AbstractConcatenatedTimeline {
 
-    private final int windowCount;
-    private final int periodCount;
-    private final int[] firstPeriodInChildIndices;
-    private final int[] firstWindowInChildIndices;
-    private final Timeline[] timelines;
-    private final Object[] uids;
-    private final HashMap<Object, Integer> childIndexByUid;
+    private final PlaylistIndex playlistIndex;
 
     public ConcatenatedTimeline(
-        Collection<MediaSourceHolder> mediaSourceHolders,
-        ShuffleOrder shuffleOrder,
-        boolean isAtomic) {
+        PlaylistIndex playlistIndex, ShuffleOrder shuffleOrder, boolean isAtomic) {
       super(isAtomic, shuffleOrder);
-      int childCount = mediaSourceHolders.size();
-      firstPeriodInChildIndices = new int[childCount];
-      firstWindowInChildIndices = new int[childCount];
-      timelines = new Timeline[childCount];
-      uids = new Object[childCount];
-      childIndexByUid = new HashMap<>();
-      int index = 0;
-      int windowCount = 0;
-      int periodCount = 0;
-      for (MediaSourceHolder mediaSourceHolder : mediaSourceHolders) {
-        timelines[index] = mediaSourceHolder.mediaSource.getTimeline();
-        firstWindowInChildIndices[index] = windowCount;
-        firstPeriodInChildIndices[index] = periodCount;
-        windowCount += timelines[index].getWindowCount();
-        periodCount += timelines[index].getPeriodCount();
-        uids[index] = mediaSourceHolder.uid;
-        childIndexByUid.put(uids[index], index++);
-      }
-      this.windowCount = windowCount;
-      this.periodCount = periodCount;
+      this.playlistIndex = playlistIndex;
     }
 
     @Override
     protected int getChildIndexByPeriodIndex(int periodIndex) {
-      return Util.binarySearchFloor(firstPeriodInChildIndices, periodIndex + 1, false, false);
+      return playlistIndex.getChildIndexByPeriodIndex(periodIndex);
     }
 
     @Override
     protected int getChildIndexByWindowIndex(int windowIndex) {
-      return Util.binarySearchFloor(firstWindowInChildIndices, windowIndex + 1, false, false);
+      return playlistIndex.getChildIndexByWindowIndex(windowIndex);
     }
 
     @Override
     protected int getChildIndexByChildUid(Object childUid) {
-      Integer index = childIndexByUid.get(childUid);
-      return index == null ? C.INDEX_UNSET : index;
+      return playlistIndex.getChildIndex(childUid);
     }
 
     @Override
     protected Timeline getTimelineByChildIndex(int childIndex) {
-      return timelines[childIndex];
+      return playlistIndex.getTimeline(childIndex);
     }
 
     @Override
     protected int getFirstPeriodIndexByChildIndex(int childIndex) {
-      return firstPeriodInChildIndices[childIndex];
+      return playlistIndex.getFirstPeriodIndex(childIndex);
     }
 
     @Override
     protected int getFirstWindowIndexByChildIndex(int childIndex) {
-      return firstWindowInChildIndices[childIndex];
+      return playlistIndex.getFirstWindowIndex(childIndex);
     }
 
     @Override
     protected Object getChildUidByChildIndex(int childIndex) {
-      return uids[childIndex];
+      return playlistIndex.getUid(childIndex);
     }
 
     @Override
     public int getWindowCount() {
-      return windowCount;
+      return playlistIndex.getWindowCount();
     }
 
     @Override
     public int getPeriodCount() {
-      return periodCount;
+      return playlistIndex.getPeriodCount();
     }
   }
 
@@ -0,0 +1,755 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.extractor.TrackOutput.CryptoData;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link SampleMetadataQueue} that can be accessed by a single loading thread and a single
+ * consuming thread without locking.
+ *
+ * <p>The write index (owned by the loading thread) and the read index (owned by the consuming
+ * thread) are packed into a single atomic word, together with a splice count that's incremented
+ * whenever the write index is reduced. Sample metadata is written before the write index is
+ * published, and read before the read index is updated. An update by the consuming thread only
+ * succeeds if the queue wasn't spliced since the metadata was read, in which case the metadata
+ * could not have been overwritten. Conversely, splicing only succeeds if the read index didn't
+ * change, so that samples are never discarded from the write side once they've been read.
+ *
+ * <p>Metadata is stored in ring buffers whose capacity is a power of two. When the buffers are
+ * full, the loading thread copies the queued samples into larger buffers and then publishes them.
+ * The consuming thread may continue to read from the previous buffers, which are never written to
+ * again.
+ */
+/* package */ final class LockFreeSampleMetadataQueue implements SampleMetadataQueue {
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MAX_PENDING_SAMPLE_COUNT = 0xFFFFFF;
+  private static final long DISCARD_RETRY = Long.MIN_VALUE;
+
+  private final DrmSessionManager<?> drmSessionManager;
+  private final AtomicLong state;
+
+  // Accessed only by the consuming thread.
+  @Nullable private Format downstreamFormat;
+  @Nullable private DrmSession<?> currentDrmSession;
+
+  // Written by the consuming thread and read by the loading thread.
+  private volatile int firstIndex;
+  private volatile long largestDiscardedTimestampUs;
+
+  // Written by the loading thread and read by the consuming thread.
+  private volatile Storage storage;
+  private volatile long largestQueuedTimestampUs;
+  private volatile boolean isLastSampleQueued;
+  private volatile boolean upstreamFormatRequired;
+  @Nullable private volatile Format upstreamFormat;
+  private volatile int upstreamSourceId;
+
+  // Accessed only by the loading thread.
+  private boolean upstreamKeyframeRequired;
+  @Nullable private Format upstreamCommittedFormat;
+
+  public LockFreeSampleMetadataQueue(DrmSessionManager<?> drmSessionManager) {
+    this.drmSessionManager = drmSessionManager;
+    state = new AtomicLong();
+    storage = new Storage(INITIAL_CAPACITY);
+    largestDiscardedTimestampUs = Long.MIN_VALUE;
+    largestQueuedTimestampUs = Long.MIN_VALUE;
+    upstreamFormatRequired = true;
+    upstreamKeyframeRequired = true;
+  }
+
+  // Called by the consuming thread, but only when there is no loading thread.
+
+  @Override
+  public void reset(boolean resetUpstreamFormat) {
+    state.set(packState(/* writeIndex= */ 0, /* readIndex= */ 0, getSpliceCount(state.get()) + 1));
+    firstIndex = 0;
+    upstreamKeyframeRequired = true;
+    largestDiscardedTimestampUs = Long.MIN_VALUE;
+    largestQueuedTimestampUs = Long.MIN_VALUE;
+    isLastSampleQueued = false;
+    upstreamCommittedFormat = null;
+    if (resetUpstreamFormat) {
+      upstreamFormat = null;
+      upstreamFormatRequired = true;
+    }
+  }
+
+  @Override
+  public int getWriteIndex() {
+    return getWriteIndex(state.get());
+  }
+
+  @Override
+  public long discardUpstreamSamples(int discardFromIndex) {
+    long state = this.state.get();
+    int readIndex = getReadIndex(state);
+    int discardCount = getWriteIndex(state) - discardFromIndex;
+    Assertions.checkArgument(0 <= discardCount && readIndex <= discardFromIndex);
+    this.state.set(packState(discardFromIndex, readIndex, getSpliceCount(state) + 1));
+    Storage storage = this.storage;
+    largestQueuedTimestampUs =
+        Math.max(
+            largestDiscardedTimestampUs,
+            getLargestTimestamp(storage, firstIndex, /* toIndex= */ discardFromIndex));
+    isLastSampleQueued = discardCount == 0 && isLastSampleQueued;
+    if (discardFromIndex == firstIndex) {
+      return 0;
+    } else {
+      int lastWriteSlot = (discardFromIndex - 1) & storage.mask;
+      return storage.offsets[lastWriteSlot] + storage.sizes[lastWriteSlot];
+    }
+  }
+
+  @Override
+  public void sourceId(int sourceId) {
+    upstreamSourceId = sourceId;
+  }
+
+  // Called by the consuming thread.
+
+  @Override
+  public void maybeThrowError() throws IOException {
+    // TODO: Avoid throwing if the DRM error is not preventing a read operation.
+    if (currentDrmSession != null && currentDrmSession.getState() == DrmSession.STATE_ERROR) {
+      throw Assertions.checkNotNull(currentDrmSession.getError());
+    }
+  }
+
+  @Override
+  public void releaseDrmSessionReferences() {
+    if (currentDrmSession != null) {
+      currentDrmSession.release();
+      currentDrmSession = null;
+      // Clear downstream format to avoid violating the assumption that downstreamFormat.drmInitData
+      // != null implies currentSession != null
+      downstreamFormat = null;
+    }
+  }
+
+  @Override
+  public int getFirstIndex() {
+    return firstIndex;
+  }
+
+  @Override
+  public int getReadIndex() {
+    return getReadIndex(state.get());
+  }
+
+  @Override
+  public int peekSourceId() {
+    long state = this.state.get();
+    int readIndex = getReadIndex(state);
+    Storage storage = this.storage;
+    return readIndex != getWriteIndex(state)
+        ? storage.sourceIds[readIndex & storage.mask]
+        : upstreamSourceId;
+  }
+
+  @Override
+  @Nullable
+  public Format getUpstreamFormat() {
+    return upstreamFormatRequired ? null : upstreamFormat;
+  }
+
+  @Override
+  public long getLargestQueuedTimestampUs() {
+    return largestQueuedTimestampUs;
+  }
+
+  @Override
+  public boolean isLastSampleQueued() {
+    return isLastSampleQueued;
+  }
+
+  @Override
+  public long getFirstTimestampUs() {
+    int firstIndex = this.firstIndex;
+    if (firstIndex == getWriteIndex(state.get())) {
+      return Long.MIN_VALUE;
+    }
+    Storage storage = this.storage;
+    return storage.timesUs[firstIndex & storage.mask];
+  }
+
+  @Override
+  public void rewind() {
+    while (!updateReadIndex(state.get(), firstIndex)) {
+      // Retry.
+    }
+  }
+
+  @Override
+  public boolean isReady(boolean loadingFinished) {
+    // The upstream state must be read before the queue state, since the loading thread updates it
+    // after committing samples. See read().
+    boolean isLastSampleQueued = this.isLastSampleQueued;
+    @Nullable Format upstreamFormat = this.upstreamFormat;
+    long state = this.state.get();
+    int readIndex = getReadIndex(state);
+    if (readIndex == getWriteIndex(state)) {
+      return loadingFinished
+          || isLastSampleQueued
+          || (upstreamFormat != null && upstreamFormat != downstreamFormat);
+    }
+    Storage storage = this.storage;
+    int readSlot = readIndex & storage.mask;
+    if (storage.formats[readSlot] != downstreamFormat) {
+      // A format can be read.
+      return true;
+    }
+    return mayReadSample(storage.flags[readSlot]);
+  }
+
+  @SuppressWarnings("ReferenceEquality")
+  @Override
+  public int read(
+      FormatHolder formatHolder,
+      DecoderInputBuffer buffer,
+      boolean formatRequired,
+      boolean loadingFinished,
+      SampleExtrasHolder extrasHolder) {
+    while (true) {
+      // If the queue is empty then the end of stream and format checks below must observe all
+      // samples committed before the corresponding upstream state was set, so the upstream state is
+      // read first.
+      boolean isLastSampleQueued = this.isLastSampleQueued;
+      @Nullable Format upstreamFormat = this.upstreamFormat;
+      long state = this.state.get();
+      int readIndex = getReadIndex(state);
+      if (readIndex == getWriteIndex(state)) {
+        if (loadingFinished || isLastSampleQueued) {
+          buffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+          return C.RESULT_BUFFER_READ;
+        } else if (upstreamFormat != null
+            && (formatRequired || upstreamFormat != downstreamFormat)) {
+          onFormatResult(upstreamFormat, formatHolder);
+          return C.RESULT_FORMAT_READ;
+        } else {
+          return C.RESULT_NOTHING_READ;
+        }
+      }
+
+      Storage storage = this.storage;
+      int readSlot = readIndex & storage.mask;
+      Format format = storage.formats[readSlot];
+      int sampleFlags = storage.flags[readSlot];
+      long timeUs = storage.timesUs[readSlot];
+      int size = storage.sizes[readSlot];
+      long offset = storage.offsets[readSlot];
+      CryptoData cryptoData = storage.cryptoDatas[readSlot];
+
+      if (formatRequired || format != downstreamFormat) {
+        if (!updateReadIndex(state, readIndex)) {
+          continue;
+        }
+        onFormatResult(format, formatHolder);
+        return C.RESULT_FORMAT_READ;
+      }
+
+      if (!mayReadSample(sampleFlags)) {
+        return C.RESULT_NOTHING_READ;
+      }
+
+      boolean flagsOnly = buffer.isFlagsOnly();
+      if (!updateReadIndex(state, flagsOnly ? readIndex : readIndex + 1)) {
+        continue;
+      }
+      buffer.setFlags(sampleFlags);
+      buffer.timeUs = timeUs;
+      if (flagsOnly) {
+        return C.RESULT_BUFFER_READ;
+      }
+
+      extrasHolder.size = size;
+      extrasHolder.offset = offset;
+      extrasHolder.cryptoData = cryptoData;
+      return C.RESULT_BUFFER_READ;
+    }
+  }
+
+  @Override
+  public int advanceTo(long timeUs, boolean toKeyframe, boolean allowTimeBeyondBuffer) {
+    while (true) {
+      long state = this.state.get();
+      int readIndex = getReadIndex(state);
+      int writeIndex = getWriteIndex(state);
+      Storage storage = this.storage;
+      if (readIndex == writeIndex
+          || timeUs < storage.timesUs[readIndex & storage.mask]
+          || (timeUs > largestQueuedTimestampUs && !allowTimeBeyondBuffer)) {
+        return SampleQueue.ADVANCE_FAILED;
+      }
+      int offset =
+          findSampleBefore(storage, readIndex, writeIndex - readIndex, timeUs, toKeyframe);
+      if (offset == -1) {
+        return SampleQueue.ADVANCE_FAILED;
+      }
+      if (updateReadIndex(state, readIndex + offset)) {
+        return offset;
+      }
+    }
+  }
+
+  @Override
+  public int advanceToEnd() {
+    while (true) {
+      long state = this.state.get();
+      int writeIndex = getWriteIndex(state);
+      if (updateReadIndex(state, writeIndex)) {
+        return writeIndex - getReadIndex(state);
+      }
+    }
+  }
+
+  @Override
+  public boolean setReadPosition(int sampleIndex) {
+    while (true) {
+      long state = this.state.get();
+      if (sampleIndex < firstIndex || sampleIndex > getWriteIndex(state)) {
+        return false;
+      }
+      if (updateReadIndex(state, sampleIndex)) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public long discardTo(long timeUs, boolean toKeyframe, boolean stopAtReadPosition) {
+    while (true) {
+      long state = this.state.get();
+      int firstIndex = this.firstIndex;
+      int readIndex = getReadIndex(state);
+      int writeIndex = getWriteIndex(state);
+      Storage storage = this.storage;
+      if (firstIndex == writeIndex || timeUs < storage.timesUs[firstIndex & storage.mask]) {
+        return C.POSITION_UNSET;
+      }
+      int searchLength =
+          stopAtReadPosition && readIndex != writeIndex
+              ? readIndex - firstIndex + 1
+              : writeIndex - firstIndex;
+      int discardCount = findSampleBefore(storage, firstIndex, searchLength, timeUs, toKeyframe);
+      if (discardCount == -1) {
+        return C.POSITION_UNSET;
+      }
+      long discardOffset = discardSamples(state, firstIndex + discardCount);
+      if (discardOffset != DISCARD_RETRY) {
+        return discardOffset;
+      }
+    }
+  }
+
+  @Override
+  public long discardToRead() {
+    while (true) {
+      long state = this.state.get();
+      int readIndex = getReadIndex(state);
+      if (readIndex == firstIndex) {
+        return C.POSITION_UNSET;
+      }
+      long discardOffset = discardSamples(state, readIndex);
+      if (discardOffset != DISCARD_RETRY) {
+        return discardOffset;
+      }
+    }
+  }
+
+  @Override
+  public long discardToEnd() {
+    while (true) {
+      long state = this.state.get();
+      int writeIndex = getWriteIndex(state);
+      if (writeIndex == firstIndex) {
+        return C.POSITION_UNSET;
+      }
+      long discardOffset = discardSamples(state, writeIndex);
+      if (discardOffset != DISCARD_RETRY) {
+        return discardOffset;
+      }
+    }
+  }
+
+  // Called by the loading thread.
+
+  @Override
+  public boolean format(@Nullable Format format) {
+    if (format == null) {
+      upstreamFormatRequired = true;
+      return false;
+    }
+    upstreamFormatRequired = false;
+    if (Util.areEqual(format, upstreamFormat)) {
+      // The format is unchanged. If format and upstreamFormat are different objects, we keep the
+      // current upstreamFormat so we can detect format changes in read() using cheap referential
+      // equality.
+      return false;
+    } else if (Util.areEqual(format, upstreamCommittedFormat)) {
+      // The format has changed back to the format of the last committed sample. If they are
+      // different objects, we revert back to using upstreamCommittedFormat as the upstreamFormat so
+      // we can detect format changes in read() using cheap referential equality.
+      upstreamFormat = upstreamCommittedFormat;
+      return true;
+    } else {
+      upstreamFormat = format;
+      return true;
+    }
+  }
+
+  @Override
+  public void commitSample(
+      long timeUs, @C.BufferFlags int sampleFlags, long offset, int size, CryptoData cryptoData) {
+    if (upstreamKeyframeRequired) {
+      if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) == 0) {
+        return;
+      }
+      upstreamKeyframeRequired = false;
+    }
+    Assertions.checkState(!upstreamFormatRequired);
+
+    long state = this.state.get();
+    int writeIndex = getWriteIndex(state);
+    Storage storage = this.storage;
+    if (writeIndex - firstIndex == storage.mask + 1) {
+      storage = increaseCapacity(storage, writeIndex);
+    }
+    int writeSlot = writeIndex & storage.mask;
+    storage.timesUs[writeSlot] = timeUs;
+    storage.offsets[writeSlot] = offset;
+    storage.sizes[writeSlot] = size;
+    storage.flags[writeSlot] = sampleFlags;
+    storage.cryptoDatas[writeSlot] = cryptoData;
+    storage.formats[writeSlot] = upstreamFormat;
+    storage.sourceIds[writeSlot] = upstreamSourceId;
+    upstreamCommittedFormat = upstreamFormat;
+    largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
+
+    // Publish the sample. Only the read index can have been changed concurrently.
+    while (!this.state.compareAndSet(
+        state, packState(writeIndex + 1, getReadIndex(state), getSpliceCount(state)))) {
+      state = this.state.get();
+    }
+    // Must be set after publishing the sample, so that the consuming thread cannot see the last
+    // sample as queued whilst the queue still appears to be empty. See read().
+    isLastSampleQueued = (sampleFlags & C.BUFFER_FLAG_LAST_SAMPLE) != 0;
+  }
+
+  @Override
+  public boolean attemptSplice(long timeUs) {
+    while (true) {
+      long state = this.state.get();
+      int readIndex = getReadIndex(state);
+      int writeIndex = getWriteIndex(state);
+      // The first index must be read before the largest discarded timestamp, since the consuming
+      // thread updates them in the opposite order.
+      int firstIndex = this.firstIndex;
+      long largestDiscardedTimestampUs = this.largestDiscardedTimestampUs;
+      if (firstIndex == writeIndex) {
+        return timeUs > largestDiscardedTimestampUs;
+      }
+      Storage storage = this.storage;
+      long largestReadTimestampUs =
+          Math.max(
+              largestDiscardedTimestampUs,
+              getLargestTimestamp(storage, firstIndex, /* toIndex= */ readIndex));
+      if (largestReadTimestampUs >= timeUs) {
+        return false;
+      }
+      int retainIndex = writeIndex;
+      while (retainIndex > readIndex
+          && storage.timesUs[(retainIndex - 1) & storage.mask] >= timeUs) {
+        retainIndex--;
+      }
+      if (retainIndex == writeIndex) {
+        // Nothing to discard, but the read index must not have advanced past the samples whose
+        // timestamps were checked above.
+        if (this.state.compareAndSet(state, state)) {
+          return true;
+        }
+        continue;
+      }
+      // Cleared before discarding, so that the consuming thread cannot see the discarded last
+      // sample as queued whilst the queue appears to be empty.
+      boolean wasLastSampleQueued = isLastSampleQueued;
+      isLastSampleQueued = false;
+      if (!this.state.compareAndSet(
+          state, packState(retainIndex, readIndex, getSpliceCount(state) + 1))) {
+        isLastSampleQueued = wasLastSampleQueued;
+        continue;
+      }
+      largestQueuedTimestampUs =
+          Math.max(
+              this.largestDiscardedTimestampUs,
+              getLargestTimestamp(storage, this.firstIndex, /* toIndex= */ retainIndex));
+      return true;
+    }
+  }
+
+  // Internal methods.
+
+  /**
+   * Sets the read index, provided the write index hasn't been reduced since {@code expectedState}
+   * was read. Must only be called by the consuming thread.
+   *
+   * <p>A successful update also guarantees that sample metadata between the read index and the
+   * write index of {@code expectedState}, if read after {@code expectedState}, was not overwritten.
+   *
+   * @param expectedState The state from which the new read index was derived.
+   * @param readIndex The new read index, which must not exceed the write index of {@code
+   *     expectedState}.
+   * @return Whether the read index was updated.
+   */
+  private boolean updateReadIndex(long expectedState, int readIndex) {
+    int spliceCount = getSpliceCount(expectedState);
+    long state = expectedState;
+    while (!this.state.compareAndSet(
+        state, packState(getWriteIndex(state), readIndex, spliceCount))) {
+      state = this.state.get();
+      if (getSpliceCount(state) != spliceCount) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Discards samples up to but not including the specified index. The read index is advanced if
+   * it's before the specified index.
+   *
+   * @param expectedState The state from which {@code discardToIndex} was derived.
+   * @param discardToIndex The absolute index of the first sample to retain.
+   * @return The corresponding offset up to which data should be discarded, or {@link
+   *     #DISCARD_RETRY} if the queue was spliced since {@code expectedState} was read.
+   */
+  private long discardSamples(long expectedState, int discardToIndex) {
+    int firstIndex = this.firstIndex;
+    Storage storage = this.storage;
+    long largestTimestampUs = getLargestTimestamp(storage, firstIndex, discardToIndex);
+    long discardOffset;
+    if (discardToIndex == getWriteIndex(expectedState)) {
+      int lastDiscardSlot = (discardToIndex - 1) & storage.mask;
+      discardOffset = storage.offsets[lastDiscardSlot] + storage.sizes[lastDiscardSlot];
+    } else {
+      discardOffset = storage.offsets[discardToIndex & storage.mask];
+    }
+    if (!updateReadIndex(
+        expectedState, Math.max(getReadIndex(expectedState), discardToIndex))) {
+      return DISCARD_RETRY;
+    }
+    // The loading thread may overwrite the discarded samples once the first index is updated, so
+    // they must not be accessed after this point.
+    largestDiscardedTimestampUs = Math.max(largestDiscardedTimestampUs, largestTimestampUs);
+    this.firstIndex = discardToIndex;
+    return discardOffset;
+  }
+
+  /**
+   * Replaces the storage with storage of twice the capacity, copying all retained samples.
+   *
+   * @param storage The current storage.
+   * @param writeIndex The current write index.
+   * @return The new storage.
+   */
+  private Storage increaseCapacity(Storage storage, int writeIndex) {
+    int newCapacity = (storage.mask + 1) * 2;
+    Assertions.checkState(newCapacity <= MAX_PENDING_SAMPLE_COUNT);
+    Storage newStorage = new Storage(newCapacity);
+    for (int i = firstIndex; i < writeIndex; i++) {
+      int slot = i & storage.mask;
+      int newSlot = i & newStorage.mask;
+      newStorage.sourceIds[newSlot] = storage.sourceIds[slot];
+      newStorage.offsets[newSlot] = storage.offsets[slot];
+      newStorage.sizes[newSlot] = storage.sizes[slot];
+      newStorage.flags[newSlot] = storage.flags[slot];
+      newStorage.timesUs[newSlot] = storage.timesUs[slot];
+      newStorage.cryptoDatas[newSlot] = storage.cryptoDatas[slot];
+      newStorage.formats[newSlot] = storage.formats[slot];
+    }
+    this.storage = newStorage;
+    return newStorage;
+  }
+
+  /**
+   * Sets the downstream format, performs DRM resource management, and populates the {@code
+   * outputFormatHolder}.
+   *
+   * @param newFormat The new downstream format.
+   * @param outputFormatHolder The output {@link FormatHolder}.
+   */
+  private void onFormatResult(Format newFormat, FormatHolder outputFormatHolder) {
+    outputFormatHolder.format = newFormat;
+    boolean isFirstFormat = downstreamFormat == null;
+    DrmInitData oldDrmInitData = isFirstFormat ? null : downstreamFormat.drmInitData;
+    downstreamFormat = newFormat;
+    if (drmSessionManager == DrmSessionManager.DUMMY) {
+      // Avoid attempting to acquire a session using the dummy DRM session manager. It's likely that
+      // the media source creation has not yet been migrated and the renderer can acquire the
+      // session for the read DRM init data.
+      // TODO: Remove once renderers are migrated [Internal ref: b/122519809].
+      return;
+    }
+    DrmInitData newDrmInitData = newFormat.drmInitData;
+    outputFormatHolder.includesDrmSession = true;
+    outputFormatHolder.drmSession = currentDrmSession;
+    if (!isFirstFormat && Util.areEqual(oldDrmInitData, newDrmInitData)) {
+      // Nothing to do.
+      return;
+    }
+    // Ensure we acquire the new session before releasing the previous one in case the same session
+    // is being used for both DrmInitData.
+    DrmSession<?> previousSession = currentDrmSession;
+    Looper playbackLooper = Assertions.checkNotNull(Looper.myLooper());
+    currentDrmSession =
+        newDrmInitData != null
+            ? drmSessionManager.acquireSession(playbackLooper, newDrmInitData)
+            : drmSessionManager.acquirePlaceholderSession(
+                playbackLooper, MimeTypes.getTrackType(newFormat.sampleMimeType));
+    outputFormatHolder.drmSession = currentDrmSession;
+
+    if (previousSession != null) {
+      previousSession.release();
+    }
+  }
+
+  /**
+   * Returns whether it's possible to read a sample.
+   *
+   * @param sampleFlags The flags of the sample.
+   * @return Whether it's possible to read the sample.
+   */
+  private boolean mayReadSample(int sampleFlags) {
+    if (drmSessionManager == DrmSessionManager.DUMMY) {
+      // TODO: Remove once renderers are migrated [Internal ref: b/122519809].
+      // For protected content it's likely that the DrmSessionManager is still being injected into
+      // the renderers. We assume that the renderers will be able to acquire a DrmSession if needed.
+      return true;
+    }
+    return currentDrmSession == null
+        || currentDrmSession.getState() == DrmSession.STATE_OPENED_WITH_KEYS
+        || ((sampleFlags & C.BUFFER_FLAG_ENCRYPTED) == 0
+            && currentDrmSession.playClearSamplesWithoutKeys());
+  }
+
+  /**
+   * Finds the sample in the specified range that's before or at the specified time. If {@code
+   * keyframe} is {@code true} then the sample is additionally required to be a keyframe.
+   *
+   * @param storage The storage to search.
+   * @param startIndex The absolute index from which to start searching.
+   * @param length The length of the range being searched.
+   * @param timeUs The specified time.
+   * @param keyframe Whether only keyframes should be considered.
+   * @return The offset from {@code startIndex} to the found sample, or -1 if no matching sample was
+   *     found.
+   */
+  private static int findSampleBefore(
+      Storage storage, int startIndex, int length, long timeUs, boolean keyframe) {
+    int sampleCountToTarget = -1;
+    for (int i = 0; i < length; i++) {
+      int searchSlot = (startIndex + i) & storage.mask;
+      if (storage.timesUs[searchSlot] > timeUs) {
+        break;
+      }
+      if (!keyframe || (storage.flags[searchSlot] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+        // We've found a suitable sample.
+        sampleCountToTarget = i;
+      }
+    }
+    return sampleCountToTarget;
+  }
+
+  /**
+   * Finds the largest timestamp of any sample in the specified range, assuming that the timestamps
+   * prior to a keyframe are always less than the timestamp of the keyframe itself, and of
+   * subsequent frames.
+   *
+   * @param storage The storage to search.
+   * @param fromIndex The absolute index of the first sample in the range.
+   * @param toIndex The absolute index of the sample after the last sample in the range.
+   * @return The largest timestamp, or {@link Long#MIN_VALUE} if the range is empty.
+   */
+  private static long getLargestTimestamp(Storage storage, int fromIndex, int toIndex) {
+    long largestTimestampUs = Long.MIN_VALUE;
+    for (int i = toIndex - 1; i >= fromIndex; i--) {
+      int slot = i & storage.mask;
+      largestTimestampUs = Math.max(largestTimestampUs, storage.timesUs[slot]);
+      if ((storage.flags[slot] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+        break;
+      }
+    }
+    return largestTimestampUs;
+  }
+
+  private static long packState(int writeIndex, int readIndex, int spliceCount) {
+    return ((long) (spliceCount & 0xFF) << 56)
+        | ((long) (writeIndex - readIndex) << 32)
+        | (writeIndex & 0xFFFFFFFFL);
+  }
+
+  private static int getWriteIndex(long state) {
+    return (int) state;
+  }
+
+  private static int getReadIndex(long state) {
+    return (int) state - (int) ((state >>> 32) & MAX_PENDING_SAMPLE_COUNT);
+  }
+
+  private static int getSpliceCount(long state) {
+    return (int) (state >>> 56);
+  }
+
+  /** Ring buffers holding sample metadata, indexed by absolute sample index modulo capacity. */
+  private static final class Storage {
+
+    public final int mask;
+    public final int[] sourceIds;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final int[] flags;
+    public final long[] timesUs;
+    public final CryptoData[] cryptoDatas;
+    public final Format[] formats;
+
+    public Storage(int capacity) {
+      mask = capacity - 1;
+      sourceIds = new int[capacity];
+      offsets = new long[capacity];
+      sizes = new int[capacity];
+      flags = new int[capacity];
+      timesUs = new long[capacity];
+      cryptoDatas = new CryptoData[capacity];
+      formats = new Format[capacity];
+    }
+  }
+}
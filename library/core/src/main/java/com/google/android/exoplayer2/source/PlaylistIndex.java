@@ -0,0 +1,471 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable index of the children of a playlist, and of their window and period counts.
+ *
+ * <p>Children are held in a persistent treap. Each {@code cloneAndXXX} method returns a new index
+ * that shares all but O(log n) nodes with the index on which it's called, and positional lookups
+ * are also O(log n). Looking up the position of a child by its {@link ChildUid} is O(log n) for the
+ * most recent index, and for any older index in which the child's position label is unchanged. For
+ * other older indices it falls back to a linear scan.
+ *
+ * <p>Instances are immutable and may be read from any thread. The {@code cloneAndXXX} methods must
+ * only be called on a single thread, and only on the most recent index.
+ */
+/* package */ final class PlaylistIndex {
+
+  /** The unique id of a child in a {@link PlaylistIndex}. */
+  public static final class ChildUid {
+
+    /** The child's label in the most recent index containing it. */
+    @Nullable private volatile LabelRecord labelRecord;
+  }
+
+  private static final long MAX_LABEL = 1L << 62;
+  private static final long LABEL_GAP = 1L << 32;
+
+  private static final int METRIC_CHILDREN = 0;
+  private static final int METRIC_WINDOWS = 1;
+  private static final int METRIC_PERIODS = 2;
+
+  @Nullable private final Node root;
+  private final long version;
+
+  /** Creates an empty instance. */
+  public PlaylistIndex() {
+    this(/* root= */ null, /* version= */ 0);
+  }
+
+  private PlaylistIndex(@Nullable Node root, long version) {
+    this.root = root;
+    this.version = version;
+  }
+
+  /** Returns the number of children. */
+  public int getChildCount() {
+    return getTotal(root, METRIC_CHILDREN);
+  }
+
+  /** Returns the total number of windows of all children. */
+  public int getWindowCount() {
+    return getTotal(root, METRIC_WINDOWS);
+  }
+
+  /** Returns the total number of periods of all children. */
+  public int getPeriodCount() {
+    return getTotal(root, METRIC_PERIODS);
+  }
+
+  /** Returns the uid of the child at {@code childIndex}. */
+  public ChildUid getUid(int childIndex) {
+    return getNode(childIndex).uid;
+  }
+
+  /** Returns the timeline of the child at {@code childIndex}. */
+  public Timeline getTimeline(int childIndex) {
+    return getNode(childIndex).timeline;
+  }
+
+  /** Returns the index of the first window of the child at {@code childIndex}. */
+  public int getFirstWindowIndex(int childIndex) {
+    return getFirstIndex(childIndex, METRIC_WINDOWS);
+  }
+
+  /** Returns the index of the first period of the child at {@code childIndex}. */
+  public int getFirstPeriodIndex(int childIndex) {
+    return getFirstIndex(childIndex, METRIC_PERIODS);
+  }
+
+  /** Returns the index of the child containing the window at {@code windowIndex}. */
+  public int getChildIndexByWindowIndex(int windowIndex) {
+    return getChildIndexByIndex(windowIndex, METRIC_WINDOWS);
+  }
+
+  /** Returns the index of the child containing the period at {@code periodIndex}. */
+  public int getChildIndexByPeriodIndex(int periodIndex) {
+    return getChildIndexByIndex(periodIndex, METRIC_PERIODS);
+  }
+
+  /**
+   * Returns the index of the child with the specified uid, or {@link C#INDEX_UNSET} if the uid
+   * doesn't belong to a child in this index.
+   */
+  public int getChildIndex(Object uid) {
+    if (!(uid instanceof ChildUid)) {
+      return C.INDEX_UNSET;
+    }
+    ChildUid childUid = (ChildUid) uid;
+    @Nullable LabelRecord labelRecord = childUid.labelRecord;
+    if (labelRecord == null) {
+      return C.INDEX_UNSET;
+    }
+    if (labelRecord.version > version) {
+      // The child was relabeled after this index was created, so its label is unreliable.
+      return findChildIndexLinear(childUid);
+    }
+    int childIndex = 0;
+    @Nullable Node node = root;
+    while (node != null) {
+      if (labelRecord.label < node.label) {
+        node = node.left;
+      } else if (labelRecord.label > node.label) {
+        childIndex += getTotal(node.left, METRIC_CHILDREN) + 1;
+        node = node.right;
+      } else {
+        return node.uid == childUid
+            ? childIndex + getTotal(node.left, METRIC_CHILDREN)
+            : C.INDEX_UNSET;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns a copy of this index with a child inserted.
+   *
+   * @param childIndex The index at which to insert the child.
+   * @param uid The uid of the child. Must not belong to another child in this index.
+   * @param timeline The timeline of the child.
+   * @return The new index.
+   */
+  public PlaylistIndex cloneAndInsert(int childIndex, ChildUid uid, Timeline timeline) {
+    int childCount = getChildCount();
+    Assertions.checkIndex(childIndex, 0, childCount + 1);
+    long lowerLabel = childIndex == 0 ? 0 : getNode(childIndex - 1).label;
+    long upperLabel = childIndex == childCount ? MAX_LABEL : getNode(childIndex).label;
+    if (upperLabel - lowerLabel < 2) {
+      return cloneAndRelabel().cloneAndInsert(childIndex, uid, timeline);
+    }
+    long label;
+    if (childIndex == childCount) {
+      label = lowerLabel + Math.min(LABEL_GAP, (upperLabel - lowerLabel) / 2);
+    } else if (childIndex == 0) {
+      label = upperLabel - Math.min(LABEL_GAP, (upperLabel - lowerLabel) / 2);
+    } else {
+      label = lowerLabel + (upperLabel - lowerLabel) / 2;
+    }
+    long newVersion = version + 1;
+    Node newNode = new Node(uid, label, getPriority(label), timeline, null, null);
+    Node[] parts = split(root, label);
+    uid.labelRecord = new LabelRecord(label, newVersion);
+    return new PlaylistIndex(merge(merge(parts[0], newNode), parts[1]), newVersion);
+  }
+
+  /**
+   * Returns a copy of this index with a child removed.
+   *
+   * @param childIndex The index of the child to remove.
+   * @return The new index.
+   */
+  public PlaylistIndex cloneAndRemove(int childIndex) {
+    long label = getNode(childIndex).label;
+    Node[] parts = split(root, label);
+    Node[] upperParts = split(parts[1], label + 1);
+    return new PlaylistIndex(merge(parts[0], upperParts[1]), version + 1);
+  }
+
+  /**
+   * Returns a copy of this index with a child moved.
+   *
+   * @param currentIndex The current index of the child.
+   * @param newIndex The index of the child after the move.
+   * @return The new index.
+   */
+  public PlaylistIndex cloneAndMove(int currentIndex, int newIndex) {
+    Node node = getNode(currentIndex);
+    return cloneAndRemove(currentIndex).cloneAndInsert(newIndex, node.uid, node.timeline);
+  }
+
+  /**
+   * Returns a copy of this index with the timeline of a child replaced.
+   *
+   * @param childIndex The index of the child.
+   * @param timeline The new timeline of the child.
+   * @return The new index.
+   */
+  public PlaylistIndex cloneAndSetTimeline(int childIndex, Timeline timeline) {
+    Assertions.checkIndex(childIndex, 0, getChildCount());
+    Node newRoot = setTimeline(Assertions.checkNotNull(root), childIndex, timeline);
+    return new PlaylistIndex(newRoot, version + 1);
+  }
+
+  /** Returns an empty index that may replace this index. */
+  public PlaylistIndex cloneAndClear() {
+    return new PlaylistIndex(/* root= */ null, version + 1);
+  }
+
+  // Internal methods.
+
+  private Node getNode(int childIndex) {
+    Assertions.checkIndex(childIndex, 0, getChildCount());
+    Node node = Assertions.checkNotNull(root);
+    while (true) {
+      int leftCount = getTotal(node.left, METRIC_CHILDREN);
+      if (childIndex < leftCount) {
+        node = Assertions.checkNotNull(node.left);
+      } else if (childIndex == leftCount) {
+        return node;
+      } else {
+        childIndex -= leftCount + 1;
+        node = Assertions.checkNotNull(node.right);
+      }
+    }
+  }
+
+  private int getFirstIndex(int childIndex, int metric) {
+    Assertions.checkIndex(childIndex, 0, getChildCount());
+    int firstIndex = 0;
+    Node node = Assertions.checkNotNull(root);
+    while (true) {
+      int leftCount = getTotal(node.left, METRIC_CHILDREN);
+      if (childIndex < leftCount) {
+        node = Assertions.checkNotNull(node.left);
+      } else if (childIndex == leftCount) {
+        return firstIndex + getTotal(node.left, metric);
+      } else {
+        childIndex -= leftCount + 1;
+        firstIndex += getTotal(node.left, metric) + getOwnCount(node, metric);
+        node = Assertions.checkNotNull(node.right);
+      }
+    }
+  }
+
+  private int getChildIndexByIndex(int index, int metric) {
+    Assertions.checkIndex(index, 0, getTotal(root, metric));
+    int childIndex = 0;
+    Node node = Assertions.checkNotNull(root);
+    while (true) {
+      int leftTotal = getTotal(node.left, metric);
+      if (index < leftTotal) {
+        node = Assertions.checkNotNull(node.left);
+        continue;
+      }
+      index -= leftTotal;
+      childIndex += getTotal(node.left, METRIC_CHILDREN);
+      int ownCount = getOwnCount(node, metric);
+      if (index < ownCount) {
+        return childIndex;
+      }
+      index -= ownCount;
+      childIndex++;
+      node = Assertions.checkNotNull(node.right);
+    }
+  }
+
+  private int findChildIndexLinear(ChildUid uid) {
+    ArrayDeque<Node> stack = new ArrayDeque<>();
+    @Nullable Node node = root;
+    int childIndex = 0;
+    while (node != null || !stack.isEmpty()) {
+      while (node != null) {
+        stack.push(node);
+        node = node.left;
+      }
+      node = stack.pop();
+      if (node.uid == uid) {
+        return childIndex;
+      }
+      childIndex++;
+      node = node.right;
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns a copy of this index in which the children are relabeled with evenly spaced labels,
+   * arranged in a balanced tree.
+   */
+  private PlaylistIndex cloneAndRelabel() {
+    List<Node> nodes = new ArrayList<>(getChildCount());
+    ArrayDeque<Node> stack = new ArrayDeque<>();
+    @Nullable Node node = root;
+    while (node != null || !stack.isEmpty()) {
+      while (node != null) {
+        stack.push(node);
+        node = node.left;
+      }
+      node = stack.pop();
+      nodes.add(node);
+      node = node.right;
+    }
+    long newVersion = version + 1;
+    long labelSpacing = Math.min(LABEL_GAP, MAX_LABEL / (nodes.size() + 1));
+    Node newRoot =
+        buildBalanced(nodes, 0, nodes.size(), labelSpacing, newVersion, /* depth= */ 0);
+    return new PlaylistIndex(newRoot, newVersion);
+  }
+
+  @Nullable
+  private static Node buildBalanced(
+      List<Node> nodes, int from, int to, long labelSpacing, long version, int depth) {
+    if (from == to) {
+      return null;
+    }
+    int middle = (from + to) >>> 1;
+    Node oldNode = nodes.get(middle);
+    long label = (middle + 1) * labelSpacing;
+    // Nodes nearer the root get higher priorities, so that the heap order holds. Nodes that are
+    // inserted later will be placed beneath the upper levels of the balanced tree.
+    int priority = Integer.MAX_VALUE - Math.min(depth, 31) * (1 << 26);
+    Node left = buildBalanced(nodes, from, middle, labelSpacing, version, depth + 1);
+    Node right = buildBalanced(nodes, middle + 1, to, labelSpacing, version, depth + 1);
+    oldNode.uid.labelRecord = new LabelRecord(label, version);
+    return new Node(oldNode.uid, label, priority, oldNode.timeline, left, right);
+  }
+
+  private static Node setTimeline(Node node, int childIndex, Timeline timeline) {
+    int leftCount = getTotal(node.left, METRIC_CHILDREN);
+    if (childIndex < leftCount) {
+      return node.copyWithChildren(
+          setTimeline(Assertions.checkNotNull(node.left), childIndex, timeline), node.right);
+    } else if (childIndex > leftCount) {
+      return node.copyWithChildren(
+          node.left,
+          setTimeline(Assertions.checkNotNull(node.right), childIndex - leftCount - 1, timeline));
+    } else {
+      return new Node(node.uid, node.label, node.priority, timeline, node.left, node.right);
+    }
+  }
+
+  /** Splits {@code node} into nodes whose labels are less than {@code label}, and the rest. */
+  private static @Nullable Node[] split(@Nullable Node node, long label) {
+    if (node == null) {
+      return new Node[2];
+    }
+    if (node.label < label) {
+      @Nullable Node[] parts = split(node.right, label);
+      return new Node[] {node.copyWithChildren(node.left, parts[0]), parts[1]};
+    } else {
+      @Nullable Node[] parts = split(node.left, label);
+      return new Node[] {parts[0], node.copyWithChildren(parts[1], node.right)};
+    }
+  }
+
+  /** Merges two trees, where all labels in {@code first} are less than those in {@code second}. */
+  @Nullable
+  private static Node merge(@Nullable Node first, @Nullable Node second) {
+    if (first == null) {
+      return second;
+    } else if (second == null) {
+      return first;
+    } else if (first.priority > second.priority) {
+      return first.copyWithChildren(first.left, merge(first.right, second));
+    } else {
+      return second.copyWithChildren(merge(first, second.left), second.right);
+    }
+  }
+
+  private static int getPriority(long label) {
+    // Mix the bits of the label (as in SplitMix64) to obtain a pseudo-random priority.
+    long z = label + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return (int) ((z ^ (z >>> 31)) >>> 33);
+  }
+
+  private static int getTotal(@Nullable Node node, int metric) {
+    if (node == null) {
+      return 0;
+    }
+    switch (metric) {
+      case METRIC_CHILDREN:
+        return node.totalChildCount;
+      case METRIC_WINDOWS:
+        return node.totalWindowCount;
+      case METRIC_PERIODS:
+        return node.totalPeriodCount;
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
+  private static int getOwnCount(Node node, int metric) {
+    switch (metric) {
+      case METRIC_CHILDREN:
+        return 1;
+      case METRIC_WINDOWS:
+        return node.timeline.getWindowCount();
+      case METRIC_PERIODS:
+        return node.timeline.getPeriodCount();
+      default:
+        throw new IllegalArgumentException();
+    }
+  }
+
+  /** A label assigned to a child, and the version of the index in which it was assigned. */
+  private static final class LabelRecord {
+
+    public final long label;
+    public final long version;
+
+    public LabelRecord(long label, long version) {
+      this.label = label;
+      this.version = version;
+    }
+  }
+
+  /** An immutable tree node, which also holds totals over its subtree. */
+  private static final class Node {
+
+    public final ChildUid uid;
+    public final long label;
+    public final int priority;
+    public final Timeline timeline;
+    @Nullable public final Node left;
+    @Nullable public final Node right;
+    public final int totalChildCount;
+    public final int totalWindowCount;
+    public final int totalPeriodCount;
+
+    public Node(
+        ChildUid uid,
+        long label,
+        int priority,
+        Timeline timeline,
+        @Nullable Node left,
+        @Nullable Node right) {
+      this.uid = uid;
+      this.label = label;
+      this.priority = priority;
+      this.timeline = timeline;
+      this.left = left;
+      this.right = right;
+      totalChildCount = getTotal(left, METRIC_CHILDREN) + 1 + getTotal(right, METRIC_CHILDREN);
+      totalWindowCount =
+          getTotal(left, METRIC_WINDOWS)
+              + timeline.getWindowCount()
+              + getTotal(right, METRIC_WINDOWS);
+      totalPeriodCount =
+          getTotal(left, METRIC_PERIODS)
+              + timeline.getPeriodCount()
+              + getTotal(right, METRIC_PERIODS);
+    }
+
+    public Node copyWithChildren(@Nullable Node left, @Nullable Node right) {
+      return new Node(uid, label, priority, timeline, left, right);
+    }
+  }
+}
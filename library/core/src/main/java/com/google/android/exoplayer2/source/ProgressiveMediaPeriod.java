@@ -29,6 +29,7 @@ import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.ExtractorSniffer;
 import com.google.android.exoplayer2.extractor.PositionHolder;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.SeekMap.SeekPoints;
@@ -53,11 +54,11 @@ import com.google.android.exoplayer2.util.ConditionVariable;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
-import java.io.EOFException;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 
@@ -971,7 +972,9 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
             icyTrackOutput.format(ICY_FORMAT);
           }
           input = new DefaultExtractorInput(extractorDataSource, position, length);
-          Extractor extractor = extractorHolder.selectExtractor(input, extractorOutput, uri);
+          Extractor extractor =
+              extractorHolder.selectExtractor(
+                  input, extractorOutput, uri, dataSource.getResponseHeaders());
 
           // MP3 live streams commonly have seekable metadata, despite being unseekable.
           if (icyHeaders != null && extractor instanceof Mp3Extractor) {
@@ -1064,12 +1067,17 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
      * @param output The {@link ExtractorOutput} that will be used to initialize the selected
      *     extractor.
      * @param uri The {@link Uri} of the data.
+     * @param responseHeaders The response headers of the data, which may be empty.
      * @return An initialized extractor for reading {@code input}.
      * @throws UnrecognizedInputFormatException Thrown if the input format could not be detected.
      * @throws IOException Thrown if the input could not be read.
      * @throws InterruptedException Thrown if the thread was interrupted.
      */
-    public Extractor selectExtractor(ExtractorInput input, ExtractorOutput output, Uri uri)
+    public Extractor selectExtractor(
+        ExtractorInput input,
+        ExtractorOutput output,
+        Uri uri,
+        Map<String, List<String>> responseHeaders)
         throws IOException, InterruptedException {
       if (extractor != null) {
         return extractor;
@@ -1077,18 +1085,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       if (extractors.length == 1) {
         this.extractor = extractors[0];
       } else {
-        for (Extractor extractor : extractors) {
-          try {
-            if (extractor.sniff(input)) {
-              this.extractor = extractor;
-              break;
-            }
-          } catch (EOFException e) {
-            // Do nothing.
-          } finally {
-            input.resetPeekPosition();
-          }
-        }
+        extractor = ExtractorSniffer.sniff(extractors, input, uri, responseHeaders);
         if (extractor == null) {
           throw new UnrecognizedInputFormatException(
               "None of the available extractors ("
@@ -15,30 +15,26 @@
  */
 package com.google.android.exoplayer2.source;
 
-import android.os.Looper;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
 import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
-import com.google.android.exoplayer2.drm.DrmInitData;
 import com.google.android.exoplayer2.drm.DrmSession;
-import com.google.android.exoplayer2.drm.DrmSessionManager;
 import com.google.android.exoplayer2.extractor.TrackOutput.CryptoData;
-import com.google.android.exoplayer2.util.Assertions;
-import com.google.android.exoplayer2.util.MimeTypes;
-import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 
 /**
  * A queue of metadata describing the contents of a media buffer.
+ *
+ * <p>Samples are committed by a single loading thread and read by a single consuming thread.
  */
-/* package */ final class SampleMetadataQueue {
+/* package */ interface SampleMetadataQueue {
 
   /**
    * A holder for sample metadata not held by {@link DecoderInputBuffer}.
    */
-  public static final class SampleExtrasHolder {
+  final class SampleExtrasHolder {
 
     public int size;
     public long offset;
@@ -46,52 +42,6 @@ import java.io.IOException;
 
   }
 
-  private static final int SAMPLE_CAPACITY_INCREMENT = 1000;
-
-  private final DrmSessionManager<?> drmSessionManager;
-
-  @Nullable private Format downstreamFormat;
-  @Nullable private DrmSession<?> currentDrmSession;
-
-  private int capacity;
-  private int[] sourceIds;
-  private long[] offsets;
-  private int[] sizes;
-  private int[] flags;
-  private long[] timesUs;
-  private CryptoData[] cryptoDatas;
-  private Format[] formats;
-
-  private int length;
-  private int absoluteFirstIndex;
-  private int relativeFirstIndex;
-  private int readPosition;
-
-  private long largestDiscardedTimestampUs;
-  private long largestQueuedTimestampUs;
-  private boolean isLastSampleQueued;
-  private boolean upstreamKeyframeRequired;
-  private boolean upstreamFormatRequired;
-  private Format upstreamFormat;
-  private Format upstreamCommittedFormat;
-  private int upstreamSourceId;
-
-  public SampleMetadataQueue(DrmSessionManager<?> drmSessionManager) {
-    this.drmSessionManager = drmSessionManager;
-    capacity = SAMPLE_CAPACITY_INCREMENT;
-    sourceIds = new int[capacity];
-    offsets = new long[capacity];
-    timesUs = new long[capacity];
-    flags = new int[capacity];
-    sizes = new int[capacity];
-    cryptoDatas = new CryptoData[capacity];
-    formats = new Format[capacity];
-    largestDiscardedTimestampUs = Long.MIN_VALUE;
-    largestQueuedTimestampUs = Long.MIN_VALUE;
-    upstreamFormatRequired = true;
-    upstreamKeyframeRequired = true;
-  }
-
   // Called by the consuming thread, but only when there is no loading thread.
 
   /**
@@ -102,28 +52,12 @@ import java.io.IOException;
    *     are assumed to have the current upstream format. If set to true, {@link #format(Format)}
    *     must be called after the reset before any more samples can be queued.
    */
-  public void reset(boolean resetUpstreamFormat) {
-    length = 0;
-    absoluteFirstIndex = 0;
-    relativeFirstIndex = 0;
-    readPosition = 0;
-    upstreamKeyframeRequired = true;
-    largestDiscardedTimestampUs = Long.MIN_VALUE;
-    largestQueuedTimestampUs = Long.MIN_VALUE;
-    isLastSampleQueued = false;
-    upstreamCommittedFormat = null;
-    if (resetUpstreamFormat) {
-      upstreamFormat = null;
-      upstreamFormatRequired = true;
-    }
-  }
+  void reset(boolean resetUpstreamFormat);
 
   /**
    * Returns the current absolute write index.
    */
-  public int getWriteIndex() {
-    return absoluteFirstIndex + length;
-  }
+  int getWriteIndex();
 
   /**
    * Discards samples from the write side of the queue.
@@ -132,23 +66,14 @@ import java.io.IOException;
    * @return The reduced total number of bytes written after the samples have been discarded, or 0
    *     if the queue is now empty.
    */
-  public long discardUpstreamSamples(int discardFromIndex) {
-    int discardCount = getWriteIndex() - discardFromIndex;
-    Assertions.checkArgument(0 <= discardCount && discardCount <= (length - readPosition));
-    length -= discardCount;
-    largestQueuedTimestampUs = Math.max(largestDiscardedTimestampUs, getLargestTimestamp(length));
-    isLastSampleQueued = discardCount == 0 && isLastSampleQueued;
-    if (length == 0) {
-      return 0;
-    } else {
-      int relativeLastWriteIndex = getRelativeIndex(length - 1);
-      return offsets[relativeLastWriteIndex] + sizes[relativeLastWriteIndex];
-    }
-  }
+  long discardUpstreamSamples(int discardFromIndex);
 
-  public void sourceId(int sourceId) {
-    upstreamSourceId = sourceId;
-  }
+  /**
+   * Sets the source id of subsequently committed samples.
+   *
+   * @param sourceId The source id.
+   */
+  void sourceId(int sourceId);
 
   // Called by the consuming thread.
 
@@ -157,35 +82,18 @@ import java.io.IOException;
    *
    * @throws IOException The underlying error.
    */
-  public void maybeThrowError() throws IOException {
-    // TODO: Avoid throwing if the DRM error is not preventing a read operation.
-    if (currentDrmSession != null && currentDrmSession.getState() == DrmSession.STATE_ERROR) {
-      throw Assertions.checkNotNull(currentDrmSession.getError());
-    }
-  }
+  void maybeThrowError() throws IOException;
 
   /** Releases any owned {@link DrmSession} references. */
-  public void releaseDrmSessionReferences() {
-    if (currentDrmSession != null) {
-      currentDrmSession.release();
-      currentDrmSession = null;
-      // Clear downstream format to avoid violating the assumption that downstreamFormat.drmInitData
-      // != null implies currentSession != null
-      downstreamFormat = null;
-    }
-  }
+  void releaseDrmSessionReferences();
 
   /** Returns the current absolute start index. */
-  public int getFirstIndex() {
-    return absoluteFirstIndex;
-  }
+  int getFirstIndex();
 
   /**
    * Returns the current absolute read index.
    */
-  public int getReadIndex() {
-    return absoluteFirstIndex + readPosition;
-  }
+  int getReadIndex();
 
   /**
    * Peeks the source id of the next sample to be read, or the current upstream source id if the
@@ -193,17 +101,13 @@ import java.io.IOException;
    *
    * @return The source id.
    */
-  public synchronized int peekSourceId() {
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    return hasNextSample() ? sourceIds[relativeReadIndex] : upstreamSourceId;
-  }
+  int peekSourceId();
 
   /**
    * Returns the upstream {@link Format} in which samples are being queued.
    */
-  public synchronized Format getUpstreamFormat() {
-    return upstreamFormatRequired ? null : upstreamFormat;
-  }
+  @Nullable
+  Format getUpstreamFormat();
 
   /**
    * Returns the largest sample timestamp that has been queued since the last call to
@@ -216,9 +120,7 @@ import java.io.IOException;
    * @return The largest sample timestamp that has been queued, or {@link Long#MIN_VALUE} if no
    *     samples have been queued.
    */
-  public synchronized long getLargestQueuedTimestampUs() {
-    return largestQueuedTimestampUs;
-  }
+  long getLargestQueuedTimestampUs();
 
   /**
    * Returns whether the last sample of the stream has knowingly been queued. A return value of
@@ -229,21 +131,15 @@ import java.io.IOException;
    * considered as having been queued. Samples that were dequeued from the front of the queue are
    * considered as having been queued.
    */
-  public synchronized boolean isLastSampleQueued() {
-    return isLastSampleQueued;
-  }
+  boolean isLastSampleQueued();
 
   /** Returns the timestamp of the first sample, or {@link Long#MIN_VALUE} if the queue is empty. */
-  public synchronized long getFirstTimestampUs() {
-    return length == 0 ? Long.MIN_VALUE : timesUs[relativeFirstIndex];
-  }
+  long getFirstTimestampUs();
 
   /**
    * Rewinds the read position to the first sample retained in the queue.
    */
-  public synchronized void rewind() {
-    readPosition = 0;
-  }
+  void rewind();
 
   /**
    * Returns whether there is data available for reading.
@@ -256,19 +152,7 @@ import java.io.IOException;
    *     the end of stream has been reached. When false, this method returns false if the sample
    *     queue is empty.
    */
-  public boolean isReady(boolean loadingFinished) {
-    if (!hasNextSample()) {
-      return loadingFinished
-          || isLastSampleQueued
-          || (upstreamFormat != null && upstreamFormat != downstreamFormat);
-    }
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    if (formats[relativeReadIndex] != downstreamFormat) {
-      // A format can be read.
-      return true;
-    }
-    return mayReadSample(relativeReadIndex);
-  }
+  boolean isReady(boolean loadingFinished);
 
   /**
    * Attempts to read from the queue.
@@ -291,48 +175,12 @@ import java.io.IOException;
    * @return The result, which can be {@link C#RESULT_NOTHING_READ}, {@link C#RESULT_FORMAT_READ} or
    *     {@link C#RESULT_BUFFER_READ}.
    */
-  @SuppressWarnings("ReferenceEquality")
-  public synchronized int read(
+  int read(
       FormatHolder formatHolder,
       DecoderInputBuffer buffer,
       boolean formatRequired,
       boolean loadingFinished,
-      SampleExtrasHolder extrasHolder) {
-    if (!hasNextSample()) {
-      if (loadingFinished || isLastSampleQueued) {
-        buffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
-        return C.RESULT_BUFFER_READ;
-      } else if (upstreamFormat != null && (formatRequired || upstreamFormat != downstreamFormat)) {
-        onFormatResult(Assertions.checkNotNull(upstreamFormat), formatHolder);
-        return C.RESULT_FORMAT_READ;
-      } else {
-        return C.RESULT_NOTHING_READ;
-      }
-    }
-
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    if (formatRequired || formats[relativeReadIndex] != downstreamFormat) {
-      onFormatResult(formats[relativeReadIndex], formatHolder);
-      return C.RESULT_FORMAT_READ;
-    }
-
-    if (!mayReadSample(relativeReadIndex)) {
-      return C.RESULT_NOTHING_READ;
-    }
-
-    buffer.setFlags(flags[relativeReadIndex]);
-    buffer.timeUs = timesUs[relativeReadIndex];
-    if (buffer.isFlagsOnly()) {
-      return C.RESULT_BUFFER_READ;
-    }
-
-    extrasHolder.size = sizes[relativeReadIndex];
-    extrasHolder.offset = offsets[relativeReadIndex];
-    extrasHolder.cryptoData = cryptoDatas[relativeReadIndex];
-
-    readPosition++;
-    return C.RESULT_BUFFER_READ;
-  }
+      SampleExtrasHolder extrasHolder);
 
   /**
    * Attempts to advance the read position to the sample before or at the specified time.
@@ -348,31 +196,14 @@ import java.io.IOException;
    *     successful advance is one in which the read position was unchanged or advanced, and is now
    *     at a sample meeting the specified criteria.
    */
-  public synchronized int advanceTo(long timeUs, boolean toKeyframe,
-      boolean allowTimeBeyondBuffer) {
-    int relativeReadIndex = getRelativeIndex(readPosition);
-    if (!hasNextSample() || timeUs < timesUs[relativeReadIndex]
-        || (timeUs > largestQueuedTimestampUs && !allowTimeBeyondBuffer)) {
-      return SampleQueue.ADVANCE_FAILED;
-    }
-    int offset = findSampleBefore(relativeReadIndex, length - readPosition, timeUs, toKeyframe);
-    if (offset == -1) {
-      return SampleQueue.ADVANCE_FAILED;
-    }
-    readPosition += offset;
-    return offset;
-  }
+  int advanceTo(long timeUs, boolean toKeyframe, boolean allowTimeBeyondBuffer);
 
   /**
    * Advances the read position to the end of the queue.
    *
    * @return The number of samples that were skipped.
    */
-  public synchronized int advanceToEnd() {
-    int skipCount = length - readPosition;
-    readPosition = length;
-    return skipCount;
-  }
+  int advanceToEnd();
 
   /**
    * Attempts to set the read position to the specified sample index.
@@ -382,13 +213,7 @@ import java.io.IOException;
    *     index is smaller than the index of the first sample in the queue, or larger than the index
    *     of the next sample that will be written.
    */
-  public synchronized boolean setReadPosition(int sampleIndex) {
-    if (absoluteFirstIndex <= sampleIndex && sampleIndex <= absoluteFirstIndex + length) {
-      readPosition = sampleIndex - absoluteFirstIndex;
-      return true;
-    }
-    return false;
-  }
+  boolean setReadPosition(int sampleIndex);
 
   /**
    * Discards up to but not including the sample immediately before or at the specified time.
@@ -402,17 +227,7 @@ import java.io.IOException;
    * @return The corresponding offset up to which data should be discarded, or
    *     {@link C#POSITION_UNSET} if no discarding of data is necessary.
    */
-  public synchronized long discardTo(long timeUs, boolean toKeyframe, boolean stopAtReadPosition) {
-    if (length == 0 || timeUs < timesUs[relativeFirstIndex]) {
-      return C.POSITION_UNSET;
-    }
-    int searchLength = stopAtReadPosition && readPosition != length ? readPosition + 1 : length;
-    int discardCount = findSampleBefore(relativeFirstIndex, searchLength, timeUs, toKeyframe);
-    if (discardCount == -1) {
-      return C.POSITION_UNSET;
-    }
-    return discardSamples(discardCount);
-  }
+  long discardTo(long timeUs, boolean toKeyframe, boolean stopAtReadPosition);
 
   /**
    * Discards samples up to but not including the read position.
@@ -420,12 +235,7 @@ import java.io.IOException;
    * @return The corresponding offset up to which data should be discarded, or
    *     {@link C#POSITION_UNSET} if no discarding of data is necessary.
    */
-  public synchronized long discardToRead() {
-    if (readPosition == 0) {
-      return C.POSITION_UNSET;
-    }
-    return discardSamples(readPosition);
-  }
+  long discardToRead();
 
   /**
    * Discards all samples in the queue. The read position is also advanced.
@@ -433,289 +243,37 @@ import java.io.IOException;
    * @return The corresponding offset up to which data should be discarded, or
    *     {@link C#POSITION_UNSET} if no discarding of data is necessary.
    */
-  public synchronized long discardToEnd() {
-    if (length == 0) {
-      return C.POSITION_UNSET;
-    }
-    return discardSamples(length);
-  }
+  long discardToEnd();
 
   // Called by the loading thread.
 
-  public synchronized boolean format(Format format) {
-    if (format == null) {
-      upstreamFormatRequired = true;
-      return false;
-    }
-    upstreamFormatRequired = false;
-    if (Util.areEqual(format, upstreamFormat)) {
-      // The format is unchanged. If format and upstreamFormat are different objects, we keep the
-      // current upstreamFormat so we can detect format changes in read() using cheap referential
-      // equality.
-      return false;
-    } else if (Util.areEqual(format, upstreamCommittedFormat)) {
-      // The format has changed back to the format of the last committed sample. If they are
-      // different objects, we revert back to using upstreamCommittedFormat as the upstreamFormat so
-      // we can detect format changes in read() using cheap referential equality.
-      upstreamFormat = upstreamCommittedFormat;
-      return true;
-    } else {
-      upstreamFormat = format;
-      return true;
-    }
-  }
-
-  public synchronized void commitSample(long timeUs, @C.BufferFlags int sampleFlags, long offset,
-      int size, CryptoData cryptoData) {
-    if (upstreamKeyframeRequired) {
-      if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) == 0) {
-        return;
-      }
-      upstreamKeyframeRequired = false;
-    }
-    Assertions.checkState(!upstreamFormatRequired);
-
-    isLastSampleQueued = (sampleFlags & C.BUFFER_FLAG_LAST_SAMPLE) != 0;
-    largestQueuedTimestampUs = Math.max(largestQueuedTimestampUs, timeUs);
-
-    int relativeEndIndex = getRelativeIndex(length);
-    timesUs[relativeEndIndex] = timeUs;
-    offsets[relativeEndIndex] = offset;
-    sizes[relativeEndIndex] = size;
-    flags[relativeEndIndex] = sampleFlags;
-    cryptoDatas[relativeEndIndex] = cryptoData;
-    formats[relativeEndIndex] = upstreamFormat;
-    sourceIds[relativeEndIndex] = upstreamSourceId;
-    upstreamCommittedFormat = upstreamFormat;
-
-    length++;
-    if (length == capacity) {
-      // Increase the capacity.
-      int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-      int[] newSourceIds = new int[newCapacity];
-      long[] newOffsets = new long[newCapacity];
-      long[] newTimesUs = new long[newCapacity];
-      int[] newFlags = new int[newCapacity];
-      int[] newSizes = new int[newCapacity];
-      CryptoData[] newCryptoDatas = new CryptoData[newCapacity];
-      Format[] newFormats = new Format[newCapacity];
-      int beforeWrap = capacity - relativeFirstIndex;
-      System.arraycopy(offsets, relativeFirstIndex, newOffsets, 0, beforeWrap);
-      System.arraycopy(timesUs, relativeFirstIndex, newTimesUs, 0, beforeWrap);
-      System.arraycopy(flags, relativeFirstIndex, newFlags, 0, beforeWrap);
-      System.arraycopy(sizes, relativeFirstIndex, newSizes, 0, beforeWrap);
-      System.arraycopy(cryptoDatas, relativeFirstIndex, newCryptoDatas, 0, beforeWrap);
-      System.arraycopy(formats, relativeFirstIndex, newFormats, 0, beforeWrap);
-      System.arraycopy(sourceIds, relativeFirstIndex, newSourceIds, 0, beforeWrap);
-      int afterWrap = relativeFirstIndex;
-      System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-      System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-      System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-      System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-      System.arraycopy(cryptoDatas, 0, newCryptoDatas, beforeWrap, afterWrap);
-      System.arraycopy(formats, 0, newFormats, beforeWrap, afterWrap);
-      System.arraycopy(sourceIds, 0, newSourceIds, beforeWrap, afterWrap);
-      offsets = newOffsets;
-      timesUs = newTimesUs;
-      flags = newFlags;
-      sizes = newSizes;
-      cryptoDatas = newCryptoDatas;
-      formats = newFormats;
-      sourceIds = newSourceIds;
-      relativeFirstIndex = 0;
-      length = capacity;
-      capacity = newCapacity;
-    }
-  }
-
   /**
-   * Attempts to discard samples from the end of the queue to allow samples starting from the
-   * specified timestamp to be spliced in. Samples will not be discarded prior to the read position.
-   *
-   * @param timeUs The timestamp at which the splice occurs.
-   * @return Whether the splice was successful.
-   */
-  public synchronized boolean attemptSplice(long timeUs) {
-    if (length == 0) {
-      return timeUs > largestDiscardedTimestampUs;
-    }
-    long largestReadTimestampUs = Math.max(largestDiscardedTimestampUs,
-        getLargestTimestamp(readPosition));
-    if (largestReadTimestampUs >= timeUs) {
-      return false;
-    }
-    int retainCount = length;
-    int relativeSampleIndex = getRelativeIndex(length - 1);
-    while (retainCount > readPosition && timesUs[relativeSampleIndex] >= timeUs) {
-      retainCount--;
-      relativeSampleIndex--;
-      if (relativeSampleIndex == -1) {
-        relativeSampleIndex = capacity - 1;
-      }
-    }
-    discardUpstreamSamples(absoluteFirstIndex + retainCount);
-    return true;
-  }
-
-  // Internal methods.
-
-  private boolean hasNextSample() {
-    return readPosition != length;
-  }
-
-  /**
-   * Sets the downstream format, performs DRM resource management, and populates the {@code
-   * outputFormatHolder}.
-   *
-   * @param newFormat The new downstream format.
-   * @param outputFormatHolder The output {@link FormatHolder}.
-   */
-  private void onFormatResult(Format newFormat, FormatHolder outputFormatHolder) {
-    outputFormatHolder.format = newFormat;
-    boolean isFirstFormat = downstreamFormat == null;
-    DrmInitData oldDrmInitData = isFirstFormat ? null : downstreamFormat.drmInitData;
-    downstreamFormat = newFormat;
-    if (drmSessionManager == DrmSessionManager.DUMMY) {
-      // Avoid attempting to acquire a session using the dummy DRM session manager. It's likely that
-      // the media source creation has not yet been migrated and the renderer can acquire the
-      // session for the read DRM init data.
-      // TODO: Remove once renderers are migrated [Internal ref: b/122519809].
-      return;
-    }
-    DrmInitData newDrmInitData = newFormat.drmInitData;
-    outputFormatHolder.includesDrmSession = true;
-    outputFormatHolder.drmSession = currentDrmSession;
-    if (!isFirstFormat && Util.areEqual(oldDrmInitData, newDrmInitData)) {
-      // Nothing to do.
-      return;
-    }
-    // Ensure we acquire the new session before releasing the previous one in case the same session
-    // is being used for both DrmInitData.
-    DrmSession<?> previousSession = currentDrmSession;
-    Looper playbackLooper = Assertions.checkNotNull(Looper.myLooper());
-    currentDrmSession =
-        newDrmInitData != null
-            ? drmSessionManager.acquireSession(playbackLooper, newDrmInitData)
-            : drmSessionManager.acquirePlaceholderSession(
-                playbackLooper, MimeTypes.getTrackType(newFormat.sampleMimeType));
-    outputFormatHolder.drmSession = currentDrmSession;
-
-    if (previousSession != null) {
-      previousSession.release();
-    }
-  }
-
-  /**
-   * Returns whether it's possible to read the next sample.
-   *
-   * @param relativeReadIndex The relative read index of the next sample.
-   * @return Whether it's possible to read the next sample.
-   */
-  private boolean mayReadSample(int relativeReadIndex) {
-    if (drmSessionManager == DrmSessionManager.DUMMY) {
-      // TODO: Remove once renderers are migrated [Internal ref: b/122519809].
-      // For protected content it's likely that the DrmSessionManager is still being injected into
-      // the renderers. We assume that the renderers will be able to acquire a DrmSession if needed.
-      return true;
-    }
-    return currentDrmSession == null
-        || currentDrmSession.getState() == DrmSession.STATE_OPENED_WITH_KEYS
-        || ((flags[relativeReadIndex] & C.BUFFER_FLAG_ENCRYPTED) == 0
-            && currentDrmSession.playClearSamplesWithoutKeys());
-  }
-
-  /**
-   * Finds the sample in the specified range that's before or at the specified time. If {@code
-   * keyframe} is {@code true} then the sample is additionally required to be a keyframe.
+   * Sets the format of subsequently committed samples.
    *
-   * @param relativeStartIndex The relative index from which to start searching.
-   * @param length The length of the range being searched.
-   * @param timeUs The specified time.
-   * @param keyframe Whether only keyframes should be considered.
-   * @return The offset from {@code relativeFirstIndex} to the found sample, or -1 if no matching
-   *     sample was found.
+   * @param format The format, or null if a format must be set before any more samples can be
+   *     committed.
+   * @return Whether the upstream format changed.
    */
-  private int findSampleBefore(int relativeStartIndex, int length, long timeUs, boolean keyframe) {
-    // This could be optimized to use a binary search, however in practice callers to this method
-    // normally pass times near to the start of the search region. Hence it's unclear whether
-    // switching to a binary search would yield any real benefit.
-    int sampleCountToTarget = -1;
-    int searchIndex = relativeStartIndex;
-    for (int i = 0; i < length && timesUs[searchIndex] <= timeUs; i++) {
-      if (!keyframe || (flags[searchIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        // We've found a suitable sample.
-        sampleCountToTarget = i;
-      }
-      searchIndex++;
-      if (searchIndex == capacity) {
-        searchIndex = 0;
-      }
-    }
-    return sampleCountToTarget;
-  }
+  boolean format(@Nullable Format format);
 
   /**
-   * Discards the specified number of samples.
+   * Commits the metadata of a sample to the queue.
    *
-   * @param discardCount The number of samples to discard.
-   * @return The corresponding offset up to which data should be discarded.
+   * @param timeUs The sample timestamp, in microseconds.
+   * @param sampleFlags The sample flags.
+   * @param offset The absolute position of the sample data in the rolling buffer.
+   * @param size The size of the sample data, in bytes.
+   * @param cryptoData The encryption data of the sample, or null if it's not encrypted.
    */
-  private long discardSamples(int discardCount) {
-    largestDiscardedTimestampUs = Math.max(largestDiscardedTimestampUs,
-        getLargestTimestamp(discardCount));
-    length -= discardCount;
-    absoluteFirstIndex += discardCount;
-    relativeFirstIndex += discardCount;
-    if (relativeFirstIndex >= capacity) {
-      relativeFirstIndex -= capacity;
-    }
-    readPosition -= discardCount;
-    if (readPosition < 0) {
-      readPosition = 0;
-    }
-    if (length == 0) {
-      int relativeLastDiscardIndex = (relativeFirstIndex == 0 ? capacity : relativeFirstIndex) - 1;
-      return offsets[relativeLastDiscardIndex] + sizes[relativeLastDiscardIndex];
-    } else {
-      return offsets[relativeFirstIndex];
-    }
-  }
+  void commitSample(
+      long timeUs, @C.BufferFlags int sampleFlags, long offset, int size, CryptoData cryptoData);
 
   /**
-   * Finds the largest timestamp of any sample from the start of the queue up to the specified
-   * length, assuming that the timestamps prior to a keyframe are always less than the timestamp of
-   * the keyframe itself, and of subsequent frames.
+   * Attempts to discard samples from the end of the queue to allow samples starting from the
+   * specified timestamp to be spliced in. Samples will not be discarded prior to the read position.
    *
-   * @param length The length of the range being searched.
-   * @return The largest timestamp, or {@link Long#MIN_VALUE} if {@code length == 0}.
+   * @param timeUs The timestamp at which the splice occurs.
+   * @return Whether the splice was successful.
    */
-  private long getLargestTimestamp(int length) {
-    if (length == 0) {
-      return Long.MIN_VALUE;
-    }
-    long largestTimestampUs = Long.MIN_VALUE;
-    int relativeSampleIndex = getRelativeIndex(length - 1);
-    for (int i = 0; i < length; i++) {
-      largestTimestampUs = Math.max(largestTimestampUs, timesUs[relativeSampleIndex]);
-      if ((flags[relativeSampleIndex] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        break;
-      }
-      relativeSampleIndex--;
-      if (relativeSampleIndex == -1) {
-        relativeSampleIndex = capacity - 1;
-      }
-    }
-    return largestTimestampUs;
-  }
-
-   /**
-    * Returns the relative index for a given offset from the start of the queue.
-    *
-    * @param offset The offset, which must be in the range [0, length].
-    */
-  private int getRelativeIndex(int offset) {
-    int relativeIndex = relativeFirstIndex + offset;
-    return relativeIndex < capacity ? relativeIndex : relativeIndex - capacity;
-  }
-
+  boolean attemptSplice(long timeUs);
 }
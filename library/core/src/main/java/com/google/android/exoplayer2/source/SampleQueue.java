@@ -80,9 +80,29 @@ public class SampleQueue implements TrackOutput {
    *     from. The created instance does not take ownership of this {@link DrmSessionManager}.
    */
   public SampleQueue(Allocator allocator, DrmSessionManager<?> drmSessionManager) {
+    this(allocator, drmSessionManager, /* useLockFreeMetadataQueue= */ false);
+  }
+
+  /**
+   * Creates a sample queue.
+   *
+   * @param allocator An {@link Allocator} from which allocations for sample data can be obtained.
+   * @param drmSessionManager The {@link DrmSessionManager} to obtain {@link DrmSession DrmSessions}
+   *     from. The created instance does not take ownership of this {@link DrmSessionManager}.
+   * @param useLockFreeMetadataQueue Whether sample metadata should be handed from the loading
+   *     thread to the consuming thread without locking. If true, the queue must not be written to
+   *     by more than one thread or read from by more than one thread.
+   */
+  public SampleQueue(
+      Allocator allocator,
+      DrmSessionManager<?> drmSessionManager,
+      boolean useLockFreeMetadataQueue) {
     this.allocator = allocator;
     allocationLength = allocator.getIndividualAllocationLength();
-    metadataQueue = new SampleMetadataQueue(drmSessionManager);
+    metadataQueue =
+        useLockFreeMetadataQueue
+            ? new LockFreeSampleMetadataQueue(drmSessionManager)
+            : new SynchronizedSampleMetadataQueue(drmSessionManager);
     extrasHolder = new SampleExtrasHolder();
     scratch = new ParsableByteArray(INITIAL_SCRATCH_SIZE);
     firstAllocationNode = new AllocationNode(0, allocationLength);
@@ -33,6 +33,8 @@ import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.PlaybackInstrumentation;
+import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -376,8 +378,15 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     }
     maybeNotifyPrimaryTrackFormatChanged();
 
-    return primarySampleQueue.read(
-        formatHolder, buffer, formatRequired, loadingFinished, decodeOnlyUntilPositionUs);
+    long readStartTimeNs = TraceUtil.startStage();
+    int result =
+        primarySampleQueue.read(
+            formatHolder, buffer, formatRequired, loadingFinished, decodeOnlyUntilPositionUs);
+    TraceUtil.endStage(PlaybackInstrumentation.STAGE_SAMPLE_READ, readStartTimeNs);
+    if (result == C.RESULT_BUFFER_READ) {
+      TraceUtil.incrementCounter(PlaybackInstrumentation.COUNTER_SAMPLES_READ, 1);
+    }
+    return result;
   }
 
   @Override
@@ -403,6 +412,8 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
   @Override
   public void onLoadCompleted(Chunk loadable, long elapsedRealtimeMs, long loadDurationMs) {
     chunkSource.onChunkLoadCompleted(loadable);
+    TraceUtil.incrementCounter(
+        PlaybackInstrumentation.COUNTER_CHUNK_BYTES_LOADED, loadable.bytesLoaded());
     eventDispatcher.loadCompleted(
         loadable.dataSpec,
         loadable.getUri(),
@@ -48,6 +48,8 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     private final long minTimeBetweenBufferReevaluationMs;
     private final Clock clock;
 
+    private int chunkLookaheadCount;
+
     /** Creates an adaptive track selection factory with default parameters. */
     public Factory() {
       this(
@@ -203,6 +205,22 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       this.clock = clock;
     }
 
+    /**
+     * Sets the number of upcoming chunks whose sizes are used to estimate the bitrate of each track
+     * when selecting tracks. See {@link
+     * AdaptiveTrackSelection#experimental_setChunkLookaheadCount(int)}.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param chunkLookaheadCount The number of upcoming chunks, or 0 to use {@link Format#bitrate}.
+     * @return This factory.
+     */
+    public final Factory experimental_setChunkLookaheadCount(int chunkLookaheadCount) {
+      Assertions.checkArgument(chunkLookaheadCount >= 0);
+      this.chunkLookaheadCount = chunkLookaheadCount;
+      return this;
+    }
+
     @Override
     public final @NullableType TrackSelection[] createTrackSelections(
         @NullableType Definition[] definitions, BandwidthMeter bandwidthMeter) {
@@ -231,6 +249,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
           AdaptiveTrackSelection adaptiveSelection =
               createAdaptiveTrackSelection(
                   definition.group, bandwidthMeter, definition.tracks, totalFixedBandwidth);
+          adaptiveSelection.experimental_setChunkLookaheadCount(chunkLookaheadCount);
           adaptiveSelections.add(adaptiveSelection);
           selections[i] = adaptiveSelection;
         }
@@ -297,11 +316,13 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
   private final float bufferedFractionToLiveEdgeForQualityIncrease;
   private final long minTimeBetweenBufferReevaluationMs;
   private final Clock clock;
+  private final int[] trackBitrates;
 
   private float playbackSpeed;
   private int selectedIndex;
   private int reason;
   private long lastBufferEvaluationMs;
+  private int chunkLookaheadCount;
 
   /**
    * @param group The {@link TrackGroup}.
@@ -400,6 +421,10 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     playbackSpeed = 1f;
     reason = C.SELECTION_REASON_UNKNOWN;
     lastBufferEvaluationMs = C.TIME_UNSET;
+    trackBitrates = new int[length];
+    for (int i = 0; i < length; i++) {
+      trackBitrates[i] = getFormat(i).bitrate;
+    }
   }
 
   /**
@@ -413,6 +438,24 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
         .experimental_setBandwidthAllocationCheckpoints(allocationCheckpoints);
   }
 
+  /**
+   * Sets the number of upcoming chunks whose sizes are used to estimate the bitrate of each track
+   * when selecting tracks. If greater than zero and the {@link MediaChunkIterator} of a track knows
+   * the sizes of its upcoming chunks, as is the case for DASH segment indices, HLS byte ranges and
+   * SmoothStreaming, a track is only selected if each of these chunks can be loaded no slower than
+   * it plays out (see {@link TrackSelectionUtil#getRequiredChunkBitrate(MediaChunkIterator, int)}).
+   * This avoids selecting tracks with variable bitrates whose upcoming chunks are larger than their
+   * {@link Format#bitrate} suggests. Otherwise, {@link Format#bitrate} is used.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param chunkLookaheadCount The number of upcoming chunks, or 0 to use {@link Format#bitrate}.
+   */
+  public void experimental_setChunkLookaheadCount(int chunkLookaheadCount) {
+    Assertions.checkArgument(chunkLookaheadCount >= 0);
+    this.chunkLookaheadCount = chunkLookaheadCount;
+  }
+
   @Override
   public void enable() {
     lastBufferEvaluationMs = C.TIME_UNSET;
@@ -431,6 +474,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
       List<? extends MediaChunk> queue,
       MediaChunkIterator[] mediaChunkIterators) {
     long nowMs = clock.elapsedRealtime();
+    updateTrackBitrates(mediaChunkIterators);
 
     // Make initial selection
     if (reason == C.SELECTION_REASON_UNKNOWN) {
@@ -577,7 +621,7 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     for (int i = 0; i < length; i++) {
       if (nowMs == Long.MIN_VALUE || !isBlacklisted(i, nowMs)) {
         Format format = getFormat(i);
-        if (canSelectFormat(format, format.bitrate, playbackSpeed, effectiveBitrate)) {
+        if (canSelectFormat(format, trackBitrates[i], playbackSpeed, effectiveBitrate)) {
           return i;
         } else {
           lowestBitrateNonBlacklistedIndex = i;
@@ -587,6 +631,17 @@ public class AdaptiveTrackSelection extends BaseTrackSelection {
     return lowestBitrateNonBlacklistedIndex;
   }
 
+  private void updateTrackBitrates(MediaChunkIterator[] mediaChunkIterators) {
+    for (int i = 0; i < length; i++) {
+      int trackBitrate = Format.NO_VALUE;
+      if (chunkLookaheadCount > 0 && i < mediaChunkIterators.length) {
+        trackBitrate =
+            TrackSelectionUtil.getRequiredChunkBitrate(mediaChunkIterators[i], chunkLookaheadCount);
+      }
+      trackBitrates[i] = trackBitrate != Format.NO_VALUE ? trackBitrate : getFormat(i).bitrate;
+    }
+  }
+
   private long minDurationForQualityIncreaseUs(long availableDurationUs) {
     boolean isAvailableDurationTooShort = availableDurationUs != C.TIME_UNSET
         && availableDurationUs <= minDurationForQualityIncreaseUs;
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A buffer based adaptive {@link TrackSelection} implementing BOLA, which selects the track that
+ * maximizes a utility function of its quality, penalized by the risk of rebuffering given the
+ * current buffer level.
+ *
+ * <p>The utility of a track is the logarithm of its bitrate relative to the lowest bitrate. For
+ * each track, the selection scores {@code (v * (utility + gamma) - bufferLevel) / chunkBitrate},
+ * where {@code v} and {@code gamma} are chosen such that the lowest quality track is selected at the
+ * minimum buffer level, and the highest quality track is selected at the target buffer level.
+ * {@code chunkBitrate} is derived from the size of the next chunk of the track if the {@link
+ * MediaChunkIterator} for the track knows it, which accounts for variable chunk sizes, and from
+ * {@link Format#bitrate} otherwise.
+ *
+ * <p>The bandwidth estimate is used in two ways. Until enough media is buffered for the buffer
+ * based selection to keep up with the current selection, the selection is made using the bandwidth
+ * estimate only. Afterwards, switching to a track of higher quality than the bandwidth estimate can
+ * sustain is only allowed if the current track is already of higher quality, which avoids
+ * oscillation between tracks.
+ *
+ * <p>When {@link #evaluateQueueSize(long, List)} is called, buffered chunks of lower quality than
+ * the track that would be selected with the buffer level at the start of the chunk are discarded,
+ * so that they can be replaced by chunks of higher quality.
+ */
+public class BolaTrackSelection extends BaseTrackSelection {
+
+  /** Factory for {@link BolaTrackSelection} instances. */
+  public static class Factory implements TrackSelection.Factory {
+
+    private final int minBufferMs;
+    private final int bufferTargetMs;
+    private final float bandwidthFraction;
+    private final int minDurationToRetainAfterDiscardMs;
+    private final long minTimeBetweenBufferReevaluationMs;
+    private final Clock clock;
+
+    /** Creates a BOLA track selection factory with default parameters. */
+    public Factory() {
+      this(
+          DEFAULT_MIN_BUFFER_MS,
+          DEFAULT_BUFFER_TARGET_MS,
+          DEFAULT_BANDWIDTH_FRACTION,
+          DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+          DEFAULT_MIN_TIME_BETWEEN_BUFFER_REEVALUTATION_MS,
+          Clock.DEFAULT);
+    }
+
+    /**
+     * Creates a BOLA track selection factory.
+     *
+     * @param minBufferMs The buffer level at and below which the lowest quality track is selected,
+     *     in milliseconds.
+     * @param bufferTargetMs The buffer level at and above which the highest quality track is
+     *     selected, in milliseconds. Should be less than the maximum buffer duration of the {@link
+     *     com.google.android.exoplayer2.LoadControl}.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account for
+     *     inaccuracies in the bandwidth estimator.
+     * @param minDurationToRetainAfterDiscardMs The minimum duration of buffered media that must be
+     *     retained when discarding chunks to replace them with chunks of higher quality, in
+     *     milliseconds.
+     * @param minTimeBetweenBufferReevaluationMs The minimum duration between two consecutive
+     *     buffer reevaluations, in milliseconds.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(
+        int minBufferMs,
+        int bufferTargetMs,
+        float bandwidthFraction,
+        int minDurationToRetainAfterDiscardMs,
+        long minTimeBetweenBufferReevaluationMs,
+        Clock clock) {
+      this.minBufferMs = minBufferMs;
+      this.bufferTargetMs = bufferTargetMs;
+      this.bandwidthFraction = bandwidthFraction;
+      this.minDurationToRetainAfterDiscardMs = minDurationToRetainAfterDiscardMs;
+      this.minTimeBetweenBufferReevaluationMs = minTimeBetweenBufferReevaluationMs;
+      this.clock = clock;
+    }
+
+    @Override
+    public @NullableType TrackSelection[] createTrackSelections(
+        @NullableType Definition[] definitions, BandwidthMeter bandwidthMeter) {
+      return TrackSelectionUtil.createTrackSelectionsForDefinitions(
+          definitions,
+          definition ->
+              new BolaTrackSelection(
+                  definition.group,
+                  definition.tracks,
+                  bandwidthMeter,
+                  minBufferMs,
+                  bufferTargetMs,
+                  bandwidthFraction,
+                  minDurationToRetainAfterDiscardMs,
+                  minTimeBetweenBufferReevaluationMs,
+                  clock));
+    }
+  }
+
+  /**
+   * The default buffer level at and below which the lowest quality track is selected, in
+   * milliseconds.
+   */
+  public static final int DEFAULT_MIN_BUFFER_MS = 10000;
+  /**
+   * The default buffer level at and above which the highest quality track is selected, in
+   * milliseconds.
+   */
+  public static final int DEFAULT_BUFFER_TARGET_MS = 30000;
+  /** The default fraction of the available bandwidth that the selection considers available. */
+  public static final float DEFAULT_BANDWIDTH_FRACTION =
+      AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION;
+  /**
+   * The default minimum duration of buffered media to retain when discarding chunks, in
+   * milliseconds.
+   */
+  public static final int DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS = 10000;
+  /** The default minimum duration between two consecutive buffer reevaluations, in milliseconds. */
+  public static final long DEFAULT_MIN_TIME_BETWEEN_BUFFER_REEVALUTATION_MS =
+      AdaptiveTrackSelection.DEFAULT_MIN_TIME_BETWEEN_BUFFER_REEVALUTATION_MS;
+
+  /** The minimum buffer level added to the minimum buffer for each track, in microseconds. */
+  private static final long MIN_BUFFER_PER_TRACK_US = 2 * C.MICROS_PER_SECOND;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final long minBufferUs;
+  private final long bufferTargetUs;
+  private final float bandwidthFraction;
+  private final long minDurationToRetainAfterDiscardUs;
+  private final long minTimeBetweenBufferReevaluationMs;
+  private final Clock clock;
+  private final double[] utilities;
+  private final int[] chunkBitrates;
+  private final double gamma;
+  private final double v;
+
+  private float playbackSpeed;
+  private int selectedIndex;
+  private int reason;
+  private boolean isInSteadyState;
+  private long lastBufferEvaluationMs;
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param minBufferMs The buffer level at and below which the lowest quality track is selected,
+   *     in milliseconds.
+   * @param bufferTargetMs The buffer level at and above which the highest quality track is
+   *     selected, in milliseconds.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use.
+   * @param minDurationToRetainAfterDiscardMs The minimum duration of buffered media that must be
+   *     retained when discarding chunks to replace them with chunks of higher quality, in
+   *     milliseconds.
+   * @param minTimeBetweenBufferReevaluationMs The minimum duration between two consecutive buffer
+   *     reevaluations, in milliseconds.
+   * @param clock A {@link Clock}.
+   */
+  public BolaTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      BandwidthMeter bandwidthMeter,
+      long minBufferMs,
+      long bufferTargetMs,
+      float bandwidthFraction,
+      long minDurationToRetainAfterDiscardMs,
+      long minTimeBetweenBufferReevaluationMs,
+      Clock clock) {
+    super(group, tracks);
+    this.bandwidthMeter = bandwidthMeter;
+    this.minBufferUs = C.msToUs(minBufferMs);
+    this.bufferTargetUs =
+        Math.max(C.msToUs(bufferTargetMs), minBufferUs + MIN_BUFFER_PER_TRACK_US * length);
+    this.bandwidthFraction = bandwidthFraction;
+    this.minDurationToRetainAfterDiscardUs = C.msToUs(minDurationToRetainAfterDiscardMs);
+    this.minTimeBetweenBufferReevaluationMs = minTimeBetweenBufferReevaluationMs;
+    this.clock = clock;
+    chunkBitrates = new int[length];
+    utilities = new double[length];
+    // Tracks are sorted in order of decreasing bitrate, so the last track has the lowest bitrate.
+    // Utilities are normalized so that the lowest utility is 1.
+    double minBitrateLog = Math.log(getNominalBitrate(length - 1));
+    for (int i = 0; i < length; i++) {
+      utilities[i] = Math.log(getNominalBitrate(i)) - minBitrateLog + 1;
+    }
+    // Choose v and gamma such that the lowest quality track has the highest score at the minimum
+    // buffer level, and the highest quality track has the highest score at the target buffer level.
+    double maxUtility = utilities[0];
+    gamma =
+        maxUtility > 1 ? (maxUtility - 1) / ((double) bufferTargetUs / minBufferUs - 1) : 0;
+    v = gamma > 0 ? minBufferUs / gamma : 0;
+    playbackSpeed = 1f;
+    reason = C.SELECTION_REASON_UNKNOWN;
+    lastBufferEvaluationMs = C.TIME_UNSET;
+  }
+
+  @Override
+  public void enable() {
+    lastBufferEvaluationMs = C.TIME_UNSET;
+  }
+
+  @Override
+  public void onPlaybackSpeed(float playbackSpeed) {
+    this.playbackSpeed = playbackSpeed;
+  }
+
+  @Override
+  public void onDiscontinuity() {
+    isInSteadyState = false;
+  }
+
+  @Override
+  public void updateSelectedTrack(
+      long playbackPositionUs,
+      long bufferedDurationUs,
+      long availableDurationUs,
+      List<? extends MediaChunk> queue,
+      MediaChunkIterator[] mediaChunkIterators) {
+    long nowMs = clock.elapsedRealtime();
+    updateChunkBitrates(mediaChunkIterators);
+    int bandwidthIndex = determineIndexUsingBandwidth(nowMs);
+
+    // Make initial selection.
+    if (reason == C.SELECTION_REASON_UNKNOWN) {
+      reason = C.SELECTION_REASON_INITIAL;
+      selectedIndex = bandwidthIndex;
+      return;
+    }
+
+    int currentSelectedIndex = selectedIndex;
+    boolean isCurrentSelectionBlacklisted = isBlacklisted(currentSelectedIndex, nowMs);
+    long bufferLevelUs = getBufferLevelUs(bufferedDurationUs, availableDurationUs);
+    int bufferIndex = determineIndexUsingBufferLevel(bufferLevelUs, nowMs);
+    if (!isInSteadyState) {
+      // Switch to buffer based selection once the buffer is large enough to sustain the current
+      // selection, or if the current selection can't be kept.
+      isInSteadyState = bufferIndex <= currentSelectedIndex || isCurrentSelectionBlacklisted;
+    }
+    if (!isInSteadyState) {
+      selectedIndex = bandwidthIndex;
+    } else if (bufferIndex < currentSelectedIndex
+        && bufferIndex < bandwidthIndex
+        && !isCurrentSelectionBlacklisted) {
+      // Don't switch up beyond what the bandwidth can sustain, unless we're already there.
+      selectedIndex = Math.min(currentSelectedIndex, bandwidthIndex);
+    } else {
+      selectedIndex = bufferIndex;
+    }
+    if (selectedIndex != currentSelectedIndex) {
+      reason = C.SELECTION_REASON_ADAPTIVE;
+    }
+  }
+
+  @Override
+  public int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  @Override
+  public int getSelectionReason() {
+    return reason;
+  }
+
+  @Override
+  @Nullable
+  public Object getSelectionData() {
+    return null;
+  }
+
+  @Override
+  public int evaluateQueueSize(long playbackPositionUs, List<? extends MediaChunk> queue) {
+    long nowMs = clock.elapsedRealtime();
+    if (lastBufferEvaluationMs != C.TIME_UNSET
+        && nowMs - lastBufferEvaluationMs < minTimeBetweenBufferReevaluationMs) {
+      return queue.size();
+    }
+    lastBufferEvaluationMs = nowMs;
+    if (queue.isEmpty() || !isInSteadyState) {
+      return queue.size();
+    }
+    // Buffered chunks are evaluated using nominal bitrates, as the chunk iterators aren't available.
+    for (int i = 0; i < length; i++) {
+      chunkBitrates[i] = getNominalBitrate(i);
+    }
+    int bandwidthIndex = determineIndexUsingBandwidth(nowMs);
+    for (int i = 0; i < queue.size(); i++) {
+      MediaChunk chunk = queue.get(i);
+      long playoutDurationBeforeChunkUs =
+          Util.getPlayoutDurationForMediaDuration(
+              chunk.startTimeUs - playbackPositionUs, playbackSpeed);
+      if (playoutDurationBeforeChunkUs < minDurationToRetainAfterDiscardUs) {
+        continue;
+      }
+      // The track that would be selected if the buffer ended at the start of this chunk.
+      int idealIndex =
+          Math.max(
+              determineIndexUsingBufferLevel(playoutDurationBeforeChunkUs, nowMs), bandwidthIndex);
+      if (chunk.trackFormat.bitrate < getFormat(idealIndex).bitrate) {
+        return i;
+      }
+    }
+    return queue.size();
+  }
+
+  private void updateChunkBitrates(MediaChunkIterator[] mediaChunkIterators) {
+    for (int i = 0; i < length; i++) {
+      int chunkBitrate =
+          i < mediaChunkIterators.length
+              ? TrackSelectionUtil.getAverageChunkBitrate(
+                  mediaChunkIterators[i], /* maxChunkCount= */ 1)
+              : Format.NO_VALUE;
+      chunkBitrates[i] = chunkBitrate != Format.NO_VALUE ? chunkBitrate : getNominalBitrate(i);
+    }
+  }
+
+  private int determineIndexUsingBandwidth(long nowMs) {
+    long effectiveBitrate = (long) (bandwidthMeter.getBitrateEstimate() * bandwidthFraction);
+    int lowestBitrateNonBlacklistedIndex = 0;
+    for (int i = 0; i < length; i++) {
+      if (!isBlacklisted(i, nowMs)) {
+        if (Math.round(chunkBitrates[i] * playbackSpeed) <= effectiveBitrate) {
+          return i;
+        }
+        lowestBitrateNonBlacklistedIndex = i;
+      }
+    }
+    return lowestBitrateNonBlacklistedIndex;
+  }
+
+  private int determineIndexUsingBufferLevel(long bufferLevelUs, long nowMs) {
+    int bestIndex = C.INDEX_UNSET;
+    double bestScore = 0;
+    for (int i = 0; i < length; i++) {
+      if (!isBlacklisted(i, nowMs)) {
+        double score = (v * (utilities[i] + gamma) - bufferLevelUs) / chunkBitrates[i];
+        if (bestIndex == C.INDEX_UNSET || score > bestScore) {
+          bestIndex = i;
+          bestScore = score;
+        }
+      }
+    }
+    return bestIndex == C.INDEX_UNSET ? 0 : bestIndex;
+  }
+
+  private long getBufferLevelUs(long bufferedDurationUs, long availableDurationUs) {
+    long bufferLevelUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+    if (availableDurationUs != C.TIME_UNSET && availableDurationUs < bufferTargetUs) {
+      // When playing close to the live edge, the target can't be reached. Scale the buffer level so
+      // that buffering all of the available media corresponds to the target.
+      long availablePlayoutDurationUs =
+          Util.getPlayoutDurationForMediaDuration(availableDurationUs, playbackSpeed);
+      if (availablePlayoutDurationUs > 0) {
+        bufferLevelUs = bufferLevelUs * bufferTargetUs / availablePlayoutDurationUs;
+      }
+    }
+    return bufferLevelUs;
+  }
+
+  private int getNominalBitrate(int index) {
+    return Math.max(getFormat(index).bitrate, 1);
+  }
+}
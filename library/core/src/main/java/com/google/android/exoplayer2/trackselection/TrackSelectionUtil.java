@@ -16,7 +16,10 @@
 package com.google.android.exoplayer2.trackselection;
 
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector.SelectionOverride;
 import com.google.android.exoplayer2.trackselection.TrackSelection.Definition;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
@@ -97,4 +100,68 @@ public final class TrackSelectionUtil {
     }
     return builder.build();
   }
+
+  /**
+   * Returns the average bitrate of the next chunks of a {@link MediaChunkIterator}, computed from
+   * their byte lengths and durations. The iterator is reset before and after reading the chunks.
+   *
+   * @param iterator The {@link MediaChunkIterator}.
+   * @param maxChunkCount The maximum number of chunks to take into account.
+   * @return The average bitrate of the next chunks, in bits per second, or {@link Format#NO_VALUE}
+   *     if the iterator has no available chunks or the length of the next chunk is unknown.
+   */
+  public static int getAverageChunkBitrate(MediaChunkIterator iterator, int maxChunkCount) {
+    iterator.reset();
+    long totalLength = 0;
+    long totalDurationUs = 0;
+    for (int i = 0; i < maxChunkCount && iterator.next(); i++) {
+      long length = iterator.getDataSpec().length;
+      if (length == C.LENGTH_UNSET) {
+        break;
+      }
+      totalLength += length;
+      totalDurationUs += iterator.getChunkEndTimeUs() - iterator.getChunkStartTimeUs();
+    }
+    iterator.reset();
+    if (totalLength == 0 || totalDurationUs <= 0) {
+      return Format.NO_VALUE;
+    }
+    return (int) Math.min(getBitrate(totalLength, totalDurationUs), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the bitrate required to load each of the next chunks of a {@link MediaChunkIterator}
+   * no slower than it plays out, assuming they're loaded back to back. This is the maximum of the
+   * average bitrates of the first {@code k} chunks, for each {@code k} up to {@code
+   * maxChunkCount}. Unlike the average bitrate, it accounts for chunks that are larger than the
+   * chunks following them. The iterator is reset before and after reading the chunks.
+   *
+   * @param iterator The {@link MediaChunkIterator}.
+   * @param maxChunkCount The maximum number of chunks to take into account.
+   * @return The required bitrate, in bits per second, or {@link Format#NO_VALUE} if the iterator
+   *     has no available chunks or the length of the next chunk is unknown.
+   */
+  public static int getRequiredChunkBitrate(MediaChunkIterator iterator, int maxChunkCount) {
+    iterator.reset();
+    long totalLength = 0;
+    long totalDurationUs = 0;
+    long requiredBitrate = Format.NO_VALUE;
+    for (int i = 0; i < maxChunkCount && iterator.next(); i++) {
+      long length = iterator.getDataSpec().length;
+      if (length == C.LENGTH_UNSET) {
+        break;
+      }
+      totalLength += length;
+      totalDurationUs += iterator.getChunkEndTimeUs() - iterator.getChunkStartTimeUs();
+      if (totalDurationUs > 0) {
+        requiredBitrate = Math.max(requiredBitrate, getBitrate(totalLength, totalDurationUs));
+      }
+    }
+    iterator.reset();
+    return (int) Math.min(requiredBitrate, Integer.MAX_VALUE);
+  }
+
+  private static long getBitrate(long length, long durationUs) {
+    return length * C.BITS_PER_BYTE * C.MICROS_PER_SECOND / durationUs;
+  }
 }
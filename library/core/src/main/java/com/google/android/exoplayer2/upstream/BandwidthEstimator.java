@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+/**
+ * Estimates bandwidth from samples of transferred data, for use by a {@link
+ * DefaultBandwidthMeter}.
+ *
+ * <p>Each sample covers a period during which at least one network transfer was active, and may
+ * aggregate bytes of several concurrent transfers. Methods are called on the thread on which the
+ * transfers are reported, but never concurrently.
+ */
+public interface BandwidthEstimator {
+
+  /** Returned by {@link #getBitrateEstimate(long)} if no estimate is available. */
+  long NO_ESTIMATE = Long.MIN_VALUE;
+
+  /**
+   * Adds a sample of transferred data.
+   *
+   * @param bytesTransferred The number of bytes transferred during the sample.
+   * @param elapsedTimeMs The duration of the sample, in milliseconds. Always greater than zero.
+   * @param nowMs The current time, in milliseconds since boot.
+   */
+  void addSample(long bytesTransferred, long elapsedTimeMs, long nowMs);
+
+  /**
+   * Adds a sample of the latency of a network transfer, measured from the start of its
+   * initialization (e.g. sending a request) until the start of its data transfer.
+   *
+   * @param latencyMs The latency, in milliseconds.
+   * @param nowMs The current time, in milliseconds since boot.
+   */
+  default void addLatencySample(long latencyMs, long nowMs) {
+    // Do nothing.
+  }
+
+  /**
+   * Returns the current bitrate estimate in bits per second, or {@link #NO_ESTIMATE} if no estimate
+   * is available.
+   *
+   * @param nowMs The current time, in milliseconds since boot.
+   */
+  long getBitrateEstimate(long nowMs);
+
+  /** Resets the estimator, for example after a change of the network type. */
+  void reset();
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+
+/**
+ * Persists bitrate estimates per network type, so that a {@link DefaultBandwidthMeter} can start
+ * from the estimate of a previous session rather than from a default estimate. Methods may be
+ * called from any thread.
+ */
+public interface BitrateEstimateStore {
+
+  /**
+   * Returns the stored bitrate estimate for a network type, in bits per second, or {@link
+   * BandwidthEstimator#NO_ESTIMATE} if no estimate is stored.
+   *
+   * @param networkType The {@link C.NetworkType}.
+   */
+  long getBitrateEstimate(@C.NetworkType int networkType);
+
+  /**
+   * Returns the time at which the stored bitrate estimate for a network type was measured, as
+   * passed to {@link #setBitrateEstimate(int, long, long)}, or {@link C#TIME_UNSET} if no estimate
+   * is stored.
+   *
+   * @param networkType The {@link C.NetworkType}.
+   */
+  long getBitrateEstimateTimeMs(@C.NetworkType int networkType);
+
+  /**
+   * Stores the bitrate estimate for a network type.
+   *
+   * @param networkType The {@link C.NetworkType}.
+   * @param bitrateEstimate The bitrate estimate, in bits per second.
+   * @param timeMs The wall clock time at which the estimate was measured, in milliseconds since
+   *     the epoch.
+   */
+  void setBitrateEstimate(@C.NetworkType int networkType, long bitrateEstimate, long timeMs);
+}
@@ -23,27 +23,31 @@ import android.net.ConnectivityManager;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.EventDispatcher;
-import com.google.android.exoplayer2.util.SlidingPercentile;
 import com.google.android.exoplayer2.util.Util;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
  * Estimates bandwidth by listening to data transfers.
  *
- * <p>The bandwidth estimate is calculated using a {@link SlidingPercentile} and is updated each
- * time a transfer ends. The initial estimate is based on the current operator's network country
- * code or the locale of the user, as well as the network connection type. This can be configured in
- * the {@link Builder}.
+ * <p>The bandwidth estimate is calculated using a {@link BandwidthEstimator} and is updated each
+ * time a transfer ends. By default, a {@link SlidingPercentileBandwidthEstimator} is used. The
+ * initial estimate is based on the current operator's network country code or the locale of the
+ * user, as well as the network connection type. If a {@link BitrateEstimateStore} is set, the
+ * initial estimate is instead taken from a recent previous session on the same network type where
+ * available, unless the initial estimate for the network type is set explicitly. This can be
+ * configured in the {@link Builder}.
  */
 public final class DefaultBandwidthMeter implements BandwidthMeter, TransferListener {
 
@@ -79,6 +83,18 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   /** Default maximum weight for the sliding window. */
   public static final int DEFAULT_SLIDING_WINDOW_MAX_WEIGHT = 2000;
 
+  /**
+   * Default minimum interval between persisting bitrate estimates to a {@link
+   * BitrateEstimateStore}, in milliseconds.
+   */
+  public static final long DEFAULT_MIN_STORE_INTERVAL_MS = 10_000;
+
+  /**
+   * Default maximum age of a bitrate estimate read from a {@link BitrateEstimateStore}, in
+   * milliseconds.
+   */
+  public static final long DEFAULT_MAX_STORED_BITRATE_ESTIMATE_AGE_MS = 24 * 60 * 60 * 1000;
+
   @Nullable private static DefaultBandwidthMeter singletonInstance;
 
   /** Builder for a bandwidth meter. */
@@ -87,7 +103,11 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     @Nullable private final Context context;
 
     private SparseArray<Long> initialBitrateEstimates;
+    private SparseBooleanArray initialBitrateEstimatesSetByApp;
     private int slidingWindowMaxWeight;
+    @Nullable private BandwidthEstimator bandwidthEstimator;
+    @Nullable private BitrateEstimateStore bitrateEstimateStore;
+    private long maxStoredBitrateEstimateAgeMs;
     private Clock clock;
     private boolean resetOnNetworkTypeChange;
 
@@ -100,13 +120,16 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       // Handling of null is for backward compatibility only.
       this.context = context == null ? null : context.getApplicationContext();
       initialBitrateEstimates = getInitialBitrateEstimatesForCountry(Util.getCountryCode(context));
+      initialBitrateEstimatesSetByApp = new SparseBooleanArray();
       slidingWindowMaxWeight = DEFAULT_SLIDING_WINDOW_MAX_WEIGHT;
+      maxStoredBitrateEstimateAgeMs = DEFAULT_MAX_STORED_BITRATE_ESTIMATE_AGE_MS;
       clock = Clock.DEFAULT;
       resetOnNetworkTypeChange = true;
     }
 
     /**
-     * Sets the maximum weight for the sliding window.
+     * Sets the maximum weight for the sliding window. Ignored if a {@link BandwidthEstimator} is
+     * set using {@link #setBandwidthEstimator(BandwidthEstimator)}.
      *
      * @param slidingWindowMaxWeight The maximum weight for the sliding window.
      * @return This builder.
@@ -116,6 +139,50 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return this;
     }
 
+    /**
+     * Sets the {@link BandwidthEstimator} used to estimate bandwidth from data transfers. The
+     * default is a {@link SlidingPercentileBandwidthEstimator} with the sliding window maximum
+     * weight set by {@link #setSlidingWindowMaxWeight(int)}. The estimator must not be shared
+     * between bandwidth meters.
+     *
+     * @param bandwidthEstimator The {@link BandwidthEstimator}.
+     * @return This builder.
+     */
+    public Builder setBandwidthEstimator(BandwidthEstimator bandwidthEstimator) {
+      this.bandwidthEstimator = bandwidthEstimator;
+      return this;
+    }
+
+    /**
+     * Sets a {@link BitrateEstimateStore} in which the bandwidth meter persists its estimate for
+     * each network type. Stored estimates that are more recent than the {@link
+     * #setMaxStoredBitrateEstimateAgeMs(long) maximum age} take precedence over the default initial
+     * bitrate estimates, so that repeated sessions on the same network type start from the
+     * bandwidth measured previously. Initial bitrate estimates set by {@link
+     * #setInitialBitrateEstimate(long)} or {@link #setInitialBitrateEstimate(int, long)} take
+     * precedence over stored estimates. The default is {@code null}, meaning that estimates are
+     * not persisted.
+     *
+     * @param bitrateEstimateStore The {@link BitrateEstimateStore}, or {@code null}.
+     * @return This builder.
+     */
+    public Builder setBitrateEstimateStore(@Nullable BitrateEstimateStore bitrateEstimateStore) {
+      this.bitrateEstimateStore = bitrateEstimateStore;
+      return this;
+    }
+
+    /**
+     * Sets the maximum age of an estimate read from the {@link BitrateEstimateStore}. Older
+     * estimates are ignored. The default is {@link #DEFAULT_MAX_STORED_BITRATE_ESTIMATE_AGE_MS}.
+     *
+     * @param maxStoredBitrateEstimateAgeMs The maximum age of a stored estimate, in milliseconds.
+     * @return This builder.
+     */
+    public Builder setMaxStoredBitrateEstimateAgeMs(long maxStoredBitrateEstimateAgeMs) {
+      this.maxStoredBitrateEstimateAgeMs = maxStoredBitrateEstimateAgeMs;
+      return this;
+    }
+
     /**
      * Sets the initial bitrate estimate in bits per second that should be assumed when a bandwidth
      * estimate is unavailable.
@@ -126,6 +193,7 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     public Builder setInitialBitrateEstimate(long initialBitrateEstimate) {
       for (int i = 0; i < initialBitrateEstimates.size(); i++) {
         initialBitrateEstimates.setValueAt(i, initialBitrateEstimate);
+        initialBitrateEstimatesSetByApp.put(initialBitrateEstimates.keyAt(i), true);
       }
       return this;
     }
@@ -141,6 +209,7 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     public Builder setInitialBitrateEstimate(
         @C.NetworkType int networkType, long initialBitrateEstimate) {
       initialBitrateEstimates.put(networkType, initialBitrateEstimate);
+      initialBitrateEstimatesSetByApp.put(networkType, true);
       return this;
     }
 
@@ -155,6 +224,7 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     public Builder setInitialBitrateEstimate(String countryCode) {
       initialBitrateEstimates =
           getInitialBitrateEstimatesForCountry(Util.toUpperInvariant(countryCode));
+      initialBitrateEstimatesSetByApp = new SparseBooleanArray();
       return this;
     }
 
@@ -190,7 +260,12 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return new DefaultBandwidthMeter(
           context,
           initialBitrateEstimates,
-          slidingWindowMaxWeight,
+          initialBitrateEstimatesSetByApp,
+          bandwidthEstimator != null
+              ? bandwidthEstimator
+              : new SlidingPercentileBandwidthEstimator(slidingWindowMaxWeight),
+          bitrateEstimateStore,
+          maxStoredBitrateEstimateAgeMs,
           clock,
           resetOnNetworkTypeChange);
     }
@@ -234,9 +309,13 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
 
   @Nullable private final Context context;
   private final SparseArray<Long> initialBitrateEstimates;
+  private final SparseBooleanArray initialBitrateEstimatesSetByApp;
   private final EventDispatcher<EventListener> eventDispatcher;
-  private final SlidingPercentile slidingPercentile;
+  private final BandwidthEstimator bandwidthEstimator;
+  @Nullable private final BitrateEstimateStore bitrateEstimateStore;
+  private final long maxStoredBitrateEstimateAgeMs;
   private final Clock clock;
+  private final WeakHashMap<DataSource, Long> transferInitializingTimesMs;
 
   private int streamCount;
   private long sampleStartTimeMs;
@@ -247,6 +326,8 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   private long totalBytesTransferred;
   private long bitrateEstimate;
   private long lastReportedBitrateEstimate;
+  private boolean isBitrateEstimateMeasured;
+  private long lastStoreTimeMs;
 
   private boolean networkTypeOverrideSet;
   @C.NetworkType private int networkTypeOverride;
@@ -257,7 +338,10 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     this(
         /* context= */ null,
         /* initialBitrateEstimates= */ new SparseArray<>(),
-        DEFAULT_SLIDING_WINDOW_MAX_WEIGHT,
+        /* initialBitrateEstimatesSetByApp= */ new SparseBooleanArray(),
+        new SlidingPercentileBandwidthEstimator(DEFAULT_SLIDING_WINDOW_MAX_WEIGHT),
+        /* bitrateEstimateStore= */ null,
+        DEFAULT_MAX_STORED_BITRATE_ESTIMATE_AGE_MS,
         Clock.DEFAULT,
         /* resetOnNetworkTypeChange= */ false);
   }
@@ -265,14 +349,22 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   private DefaultBandwidthMeter(
       @Nullable Context context,
       SparseArray<Long> initialBitrateEstimates,
-      int maxWeight,
+      SparseBooleanArray initialBitrateEstimatesSetByApp,
+      BandwidthEstimator bandwidthEstimator,
+      @Nullable BitrateEstimateStore bitrateEstimateStore,
+      long maxStoredBitrateEstimateAgeMs,
       Clock clock,
       boolean resetOnNetworkTypeChange) {
     this.context = context == null ? null : context.getApplicationContext();
     this.initialBitrateEstimates = initialBitrateEstimates;
+    this.initialBitrateEstimatesSetByApp = initialBitrateEstimatesSetByApp;
     this.eventDispatcher = new EventDispatcher<>();
-    this.slidingPercentile = new SlidingPercentile(maxWeight);
+    this.bandwidthEstimator = bandwidthEstimator;
+    this.bitrateEstimateStore = bitrateEstimateStore;
+    this.maxStoredBitrateEstimateAgeMs = maxStoredBitrateEstimateAgeMs;
     this.clock = clock;
+    transferInitializingTimesMs = new WeakHashMap<>();
+    lastStoreTimeMs = C.TIME_UNSET;
     // Set the initial network type and bitrate estimate
     networkType = context == null ? C.NETWORK_TYPE_UNKNOWN : Util.getNetworkType(context);
     bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
@@ -320,8 +412,12 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   }
 
   @Override
-  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
-    // Do nothing.
+  public synchronized void onTransferInitializing(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isNetwork) {
+      return;
+    }
+    transferInitializingTimesMs.put(source, clock.elapsedRealtime());
   }
 
   @Override
@@ -330,8 +426,13 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     if (!isNetwork) {
       return;
     }
+    long nowMs = clock.elapsedRealtime();
+    @Nullable Long initializingTimeMs = transferInitializingTimesMs.remove(source);
+    if (initializingTimeMs != null) {
+      bandwidthEstimator.addLatencySample(nowMs - initializingTimeMs, nowMs);
+    }
     if (streamCount == 0) {
-      sampleStartTimeMs = clock.elapsedRealtime();
+      sampleStartTimeMs = nowMs;
     }
     streamCount++;
   }
@@ -356,11 +457,15 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     totalElapsedTimeMs += sampleElapsedTimeMs;
     totalBytesTransferred += sampleBytesTransferred;
     if (sampleElapsedTimeMs > 0) {
-      float bitsPerSecond = (sampleBytesTransferred * 8000f) / sampleElapsedTimeMs;
-      slidingPercentile.addSample((int) Math.sqrt(sampleBytesTransferred), bitsPerSecond);
+      bandwidthEstimator.addSample(sampleBytesTransferred, sampleElapsedTimeMs, nowMs);
       if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
           || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
-        bitrateEstimate = (long) slidingPercentile.getPercentile(0.5f);
+        long estimate = bandwidthEstimator.getBitrateEstimate(nowMs);
+        if (estimate != BandwidthEstimator.NO_ESTIMATE) {
+          bitrateEstimate = estimate;
+          isBitrateEstimateMeasured = true;
+          maybeStoreBitrateEstimate(nowMs, /* force= */ false);
+        }
       }
       maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
       sampleStartTimeMs = nowMs;
@@ -378,6 +483,8 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return;
     }
 
+    long nowMs = clock.elapsedRealtime();
+    maybeStoreBitrateEstimate(nowMs, /* force= */ true);
     this.networkType = networkType;
     if (networkType == C.NETWORK_TYPE_OFFLINE
         || networkType == C.NETWORK_TYPE_UNKNOWN
@@ -388,7 +495,8 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
 
     // Reset the bitrate estimate and report it, along with any bytes transferred.
     this.bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
-    long nowMs = clock.elapsedRealtime();
+    isBitrateEstimateMeasured = false;
+    lastStoreTimeMs = C.TIME_UNSET;
     int sampleElapsedTimeMs = streamCount > 0 ? (int) (nowMs - sampleStartTimeMs) : 0;
     maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
 
@@ -397,7 +505,21 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     sampleBytesTransferred = 0;
     totalBytesTransferred = 0;
     totalElapsedTimeMs = 0;
-    slidingPercentile.reset();
+    bandwidthEstimator.reset();
+  }
+
+  private void maybeStoreBitrateEstimate(long nowMs, boolean force) {
+    if (bitrateEstimateStore == null
+        || !isBitrateEstimateMeasured
+        || networkType == C.NETWORK_TYPE_OFFLINE
+        || (!force
+            && lastStoreTimeMs != C.TIME_UNSET
+            && nowMs - lastStoreTimeMs < DEFAULT_MIN_STORE_INTERVAL_MS)) {
+      return;
+    }
+    bitrateEstimateStore.setBitrateEstimate(
+        networkType, bitrateEstimate, /* timeMs= */ System.currentTimeMillis());
+    lastStoreTimeMs = nowMs;
   }
 
   private void maybeNotifyBandwidthSample(
@@ -411,16 +533,38 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   }
 
   private long getInitialBitrateEstimateForNetworkType(@C.NetworkType int networkType) {
-    Long initialBitrateEstimate = initialBitrateEstimates.get(networkType);
-    if (initialBitrateEstimate == null) {
-      initialBitrateEstimate = initialBitrateEstimates.get(C.NETWORK_TYPE_UNKNOWN);
+    int initialBitrateEstimateNetworkType =
+        initialBitrateEstimates.indexOfKey(networkType) >= 0
+            ? networkType
+            : C.NETWORK_TYPE_UNKNOWN;
+    if (!initialBitrateEstimatesSetByApp.get(initialBitrateEstimateNetworkType)) {
+      // Estimates set by the app take precedence over stored estimates.
+      long storedBitrateEstimate = getStoredBitrateEstimate(networkType);
+      if (storedBitrateEstimate != BandwidthEstimator.NO_ESTIMATE) {
+        return storedBitrateEstimate;
+      }
     }
+    Long initialBitrateEstimate = initialBitrateEstimates.get(initialBitrateEstimateNetworkType);
     if (initialBitrateEstimate == null) {
       initialBitrateEstimate = DEFAULT_INITIAL_BITRATE_ESTIMATE;
     }
     return initialBitrateEstimate;
   }
 
+  private long getStoredBitrateEstimate(@C.NetworkType int networkType) {
+    if (bitrateEstimateStore == null) {
+      return BandwidthEstimator.NO_ESTIMATE;
+    }
+    long storedBitrateEstimate = bitrateEstimateStore.getBitrateEstimate(networkType);
+    long storedTimeMs = bitrateEstimateStore.getBitrateEstimateTimeMs(networkType);
+    if (storedBitrateEstimate == BandwidthEstimator.NO_ESTIMATE
+        || storedTimeMs == C.TIME_UNSET
+        || System.currentTimeMillis() - storedTimeMs > maxStoredBitrateEstimateAgeMs) {
+      return BandwidthEstimator.NO_ESTIMATE;
+    }
+    return storedBitrateEstimate;
+  }
+
   /*
    * Note: This class only holds a weak reference to DefaultBandwidthMeter instances. It should not
    * be made non-static, since doing so adds a strong reference (i.e. DefaultBandwidthMeter.this).
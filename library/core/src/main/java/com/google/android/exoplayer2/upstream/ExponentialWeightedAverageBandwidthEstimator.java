@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+/**
+ * A {@link BandwidthEstimator} that maintains a fast and a slow exponentially weighted moving
+ * average of the sample bitrates, and returns the lower of the two. Samples are weighted by their
+ * duration, so the half-lives are expressed in transfer time. The fast average reacts quickly when
+ * the bandwidth drops, while the slow average prevents short bursts from raising the estimate.
+ */
+public final class ExponentialWeightedAverageBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default half-life of the fast moving average, in milliseconds. */
+  public static final long DEFAULT_FAST_HALF_LIFE_MS = 2000;
+  /** The default half-life of the slow moving average, in milliseconds. */
+  public static final long DEFAULT_SLOW_HALF_LIFE_MS = 5000;
+  /**
+   * The default minimum number of bytes for a sample to be taken into account. Smaller samples are
+   * dominated by latency rather than by bandwidth.
+   */
+  public static final long DEFAULT_MIN_SAMPLE_BYTES = 16_000;
+
+  private final MovingAverage fastAverage;
+  private final MovingAverage slowAverage;
+  private final long minSampleBytes;
+
+  /** Creates an estimator with default parameters. */
+  public ExponentialWeightedAverageBandwidthEstimator() {
+    this(DEFAULT_FAST_HALF_LIFE_MS, DEFAULT_SLOW_HALF_LIFE_MS, DEFAULT_MIN_SAMPLE_BYTES);
+  }
+
+  /**
+   * @param fastHalfLifeMs The half-life of the fast moving average, in milliseconds.
+   * @param slowHalfLifeMs The half-life of the slow moving average, in milliseconds.
+   * @param minSampleBytes The minimum number of bytes for a sample to be taken into account.
+   */
+  public ExponentialWeightedAverageBandwidthEstimator(
+      long fastHalfLifeMs, long slowHalfLifeMs, long minSampleBytes) {
+    fastAverage = new MovingAverage(fastHalfLifeMs);
+    slowAverage = new MovingAverage(slowHalfLifeMs);
+    this.minSampleBytes = minSampleBytes;
+  }
+
+  @Override
+  public void addSample(long bytesTransferred, long elapsedTimeMs, long nowMs) {
+    if (bytesTransferred < minSampleBytes) {
+      return;
+    }
+    double bitsPerSecond = bytesTransferred * 8000d / elapsedTimeMs;
+    fastAverage.addSample(elapsedTimeMs, bitsPerSecond);
+    slowAverage.addSample(elapsedTimeMs, bitsPerSecond);
+  }
+
+  @Override
+  public long getBitrateEstimate(long nowMs) {
+    if (fastAverage.totalWeightMs == 0) {
+      return NO_ESTIMATE;
+    }
+    return (long) Math.min(fastAverage.getAverage(), slowAverage.getAverage());
+  }
+
+  @Override
+  public void reset() {
+    fastAverage.reset();
+    slowAverage.reset();
+  }
+
+  private static final class MovingAverage {
+
+    private final double halfLifeMs;
+
+    private double average;
+    private long totalWeightMs;
+
+    public MovingAverage(long halfLifeMs) {
+      this.halfLifeMs = halfLifeMs;
+    }
+
+    public void addSample(long weightMs, double value) {
+      double alpha = Math.pow(0.5, weightMs / halfLifeMs);
+      average = value * (1 - alpha) + alpha * average;
+      totalWeightMs += weightMs;
+    }
+
+    public double getAverage() {
+      // The average starts at zero, so correct for the weight that's still attributed to zero.
+      double zeroFactor = 1 - Math.pow(0.5, totalWeightMs / halfLifeMs);
+      return average / zeroFactor;
+    }
+
+    public void reset() {
+      average = 0;
+      totalWeightMs = 0;
+    }
+  }
+}
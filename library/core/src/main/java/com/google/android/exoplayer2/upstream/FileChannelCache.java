@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A cache of open read-only {@link FileChannel FileChannels}, keyed by file path, that can be
+ * shared by {@link FileDataSource} instances reading files in memory mapped mode.
+ *
+ * <p>Reusing channels avoids opening and closing a file each time it's read, which is useful when
+ * many small files are read repeatedly, for example the span files of a {@link
+ * com.google.android.exoplayer2.upstream.cache.SimpleCache} during cached or offline playback.
+ * Channels that aren't in use are closed in least recently used order once the cache holds more
+ * than the maximum number of channels.
+ *
+ * <p>A cached channel keeps reading the file that was open when it was cached, even if that file
+ * is deleted or replaced. Apps that replace files in place should call {@link #remove(String)} or
+ * {@link #clear()}.
+ *
+ * <p>When reading the span files of a {@link Cache}, the instance should be registered as a {@link
+ * Cache.Listener} with {@link Cache#addListener(String, Cache.Listener)} for each cache key that's
+ * read. It then closes the channels of spans that are removed from the cache, and moves the
+ * channels of spans whose files are renamed when they're touched to the new paths. A {@link
+ * com.google.android.exoplayer2.upstream.cache.SimpleCache} without a {@link
+ * com.google.android.exoplayer2.database.DatabaseProvider} renames span files each time they're
+ * read, so channels are only reused if the instance is registered or the cache is created with a
+ * {@link com.google.android.exoplayer2.database.DatabaseProvider}.
+ */
+public final class FileChannelCache implements Cache.Listener {
+
+  /** The default maximum number of open channels. */
+  public static final int DEFAULT_MAX_OPEN_CHANNELS = 16;
+
+  private final int maxOpenChannels;
+  private final LinkedHashMap<String, Entry> entries;
+  private final HashMap<FileChannel, Entry> entriesByChannel;
+
+  /** Creates an instance that keeps up to {@link #DEFAULT_MAX_OPEN_CHANNELS} channels open. */
+  public FileChannelCache() {
+    this(DEFAULT_MAX_OPEN_CHANNELS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxOpenChannels The maximum number of channels that are kept open while not in use.
+   */
+  public FileChannelCache(int maxOpenChannels) {
+    Assertions.checkArgument(maxOpenChannels > 0);
+    this.maxOpenChannels = maxOpenChannels;
+    entries = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+    entriesByChannel = new HashMap<>();
+  }
+
+  /** Returns the number of channels held by the cache that aren't in use. */
+  public synchronized int getIdleChannelCount() {
+    int idleChannelCount = 0;
+    for (Entry entry : entries.values()) {
+      if (entry.referenceCount == 0) {
+        idleChannelCount++;
+      }
+    }
+    return idleChannelCount;
+  }
+
+  /**
+   * Removes the channel of the file at the given path from the cache, and closes it once it's no
+   * longer in use.
+   *
+   * @param path The path of the file.
+   */
+  public synchronized void remove(String path) {
+    @Nullable Entry entry = entries.remove(path);
+    if (entry != null) {
+      entry.removed = true;
+      maybeClose(entry);
+    }
+  }
+
+  /** Removes all channels from the cache, and closes each of them once it's no longer in use. */
+  public synchronized void clear() {
+    for (Entry entry : entries.values()) {
+      entry.removed = true;
+      maybeClose(entry);
+    }
+    entries.clear();
+  }
+
+  /**
+   * Returns an open channel for the file at the given path, opening it if there's no cached
+   * channel. Each call must be followed by a call to {@link #release(FileChannel)}.
+   *
+   * @param path The path of the file.
+   * @return The open channel.
+   * @throws IOException If the file couldn't be opened.
+   */
+  /* package */ synchronized FileChannel acquire(String path) throws IOException {
+    @Nullable Entry entry = entries.get(path);
+    if (entry == null) {
+      entry = new Entry(new RandomAccessFile(path, "r").getChannel());
+      entries.put(path, entry);
+      entriesByChannel.put(entry.channel, entry);
+    }
+    entry.referenceCount++;
+    return entry.channel;
+  }
+
+  /**
+   * Releases a channel returned by {@link #acquire(String)}.
+   *
+   * @param channel The channel.
+   */
+  /* package */ synchronized void release(FileChannel channel) {
+    Entry entry = Assertions.checkNotNull(entriesByChannel.get(channel));
+    entry.referenceCount--;
+    if (entry.removed) {
+      maybeClose(entry);
+    } else {
+      trim();
+    }
+  }
+
+  // Cache.Listener implementation.
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    // Do nothing.
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    if (span.file != null) {
+      remove(span.file.getPath());
+    }
+  }
+
+  @Override
+  public synchronized void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    if (oldSpan.file == null || newSpan.file == null) {
+      return;
+    }
+    String oldPath = oldSpan.file.getPath();
+    String newPath = newSpan.file.getPath();
+    if (oldPath.equals(newPath)) {
+      return;
+    }
+    // The open channel keeps reading the renamed file.
+    @Nullable Entry entry = entries.remove(oldPath);
+    if (entry != null) {
+      @Nullable Entry replacedEntry = entries.put(newPath, entry);
+      if (replacedEntry != null) {
+        replacedEntry.removed = true;
+        maybeClose(replacedEntry);
+      }
+    }
+  }
+
+  private void trim() {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (entries.size() > maxOpenChannels && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.referenceCount == 0) {
+        iterator.remove();
+        entry.removed = true;
+        maybeClose(entry);
+      }
+    }
+  }
+
+  private void maybeClose(Entry entry) {
+    if (entry.referenceCount == 0) {
+      entriesByChannel.remove(entry.channel);
+      Util.closeQuietly(entry.channel);
+    }
+  }
+
+  private static final class Entry {
+
+    public final FileChannel channel;
+
+    public int referenceCount;
+    public boolean removed;
+
+    public Entry(FileChannel channel) {
+      this.channel = channel;
+    }
+  }
+}
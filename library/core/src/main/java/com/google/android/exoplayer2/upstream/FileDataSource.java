@@ -26,8 +26,18 @@ import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
-/** A {@link DataSource} for reading local files. */
+/**
+ * A {@link DataSource} for reading local files.
+ *
+ * <p>By default files are read with {@link RandomAccessFile#read(byte[], int, int)}. In memory
+ * mapped mode, regions of the file are mapped with {@link FileChannel#map} and copied from the
+ * {@link MappedByteBuffer}, which avoids a system call per read. Channels can then be shared
+ * between instances using a {@link FileChannelCache}, which avoids opening and closing a file each
+ * time it's read.
+ */
 public final class FileDataSource extends BaseDataSource {
 
   /** Thrown when a {@link FileDataSource} encounters an error reading a file. */
@@ -46,6 +56,8 @@ public final class FileDataSource extends BaseDataSource {
   public static final class Factory implements DataSource.Factory {
 
     @Nullable private TransferListener listener;
+    private boolean memoryMapped;
+    @Nullable private FileChannelCache channelCache;
 
     /**
      * Sets a {@link TransferListener} for {@link FileDataSource} instances created by this factory.
@@ -58,9 +70,34 @@ public final class FileDataSource extends BaseDataSource {
       return this;
     }
 
+    /**
+     * Sets whether {@link FileDataSource} instances created by this factory read files in memory
+     * mapped mode. The default value is {@code false}.
+     *
+     * @param memoryMapped Whether to read files in memory mapped mode.
+     * @return This factory.
+     */
+    public Factory setMemoryMapped(boolean memoryMapped) {
+      this.memoryMapped = memoryMapped;
+      return this;
+    }
+
+    /**
+     * Sets a {@link FileChannelCache} shared by {@link FileDataSource} instances created by this
+     * factory. Only used in memory mapped mode.
+     *
+     * @param channelCache The {@link FileChannelCache}, or {@code null} to open and close a channel
+     *     each time a file is read.
+     * @return This factory.
+     */
+    public Factory setChannelCache(@Nullable FileChannelCache channelCache) {
+      this.channelCache = channelCache;
+      return this;
+    }
+
     @Override
     public FileDataSource createDataSource() {
-      FileDataSource dataSource = new FileDataSource();
+      FileDataSource dataSource = new FileDataSource(memoryMapped, channelCache);
       if (listener != null) {
         dataSource.addTransferListener(listener);
       }
@@ -68,13 +105,35 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  /** The maximum size of a region of the file that's mapped at once, in bytes. */
+  private static final int MAX_MAPPED_REGION_SIZE = 8 * 1024 * 1024;
+
+  private final boolean memoryMapped;
+  @Nullable private final FileChannelCache channelCache;
+
   @Nullable private RandomAccessFile file;
+  @Nullable private FileChannel channel;
+  @Nullable private MappedByteBuffer mappedRegion;
   @Nullable private Uri uri;
+  private long channelPosition;
+  private long channelSize;
   private long bytesRemaining;
   private boolean opened;
 
   public FileDataSource() {
+    this(/* memoryMapped= */ false, /* channelCache= */ null);
+  }
+
+  /**
+   * @param memoryMapped Whether to read files in memory mapped mode.
+   * @param channelCache A {@link FileChannelCache} to share open channels with other instances, or
+   *     {@code null} to open and close a channel each time a file is read. Only used in memory
+   *     mapped mode.
+   */
+  public FileDataSource(boolean memoryMapped, @Nullable FileChannelCache channelCache) {
     super(/* isNetwork= */ false);
+    this.memoryMapped = memoryMapped;
+    this.channelCache = channelCache;
   }
 
   @Override
@@ -85,10 +144,20 @@ public final class FileDataSource extends BaseDataSource {
 
       transferInitializing(dataSpec);
 
-      this.file = openLocalFile(uri);
-
-      file.seek(dataSpec.position);
-      bytesRemaining = dataSpec.length == C.LENGTH_UNSET ? file.length() - dataSpec.position
+      long fileLength;
+      if (memoryMapped) {
+        FileChannel channel = openLocalFileChannel(uri, channelCache);
+        this.channel = channel;
+        channelPosition = dataSpec.position;
+        channelSize = channel.size();
+        fileLength = channelSize;
+      } else {
+        RandomAccessFile file = openLocalFile(uri);
+        this.file = file;
+        file.seek(dataSpec.position);
+        fileLength = file.length();
+      }
+      bytesRemaining = dataSpec.length == C.LENGTH_UNSET ? fileLength - dataSpec.position
           : dataSpec.length;
       if (bytesRemaining < 0) {
         throw new EOFException();
@@ -103,23 +172,40 @@ public final class FileDataSource extends BaseDataSource {
     return bytesRemaining;
   }
 
+  private static FileChannel openLocalFileChannel(
+      Uri uri, @Nullable FileChannelCache channelCache) throws IOException {
+    if (channelCache == null) {
+      return openLocalFile(uri).getChannel();
+    }
+    try {
+      return channelCache.acquire(Assertions.checkNotNull(uri.getPath()));
+    } catch (FileNotFoundException e) {
+      throw buildFileNotFoundException(uri, e);
+    }
+  }
+
   private static RandomAccessFile openLocalFile(Uri uri) throws FileDataSourceException {
     try {
       return new RandomAccessFile(Assertions.checkNotNull(uri.getPath()), "r");
     } catch (FileNotFoundException e) {
-      if (!TextUtils.isEmpty(uri.getQuery()) || !TextUtils.isEmpty(uri.getFragment())) {
-        throw new FileDataSourceException(
-            String.format(
-                "uri has query and/or fragment, which are not supported. Did you call Uri.parse()"
-                    + " on a string containing '?' or '#'? Use Uri.fromFile(new File(path)) to"
-                    + " avoid this. path=%s,query=%s,fragment=%s",
-                uri.getPath(), uri.getQuery(), uri.getFragment()),
-            e);
-      }
-      throw new FileDataSourceException(e);
+      throw buildFileNotFoundException(uri, e);
     }
   }
 
+  private static FileDataSourceException buildFileNotFoundException(
+      Uri uri, FileNotFoundException e) {
+    if (!TextUtils.isEmpty(uri.getQuery()) || !TextUtils.isEmpty(uri.getFragment())) {
+      return new FileDataSourceException(
+          String.format(
+              "uri has query and/or fragment, which are not supported. Did you call Uri.parse()"
+                  + " on a string containing '?' or '#'? Use Uri.fromFile(new File(path)) to"
+                  + " avoid this. path=%s,query=%s,fragment=%s",
+              uri.getPath(), uri.getQuery(), uri.getFragment()),
+          e);
+    }
+    return new FileDataSourceException(e);
+  }
+
   @Override
   public int read(byte[] buffer, int offset, int readLength) throws FileDataSourceException {
     if (readLength == 0) {
@@ -129,8 +215,11 @@ public final class FileDataSource extends BaseDataSource {
     } else {
       int bytesRead;
       try {
+        int bytesToRead = (int) Math.min(bytesRemaining, readLength);
         bytesRead =
-            castNonNull(file).read(buffer, offset, (int) Math.min(bytesRemaining, readLength));
+            memoryMapped
+                ? readMapped(buffer, offset, bytesToRead)
+                : castNonNull(file).read(buffer, offset, bytesToRead);
       } catch (IOException e) {
         throw new FileDataSourceException(e);
       }
@@ -144,6 +233,25 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  private int readMapped(byte[] buffer, int offset, int readLength) throws IOException {
+    @Nullable MappedByteBuffer mappedRegion = this.mappedRegion;
+    if (mappedRegion == null || !mappedRegion.hasRemaining()) {
+      // Don't map beyond the end of the file, since accessing such a mapping is an error.
+      long regionSize =
+          Math.min(Math.min(bytesRemaining, MAX_MAPPED_REGION_SIZE), channelSize - channelPosition);
+      if (regionSize <= 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      mappedRegion =
+          castNonNull(channel).map(FileChannel.MapMode.READ_ONLY, channelPosition, regionSize);
+      this.mappedRegion = mappedRegion;
+      channelPosition += regionSize;
+    }
+    int bytesRead = Math.min(readLength, mappedRegion.remaining());
+    mappedRegion.get(buffer, offset, bytesRead);
+    return bytesRead;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -153,14 +261,23 @@ public final class FileDataSource extends BaseDataSource {
   @Override
   public void close() throws FileDataSourceException {
     uri = null;
+    mappedRegion = null;
     try {
       if (file != null) {
         file.close();
       }
+      if (channel != null) {
+        if (channelCache != null) {
+          channelCache.release(channel);
+        } else {
+          channel.close();
+        }
+      }
     } catch (IOException e) {
       throw new FileDataSourceException(e);
     } finally {
       file = null;
+      channel = null;
       if (opened) {
         opened = false;
         transferEnded();
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+/**
+ * A {@link BandwidthEstimator} that accounts for the latency of network transfers.
+ *
+ * <p>The throughput of the data transfers is estimated by a delegate estimator. The returned
+ * estimate is the effective bitrate of loading a transfer of average size, including the average
+ * latency until its data starts arriving. For small transfers on high latency networks, such as
+ * short media chunks on cellular networks, this is significantly lower than the throughput.
+ */
+public final class LatencyAwareBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default weight given to a new sample when averaging latencies and sample sizes. */
+  public static final float DEFAULT_SMOOTHING_FACTOR = 0.2f;
+
+  private final BandwidthEstimator throughputEstimator;
+  private final float smoothingFactor;
+
+  private double averageLatencyMs;
+  private double averageSampleBytes;
+  private boolean hasLatency;
+  private boolean hasSampleBytes;
+
+  /**
+   * Creates an estimator using a {@link SlidingPercentileBandwidthEstimator} to estimate the
+   * throughput.
+   */
+  public LatencyAwareBandwidthEstimator() {
+    this(
+        new SlidingPercentileBandwidthEstimator(
+            DefaultBandwidthMeter.DEFAULT_SLIDING_WINDOW_MAX_WEIGHT),
+        DEFAULT_SMOOTHING_FACTOR);
+  }
+
+  /**
+   * @param throughputEstimator The {@link BandwidthEstimator} used to estimate the throughput of
+   *     the data transfers.
+   * @param smoothingFactor The weight given to a new sample when averaging latencies and sample
+   *     sizes, in the range (0, 1].
+   */
+  public LatencyAwareBandwidthEstimator(
+      BandwidthEstimator throughputEstimator, float smoothingFactor) {
+    this.throughputEstimator = throughputEstimator;
+    this.smoothingFactor = smoothingFactor;
+  }
+
+  @Override
+  public void addSample(long bytesTransferred, long elapsedTimeMs, long nowMs) {
+    throughputEstimator.addSample(bytesTransferred, elapsedTimeMs, nowMs);
+    averageSampleBytes =
+        hasSampleBytes
+            ? averageSampleBytes + smoothingFactor * (bytesTransferred - averageSampleBytes)
+            : bytesTransferred;
+    hasSampleBytes = true;
+  }
+
+  @Override
+  public void addLatencySample(long latencyMs, long nowMs) {
+    throughputEstimator.addLatencySample(latencyMs, nowMs);
+    averageLatencyMs =
+        hasLatency
+            ? averageLatencyMs + smoothingFactor * (latencyMs - averageLatencyMs)
+            : latencyMs;
+    hasLatency = true;
+  }
+
+  @Override
+  public long getBitrateEstimate(long nowMs) {
+    long throughput = throughputEstimator.getBitrateEstimate(nowMs);
+    if (throughput == NO_ESTIMATE || throughput <= 0 || !hasLatency || !hasSampleBytes) {
+      return throughput;
+    }
+    double sampleBits = averageSampleBytes * 8;
+    double transferTimeMs = sampleBits * 1000 / throughput + averageLatencyMs;
+    return (long) (sampleBits * 1000 / transferTimeMs);
+  }
+
+  @Override
+  public void reset() {
+    throughputEstimator.reset();
+    averageLatencyMs = 0;
+    averageSampleBytes = 0;
+    hasLatency = false;
+    hasSampleBytes = false;
+  }
+}
@@ -25,12 +25,15 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.PlaybackInstrumentation;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -188,16 +191,61 @@ public final class Loader implements LoaderErrorThrower {
     }
   }
 
-  private final ExecutorService downloadExecutorService;
+  @Nullable private static volatile Executor sharedExecutor;
+
+  private final Executor downloadExecutor;
+  @Nullable private final ExecutorService downloadExecutorService;
 
   @Nullable private LoadTask<? extends Loadable> currentTask;
   @Nullable private IOException fatalError;
 
   /**
+   * Sets an executor on which loaders subsequently created with {@link #Loader(String)} run their
+   * loads, instead of each starting a dedicated thread. This avoids the cost of starting threads
+   * when many loaders are created, for example by several players running at the same time.
+   *
+   * <p>The executor should allow at least as many concurrent tasks as there may be loads in
+   * progress at the same time, since loads that can't run are delayed until another load
+   * completes. Progressive loads occupy a thread for as long as they're in progress, including
+   * when they're waiting for the buffer to be consumed. A suitable executor can be created with
+   * {@link Util#newBoundedThreadPool(String, int, long)}. On platforms that support them, an
+   * executor that runs each task on a new virtual thread may also be used.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param sharedExecutor The executor to share between loaders, or {@code null} for loaders to use
+   *     dedicated threads.
+   */
+  public static void experimental_setSharedExecutor(@Nullable Executor sharedExecutor) {
+    Loader.sharedExecutor = sharedExecutor;
+  }
+
+  /**
+   * Creates a loader that runs its loads on the executor set with {@link
+   * #experimental_setSharedExecutor(Executor)}, or on a dedicated thread if none is set.
+   *
    * @param threadName A name for the loader's thread.
    */
   public Loader(String threadName) {
-    this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    this(threadName, sharedExecutor);
+  }
+
+  /**
+   * Creates a loader that runs its loads on the given shared executor, or on a dedicated thread if
+   * it's null. Loads of a single loader are run one at a time and in order, even when the shared
+   * executor runs tasks concurrently.
+   *
+   * @param threadName A name for the loader's thread, used if {@code sharedExecutor} is null.
+   * @param sharedExecutor The executor on which to run loads, or null to use a dedicated thread.
+   */
+  public Loader(String threadName, @Nullable Executor sharedExecutor) {
+    if (sharedExecutor != null) {
+      downloadExecutorService = null;
+      downloadExecutor = new SerialExecutor(sharedExecutor);
+    } else {
+      downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+      downloadExecutor = downloadExecutorService;
+    }
   }
 
   /**
@@ -279,9 +327,11 @@ public final class Loader implements LoaderErrorThrower {
       currentTask.cancel(true);
     }
     if (callback != null) {
-      downloadExecutorService.execute(new ReleaseTask(callback));
+      downloadExecutor.execute(new ReleaseTask(callback));
+    }
+    if (downloadExecutorService != null) {
+      downloadExecutorService.shutdown();
     }
-    downloadExecutorService.shutdown();
   }
 
   // LoaderErrorThrower implementation.
@@ -363,9 +413,13 @@ public final class Loader implements LoaderErrorThrower {
       } else {
         canceled = true;
         loadable.cancelLoad();
-        Thread executorThread = this.executorThread;
-        if (executorThread != null) {
-          executorThread.interrupt();
+        synchronized (this) {
+          // The thread may run other tasks once this one completes, so it must only be
+          // interrupted whilst running this task.
+          Thread executorThread = this.executorThread;
+          if (executorThread != null) {
+            executorThread.interrupt();
+          }
         }
       }
       if (released) {
@@ -387,9 +441,11 @@ public final class Loader implements LoaderErrorThrower {
         executorThread = Thread.currentThread();
         if (!canceled) {
           TraceUtil.beginSection("load:" + loadable.getClass().getSimpleName());
+          long loadStartTimeNs = TraceUtil.startStage();
           try {
             loadable.load();
           } finally {
+            TraceUtil.endStage(PlaybackInstrumentation.STAGE_LOAD, loadStartTimeNs);
             TraceUtil.endSection();
           }
         }
@@ -429,6 +485,13 @@ public final class Loader implements LoaderErrorThrower {
           obtainMessage(MSG_FATAL_ERROR, e).sendToTarget();
         }
         throw e;
+      } finally {
+        synchronized (this) {
+          executorThread = null;
+        }
+        // Clear any interrupt from a cancellation that raced with the completion of this task, so
+        // that it doesn't affect the next task run by this thread.
+        Thread.interrupted();
       }
     }
 
@@ -457,6 +520,7 @@ public final class Loader implements LoaderErrorThrower {
           callback.onLoadCanceled(loadable, nowMs, durationMs, false);
           break;
         case MSG_END_OF_SOURCE:
+          TraceUtil.incrementCounter(PlaybackInstrumentation.COUNTER_LOADS_COMPLETED, 1);
           try {
             callback.onLoadCompleted(loadable, nowMs, durationMs);
           } catch (RuntimeException e) {
@@ -468,6 +532,7 @@ public final class Loader implements LoaderErrorThrower {
         case MSG_IO_EXCEPTION:
           currentError = (IOException) msg.obj;
           errorCount++;
+          TraceUtil.incrementCounter(PlaybackInstrumentation.COUNTER_LOAD_ERRORS, 1);
           LoadErrorAction action =
               callback.onLoadError(loadable, nowMs, durationMs, currentError, errorCount);
           if (action.type == ACTION_TYPE_DONT_RETRY_FATAL) {
@@ -490,7 +555,7 @@ public final class Loader implements LoaderErrorThrower {
 
     private void execute() {
       currentError = null;
-      downloadExecutorService.execute(Assertions.checkNotNull(currentTask));
+      downloadExecutor.execute(Assertions.checkNotNull(currentTask));
     }
 
     private void finish() {
@@ -503,6 +568,45 @@ public final class Loader implements LoaderErrorThrower {
 
   }
 
+  /**
+   * Runs tasks one at a time and in submission order on an underlying executor, which may be
+   * shared with other serial executors.
+   */
+  private static final class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final ArrayDeque<Runnable> tasks;
+
+    @Nullable private Runnable activeTask;
+
+    public SerialExecutor(Executor executor) {
+      this.executor = executor;
+      tasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+      tasks.add(
+          () -> {
+            try {
+              task.run();
+            } finally {
+              scheduleNext();
+            }
+          });
+      if (activeTask == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      activeTask = tasks.poll();
+      if (activeTask != null) {
+        executor.execute(activeTask);
+      }
+    }
+  }
+
   private static final class ReleaseTask implements Runnable {
 
     private final ReleaseCallback callback;
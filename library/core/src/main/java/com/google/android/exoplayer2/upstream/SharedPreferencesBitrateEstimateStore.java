@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.google.android.exoplayer2.C;
+
+/** A {@link BitrateEstimateStore} that persists estimates in {@link SharedPreferences}. */
+public final class SharedPreferencesBitrateEstimateStore implements BitrateEstimateStore {
+
+  /** The default name of the {@link SharedPreferences} file. */
+  public static final String DEFAULT_PREFERENCES_NAME = "exoplayer_bitrate_estimates";
+
+  private static final String KEY_PREFIX = "network_type_";
+  private static final String TIME_KEY_SUFFIX = "_time_ms";
+
+  private final SharedPreferences sharedPreferences;
+
+  /**
+   * Creates a store using the {@link SharedPreferences} file named {@link
+   * #DEFAULT_PREFERENCES_NAME}.
+   *
+   * @param context A context.
+   */
+  public SharedPreferencesBitrateEstimateStore(Context context) {
+    this(context, DEFAULT_PREFERENCES_NAME);
+  }
+
+  /**
+   * @param context A context.
+   * @param preferencesName The name of the {@link SharedPreferences} file.
+   */
+  public SharedPreferencesBitrateEstimateStore(Context context, String preferencesName) {
+    sharedPreferences =
+        context.getApplicationContext().getSharedPreferences(preferencesName, Context.MODE_PRIVATE);
+  }
+
+  @Override
+  public long getBitrateEstimate(@C.NetworkType int networkType) {
+    return sharedPreferences.getLong(getKey(networkType), BandwidthEstimator.NO_ESTIMATE);
+  }
+
+  @Override
+  public long getBitrateEstimateTimeMs(@C.NetworkType int networkType) {
+    return sharedPreferences.getLong(getTimeKey(networkType), C.TIME_UNSET);
+  }
+
+  @Override
+  public void setBitrateEstimate(
+      @C.NetworkType int networkType, long bitrateEstimate, long timeMs) {
+    sharedPreferences
+        .edit()
+        .putLong(getKey(networkType), bitrateEstimate)
+        .putLong(getTimeKey(networkType), timeMs)
+        .apply();
+  }
+
+  private static String getKey(@C.NetworkType int networkType) {
+    return KEY_PREFIX + networkType;
+  }
+
+  private static String getTimeKey(@C.NetworkType int networkType) {
+    return getKey(networkType) + TIME_KEY_SUFFIX;
+  }
+}
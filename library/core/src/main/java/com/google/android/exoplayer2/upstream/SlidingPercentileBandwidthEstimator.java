@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.SlidingPercentile;
+
+/**
+ * A {@link BandwidthEstimator} that returns a percentile of the sample bitrates over a sliding
+ * window, weighting each sample by the square root of its number of bytes. This is the estimator
+ * used by default by {@link DefaultBandwidthMeter}.
+ */
+public final class SlidingPercentileBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default percentile. */
+  public static final float DEFAULT_PERCENTILE = 0.5f;
+
+  private final SlidingPercentile slidingPercentile;
+  private final float percentile;
+
+  /**
+   * Creates an estimator returning the median of the sample bitrates.
+   *
+   * @param maxWeight The maximum weight for the sliding window.
+   */
+  public SlidingPercentileBandwidthEstimator(int maxWeight) {
+    this(maxWeight, DEFAULT_PERCENTILE);
+  }
+
+  /**
+   * @param maxWeight The maximum weight for the sliding window.
+   * @param percentile The percentile of the sample bitrates to return, in the range (0, 1].
+   */
+  public SlidingPercentileBandwidthEstimator(int maxWeight, float percentile) {
+    this.slidingPercentile = new SlidingPercentile(maxWeight);
+    this.percentile = percentile;
+  }
+
+  @Override
+  public void addSample(long bytesTransferred, long elapsedTimeMs, long nowMs) {
+    float bitsPerSecond = (bytesTransferred * 8000f) / elapsedTimeMs;
+    slidingPercentile.addSample((int) Math.sqrt(bytesTransferred), bitsPerSecond);
+  }
+
+  @Override
+  public long getBitrateEstimate(long nowMs) {
+    float bitrateEstimate = slidingPercentile.getPercentile(percentile);
+    return Float.isNaN(bitrateEstimate) ? NO_ESTIMATE : (long) bitrateEstimate;
+  }
+
+  @Override
+  public void reset() {
+    slidingPercentile.reset();
+  }
+}
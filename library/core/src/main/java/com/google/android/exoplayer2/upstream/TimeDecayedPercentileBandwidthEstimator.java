@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * A {@link BandwidthEstimator} that returns a percentile of the sample bitrates over a sliding
+ * window, where the weight of each sample decays exponentially with its age. Compared to {@link
+ * SlidingPercentileBandwidthEstimator}, old samples lose their influence even when few new samples
+ * are added, for example after playback has been paused for a while.
+ */
+public final class TimeDecayedPercentileBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default maximum weight for the sliding window. */
+  public static final int DEFAULT_MAX_WEIGHT =
+      DefaultBandwidthMeter.DEFAULT_SLIDING_WINDOW_MAX_WEIGHT;
+  /** The default half-life of the sample weights, in milliseconds. */
+  public static final long DEFAULT_HALF_LIFE_MS = 30_000;
+  /** The default percentile. */
+  public static final float DEFAULT_PERCENTILE = 0.5f;
+
+  /** Samples older than this number of half-lives are discarded. */
+  private static final int MAX_SAMPLE_AGE_HALF_LIVES = 8;
+
+  private final int maxWeight;
+  private final long halfLifeMs;
+  private final float percentile;
+  private final ArrayDeque<Sample> samples;
+  private final ArrayList<Sample> sortedSamples;
+
+  private int totalWeight;
+
+  /** Creates an estimator with default parameters. */
+  public TimeDecayedPercentileBandwidthEstimator() {
+    this(DEFAULT_MAX_WEIGHT, DEFAULT_HALF_LIFE_MS, DEFAULT_PERCENTILE);
+  }
+
+  /**
+   * @param maxWeight The maximum weight for the sliding window, before decay.
+   * @param halfLifeMs The half-life of the sample weights, in milliseconds.
+   * @param percentile The percentile of the sample bitrates to return, in the range (0, 1].
+   */
+  public TimeDecayedPercentileBandwidthEstimator(int maxWeight, long halfLifeMs, float percentile) {
+    this.maxWeight = maxWeight;
+    this.halfLifeMs = halfLifeMs;
+    this.percentile = percentile;
+    samples = new ArrayDeque<>();
+    sortedSamples = new ArrayList<>();
+  }
+
+  @Override
+  public void addSample(long bytesTransferred, long elapsedTimeMs, long nowMs) {
+    int weight = (int) Math.sqrt(bytesTransferred);
+    float bitsPerSecond = (bytesTransferred * 8000f) / elapsedTimeMs;
+    samples.addLast(new Sample(nowMs, weight, bitsPerSecond));
+    totalWeight += weight;
+    while (totalWeight > maxWeight && samples.size() > 1) {
+      totalWeight -= samples.removeFirst().weight;
+    }
+  }
+
+  @Override
+  public long getBitrateEstimate(long nowMs) {
+    long maxSampleAgeMs = MAX_SAMPLE_AGE_HALF_LIVES * halfLifeMs;
+    while (samples.size() > 1 && nowMs - samples.getFirst().timeMs > maxSampleAgeMs) {
+      totalWeight -= samples.removeFirst().weight;
+    }
+    if (samples.isEmpty()) {
+      return NO_ESTIMATE;
+    }
+    sortedSamples.clear();
+    sortedSamples.addAll(samples);
+    Collections.sort(sortedSamples, (a, b) -> Float.compare(a.value, b.value));
+    double totalDecayedWeight = 0;
+    for (int i = 0; i < sortedSamples.size(); i++) {
+      totalDecayedWeight += getDecayedWeight(sortedSamples.get(i), nowMs);
+    }
+    double desiredWeight = percentile * totalDecayedWeight;
+    double accumulatedWeight = 0;
+    for (int i = 0; i < sortedSamples.size(); i++) {
+      Sample sample = sortedSamples.get(i);
+      accumulatedWeight += getDecayedWeight(sample, nowMs);
+      if (accumulatedWeight >= desiredWeight) {
+        return (long) sample.value;
+      }
+    }
+    return (long) sortedSamples.get(sortedSamples.size() - 1).value;
+  }
+
+  @Override
+  public void reset() {
+    samples.clear();
+    sortedSamples.clear();
+    totalWeight = 0;
+  }
+
+  private double getDecayedWeight(Sample sample, long nowMs) {
+    return sample.weight * Math.pow(0.5, (double) (nowMs - sample.timeMs) / halfLifeMs);
+  }
+
+  private static final class Sample {
+
+    public final long timeMs;
+    public final int weight;
+    public final float value;
+
+    public Sample(long timeMs, int weight, float value) {
+      this.timeMs = timeMs;
+      this.weight = weight;
+      this.value = value;
+    }
+  }
+}
@@ -19,6 +19,7 @@ import android.net.Uri;
 import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
 import com.google.android.exoplayer2.upstream.DataSink;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSourceException;
@@ -29,6 +30,8 @@ import com.google.android.exoplayer2.upstream.TeeDataSource;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.lang.annotation.Documented;
@@ -42,6 +45,9 @@ import java.util.Map;
  * A {@link DataSource} that reads and writes a {@link Cache}. Requests are fulfilled from the cache
  * when possible. When data is not cached it is requested from an upstream {@link DataSource} and
  * written into the cache.
+ *
+ * <p>If a {@link MemorySpanCache} is provided, small cached spans that are read repeatedly are
+ * served from memory rather than read from disk.
  */
 public final class CacheDataSource implements DataSource {
 
@@ -116,6 +122,19 @@ public final class CacheDataSource implements DataSource {
      * @param reason Reason cache is bypassed.
      */
     void onCacheIgnored(@CacheIgnoredReason int reason);
+
+    /**
+     * Called when cached spans have been read, if the data source has a {@link MemorySpanCache}.
+     *
+     * @param memoryHitCount The number of cached spans read from memory since this method was last
+     *     called.
+     * @param memoryMissCount The number of cached spans read from disk since this method was last
+     *     called.
+     * @param memoryBytesRead Total bytes read from spans that were already held in memory since
+     *     this method was last called.
+     */
+    default void onMemorySpanCacheRead(
+        int memoryHitCount, int memoryMissCount, long memoryBytesRead) {}
   }
 
   /** Minimum number of bytes to read before checking cache for availability. */
@@ -123,6 +142,8 @@ public final class CacheDataSource implements DataSource {
 
   private final Cache cache;
   private final DataSource cacheReadDataSource;
+  @Nullable private final MemorySpanCache memorySpanCache;
+  private final MemoryReadDataSource memoryReadDataSource;
   @Nullable private final DataSource cacheWriteDataSource;
   private final DataSource upstreamDataSource;
   private final CacheKeyFactory cacheKeyFactory;
@@ -147,6 +168,11 @@ public final class CacheDataSource implements DataSource {
   private boolean seenCacheError;
   private boolean currentRequestIgnoresCache;
   private long totalCachedBytesRead;
+  private int memoryHitCount;
+  private int memoryMissCount;
+  private long memoryBytesRead;
+  private boolean currentSpanIsMemoryHit;
+  private boolean readingSpanIntoMemory;
   private long checkCachePosition;
 
   /**
@@ -233,8 +259,45 @@ public final class CacheDataSource implements DataSource {
       @Flags int flags,
       @Nullable EventListener eventListener,
       @Nullable CacheKeyFactory cacheKeyFactory) {
+    this(
+        cache,
+        upstream,
+        cacheReadDataSource,
+        cacheWriteDataSink,
+        flags,
+        eventListener,
+        cacheKeyFactory,
+        /* memorySpanCache= */ null);
+  }
+
+  /**
+   * Constructs an instance with arbitrary {@link DataSource} and {@link DataSink} instances for
+   * reading and writing the cache, and an in-memory tier in front of the cache.
+   *
+   * @param cache The cache.
+   * @param upstream A {@link DataSource} for reading data not in the cache.
+   * @param cacheReadDataSource A {@link DataSource} for reading data from the cache.
+   * @param cacheWriteDataSink A {@link DataSink} for writing data to the cache. If null, cache is
+   *     accessed read-only.
+   * @param flags A combination of {@link #FLAG_BLOCK_ON_CACHE}, {@link #FLAG_IGNORE_CACHE_ON_ERROR}
+   *     and {@link #FLAG_IGNORE_CACHE_FOR_UNSET_LENGTH_REQUESTS}, or 0.
+   * @param eventListener An optional {@link EventListener} to receive events.
+   * @param cacheKeyFactory An optional factory for cache keys.
+   * @param memorySpanCache An optional {@link MemorySpanCache} holding spans of {@code cache}.
+   */
+  public CacheDataSource(
+      Cache cache,
+      DataSource upstream,
+      DataSource cacheReadDataSource,
+      @Nullable DataSink cacheWriteDataSink,
+      @Flags int flags,
+      @Nullable EventListener eventListener,
+      @Nullable CacheKeyFactory cacheKeyFactory,
+      @Nullable MemorySpanCache memorySpanCache) {
     this.cache = cache;
     this.cacheReadDataSource = cacheReadDataSource;
+    this.memorySpanCache = memorySpanCache;
+    memoryReadDataSource = new MemoryReadDataSource();
     this.cacheKeyFactory =
         cacheKeyFactory != null ? cacheKeyFactory : CacheUtil.DEFAULT_CACHE_KEY_FACTORY;
     this.blockOnCache = (flags & FLAG_BLOCK_ON_CACHE) != 0;
@@ -252,7 +315,11 @@ public final class CacheDataSource implements DataSource {
 
   @Override
   public void addTransferListener(TransferListener transferListener) {
-    cacheReadDataSource.addTransferListener(transferListener);
+    cacheReadDataSource.addTransferListener(
+        memorySpanCache != null
+            ? new SpanAdmissionSkippingTransferListener(transferListener)
+            : transferListener);
+    memoryReadDataSource.addTransferListener(transferListener);
     upstreamDataSource.addTransferListener(transferListener);
   }
 
@@ -310,6 +377,9 @@ public final class CacheDataSource implements DataSource {
         if (isReadingFromCache()) {
           totalCachedBytesRead += bytesRead;
         }
+        if (currentSpanIsMemoryHit) {
+          memoryBytesRead += bytesRead;
+        }
         readPosition += bytesRead;
         if (bytesRemaining != C.LENGTH_UNSET) {
           bytesRemaining -= bytesRead;
@@ -399,6 +469,7 @@ public final class CacheDataSource implements DataSource {
 
     DataSpec nextDataSpec;
     DataSource nextDataSource;
+    boolean nextSpanIsMemoryHit = false;
     if (nextSpan == null) {
       // The data is locked in the cache, or we're ignoring the cache. Bypass the cache and read
       // from upstream.
@@ -426,6 +497,20 @@ public final class CacheDataSource implements DataSource {
       // making an HTTP request.
       nextDataSpec = new DataSpec(fileUri, readPosition, filePosition, length, key, flags);
       nextDataSource = cacheReadDataSource;
+      if (memorySpanCache != null) {
+        @Nullable byte[] spanData = memorySpanCache.get(nextSpan);
+        if (spanData != null) {
+          memoryHitCount++;
+          nextSpanIsMemoryHit = true;
+        } else {
+          memoryMissCount++;
+          spanData = maybeReadSpanIntoMemory(memorySpanCache, nextSpan);
+        }
+        if (spanData != null) {
+          memoryReadDataSource.setData(spanData);
+          nextDataSource = memoryReadDataSource;
+        }
+      }
     } else {
       // Data is not cached, and data is not locked, read from upstream with cache backing.
       long length;
@@ -483,6 +568,7 @@ public final class CacheDataSource implements DataSource {
       currentHoleSpan = nextSpan;
     }
     currentDataSource = nextDataSource;
+    currentSpanIsMemoryHit = nextSpanIsMemoryHit;
     currentDataSpecLengthUnset = nextDataSpec.length == C.LENGTH_UNSET;
     long resolvedLength = nextDataSource.open(nextDataSpec);
 
@@ -502,6 +588,50 @@ public final class CacheDataSource implements DataSource {
     }
   }
 
+  /**
+   * Reads the content of a cached span that isn't held in memory into memory, if the span should
+   * be added to it.
+   *
+   * @return The content of the span, or null if the span should be read from disk.
+   */
+  @Nullable
+  private byte[] maybeReadSpanIntoMemory(MemorySpanCache memorySpanCache, CacheSpan span)
+      throws IOException {
+    if (!memorySpanCache.shouldPut(span)) {
+      return null;
+    }
+    byte[] spanData = new byte[(int) span.length];
+    // The requested data is reported to transfer listeners when it's read from memory, so reading
+    // the span into memory isn't reported.
+    readingSpanIntoMemory = true;
+    try {
+      cacheReadDataSource.open(
+          new DataSpec(
+              Uri.fromFile(span.file),
+              /* absoluteStreamPosition= */ span.position,
+              /* position= */ 0,
+              span.length,
+              key,
+              flags));
+      int offset = 0;
+      while (offset < spanData.length) {
+        int bytesRead = cacheReadDataSource.read(spanData, offset, spanData.length - offset);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          throw new EOFException();
+        }
+        offset += bytesRead;
+      }
+    } catch (IOException e) {
+      seenCacheError = true;
+      throw e;
+    } finally {
+      Util.closeQuietly(cacheReadDataSource);
+      readingSpanIntoMemory = false;
+    }
+    memorySpanCache.put(cache, span, spanData);
+    return spanData;
+  }
+
   private void setNoBytesRemainingAndMaybeStoreLength() throws IOException {
     bytesRemaining = 0;
     if (isWritingToCache()) {
@@ -525,7 +655,7 @@ public final class CacheDataSource implements DataSource {
   }
 
   private boolean isReadingFromCache() {
-    return currentDataSource == cacheReadDataSource;
+    return currentDataSource == cacheReadDataSource || currentDataSource == memoryReadDataSource;
   }
 
   private boolean isWritingToCache() {
@@ -541,6 +671,7 @@ public final class CacheDataSource implements DataSource {
     } finally {
       currentDataSource = null;
       currentDataSpecLengthUnset = false;
+      currentSpanIsMemoryHit = false;
       if (currentHoleSpan != null) {
         cache.releaseHoleSpan(currentHoleSpan);
         currentHoleSpan = null;
@@ -575,6 +706,121 @@ public final class CacheDataSource implements DataSource {
       eventListener.onCachedBytesRead(cache.getCacheSpace(), totalCachedBytesRead);
       totalCachedBytesRead = 0;
     }
+    if (eventListener != null && (memoryHitCount > 0 || memoryMissCount > 0)) {
+      eventListener.onMemorySpanCacheRead(memoryHitCount, memoryMissCount, memoryBytesRead);
+      memoryHitCount = 0;
+      memoryMissCount = 0;
+      memoryBytesRead = 0;
+    }
   }
 
+  /** A {@link DataSource} for reading a span held in memory. */
+  private static final class MemoryReadDataSource extends BaseDataSource {
+
+    @Nullable private byte[] data;
+    @Nullable private Uri uri;
+    private int readPosition;
+    private int bytesRemaining;
+    private boolean opened;
+
+    public MemoryReadDataSource() {
+      super(/* isNetwork= */ false);
+    }
+
+    public void setData(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      byte[] data = Assertions.checkNotNull(this.data);
+      uri = dataSpec.uri;
+      transferInitializing(dataSpec);
+      readPosition = (int) dataSpec.position;
+      bytesRemaining =
+          (int)
+              (dataSpec.length == C.LENGTH_UNSET
+                  ? data.length - dataSpec.position
+                  : dataSpec.length);
+      if (bytesRemaining < 0 || readPosition + bytesRemaining > data.length) {
+        throw new DataSourceException(DataSourceException.POSITION_OUT_OF_RANGE);
+      }
+      opened = true;
+      transferStarted(dataSpec);
+      return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (readLength == 0) {
+        return 0;
+      } else if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      readLength = Math.min(readLength, bytesRemaining);
+      System.arraycopy(Assertions.checkNotNull(data), readPosition, buffer, offset, readLength);
+      readPosition += readLength;
+      bytesRemaining -= readLength;
+      bytesTransferred(readLength);
+      return readLength;
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+      return uri;
+    }
+
+    @Override
+    public void close() {
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+      uri = null;
+      data = null;
+    }
+  }
+
+  /**
+   * A {@link TransferListener} for {@link #cacheReadDataSource} that ignores transfers made to read
+   * spans into memory.
+   */
+  private final class SpanAdmissionSkippingTransferListener implements TransferListener {
+
+    private final TransferListener transferListener;
+
+    public SpanAdmissionSkippingTransferListener(TransferListener transferListener) {
+      this.transferListener = transferListener;
+    }
+
+    @Override
+    public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      if (!readingSpanIntoMemory) {
+        transferListener.onTransferInitializing(source, dataSpec, isNetwork);
+      }
+    }
+
+    @Override
+    public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      if (!readingSpanIntoMemory) {
+        transferListener.onTransferStart(source, dataSpec, isNetwork);
+      }
+    }
+
+    @Override
+    public void onBytesTransferred(
+        DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+      if (!readingSpanIntoMemory) {
+        transferListener.onBytesTransferred(source, dataSpec, isNetwork, bytesTransferred);
+      }
+    }
+
+    @Override
+    public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      if (!readingSpanIntoMemory) {
+        transferListener.onTransferEnd(source, dataSpec, isNetwork);
+      }
+    }
+  }
 }
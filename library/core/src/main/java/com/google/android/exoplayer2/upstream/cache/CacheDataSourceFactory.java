@@ -30,6 +30,7 @@ public final class CacheDataSourceFactory implements DataSource.Factory {
   @Nullable private final DataSink.Factory cacheWriteDataSinkFactory;
   @Nullable private final CacheDataSource.EventListener eventListener;
   @Nullable private final CacheKeyFactory cacheKeyFactory;
+  @Nullable private final MemorySpanCache memorySpanCache;
 
   /**
    * Constructs a factory which creates {@link CacheDataSource} instances with default {@link
@@ -88,6 +89,30 @@ public final class CacheDataSourceFactory implements DataSource.Factory {
       @CacheDataSource.Flags int flags,
       @Nullable CacheDataSource.EventListener eventListener,
       @Nullable CacheKeyFactory cacheKeyFactory) {
+    this(
+        cache,
+        upstreamFactory,
+        cacheReadDataSourceFactory,
+        cacheWriteDataSinkFactory,
+        flags,
+        eventListener,
+        cacheKeyFactory,
+        /* memorySpanCache= */ null);
+  }
+
+  /**
+   * @see CacheDataSource#CacheDataSource(Cache, DataSource, DataSource, DataSink, int,
+   *     CacheDataSource.EventListener, CacheKeyFactory, MemorySpanCache)
+   */
+  public CacheDataSourceFactory(
+      Cache cache,
+      DataSource.Factory upstreamFactory,
+      DataSource.Factory cacheReadDataSourceFactory,
+      @Nullable DataSink.Factory cacheWriteDataSinkFactory,
+      @CacheDataSource.Flags int flags,
+      @Nullable CacheDataSource.EventListener eventListener,
+      @Nullable CacheKeyFactory cacheKeyFactory,
+      @Nullable MemorySpanCache memorySpanCache) {
     this.cache = cache;
     this.upstreamFactory = upstreamFactory;
     this.cacheReadDataSourceFactory = cacheReadDataSourceFactory;
@@ -95,6 +120,7 @@ public final class CacheDataSourceFactory implements DataSource.Factory {
     this.flags = flags;
     this.eventListener = eventListener;
     this.cacheKeyFactory = cacheKeyFactory;
+    this.memorySpanCache = memorySpanCache;
   }
 
   @Override
@@ -106,7 +132,8 @@ public final class CacheDataSourceFactory implements DataSource.Factory {
         cacheWriteDataSinkFactory == null ? null : cacheWriteDataSinkFactory.createDataSink(),
         flags,
         eventListener,
-        cacheKeyFactory);
+        cacheKeyFactory,
+        memorySpanCache);
   }
 
 }
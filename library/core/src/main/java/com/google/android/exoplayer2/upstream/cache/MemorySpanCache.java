@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded in-memory tier in front of a {@link Cache}, which holds the content of small
+ * cached spans that are read repeatedly, such as initialization segments, segment indexes,
+ * encryption keys and manifests.
+ *
+ * <p>An instance can be shared by any number of {@link CacheDataSource} instances reading from the
+ * same cache. Spans are keyed by their cache key, position and length, which don't change when a
+ * span is touched and its file renamed. The instance listens to the cache for removed spans of the
+ * keys it holds spans for, so a span that's evicted from the cache or replaced is never served from
+ * memory. The listener of a key is removed once no spans of the key are held. A span is only held
+ * in memory once it has been read from disk twice, so that media that's read once during playback
+ * doesn't evict frequently read data. Spans are evicted in least recently used order once the
+ * total size exceeds the maximum size.
+ */
+public final class MemorySpanCache {
+
+  /** The default maximum total size of the spans held in memory, in bytes. */
+  public static final int DEFAULT_MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+  /** The default maximum size of a single span held in memory, in bytes. */
+  public static final int DEFAULT_MAX_SPAN_SIZE_BYTES = 256 * 1024;
+
+  /** The maximum number of spans that have been read once that are remembered. */
+  private static final int MAX_CANDIDATE_COUNT = 1024;
+
+  private final int maxSizeBytes;
+  private final int maxSpanSizeBytes;
+  private final LinkedHashMap<SpanKey, byte[]> spans;
+  private final LinkedHashMap<SpanKey, Boolean> candidates;
+  private final HashMap<String, Integer> spanCountsByKey;
+  private final Cache.Listener cacheListener;
+  private final HashMap<String, Cache> listenedCachesByKey;
+
+  private long sizeBytes;
+
+  /** Creates an instance with default maximum sizes. */
+  public MemorySpanCache() {
+    this(DEFAULT_MAX_SIZE_BYTES, DEFAULT_MAX_SPAN_SIZE_BYTES);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxSizeBytes The maximum total size of the spans held in memory, in bytes.
+   * @param maxSpanSizeBytes The maximum size of a single span held in memory, in bytes. Larger
+   *     spans are always read from disk.
+   */
+  public MemorySpanCache(int maxSizeBytes, int maxSpanSizeBytes) {
+    Assertions.checkArgument(maxSpanSizeBytes > 0 && maxSpanSizeBytes <= maxSizeBytes);
+    this.maxSizeBytes = maxSizeBytes;
+    this.maxSpanSizeBytes = maxSpanSizeBytes;
+    spans = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+    candidates =
+        new LinkedHashMap<SpanKey, Boolean>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<SpanKey, Boolean> eldest) {
+            return size() > MAX_CANDIDATE_COUNT;
+          }
+        };
+    spanCountsByKey = new HashMap<>();
+    cacheListener = new CacheListener();
+    listenedCachesByKey = new HashMap<>();
+  }
+
+  /** Returns the total size of the spans held in memory, in bytes. */
+  public synchronized long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  /** Removes all spans from memory. */
+  public void clear() {
+    synchronized (listenedCachesByKey) {
+      for (Map.Entry<String, Cache> entry : listenedCachesByKey.entrySet()) {
+        entry.getValue().removeListener(entry.getKey(), cacheListener);
+      }
+      listenedCachesByKey.clear();
+      synchronized (this) {
+        spans.clear();
+        candidates.clear();
+        spanCountsByKey.clear();
+        sizeBytes = 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the content of a cached span if it's held in memory, or null otherwise.
+   *
+   * @param span The cached span.
+   * @return The content of the span, or null.
+   */
+  @Nullable
+  /* package */ synchronized byte[] get(CacheSpan span) {
+    return spans.get(new SpanKey(span));
+  }
+
+  /**
+   * Returns whether the content of a cached span that isn't held in memory should be read from
+   * disk and added with {@link #put(Cache, CacheSpan, byte[])}.
+   *
+   * @param span The cached span.
+   * @return Whether the span should be added.
+   */
+  /* package */ synchronized boolean shouldPut(CacheSpan span) {
+    if (span.length > maxSpanSizeBytes) {
+      return false;
+    }
+    // Only admit spans that are read for the second time.
+    SpanKey spanKey = new SpanKey(span);
+    if (candidates.remove(spanKey) != null) {
+      return true;
+    }
+    candidates.put(spanKey, Boolean.TRUE);
+    return false;
+  }
+
+  /**
+   * Adds the content of a cached span, evicting the least recently used spans if necessary.
+   *
+   * @param cache The cache holding the span.
+   * @param span The cached span.
+   * @param data The content of the span.
+   */
+  /* package */ void put(Cache cache, CacheSpan span, byte[] data) {
+    SpanKey spanKey = new SpanKey(span);
+    // Listener callbacks are made whilst holding the cache's lock, so the cache must not be called
+    // whilst holding the lock of this instance. The span is added whilst holding the lock of the
+    // listened caches, so that the listener of its key can't be removed in between.
+    synchronized (listenedCachesByKey) {
+      if (!listenedCachesByKey.containsKey(span.key)) {
+        cache.addListener(span.key, cacheListener);
+        listenedCachesByKey.put(span.key, cache);
+      }
+      synchronized (this) {
+        @Nullable byte[] previousData = spans.put(spanKey, data);
+        if (previousData != null) {
+          sizeBytes -= previousData.length;
+        } else {
+          incrementSpanCount(spanKey.key);
+        }
+        sizeBytes += data.length;
+        Iterator<Map.Entry<SpanKey, byte[]>> iterator = spans.entrySet().iterator();
+        while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+          Map.Entry<SpanKey, byte[]> eldest = iterator.next();
+          sizeBytes -= eldest.getValue().length;
+          decrementSpanCount(eldest.getKey().key);
+          iterator.remove();
+        }
+      }
+    }
+    if (!cache.isCached(span.key, span.position, span.length)) {
+      // The span was removed from the cache before the listener could remove it from memory.
+      remove(spanKey);
+    }
+    removeUnusedCacheListeners();
+  }
+
+  private void removeUnusedCacheListeners() {
+    synchronized (listenedCachesByKey) {
+      Iterator<Map.Entry<String, Cache>> iterator = listenedCachesByKey.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Cache> entry = iterator.next();
+        boolean holdsSpans;
+        synchronized (this) {
+          holdsSpans = spanCountsByKey.containsKey(entry.getKey());
+        }
+        if (!holdsSpans) {
+          entry.getValue().removeListener(entry.getKey(), cacheListener);
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  private synchronized void remove(SpanKey spanKey) {
+    candidates.remove(spanKey);
+    @Nullable byte[] data = spans.remove(spanKey);
+    if (data != null) {
+      sizeBytes -= data.length;
+      decrementSpanCount(spanKey.key);
+    }
+  }
+
+  private void incrementSpanCount(String key) {
+    @Nullable Integer spanCount = spanCountsByKey.get(key);
+    spanCountsByKey.put(key, spanCount == null ? 1 : spanCount + 1);
+  }
+
+  private void decrementSpanCount(String key) {
+    int spanCount = Assertions.checkNotNull(spanCountsByKey.get(key));
+    if (spanCount == 1) {
+      spanCountsByKey.remove(key);
+    } else {
+      spanCountsByKey.put(key, spanCount - 1);
+    }
+  }
+
+  private final class CacheListener implements Cache.Listener {
+
+    @Override
+    public void onSpanAdded(Cache cache, CacheSpan span) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onSpanRemoved(Cache cache, CacheSpan span) {
+      remove(new SpanKey(span));
+    }
+
+    @Override
+    public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+      // Do nothing. The new span holds the same data at the same position.
+    }
+  }
+
+  private static final class SpanKey {
+
+    private final String key;
+    private final long position;
+    private final long length;
+
+    public SpanKey(CacheSpan span) {
+      key = span.key;
+      position = span.position;
+      length = span.length;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      SpanKey other = (SpanKey) obj;
+      return position == other.position && length == other.length && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = key.hashCode();
+      result = 31 * result + (int) (position ^ (position >>> 32));
+      result = 31 * result + (int) (length ^ (length >>> 32));
+      return result;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link PlaybackInstrumentation} that aggregates measurements in memory.
+ *
+ * <p>Stage durations are recorded into fixed size log-linear histograms, in the style of
+ * HdrHistogram. Each power of two range of durations is split into {@link #SUB_BUCKET_COUNT}
+ * equally sized buckets, so percentiles are reported with a relative error of at most 1/{@link
+ * #SUB_BUCKET_COUNT}. Recording is lock-free and allocation-free, so this class is suitable for use
+ * on field devices.
+ */
+public final class InMemoryPlaybackInstrumentation implements PlaybackInstrumentation {
+
+  /** The number of buckets into which each power of two range of durations is split. */
+  public static final int SUB_BUCKET_COUNT = 16;
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int BUCKET_COUNT = SUB_BUCKET_COUNT * (64 - SUB_BUCKET_BITS + 1);
+  private static final int STAGE_COUNT = 5;
+  private static final int COUNTER_COUNT = 5;
+
+  private final AtomicLongArray bucketCounts;
+  private final AtomicLongArray stageCounts;
+  private final AtomicLongArray stageTotalDurationsNs;
+  private final AtomicLongArray stageMaxDurationsNs;
+  private final AtomicLongArray counters;
+
+  private volatile boolean enabled;
+
+  /** Creates an instance that is initially enabled. */
+  public InMemoryPlaybackInstrumentation() {
+    bucketCounts = new AtomicLongArray(STAGE_COUNT * BUCKET_COUNT);
+    stageCounts = new AtomicLongArray(STAGE_COUNT);
+    stageTotalDurationsNs = new AtomicLongArray(STAGE_COUNT);
+    stageMaxDurationsNs = new AtomicLongArray(STAGE_COUNT);
+    counters = new AtomicLongArray(COUNTER_COUNT);
+    enabled = true;
+  }
+
+  /**
+   * Sets whether measurements are recorded. Measurements that have already been recorded are
+   * retained.
+   *
+   * @param enabled Whether measurements are recorded.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Discards all recorded measurements. */
+  public void reset() {
+    for (int i = 0; i < bucketCounts.length(); i++) {
+      bucketCounts.set(i, 0);
+    }
+    for (int i = 0; i < STAGE_COUNT; i++) {
+      stageCounts.set(i, 0);
+      stageTotalDurationsNs.set(i, 0);
+      stageMaxDurationsNs.set(i, 0);
+    }
+    for (int i = 0; i < COUNTER_COUNT; i++) {
+      counters.set(i, 0);
+    }
+  }
+
+  /** Returns the number of recorded completions of a {@link Stage}. */
+  public long getStageCount(@Stage int stage) {
+    return stageCounts.get(stage);
+  }
+
+  /** Returns the total recorded duration of a {@link Stage}, in nanoseconds. */
+  public long getStageTotalDurationNs(@Stage int stage) {
+    return stageTotalDurationsNs.get(stage);
+  }
+
+  /** Returns the maximum recorded duration of a {@link Stage}, in nanoseconds. */
+  public long getStageMaxDurationNs(@Stage int stage) {
+    return stageMaxDurationsNs.get(stage);
+  }
+
+  /**
+   * Returns an upper bound for the given percentile of the recorded durations of a {@link Stage}.
+   *
+   * @param stage The {@link Stage}.
+   * @param percentile The percentile, in the range [0, 100].
+   * @return The upper bound of the histogram bucket containing the percentile, in nanoseconds, or
+   *     0 if no durations have been recorded.
+   */
+  public long getStageDurationPercentileNs(@Stage int stage, float percentile) {
+    Assertions.checkArgument(percentile >= 0 && percentile <= 100);
+    long count = 0;
+    int offset = stage * BUCKET_COUNT;
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = bucketCounts.get(offset + i);
+      count += snapshot[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long targetCount = Math.max(1, (long) Math.ceil(count * percentile / 100));
+    long cumulativeCount = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      cumulativeCount += snapshot[i];
+      if (cumulativeCount >= targetCount) {
+        return Math.min(getBucketUpperBound(i), getStageMaxDurationNs(stage));
+      }
+    }
+    return getStageMaxDurationNs(stage);
+  }
+
+  /** Returns the current value of a {@link Counter}. */
+  public long getCounterValue(@Counter int counter) {
+    return counters.get(counter);
+  }
+
+  // PlaybackInstrumentation implementation.
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void onStageCompleted(@Stage int stage, long durationNs) {
+    if (durationNs < 0) {
+      return;
+    }
+    bucketCounts.incrementAndGet(stage * BUCKET_COUNT + getBucketIndex(durationNs));
+    stageCounts.incrementAndGet(stage);
+    stageTotalDurationsNs.addAndGet(stage, durationNs);
+    long maxDurationNs;
+    do {
+      maxDurationNs = stageMaxDurationsNs.get(stage);
+    } while (durationNs > maxDurationNs
+        && !stageMaxDurationsNs.compareAndSet(stage, maxDurationNs, durationNs));
+  }
+
+  @Override
+  public void onCounterIncremented(@Counter int counter, long delta) {
+    counters.addAndGet(counter, delta);
+  }
+
+  // Internal methods.
+
+  private static int getBucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    int subBucketIndex = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+    return SUB_BUCKET_COUNT * (shift + 1) + subBucketIndex;
+  }
+
+  private static long getBucketUpperBound(int bucketIndex) {
+    if (bucketIndex < SUB_BUCKET_COUNT) {
+      return bucketIndex;
+    }
+    int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+    long lowerBound = (long) (SUB_BUCKET_COUNT + bucketIndex % SUB_BUCKET_COUNT) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
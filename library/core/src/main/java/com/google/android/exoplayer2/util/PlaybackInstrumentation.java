@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import androidx.annotation.IntDef;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Receives timing and counter measurements from the hot paths of the playback pipeline.
+ *
+ * <p>Measurements are reported from the playback thread and from loading threads, so
+ * implementations must be thread-safe. They are reported inline, so implementations must also be
+ * cheap and must never block. The instrumentation in use is set by calling {@link
+ * TraceUtil#setPlaybackInstrumentation(PlaybackInstrumentation)}.
+ */
+public interface PlaybackInstrumentation {
+
+  /**
+   * A timed stage of the playback pipeline. One of {@link #STAGE_DO_SOME_WORK}, {@link
+   * #STAGE_RENDERER_RENDER}, {@link #STAGE_CODEC_DRAIN_AND_FEED}, {@link #STAGE_SAMPLE_READ} or
+   * {@link #STAGE_LOAD}.
+   */
+  @Documented
+  @Retention(RetentionPolicy.SOURCE)
+  @IntDef({
+    STAGE_DO_SOME_WORK,
+    STAGE_RENDERER_RENDER,
+    STAGE_CODEC_DRAIN_AND_FEED,
+    STAGE_SAMPLE_READ,
+    STAGE_LOAD
+  })
+  @interface Stage {}
+  /** A single iteration of the playback thread's work loop. */
+  int STAGE_DO_SOME_WORK = 0;
+  /** A single call to {@link com.google.android.exoplayer2.Renderer#render(long, long)}. */
+  int STAGE_RENDERER_RENDER = 1;
+  /** Draining output from and feeding input to a codec during a single render call. */
+  int STAGE_CODEC_DRAIN_AND_FEED = 2;
+  /** Reading a single sample (or format) from a sample queue. */
+  int STAGE_SAMPLE_READ = 3;
+  /** A single load on a loading thread, including any extraction performed during the load. */
+  int STAGE_LOAD = 4;
+
+  /**
+   * A counter maintained by the playback pipeline. One of {@link #COUNTER_DO_SOME_WORK_OVERRUNS},
+   * {@link #COUNTER_LOADS_COMPLETED}, {@link #COUNTER_LOAD_ERRORS}, {@link
+   * #COUNTER_CHUNK_BYTES_LOADED} or {@link #COUNTER_SAMPLES_READ}.
+   */
+  @Documented
+  @Retention(RetentionPolicy.SOURCE)
+  @IntDef({
+    COUNTER_DO_SOME_WORK_OVERRUNS,
+    COUNTER_LOADS_COMPLETED,
+    COUNTER_LOAD_ERRORS,
+    COUNTER_CHUNK_BYTES_LOADED,
+    COUNTER_SAMPLES_READ
+  })
+  @interface Counter {}
+  /** Iterations of the playback thread's work loop that took longer than their scheduled period. */
+  int COUNTER_DO_SOME_WORK_OVERRUNS = 0;
+  /** Loads that completed successfully. */
+  int COUNTER_LOADS_COMPLETED = 1;
+  /** Loads that failed with an error. */
+  int COUNTER_LOAD_ERRORS = 2;
+  /** Bytes loaded by completed media chunk loads. */
+  int COUNTER_CHUNK_BYTES_LOADED = 3;
+  /** Samples read from chunk sample queues into decoder input buffers. */
+  int COUNTER_SAMPLES_READ = 4;
+
+  /** An instance that ignores all measurements. */
+  PlaybackInstrumentation NONE =
+      new PlaybackInstrumentation() {
+        @Override
+        public boolean isEnabled() {
+          return false;
+        }
+
+        @Override
+        public void onStageCompleted(@Stage int stage, long durationNs) {
+          // Do nothing.
+        }
+
+        @Override
+        public void onCounterIncremented(@Counter int counter, long delta) {
+          // Do nothing.
+        }
+      };
+
+  /**
+   * Returns whether measurements should be taken. Callers use this to avoid reading the clock when
+   * measurements would be ignored.
+   */
+  boolean isEnabled();
+
+  /**
+   * Called when a timed stage completes.
+   *
+   * @param stage The {@link Stage} that completed.
+   * @param durationNs The duration of the stage, in nanoseconds.
+   */
+  void onStageCompleted(@Stage int stage, long durationNs);
+
+  /**
+   * Called when a counter is incremented.
+   *
+   * @param counter The {@link Counter} that was incremented.
+   * @param delta The amount by which the counter was incremented.
+   */
+  void onCounterIncremented(@Counter int counter, long delta);
+}
@@ -16,15 +16,70 @@
 package com.google.android.exoplayer2.util;
 
 import android.annotation.TargetApi;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlayerLibraryInfo;
 
 /**
- * Calls through to {@link android.os.Trace} methods on supported API levels.
+ * Calls through to {@link android.os.Trace} methods on supported API levels, and reports stage
+ * timings and counters to the current {@link PlaybackInstrumentation}.
  */
 public final class TraceUtil {
 
+  private static volatile PlaybackInstrumentation playbackInstrumentation =
+      PlaybackInstrumentation.NONE;
+
   private TraceUtil() {}
 
+  /**
+   * Sets the {@link PlaybackInstrumentation} to which stage timings and counters are reported. The
+   * default instrumentation is {@link PlaybackInstrumentation#NONE}.
+   *
+   * @param playbackInstrumentation The {@link PlaybackInstrumentation}.
+   */
+  public static void setPlaybackInstrumentation(PlaybackInstrumentation playbackInstrumentation) {
+    TraceUtil.playbackInstrumentation = playbackInstrumentation;
+  }
+
+  /** Returns the {@link PlaybackInstrumentation} to which stage timings are reported. */
+  public static PlaybackInstrumentation getPlaybackInstrumentation() {
+    return playbackInstrumentation;
+  }
+
+  /**
+   * Starts timing a {@link PlaybackInstrumentation.Stage}.
+   *
+   * @return The start time to pass to {@link #endStage(int, long)}, or {@link C#TIME_UNSET} if the
+   *     current {@link PlaybackInstrumentation} is disabled.
+   */
+  public static long startStage() {
+    return playbackInstrumentation.isEnabled() ? System.nanoTime() : C.TIME_UNSET;
+  }
+
+  /**
+   * Finishes timing a {@link PlaybackInstrumentation.Stage} and reports its duration.
+   *
+   * @param stage The {@link PlaybackInstrumentation.Stage}.
+   * @param startTimeNs The start time returned by {@link #startStage()}.
+   */
+  public static void endStage(@PlaybackInstrumentation.Stage int stage, long startTimeNs) {
+    if (startTimeNs != C.TIME_UNSET) {
+      playbackInstrumentation.onStageCompleted(stage, System.nanoTime() - startTimeNs);
+    }
+  }
+
+  /**
+   * Increments a {@link PlaybackInstrumentation.Counter}.
+   *
+   * @param counter The {@link PlaybackInstrumentation.Counter}.
+   * @param delta The amount by which to increment the counter.
+   */
+  public static void incrementCounter(@PlaybackInstrumentation.Counter int counter, long delta) {
+    PlaybackInstrumentation playbackInstrumentation = TraceUtil.playbackInstrumentation;
+    if (playbackInstrumentation.isEnabled()) {
+      playbackInstrumentation.onCounterIncremented(counter, delta);
+    }
+  }
+
   /**
    * Writes a trace message to indicate that a given section of code has begun.
    *
@@ -79,6 +79,10 @@ import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.DataFormatException;
@@ -417,6 +421,35 @@ public final class Util {
     return Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, threadName));
   }
 
+  /**
+   * Instantiates a new executor that runs at most {@code maxThreadCount} tasks at a time. Threads
+   * are started on demand, are named with the specified prefix followed by a sequence number, and
+   * terminate once they have been idle for {@code keepAliveMs}. Tasks submitted whilst all threads
+   * are busy are queued.
+   *
+   * @param threadNamePrefix The prefix of the names of the threads.
+   * @param maxThreadCount The maximum number of threads.
+   * @param keepAliveMs The duration for which an idle thread is kept alive, in milliseconds. Must
+   *     be greater than zero.
+   * @return The executor.
+   */
+  public static ExecutorService newBoundedThreadPool(
+      String threadNamePrefix, int maxThreadCount, long keepAliveMs) {
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ maxThreadCount,
+            /* maximumPoolSize= */ maxThreadCount,
+            keepAliveMs,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet()));
+    // Threads are started as tasks are submitted until maxThreadCount threads exist, and terminate
+    // once idle for keepAliveMs.
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   /**
    * Closes a {@link DataSource}, suppressing any {@link IOException} that may occur.
    *
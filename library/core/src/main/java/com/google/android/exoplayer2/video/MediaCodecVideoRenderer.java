@@ -143,6 +143,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
   private int consecutiveDroppedFrameCount;
   private int buffersInCodecCount;
   private long lastRenderTimeUs;
+  private long pendingFrameReleaseRealtimeUs;
 
   private int pendingRotationDegrees;
   private float pendingPixelWidthHeightRatio;
@@ -352,6 +353,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     outputStreamOffsetUs = C.TIME_UNSET;
     lastInputTimeUs = C.TIME_UNSET;
     joiningDeadlineMs = C.TIME_UNSET;
+    pendingFrameReleaseRealtimeUs = C.TIME_UNSET;
     currentWidth = Format.NO_VALUE;
     currentHeight = Format.NO_VALUE;
     currentPixelWidthHeightRatio = Format.NO_VALUE;
@@ -539,6 +541,14 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     }
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    if (pendingFrameReleaseRealtimeUs == C.TIME_UNSET || getState() != STATE_STARTED) {
+      return C.TIME_UNSET;
+    }
+    return pendingFrameReleaseRealtimeUs - elapsedRealtimeUs;
+  }
+
   @Override
   protected void onStarted() {
     super.onStarted();
@@ -713,6 +723,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
       super.releaseCodec();
     } finally {
       buffersInCodecCount = 0;
+      pendingFrameReleaseRealtimeUs = C.TIME_UNSET;
     }
   }
 
@@ -723,6 +734,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
       return super.flushOrReleaseCodec();
     } finally {
       buffersInCodecCount = 0;
+      pendingFrameReleaseRealtimeUs = C.TIME_UNSET;
     }
   }
 
@@ -846,6 +858,7 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     if (initialPositionUs == C.TIME_UNSET) {
       initialPositionUs = positionUs;
     }
+    pendingFrameReleaseRealtimeUs = C.TIME_UNSET;
 
     long presentationTimeUs = bufferPresentationTimeUs - outputStreamOffsetUs;
 
@@ -945,7 +958,10 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
       }
     }
 
-    // We're either not playing, or it's not time to render the frame yet.
+    // It's not time to render the frame yet. Record when it will be, less the margin within which
+    // frames are released ahead of time.
+    pendingFrameReleaseRealtimeUs =
+        elapsedRealtimeNowUs + earlyUs - (Util.SDK_INT >= 21 ? 50000 : 30000);
     return false;
   }
 
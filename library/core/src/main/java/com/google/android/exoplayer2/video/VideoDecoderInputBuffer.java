@@ -23,8 +23,18 @@ public class VideoDecoderInputBuffer extends DecoderInputBuffer {
 
   @Nullable public ColorInfo colorInfo;
 
+  /** Creates an instance with buffer replacement mode {@link #BUFFER_REPLACEMENT_MODE_DIRECT}. */
   public VideoDecoderInputBuffer() {
-    super(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+    this(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+  }
+
+  /**
+   * @param bufferReplacementMode Determines the behavior of {@link #ensureSpaceForWrite(int)}. One
+   *     of {@link #BUFFER_REPLACEMENT_MODE_DISABLED}, {@link #BUFFER_REPLACEMENT_MODE_NORMAL},
+   *     {@link #BUFFER_REPLACEMENT_MODE_DIRECT} and {@link #BUFFER_REPLACEMENT_MODE_DIRECT_POOLED}.
+   */
+  public VideoDecoderInputBuffer(@BufferReplacementMode int bufferReplacementMode) {
+    super(bufferReplacementMode);
   }
 
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link DefaultLivePlaybackSpeedControl}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultLivePlaybackSpeedControlTest {
+
+  private static final long BUFFERED_DURATION_US = 2_000_000;
+
+  private FakeClock clock;
+  private DefaultLivePlaybackSpeedControl livePlaybackSpeedControl;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    livePlaybackSpeedControl =
+        new DefaultLivePlaybackSpeedControl.Builder().setClock(clock).build();
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_withoutTarget_returnsUnitSpeed() {
+    assertThat(livePlaybackSpeedControl.getTargetLiveOffsetUs()).isEqualTo(C.TIME_UNSET);
+    assertThat(
+            livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+                /* liveOffsetUs= */ 10_000_000, BUFFERED_DURATION_US))
+        .isEqualTo(1f);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_behindTarget_speedsUpWithinRange() {
+    livePlaybackSpeedControl.setMediaTargetLiveOffsetUs(3_000_000);
+
+    float smallErrorSpeed =
+        livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 3_200_000, BUFFERED_DURATION_US);
+    clock.advanceTime(DefaultLivePlaybackSpeedControl.DEFAULT_MIN_UPDATE_INTERVAL_MS);
+    float largeErrorSpeed =
+        livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 30_000_000, BUFFERED_DURATION_US);
+
+    assertThat(smallErrorSpeed).isWithin(1e-6f).of(1.01f);
+    assertThat(largeErrorSpeed)
+        .isEqualTo(DefaultLivePlaybackSpeedControl.DEFAULT_MAX_PLAYBACK_SPEED);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_aheadOfTarget_slowsDownWithinRange() {
+    livePlaybackSpeedControl.setMediaTargetLiveOffsetUs(3_000_000);
+
+    float speed =
+        livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 1_000_000, BUFFERED_DURATION_US);
+
+    assertThat(speed).isEqualTo(DefaultLivePlaybackSpeedControl.DEFAULT_MIN_PLAYBACK_SPEED);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_closeToTarget_returnsUnitSpeed() {
+    livePlaybackSpeedControl.setMediaTargetLiveOffsetUs(3_000_000);
+
+    float speed =
+        livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 3_010_000, BUFFERED_DURATION_US);
+
+    assertThat(speed).isEqualTo(1f);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_withSmallBuffer_doesNotSpeedUp() {
+    livePlaybackSpeedControl.setMediaTargetLiveOffsetUs(3_000_000);
+
+    float speed =
+        livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 5_000_000, /* bufferedDurationUs= */ 100_000);
+
+    assertThat(speed).isEqualTo(1f);
+  }
+
+  @Test
+  public void getAdjustedPlaybackSpeed_withinMinUpdateInterval_returnsPreviousSpeed() {
+    livePlaybackSpeedControl.setMediaTargetLiveOffsetUs(3_000_000);
+
+    float firstSpeed =
+        livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 5_000_000, BUFFERED_DURATION_US);
+    clock.advanceTime(DefaultLivePlaybackSpeedControl.DEFAULT_MIN_UPDATE_INTERVAL_MS - 1);
+    float secondSpeed =
+        livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 3_000_000, BUFFERED_DURATION_US);
+    clock.advanceTime(1);
+    float thirdSpeed =
+        livePlaybackSpeedControl.getAdjustedPlaybackSpeed(
+            /* liveOffsetUs= */ 3_000_000, BUFFERED_DURATION_US);
+
+    assertThat(firstSpeed).isGreaterThan(1f);
+    assertThat(secondSpeed).isEqualTo(firstSpeed);
+    assertThat(thirdSpeed).isEqualTo(1f);
+  }
+
+  @Test
+  public void getTargetLiveOffsetUs_withOverride_returnsOverrideUntilCleared() {
+    livePlaybackSpeedControl.setMediaTargetLiveOffsetUs(3_000_000);
+
+    livePlaybackSpeedControl.setTargetLiveOffsetOverrideUs(20_000_000);
+    long targetWithOverrideUs = livePlaybackSpeedControl.getTargetLiveOffsetUs();
+    livePlaybackSpeedControl.setTargetLiveOffsetOverrideUs(C.TIME_UNSET);
+
+    assertThat(targetWithOverrideUs).isEqualTo(20_000_000);
+    assertThat(livePlaybackSpeedControl.getTargetLiveOffsetUs()).isEqualTo(3_000_000);
+  }
+
+  @Test
+  public void notifyRebuffer_increasesTargetLiveOffset() {
+    livePlaybackSpeedControl.setMediaTargetLiveOffsetUs(3_000_000);
+
+    livePlaybackSpeedControl.notifyRebuffer();
+    livePlaybackSpeedControl.notifyRebuffer();
+
+    assertThat(livePlaybackSpeedControl.getTargetLiveOffsetUs())
+        .isEqualTo(
+            3_000_000
+                + 2
+                    * C.msToUs(
+                        DefaultLivePlaybackSpeedControl
+                            .DEFAULT_TARGET_LIVE_OFFSET_INCREMENT_ON_REBUFFER_MS));
+  }
+}
@@ -34,11 +34,14 @@ import com.google.android.exoplayer2.Player.EventListener;
 import com.google.android.exoplayer2.Timeline.Window;
 import com.google.android.exoplayer2.analytics.AnalyticsListener;
 import com.google.android.exoplayer2.audio.AudioAttributes;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
 import com.google.android.exoplayer2.source.ClippingMediaSource;
 import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
 import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.source.SampleStream;
+import com.google.android.exoplayer2.source.SinglePeriodTimeline;
 import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.source.ads.AdPlaybackState;
@@ -57,6 +60,7 @@ import com.google.android.exoplayer2.testutil.FakeTimeline;
 import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinition;
 import com.google.android.exoplayer2.testutil.FakeTrackSelection;
 import com.google.android.exoplayer2.testutil.FakeTrackSelector;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.TransferListener;
@@ -2118,6 +2122,92 @@ public final class ExoPlayerTest {
         .isGreaterThan(mediaSource.getCreatedMediaPeriods().get(1).windowSequenceNumber);
   }
 
+  @Test
+  public void seekWithinPlayingPeriod_withSeekInBufferEnabled_keepsPrebufferedPeriods()
+      throws Exception {
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 2);
+    AtomicBoolean allowEndOfStream = new AtomicBoolean();
+    FakeMediaSource mediaSource =
+        new FakeMediaSource(timeline, Builder.VIDEO_FORMAT) {
+          @Override
+          protected FakeMediaPeriod createFakeMediaPeriod(
+              MediaPeriodId id,
+              TrackGroupArray trackGroupArray,
+              Allocator allocator,
+              EventDispatcher eventDispatcher,
+              @Nullable TransferListener transferListener) {
+            return new FakeMediaPeriod(trackGroupArray, eventDispatcher) {
+              @Override
+              protected SampleStream createSampleStream(TrackSelection selection) {
+                // Hold back the end of stream so that renderers don't read ahead into the next
+                // period before the seek.
+                SampleStream sampleStream = super.createSampleStream(selection);
+                return new SampleStream() {
+                  @Override
+                  public boolean isReady() {
+                    return sampleStream.isReady();
+                  }
+
+                  @Override
+                  public void maybeThrowError() throws IOException {
+                    sampleStream.maybeThrowError();
+                  }
+
+                  @Override
+                  public int readData(
+                      FormatHolder formatHolder,
+                      DecoderInputBuffer buffer,
+                      boolean formatRequired) {
+                    int result = sampleStream.readData(formatHolder, buffer, formatRequired);
+                    if (result == C.RESULT_BUFFER_READ
+                        && buffer.isEndOfStream()
+                        && !allowEndOfStream.get()) {
+                      buffer.clear();
+                      return C.RESULT_NOTHING_READ;
+                    }
+                    return result;
+                  }
+
+                  @Override
+                  public int skipData(long positionUs) {
+                    return sampleStream.skipData(positionUs);
+                  }
+                };
+              }
+            };
+          }
+        };
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("seekWithinPlayingPeriodKeepsPrebufferedPeriods")
+            .pause()
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    player.experimental_setSeekInBufferEnabled(true);
+                  }
+                })
+            .waitForPlaybackState(Player.STATE_READY)
+            // Ensure next period is pre-buffered.
+            .playUntilPosition(/* windowIndex= */ 0, /* positionMs= */ 5000)
+            .seek(/* windowIndex= */ 0, /* positionMs= */ 1000)
+            .waitForSeekProcessed()
+            .executeRunnable(() -> allowEndOfStream.set(true))
+            .play()
+            .build();
+    ExoPlayerTestRunner testRunner =
+        new ExoPlayerTestRunner.Builder()
+            .setMediaSource(mediaSource)
+            .setActionSchedule(actionSchedule)
+            .build(context)
+            .start()
+            .blockUntilEnded(TIMEOUT_MS);
+
+    testRunner.assertPlayedPeriodIndices(0, 1);
+    // Assert that the second period wasn't re-created after the seek.
+    assertThat(mediaSource.getCreatedMediaPeriods()).hasSize(2);
+  }
+
   @Test
   public void testRepeatedSeeksToUnpreparedPeriodInSameWindowKeepsWindowSequenceNumber()
       throws Exception {
@@ -2811,6 +2901,87 @@ public final class ExoPlayerTest {
         .inOrder();
   }
 
+  @Test
+  public void livePlaybackSpeedControl_adjustedSpeedIsNotReportedToListeners() throws Exception {
+    Timeline timeline =
+        new SinglePeriodTimeline(
+            /* presentationStartTimeMs= */ C.TIME_UNSET,
+            /* windowStartTimeMs= */ 0,
+            /* periodDurationUs= */ 10 * C.MICROS_PER_SECOND,
+            /* windowDurationUs= */ 10 * C.MICROS_PER_SECOND,
+            /* windowPositionInPeriodUs= */ 0,
+            /* windowDefaultStartPositionUs= */ 0,
+            /* isSeekable= */ true,
+            /* isDynamic= */ false,
+            /* isLive= */ true,
+            /* manifest= */ null,
+            /* tag= */ null);
+    AtomicInteger adjustedSpeedCount = new AtomicInteger();
+    LivePlaybackSpeedControl livePlaybackSpeedControl =
+        new LivePlaybackSpeedControl() {
+          @Override
+          public void setMediaTargetLiveOffsetUs(long mediaTargetLiveOffsetUs) {}
+
+          @Override
+          public void setTargetLiveOffsetOverrideUs(long targetLiveOffsetOverrideUs) {}
+
+          @Override
+          public void notifyRebuffer() {}
+
+          @Override
+          public float getAdjustedPlaybackSpeed(long liveOffsetUs, long bufferedDurationUs) {
+            adjustedSpeedCount.incrementAndGet();
+            return 1.02f;
+          }
+
+          @Override
+          public long getTargetLiveOffsetUs() {
+            return C.TIME_UNSET;
+          }
+        };
+    AtomicReference<PlaybackParameters> playbackParametersWhilePlaying = new AtomicReference<>();
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("livePlaybackSpeedControl")
+            .pause()
+            .waitForPlaybackState(Player.STATE_READY)
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    player.experimental_setLivePlaybackSpeedControl(livePlaybackSpeedControl);
+                  }
+                })
+            .playUntilPosition(/* windowIndex= */ 0, /* positionMs= */ 5000)
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    playbackParametersWhilePlaying.set(player.getPlaybackParameters());
+                  }
+                })
+            .play()
+            .build();
+    List<PlaybackParameters> reportedPlaybackParameters = new ArrayList<>();
+    EventListener listener =
+        new EventListener() {
+          @Override
+          public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
+            reportedPlaybackParameters.add(playbackParameters);
+          }
+        };
+    new ExoPlayerTestRunner.Builder()
+        .setMediaSource(new FakeMediaSource(timeline, Builder.VIDEO_FORMAT))
+        .setActionSchedule(actionSchedule)
+        .setEventListener(listener)
+        .build(context)
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+
+    assertThat(adjustedSpeedCount.get()).isGreaterThan(0);
+    assertThat(playbackParametersWhilePlaying.get()).isEqualTo(PlaybackParameters.DEFAULT);
+    assertThat(reportedPlaybackParameters).isEmpty();
+  }
+
   @Test
   public void
       setUnsupportedPlaybackParametersConsecutivelyNotifiesListenerForEveryChangeOnceAndResetsOnceHandled()
@@ -2926,8 +3097,132 @@ public final class ExoPlayerTest {
     assertThat(seenPlaybackSuppression.get()).isFalse();
   }
 
+  @Test
+  public void dynamicScheduling_usesDurationToProgressReportedByRenderers() throws Exception {
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+
+    int fixedRenderCount =
+        countRenderCallsUntilEnded(timeline, /* dynamicSchedulingEnabled= */ false);
+    int dynamicRenderCount =
+        countRenderCallsUntilEnded(timeline, /* dynamicSchedulingEnabled= */ true);
+
+    assertThat(dynamicRenderCount).isGreaterThan(0);
+    assertThat(dynamicRenderCount).isLessThan(fixedRenderCount / 5);
+  }
+
+  @Test
+  public void dynamicScheduling_whilePausedAndBuffering_wakesUpLessOften() throws Exception {
+    int fixedRenderCount =
+        countRenderCallsWhilePausedAndBuffering(/* dynamicSchedulingEnabled= */ false);
+    int dynamicRenderCount =
+        countRenderCallsWhilePausedAndBuffering(/* dynamicSchedulingEnabled= */ true);
+
+    assertThat(dynamicRenderCount).isGreaterThan(0);
+    assertThat(dynamicRenderCount).isLessThan(fixedRenderCount / 5);
+  }
+
   // Internal methods.
 
+  /**
+   * Returns how often renderers are rendered during one second of buffering while paused, with a
+   * renderer that isn't ready and doesn't report when it'll make progress.
+   */
+  private int countRenderCallsWhilePausedAndBuffering(boolean dynamicSchedulingEnabled)
+      throws Exception {
+    Clock clock = new AutoAdvancingFakeClock();
+    AtomicInteger renderCount = new AtomicInteger();
+    AtomicLong firstRenderTimeMs = new AtomicLong(C.TIME_UNSET);
+    AtomicBoolean buffering = new AtomicBoolean(true);
+    FakeRenderer renderer =
+        new FakeRenderer(Builder.VIDEO_FORMAT) {
+          @Override
+          public void render(long positionUs, long elapsedRealtimeUs)
+              throws ExoPlaybackException {
+            // The clock advances to the time of each scheduled wake up, so count the renders during
+            // one second of clock time. The renderer becomes ready afterwards.
+            long nowMs = clock.elapsedRealtime();
+            firstRenderTimeMs.compareAndSet(C.TIME_UNSET, nowMs);
+            if (nowMs - firstRenderTimeMs.get() < 1000) {
+              renderCount.incrementAndGet();
+            } else {
+              buffering.set(false);
+            }
+            super.render(positionUs, elapsedRealtimeUs);
+          }
+
+          @Override
+          public boolean isReady() {
+            return !buffering.get() && super.isReady();
+          }
+
+          @Override
+          public boolean isEnded() {
+            return !buffering.get() && super.isEnded();
+          }
+        };
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("countRenderCallsWhilePausedAndBuffering")
+            .pause()
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    player.experimental_setDynamicSchedulingEnabled(dynamicSchedulingEnabled);
+                  }
+                })
+            .waitForPlaybackState(Player.STATE_READY)
+            .play()
+            .build();
+    new Builder()
+        .setTimeline(new FakeTimeline(/* windowCount= */ 1))
+        .setRenderers(renderer)
+        .setClock(clock)
+        .setActionSchedule(actionSchedule)
+        .build(context)
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+    return renderCount.get();
+  }
+
+  private int countRenderCallsUntilEnded(Timeline timeline, boolean dynamicSchedulingEnabled)
+      throws Exception {
+    AtomicInteger renderCount = new AtomicInteger();
+    FakeRenderer renderer =
+        new FakeRenderer(Builder.VIDEO_FORMAT) {
+          @Override
+          public void render(long positionUs, long elapsedRealtimeUs)
+              throws ExoPlaybackException {
+            renderCount.incrementAndGet();
+            super.render(positionUs, elapsedRealtimeUs);
+          }
+
+          @Override
+          public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+            return 100_000;
+          }
+        };
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("countRenderCallsUntilEnded")
+            .pause()
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    player.experimental_setDynamicSchedulingEnabled(dynamicSchedulingEnabled);
+                  }
+                })
+            .play()
+            .build();
+    new Builder()
+        .setTimeline(timeline)
+        .setRenderers(renderer)
+        .setActionSchedule(actionSchedule)
+        .build(context)
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+    return renderCount.get();
+  }
+
   private static ActionSchedule.Builder addSurfaceSwitch(ActionSchedule.Builder builder) {
     final Surface surface1 = new Surface(new SurfaceTexture(/* texName= */ 0));
     final Surface surface2 = new Surface(new SurfaceTexture(/* texName= */ 1));
@@ -347,6 +347,50 @@ public final class MediaPeriodQueueTest {
     assertThat(getQueueLength()).isEqualTo(3);
   }
 
+  @Test
+  public void enqueueNextMediaPeriodHolder_afterPreloadingSamePeriod_adoptsPreloadingPeriod() {
+    setupTimeline(/* initialPositionUs= */ 0, /* adGroupTimesUs= */ FIRST_AD_START_TIME_US);
+    setAdGroupLoaded(/* adGroupIndex= */ 0);
+    enqueueNext();
+    MediaPeriodHolder preloadingPeriodHolder = preloadNext();
+
+    assertThat(mediaPeriodQueue.isPreloading(preloadingPeriodHolder.mediaPeriod)).isTrue();
+    enqueueNext();
+
+    assertThat(mediaPeriodQueue.getLoadingPeriod()).isSameInstanceAs(preloadingPeriodHolder);
+    assertThat(mediaPeriodQueue.getPreloadingPeriod()).isNull();
+    assertThat(preloadingPeriodHolder.getRendererOffset()).isEqualTo(FIRST_AD_START_TIME_US);
+    assertThat(getQueueLength()).isEqualTo(2);
+  }
+
+  @Test
+  public void enqueueNextMediaPeriodHolder_afterNextPeriodChanged_releasesPreloadingPeriod() {
+    setupTimeline(/* initialPositionUs= */ 0, /* adGroupTimesUs= */ FIRST_AD_START_TIME_US);
+    setAdGroupLoaded(/* adGroupIndex= */ 0);
+    enqueueNext();
+    MediaPeriodHolder preloadingPeriodHolder = preloadNext();
+
+    setAdGroupFailedToLoad(/* adGroupIndex= */ 0);
+    enqueueNext();
+
+    assertThat(mediaPeriodQueue.getLoadingPeriod()).isNotSameInstanceAs(preloadingPeriodHolder);
+    assertThat(mediaPeriodQueue.getLoadingPeriod().info.id.isAd()).isFalse();
+    assertThat(mediaPeriodQueue.getPreloadingPeriod()).isNull();
+    assertThat(getQueueLength()).isEqualTo(2);
+  }
+
+  @Test
+  public void clear_releasesPreloadingPeriod() {
+    setupTimeline(/* initialPositionUs= */ 0, /* adGroupTimesUs= */ FIRST_AD_START_TIME_US);
+    setAdGroupLoaded(/* adGroupIndex= */ 0);
+    enqueueNext();
+    preloadNext();
+
+    mediaPeriodQueue.clear(/* keepFrontPeriodUid= */ false);
+
+    assertThat(mediaPeriodQueue.getPreloadingPeriod()).isNull();
+  }
+
   private void setupTimeline(long initialPositionUs, long... adGroupTimesUs) {
     adPlaybackState =
         new AdPlaybackState(adGroupTimesUs).withContentDurationUs(CONTENT_DURATION_US);
@@ -396,6 +440,17 @@ public final class MediaPeriodQueueTest {
             new RendererConfiguration[0], new TrackSelection[0], /* info= */ null));
   }
 
+  private MediaPeriodHolder preloadNext() {
+    return mediaPeriodQueue.preloadNextMediaPeriodHolder(
+        rendererCapabilities,
+        trackSelector,
+        allocator,
+        mediaSource,
+        getNextMediaPeriodInfo(),
+        new TrackSelectorResult(
+            new RendererConfiguration[0], new TrackSelection[0], /* info= */ null));
+  }
+
   private MediaPeriodInfo getNextMediaPeriodInfo() {
     return mediaPeriodQueue.getNextMediaPeriodInfo(/* rendererPositionUs= */ 0, playbackInfo);
   }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentCallbacks2;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeRenderer;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MemoryAwareLoadControl}. */
+@RunWith(AndroidJUnit4.class)
+public final class MemoryAwareLoadControlTest {
+
+  private static final float SPEED = 1f;
+  private static final int MIN_BUFFER_MS = 10_000;
+  private static final int MAX_BUFFER_MS = 80_000;
+  private static final int RECOVERY_INTERVAL_MS = 30_000;
+  private static final int VIDEO_BITRATE = 8_000_000;
+
+  private FakeClock fakeClock;
+  private DefaultAllocator allocator;
+  private MemoryAwareLoadControl.Builder builder;
+
+  @Before
+  public void setUp() {
+    fakeClock = new FakeClock(/* initialTimeMs= */ 0);
+    allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    builder =
+        new MemoryAwareLoadControl.Builder()
+            .setAllocator(allocator)
+            .setBufferDurationsMs(
+                MIN_BUFFER_MS,
+                MAX_BUFFER_MS,
+                /* bufferForPlaybackMs= */ 2500,
+                /* bufferForPlaybackAfterRebufferMs= */ 5000)
+            .setMaxTargetBufferBytes(Integer.MAX_VALUE)
+            .setMemoryPressureRecoveryIntervalMs(RECOVERY_INTERVAL_MS)
+            .setClock(fakeClock);
+  }
+
+  @Test
+  public void onTracksSelected_setsTargetBufferBytesFromBitrate() {
+    MemoryAwareLoadControl loadControl = builder.build();
+
+    selectVideoTrack(loadControl);
+
+    // 8 Mbit/s for 80 seconds, plus 25% headroom.
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(100_000_000);
+  }
+
+  @Test
+  public void onTracksSelected_capsTargetBufferBytesAtMaxTargetBufferBytes() {
+    MemoryAwareLoadControl loadControl = builder.setMaxTargetBufferBytes(20_000_000).build();
+
+    selectVideoTrack(loadControl);
+
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(20_000_000);
+  }
+
+  @Test
+  public void shouldContinueLoading_untilMaxBufferExceeded() {
+    MemoryAwareLoadControl loadControl = builder.build();
+    selectVideoTrack(loadControl);
+
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isTrue();
+    assertThat(loadControl.shouldContinueLoading(C.msToUs(MAX_BUFFER_MS) - 1, SPEED)).isTrue();
+    assertThat(loadControl.shouldContinueLoading(C.msToUs(MAX_BUFFER_MS), SPEED)).isFalse();
+  }
+
+  @Test
+  public void onTrimMemory_reducesBufferDurationAndTargetBufferBytes() {
+    MemoryAwareLoadControl loadControl = builder.build();
+    selectVideoTrack(loadControl);
+
+    loadControl.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+    // Two pressure levels divide the maximum buffer duration and budget by 4.
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(25_000_000);
+    assertThat(loadControl.shouldContinueLoading(C.msToUs(MAX_BUFFER_MS / 4), SPEED)).isFalse();
+  }
+
+  @Test
+  public void onTrimMemory_uiHidden_doesNotReduceBuffer() {
+    MemoryAwareLoadControl loadControl = builder.build();
+    selectVideoTrack(loadControl);
+
+    loadControl.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(100_000_000);
+  }
+
+  @Test
+  public void onLowMemory_neverReducesBufferDurationBelowMinBuffer() {
+    MemoryAwareLoadControl loadControl = builder.build();
+    selectVideoTrack(loadControl);
+
+    loadControl.onLowMemory();
+
+    // The maximum buffer duration is limited to the minimum buffer duration.
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(12_500_000);
+    assertThat(loadControl.shouldContinueLoading(C.msToUs(MIN_BUFFER_MS) - 1, SPEED)).isTrue();
+    assertThat(loadControl.shouldContinueLoading(C.msToUs(MIN_BUFFER_MS), SPEED)).isFalse();
+  }
+
+  @Test
+  public void underMemoryPressure_targetBufferBytesTakePrecedenceOverMinBuffer() {
+    MemoryAwareLoadControl loadControl =
+        builder.setMaxTargetBufferBytes(C.DEFAULT_BUFFER_SEGMENT_SIZE * 2).build();
+    selectVideoTrack(loadControl);
+    loadControl.onLowMemory();
+
+    allocator.allocate();
+
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isFalse();
+    assertThat(
+            loadControl.shouldStartPlayback(
+                /* bufferedDurationUs= */ 0, SPEED, /* rebuffering= */ false))
+        .isTrue();
+  }
+
+  @Test
+  public void withoutMemoryPressureSignals_recoversStepByStep() {
+    MemoryAwareLoadControl loadControl = builder.build();
+    selectVideoTrack(loadControl);
+    loadControl.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+    fakeClock.advanceTime(RECOVERY_INTERVAL_MS - 1);
+    loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED);
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(25_000_000);
+
+    fakeClock.advanceTime(1);
+    loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED);
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(50_000_000);
+
+    fakeClock.advanceTime(RECOVERY_INTERVAL_MS);
+    loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED);
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(100_000_000);
+  }
+
+  private static void selectVideoTrack(MemoryAwareLoadControl loadControl) {
+    Format videoFormat =
+        Format.createVideoSampleFormat(
+            /* id= */ null,
+            MimeTypes.VIDEO_H264,
+            /* codecs= */ null,
+            VIDEO_BITRATE,
+            /* maxInputSize= */ Format.NO_VALUE,
+            /* width= */ 3840,
+            /* height= */ 2160,
+            /* frameRate= */ Format.NO_VALUE,
+            /* initializationData= */ null,
+            /* drmInitData= */ null);
+    TrackGroup trackGroup = new TrackGroup(videoFormat);
+    loadControl.onTracksSelected(
+        new Renderer[] {new FakeRenderer(videoFormat)},
+        new TrackGroupArray(trackGroup),
+        new TrackSelectionArray(new FixedTrackSelection(trackGroup, /* track= */ 0)));
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.SharedBufferBudget.PlayerLoadControl;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.testutil.FakeRenderer;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SharedBufferBudget}. */
+@RunWith(AndroidJUnit4.class)
+public final class SharedBufferBudgetTest {
+
+  private static final float SPEED = 1f;
+  private static final int SEGMENT_SIZE = C.DEFAULT_BUFFER_SEGMENT_SIZE;
+  private static final int VIDEO_BUFFER_SIZE = DefaultLoadControl.DEFAULT_VIDEO_BUFFER_SIZE;
+  private static final int TOTAL_BUFFER_BYTES = VIDEO_BUFFER_SIZE + 4 * SEGMENT_SIZE;
+  private static final int MIN_PLAYER_BUFFER_BYTES = 2 * SEGMENT_SIZE;
+
+  private SharedBufferBudget budget;
+
+  @Before
+  public void setUp() {
+    budget =
+        new SharedBufferBudget.Builder()
+            .setTotalBufferBytes(TOTAL_BUFFER_BYTES)
+            .setMinPlayerBufferBytes(MIN_PLAYER_BUFFER_BYTES)
+            .build();
+  }
+
+  @Test
+  public void onTracksSelected_singlePlayer_getsDefaultTargetBufferSize() {
+    PlayerLoadControl loadControl =
+        budget.createLoadControl(SharedBufferBudget.PRIORITY_BACKGROUND);
+
+    selectVideoTrack(loadControl);
+
+    assertThat(loadControl.getTargetBufferBytes()).isEqualTo(VIDEO_BUFFER_SIZE);
+  }
+
+  @Test
+  public void onTracksSelected_focusedPlayerIsServedBeforeBackgroundPlayers() {
+    PlayerLoadControl background1 =
+        budget.createLoadControl(SharedBufferBudget.PRIORITY_BACKGROUND);
+    PlayerLoadControl background2 =
+        budget.createLoadControl(SharedBufferBudget.PRIORITY_BACKGROUND);
+    PlayerLoadControl focused = budget.createLoadControl(SharedBufferBudget.PRIORITY_FOCUSED);
+
+    selectVideoTrack(background1);
+    selectVideoTrack(background2);
+    selectVideoTrack(focused);
+
+    // The focused player is granted everything but the minimum shares of the other players.
+    assertThat(focused.getTargetBufferBytes())
+        .isEqualTo(TOTAL_BUFFER_BYTES - 2 * MIN_PLAYER_BUFFER_BYTES);
+    assertThat(background1.getTargetBufferBytes()).isEqualTo(MIN_PLAYER_BUFFER_BYTES);
+    assertThat(background2.getTargetBufferBytes()).isEqualTo(MIN_PLAYER_BUFFER_BYTES);
+  }
+
+  @Test
+  public void onTracksSelected_playersWithSamePriority_splitBudgetEqually() {
+    PlayerLoadControl loadControl1 =
+        budget.createLoadControl(SharedBufferBudget.PRIORITY_BACKGROUND);
+    PlayerLoadControl loadControl2 =
+        budget.createLoadControl(SharedBufferBudget.PRIORITY_BACKGROUND);
+
+    selectVideoTrack(loadControl1);
+    selectVideoTrack(loadControl2);
+
+    assertThat(loadControl1.getTargetBufferBytes()).isEqualTo(TOTAL_BUFFER_BYTES / 2);
+    assertThat(loadControl2.getTargetBufferBytes()).isEqualTo(TOTAL_BUFFER_BYTES / 2);
+  }
+
+  @Test
+  public void setPriority_movesBudgetToNewlyFocusedPlayer() {
+    PlayerLoadControl loadControl1 = budget.createLoadControl(SharedBufferBudget.PRIORITY_FOCUSED);
+    PlayerLoadControl loadControl2 =
+        budget.createLoadControl(SharedBufferBudget.PRIORITY_BACKGROUND);
+    selectVideoTrack(loadControl1);
+    selectVideoTrack(loadControl2);
+
+    loadControl1.setPriority(SharedBufferBudget.PRIORITY_BACKGROUND);
+    loadControl2.setPriority(SharedBufferBudget.PRIORITY_FOCUSED);
+
+    // The focused player is capped at the buffer size it would use on its own.
+    assertThat(loadControl1.getTargetBufferBytes())
+        .isEqualTo(TOTAL_BUFFER_BYTES - VIDEO_BUFFER_SIZE);
+    assertThat(loadControl2.getTargetBufferBytes()).isEqualTo(VIDEO_BUFFER_SIZE);
+  }
+
+  @Test
+  public void onReleased_returnsShareToRemainingPlayers() {
+    PlayerLoadControl focused = budget.createLoadControl(SharedBufferBudget.PRIORITY_FOCUSED);
+    PlayerLoadControl background =
+        budget.createLoadControl(SharedBufferBudget.PRIORITY_BACKGROUND);
+    selectVideoTrack(focused);
+    selectVideoTrack(background);
+
+    focused.onReleased();
+
+    assertThat(focused.getTargetBufferBytes()).isEqualTo(0);
+    assertThat(background.getTargetBufferBytes()).isEqualTo(VIDEO_BUFFER_SIZE);
+  }
+
+  @Test
+  public void shouldContinueLoading_stopsWhenPlayerShareIsAllocated() {
+    PlayerLoadControl focused = budget.createLoadControl(SharedBufferBudget.PRIORITY_FOCUSED);
+    PlayerLoadControl background1 =
+        budget.createLoadControl(SharedBufferBudget.PRIORITY_BACKGROUND);
+    PlayerLoadControl background2 =
+        budget.createLoadControl(SharedBufferBudget.PRIORITY_BACKGROUND);
+    selectVideoTrack(focused);
+    selectVideoTrack(background1);
+    selectVideoTrack(background2);
+    Allocator backgroundAllocator = background1.getAllocator();
+
+    Allocation allocation1 = backgroundAllocator.allocate();
+    boolean continueLoadingWithOneAllocation =
+        background1.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED);
+    Allocation allocation2 = backgroundAllocator.allocate();
+    boolean continueLoadingWithTwoAllocations =
+        background1.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED);
+
+    assertThat(continueLoadingWithOneAllocation).isTrue();
+    assertThat(continueLoadingWithTwoAllocations).isFalse();
+    assertThat(backgroundAllocator.getTotalBytesAllocated()).isEqualTo(2 * SEGMENT_SIZE);
+    assertThat(background2.getAllocator().getTotalBytesAllocated()).isEqualTo(0);
+    assertThat(focused.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isTrue();
+    assertThat(budget.getTotalBytesAllocated()).isEqualTo(2 * SEGMENT_SIZE);
+
+    backgroundAllocator.release(new Allocation[] {allocation1, allocation2});
+
+    assertThat(backgroundAllocator.getTotalBytesAllocated()).isEqualTo(0);
+    assertThat(budget.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  private static void selectVideoTrack(LoadControl loadControl) {
+    Format videoFormat =
+        Format.createVideoSampleFormat(
+            /* id= */ null,
+            MimeTypes.VIDEO_H264,
+            /* codecs= */ null,
+            /* bitrate= */ 1_000_000,
+            /* maxInputSize= */ Format.NO_VALUE,
+            /* width= */ 1280,
+            /* height= */ 720,
+            /* frameRate= */ Format.NO_VALUE,
+            /* initializationData= */ null,
+            /* drmInitData= */ null);
+    TrackGroup trackGroup = new TrackGroup(videoFormat);
+    loadControl.onPrepared();
+    loadControl.onTracksSelected(
+        new Renderer[] {new FakeRenderer(videoFormat)},
+        new TrackGroupArray(trackGroup),
+        new TrackSelectionArray(new FixedTrackSelection(trackGroup, /* track= */ 0)));
+  }
+}
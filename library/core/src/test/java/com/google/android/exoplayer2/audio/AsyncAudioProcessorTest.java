@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link AsyncAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class AsyncAudioProcessorTest {
+
+  private static final AudioFormat AUDIO_FORMAT =
+      new AudioFormat(/* sampleRate= */ 44100, /* channelCount= */ 2, C.ENCODING_PCM_16BIT);
+  private static final int INPUT_BUFFER_SIZE = 4 * 1024;
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Test
+  public void process_matchesWrappedProcessorsRunSynchronously() throws Exception {
+    ByteBuffer input = createInput(/* frameCount= */ 44100);
+    ByteBuffer expectedOutput = process(createEffectChain(), input);
+
+    // Use ring buffers smaller than the input buffers, so that input is consumed in parts.
+    AsyncAudioProcessor asyncAudioProcessor =
+        new AsyncAudioProcessor(/* bufferSize= */ 1000, createEffectChain());
+    ByteBuffer output = process(asyncAudioProcessor, input);
+    asyncAudioProcessor.reset();
+
+    assertThat(output).isEqualTo(expectedOutput);
+  }
+
+  @Test
+  public void process_runsWrappedProcessorsOnProcessingThread() throws Exception {
+    ThreadRecordingSink sink = new ThreadRecordingSink();
+    AsyncAudioProcessor asyncAudioProcessor =
+        new AsyncAudioProcessor(new TeeAudioProcessor(sink));
+
+    process(asyncAudioProcessor, createInput(/* frameCount= */ 1000));
+
+    assertThat(sink.thread).isNotNull();
+    assertThat(sink.thread).isNotSameInstanceAs(Thread.currentThread());
+    assertThat(sink.thread.isAlive()).isTrue();
+    asyncAudioProcessor.reset();
+    assertThat(sink.thread.isAlive()).isFalse();
+  }
+
+  @Test
+  public void flush_discardsPendingDataAndAllowsFurtherProcessing() throws Exception {
+    AsyncAudioProcessor asyncAudioProcessor = new AsyncAudioProcessor(createEffectChain());
+    asyncAudioProcessor.configure(AUDIO_FORMAT);
+    asyncAudioProcessor.flush();
+    asyncAudioProcessor.queueInput(createInput(/* frameCount= */ 1000));
+    asyncAudioProcessor.queueEndOfStream();
+
+    ByteBuffer input = createInput(/* frameCount= */ 10000);
+    ByteBuffer output = process(asyncAudioProcessor, input);
+    asyncAudioProcessor.reset();
+
+    assertThat(output).isEqualTo(process(createEffectChain(), input));
+  }
+
+  @Test
+  public void configure_withNoActiveWrappedProcessors_isInactive() throws Exception {
+    SonicAudioProcessor sonicAudioProcessor = new SonicAudioProcessor();
+    AsyncAudioProcessor asyncAudioProcessor = new AsyncAudioProcessor(sonicAudioProcessor);
+
+    asyncAudioProcessor.configure(AUDIO_FORMAT);
+
+    assertThat(asyncAudioProcessor.isActive()).isFalse();
+  }
+
+  /** Returns processors that swap the two channels then speed up the audio. */
+  private static AudioProcessor[] createEffectChain() {
+    ChannelMappingAudioProcessor channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
+    channelMappingAudioProcessor.setChannelMap(new int[] {1, 0});
+    SonicAudioProcessor sonicAudioProcessor = new SonicAudioProcessor();
+    sonicAudioProcessor.setSpeed(1.5f);
+    return new AudioProcessor[] {channelMappingAudioProcessor, sonicAudioProcessor};
+  }
+
+  /** Runs {@code input} through {@code audioProcessors} synchronously, on the test thread. */
+  private static ByteBuffer process(AudioProcessor[] audioProcessors, ByteBuffer input)
+      throws Exception {
+    AudioFormat format = AUDIO_FORMAT;
+    for (AudioProcessor audioProcessor : audioProcessors) {
+      format = audioProcessor.configure(format);
+      audioProcessor.flush();
+    }
+    for (AudioProcessor audioProcessor : audioProcessors) {
+      input = process(audioProcessor, input);
+    }
+    return input;
+  }
+
+  /**
+   * Configures and flushes {@code audioProcessor} if it's an {@link AsyncAudioProcessor}, then
+   * queues {@code input} in buffers of {@link #INPUT_BUFFER_SIZE} bytes followed by end of stream,
+   * and returns all output. Input that isn't consumed is queued again, as in {@link
+   * DefaultAudioSink}.
+   */
+  private static ByteBuffer process(AudioProcessor audioProcessor, ByteBuffer input)
+      throws Exception {
+    if (audioProcessor instanceof AsyncAudioProcessor) {
+      audioProcessor.configure(AUDIO_FORMAT);
+      audioProcessor.flush();
+    }
+    input = input.duplicate();
+    int inputSize = input.limit();
+    ByteBuffer output = ByteBuffer.allocateDirect(inputSize * 2).order(ByteOrder.nativeOrder());
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    for (int position = 0; position < inputSize; position += INPUT_BUFFER_SIZE) {
+      input.limit(Math.min(position + INPUT_BUFFER_SIZE, inputSize));
+      input.position(position);
+      while (input.hasRemaining()) {
+        audioProcessor.queueInput(input);
+        output.put(audioProcessor.getOutput());
+        checkDeadline(deadlineMs);
+      }
+    }
+    audioProcessor.queueEndOfStream();
+    while (!audioProcessor.isEnded()) {
+      audioProcessor.queueInput(AudioProcessor.EMPTY_BUFFER);
+      output.put(audioProcessor.getOutput());
+      checkDeadline(deadlineMs);
+    }
+    output.flip();
+    return output;
+  }
+
+  private static void checkDeadline(long deadlineMs) throws TimeoutException {
+    if (System.currentTimeMillis() > deadlineMs) {
+      throw new TimeoutException();
+    }
+  }
+
+  private static ByteBuffer createInput(int frameCount) {
+    ByteBuffer input =
+        ByteBuffer.allocateDirect(frameCount * AUDIO_FORMAT.bytesPerFrame)
+            .order(ByteOrder.nativeOrder());
+    for (int i = 0; i < frameCount; i++) {
+      short value = (short) (Short.MAX_VALUE * Math.sin(2 * Math.PI * 440 * i / 44100));
+      input.putShort(value);
+      input.putShort((short) (value / 2));
+    }
+    input.flip();
+    return input;
+  }
+
+  private static final class ThreadRecordingSink implements TeeAudioProcessor.AudioBufferSink {
+
+    @Nullable public volatile Thread thread;
+
+    @Override
+    public void flush(int sampleRateHz, int channelCount, int encoding) {}
+
+    @Override
+    public void handleBuffer(ByteBuffer buffer) {
+      thread = Thread.currentThread();
+    }
+  }
+}
@@ -154,6 +154,28 @@ public final class DefaultAudioSinkTest {
                 * (SAMPLE_RATE_44_1 - TRIM_10_MS_FRAME_COUNT)));
   }
 
+  @Test
+  public void trimsStartFrames_withFusedPcmProcessing() throws Exception {
+    defaultAudioSink =
+        new DefaultAudioSink(
+            AudioCapabilities.DEFAULT_AUDIO_CAPABILITIES,
+            new DefaultAudioSink.DefaultAudioProcessorChain(
+                new TeeAudioProcessor(arrayAudioBufferSink)),
+            /* enableConvertHighResIntPcmToFloat= */ false,
+            /* enableFusedPcmProcessing= */ true);
+    configureDefaultAudioSink(
+        CHANNEL_COUNT_STEREO,
+        /* trimStartFrames= */ TRIM_100_MS_FRAME_COUNT,
+        /* trimEndFrames= */ 0);
+    defaultAudioSink.handleBuffer(createDefaultSilenceBuffer(), /* presentationTimeUs= */ 0);
+
+    assertThat(arrayAudioBufferSink.output)
+        .hasLength(
+            (BYTES_PER_FRAME_16_BIT
+                * CHANNEL_COUNT_STEREO
+                * (SAMPLE_RATE_44_1 - TRIM_100_MS_FRAME_COUNT)));
+  }
+
   @Test
   public void trimsStartAndEndFrames() throws Exception {
     configureDefaultAudioSink(
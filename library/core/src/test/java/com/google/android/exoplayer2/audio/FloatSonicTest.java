@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test for {@link FloatSonic}, comparing its output and throughput with {@link Sonic} via
+ * {@link SonicAudioProcessor}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class FloatSonicTest {
+
+  private static final int SAMPLE_RATE = 48000;
+  private static final int CHANNEL_COUNT = 2;
+  private static final float FUNDAMENTAL_FREQUENCY_HZ = 200f;
+  /** Input is queued in buffers of 20 ms, similar to decoder output buffers. */
+  private static final int INPUT_BUFFER_FRAMES = SAMPLE_RATE / 50;
+  /** System property that enables the benchmarks, which are skipped by default. */
+  private static final String RUN_BENCHMARKS_PROPERTY = "exoplayer.runBenchmarks";
+
+  @Test
+  public void speedUp_matchesSonicDurationAndPreservesPitch() throws Exception {
+    short[] input = createVoicedInput(/* durationSec= */ 2, /* noiseLevel= */ 0f);
+
+    for (float speed : new float[] {1.5f, 2f}) {
+      short[] floatOutput = process(/* useFloatEngine= */ true, speed, /* pitch= */ 1f, input);
+      short[] sonicOutput = process(/* useFloatEngine= */ false, speed, /* pitch= */ 1f, input);
+
+      assertWithinRelativeTolerance(
+          getFrameCount(floatOutput), getFrameCount(sonicOutput), /* tolerance= */ 0.01f);
+      assertWithinRelativeTolerance(
+          getFrequency(floatOutput), FUNDAMENTAL_FREQUENCY_HZ, /* tolerance= */ 0.02f);
+      assertWithinRelativeTolerance(
+          getRms(floatOutput), getRms(sonicOutput), /* tolerance= */ 0.05f);
+    }
+  }
+
+  @Test
+  public void slowDown_matchesSonicDurationAndPreservesPitch() throws Exception {
+    short[] input = createVoicedInput(/* durationSec= */ 2, /* noiseLevel= */ 0f);
+
+    short[] floatOutput = process(/* useFloatEngine= */ true, 0.75f, /* pitch= */ 1f, input);
+    short[] sonicOutput = process(/* useFloatEngine= */ false, 0.75f, /* pitch= */ 1f, input);
+
+    assertWithinRelativeTolerance(
+        getFrameCount(floatOutput), getFrameCount(sonicOutput), /* tolerance= */ 0.01f);
+    assertWithinRelativeTolerance(
+        getFrequency(floatOutput), FUNDAMENTAL_FREQUENCY_HZ, /* tolerance= */ 0.02f);
+  }
+
+  @Test
+  public void pitchChange_matchesSonicDurationAndShiftsPitch() throws Exception {
+    short[] input = createVoicedInput(/* durationSec= */ 2, /* noiseLevel= */ 0f);
+
+    short[] floatOutput = process(/* useFloatEngine= */ true, /* speed= */ 1f, 1.5f, input);
+    short[] sonicOutput = process(/* useFloatEngine= */ false, /* speed= */ 1f, 1.5f, input);
+
+    assertWithinRelativeTolerance(
+        getFrameCount(floatOutput), getFrameCount(sonicOutput), /* tolerance= */ 0.01f);
+    assertWithinRelativeTolerance(
+        getFrequency(floatOutput), getFrequency(sonicOutput), /* tolerance= */ 0.02f);
+  }
+
+  @Test
+  public void speedUpFloatInput_matches16BitInput() throws Exception {
+    short[] input = createVoicedInput(/* durationSec= */ 1, /* noiseLevel= */ 0.1f);
+    SonicAudioProcessor processor = createProcessor(/* speed= */ 1.5f, /* pitch= */ 1f);
+    processor.configure(new AudioFormat(SAMPLE_RATE, CHANNEL_COUNT, C.ENCODING_PCM_FLOAT));
+    processor.flush();
+    ByteBuffer floatInput =
+        ByteBuffer.allocateDirect(input.length * 4).order(ByteOrder.nativeOrder());
+    for (short sample : input) {
+      floatInput.putFloat(sample / 32768f);
+    }
+    floatInput.flip();
+
+    ByteBuffer floatOutput = process(processor, floatInput, /* bytesPerSample= */ 4);
+    short[] shortOutput = process(/* useFloatEngine= */ true, 1.5f, /* pitch= */ 1f, input);
+
+    assertThat(floatOutput.remaining() / 4).isEqualTo(shortOutput.length);
+    for (int i = 0; i < shortOutput.length; i++) {
+      assertThat(floatOutput.getFloat() * 32768f).isWithin(1f).of(shortOutput[i]);
+    }
+  }
+
+  /**
+   * Compares the throughput of the two engines when speeding up 48 kHz stereo audio. The result is
+   * reported on standard output rather than asserted, as timings depend on the host. The benchmark
+   * only runs if the {@code exoplayer.runBenchmarks} system property is set to true.
+   */
+  @Test
+  public void benchmarkSpeedUpThroughput() throws Exception {
+    assumeTrue(Boolean.getBoolean(RUN_BENCHMARKS_PROPERTY));
+    short[] input = createVoicedInput(/* durationSec= */ 10, /* noiseLevel= */ 0.1f);
+
+    for (float speed : new float[] {1.5f, 2f}) {
+      double inputBytes = input.length * 2d;
+      System.out.println(
+          String.format(
+              "%.1fx speed, 48 kHz stereo: float engine %.1f MB/s, Sonic %.1f MB/s",
+              speed,
+              inputBytes * 1000 / getMinElapsedTimeNs(/* useFloatEngine= */ true, speed, input),
+              inputBytes * 1000 / getMinElapsedTimeNs(/* useFloatEngine= */ false, speed, input)));
+    }
+  }
+
+  /** Returns the fastest of several runs, after running a few times to warm up the JIT. */
+  private static long getMinElapsedTimeNs(boolean useFloatEngine, float speed, short[] input)
+      throws Exception {
+    long minElapsedTimeNs = Long.MAX_VALUE;
+    for (int i = 0; i < 8; i++) {
+      long startTimeNs = System.nanoTime();
+      process(useFloatEngine, speed, /* pitch= */ 1f, input);
+      long elapsedTimeNs = System.nanoTime() - startTimeNs;
+      if (i >= 4) {
+        minElapsedTimeNs = Math.min(minElapsedTimeNs, Math.max(1, elapsedTimeNs));
+      }
+    }
+    return minElapsedTimeNs;
+  }
+
+  private static SonicAudioProcessor createProcessor(float speed, float pitch) {
+    SonicAudioProcessor processor = new SonicAudioProcessor(/* useFloatEngine= */ true);
+    processor.setSpeed(speed);
+    processor.setPitch(pitch);
+    return processor;
+  }
+
+  private static short[] process(boolean useFloatEngine, float speed, float pitch, short[] input)
+      throws Exception {
+    SonicAudioProcessor processor = new SonicAudioProcessor(useFloatEngine);
+    processor.setSpeed(speed);
+    processor.setPitch(pitch);
+    processor.configure(new AudioFormat(SAMPLE_RATE, CHANNEL_COUNT, C.ENCODING_PCM_16BIT));
+    processor.flush();
+    ByteBuffer inputBuffer =
+        ByteBuffer.allocateDirect(input.length * 2).order(ByteOrder.nativeOrder());
+    inputBuffer.asShortBuffer().put(input);
+
+    ByteBuffer output = process(processor, inputBuffer, /* bytesPerSample= */ 2);
+
+    short[] samples = new short[output.remaining() / 2];
+    output.asShortBuffer().get(samples);
+    return samples;
+  }
+
+  /**
+   * Queues {@code input} in buffers of {@link #INPUT_BUFFER_FRAMES}, then queues end of stream and
+   * returns all output. Input that isn't consumed is queued again, as in {@link DefaultAudioSink}.
+   */
+  private static ByteBuffer process(
+      AudioProcessor processor, ByteBuffer input, int bytesPerSample) {
+    ByteBuffer output =
+        ByteBuffer.allocateDirect(input.capacity() * 4).order(ByteOrder.nativeOrder());
+    int bufferSize = INPUT_BUFFER_FRAMES * CHANNEL_COUNT * bytesPerSample;
+    for (int position = 0; position < input.capacity(); position += bufferSize) {
+      input.limit(Math.min(position + bufferSize, input.capacity()));
+      input.position(position);
+      while (input.hasRemaining()) {
+        processor.queueInput(input);
+        output.put(processor.getOutput());
+      }
+    }
+    processor.queueEndOfStream();
+    while (!processor.isEnded()) {
+      processor.queueInput(AudioProcessor.EMPTY_BUFFER);
+      output.put(processor.getOutput());
+    }
+    output.flip();
+    return output;
+  }
+
+  /**
+   * Returns 16-bit stereo input made up of a fundamental tone and two harmonics, with an amplitude
+   * envelope similar to syllables of speech, plus optional noise.
+   */
+  private static short[] createVoicedInput(int durationSec, float noiseLevel) {
+    Random random = new Random(/* seed= */ 0);
+    int frameCount = durationSec * SAMPLE_RATE;
+    short[] samples = new short[frameCount * CHANNEL_COUNT];
+    for (int i = 0; i < frameCount; i++) {
+      double time = (double) i / SAMPLE_RATE;
+      double phase = 2 * Math.PI * FUNDAMENTAL_FREQUENCY_HZ * time;
+      double envelope = 0.6 + 0.4 * Math.sin(2 * Math.PI * 4 * time);
+      double value =
+          envelope * (0.5 * Math.sin(phase) + 0.2 * Math.sin(2 * phase) + 0.1 * Math.sin(3 * phase))
+              + noiseLevel * (random.nextFloat() - 0.5f);
+      for (int j = 0; j < CHANNEL_COUNT; j++) {
+        samples[i * CHANNEL_COUNT + j] = (short) (value * Short.MAX_VALUE);
+      }
+    }
+    return samples;
+  }
+
+  private static int getFrameCount(short[] samples) {
+    return samples.length / CHANNEL_COUNT;
+  }
+
+  /** Returns the frequency of the first channel, estimated from its positive zero crossings. */
+  private static float getFrequency(short[] samples) {
+    int crossings = 0;
+    for (int i = CHANNEL_COUNT; i < samples.length; i += CHANNEL_COUNT) {
+      if (samples[i - CHANNEL_COUNT] < 0 && samples[i] >= 0) {
+        crossings++;
+      }
+    }
+    return (float) crossings * SAMPLE_RATE / getFrameCount(samples);
+  }
+
+  private static float getRms(short[] samples) {
+    double sumOfSquares = 0;
+    for (short sample : samples) {
+      sumOfSquares += (double) sample * sample;
+    }
+    return (float) Math.sqrt(sumOfSquares / samples.length);
+  }
+
+  private static void assertWithinRelativeTolerance(
+      float actual, float expected, float tolerance) {
+    assertThat(actual).isWithin(expected * tolerance).of(expected);
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link FusedPcmAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class FusedPcmAudioProcessorTest {
+
+  private static final int SAMPLE_RATE = 48000;
+  /** Swaps the side and back channel pairs of 7.1 audio. */
+  private static final int[] SURROUND_7_1_CHANNEL_MAP = new int[] {0, 1, 2, 3, 6, 7, 4, 5};
+  /** Number of frames in a 10 ms buffer. */
+  private static final int BUFFER_FRAMES = SAMPLE_RATE / 100;
+  /** System property that enables the benchmarks, which are skipped by default. */
+  private static final String RUN_BENCHMARKS_PROPERTY = "exoplayer.runBenchmarks";
+
+  @Test
+  public void configure_with16BitInputAndNoChannelMapOrTrimming_isInactive() throws Exception {
+    FusedPcmAudioProcessor processor = new FusedPcmAudioProcessor();
+
+    processor.configure(
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_16BIT));
+
+    assertThat(processor.isActive()).isFalse();
+  }
+
+  @Test
+  public void configure_withHighResInputAndChannelMap_outputs16BitMappedChannels()
+      throws Exception {
+    FusedPcmAudioProcessor processor = new FusedPcmAudioProcessor();
+    processor.setChannelMap(new int[] {1, 0});
+
+    AudioFormat outputAudioFormat =
+        processor.configure(
+            new AudioFormat(SAMPLE_RATE, /* channelCount= */ 6, C.ENCODING_PCM_24BIT));
+
+    assertThat(processor.isActive()).isTrue();
+    assertThat(outputAudioFormat.channelCount).isEqualTo(2);
+    assertThat(outputAudioFormat.encoding).isEqualTo(C.ENCODING_PCM_16BIT);
+  }
+
+  @Test
+  public void processing8BitStereoWithTrimming_matchesChainedProcessors() throws Exception {
+    assertFusedOutputMatchesChained(
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 2, C.ENCODING_PCM_8BIT),
+        /* outputChannels= */ null,
+        /* trimStartFrames= */ 100,
+        /* trimEndFrames= */ 50,
+        /* reconfigureBeforeEndOfStream= */ false);
+  }
+
+  @Test
+  public void processing16BitWithChannelMap_matchesChainedProcessors() throws Exception {
+    assertFusedOutputMatchesChained(
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 6, C.ENCODING_PCM_16BIT),
+        /* outputChannels= */ new int[] {0, 1, 1, 5},
+        /* trimStartFrames= */ 0,
+        /* trimEndFrames= */ 0,
+        /* reconfigureBeforeEndOfStream= */ false);
+  }
+
+  @Test
+  public void processing7Point1_24BitWithMappingAndTrimming_matchesChainedProcessors()
+      throws Exception {
+    assertFusedOutputMatchesChained(
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 8, C.ENCODING_PCM_24BIT),
+        SURROUND_7_1_CHANNEL_MAP,
+        /* trimStartFrames= */ 1105,
+        /* trimEndFrames= */ 789,
+        /* reconfigureBeforeEndOfStream= */ false);
+  }
+
+  @Test
+  public void processing32BitWithReconfigurationBeforeEnd_matchesChainedProcessors()
+      throws Exception {
+    assertFusedOutputMatchesChained(
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 8, C.ENCODING_PCM_32BIT),
+        SURROUND_7_1_CHANNEL_MAP,
+        /* trimStartFrames= */ 1105,
+        /* trimEndFrames= */ 789,
+        /* reconfigureBeforeEndOfStream= */ true);
+  }
+
+  /**
+   * Compares the throughput of the fused processor with the chained processors it replaces, for 10
+   * ms buffers of 7.1 24-bit audio. The result is reported on standard output rather than asserted,
+   * as timings depend on the host. The benchmark only runs if the {@code exoplayer.runBenchmarks}
+   * system property is set to true.
+   */
+  @Test
+  public void benchmark7Point1_24BitThroughput() throws Exception {
+    assumeTrue(Boolean.getBoolean(RUN_BENCHMARKS_PROPERTY));
+    AudioFormat inputAudioFormat =
+        new AudioFormat(SAMPLE_RATE, /* channelCount= */ 8, C.ENCODING_PCM_24BIT);
+    byte[] input = createRandomInput(inputAudioFormat, /* frameCount= */ BUFFER_FRAMES);
+    int iterations = 5000;
+
+    // Run each configuration once before measuring to warm up the JIT.
+    measureBytesPerSecond(/* fused= */ true, inputAudioFormat, input, iterations);
+    measureBytesPerSecond(/* fused= */ false, inputAudioFormat, input, iterations);
+    double fusedBytesPerSecond =
+        measureBytesPerSecond(/* fused= */ true, inputAudioFormat, input, iterations);
+    double chainedBytesPerSecond =
+        measureBytesPerSecond(/* fused= */ false, inputAudioFormat, input, iterations);
+
+    System.out.println(
+        String.format(
+            "7.1 24-bit PCM: fused %.1f MB/s, chained %.1f MB/s",
+            fusedBytesPerSecond / 1e6, chainedBytesPerSecond / 1e6));
+    assertThat(fusedBytesPerSecond).isGreaterThan(0d);
+    assertThat(chainedBytesPerSecond).isGreaterThan(0d);
+  }
+
+  private static void assertFusedOutputMatchesChained(
+      AudioFormat inputAudioFormat,
+      @Nullable int[] outputChannels,
+      int trimStartFrames,
+      int trimEndFrames,
+      boolean reconfigureBeforeEndOfStream)
+      throws Exception {
+    byte[] input = createRandomInput(inputAudioFormat, /* frameCount= */ 10 * BUFFER_FRAMES);
+    FusedPcmAudioProcessor fusedProcessor = new FusedPcmAudioProcessor();
+    fusedProcessor.setChannelMap(outputChannels);
+    fusedProcessor.setTrimFrameCount(trimStartFrames, trimEndFrames);
+    ChannelMappingAudioProcessor channelMappingProcessor = new ChannelMappingAudioProcessor();
+    channelMappingProcessor.setChannelMap(outputChannels);
+    TrimmingAudioProcessor trimmingProcessor = new TrimmingAudioProcessor();
+    trimmingProcessor.setTrimFrameCount(trimStartFrames, trimEndFrames);
+
+    byte[] fusedOutput =
+        process(
+            new AudioProcessor[] {fusedProcessor},
+            inputAudioFormat,
+            input,
+            reconfigureBeforeEndOfStream);
+    byte[] chainedOutput =
+        process(
+            new AudioProcessor[] {
+              new ResamplingAudioProcessor(), channelMappingProcessor, trimmingProcessor
+            },
+            inputAudioFormat,
+            input,
+            reconfigureBeforeEndOfStream);
+
+    assertThat(fusedOutput).isEqualTo(chainedOutput);
+    assertThat(fusedProcessor.getTrimmedFrameCount())
+        .isEqualTo(trimmingProcessor.getTrimmedFrameCount());
+  }
+
+  private static double measureBytesPerSecond(
+      boolean fused, AudioFormat inputAudioFormat, byte[] input, int iterations)
+      throws Exception {
+    AudioProcessor[] processors;
+    if (fused) {
+      FusedPcmAudioProcessor fusedProcessor = new FusedPcmAudioProcessor();
+      fusedProcessor.setChannelMap(SURROUND_7_1_CHANNEL_MAP);
+      fusedProcessor.setTrimFrameCount(/* trimStartFrames= */ 0, /* trimEndFrames= */ 1024);
+      processors = new AudioProcessor[] {fusedProcessor};
+    } else {
+      ChannelMappingAudioProcessor channelMappingProcessor = new ChannelMappingAudioProcessor();
+      channelMappingProcessor.setChannelMap(SURROUND_7_1_CHANNEL_MAP);
+      TrimmingAudioProcessor trimmingProcessor = new TrimmingAudioProcessor();
+      trimmingProcessor.setTrimFrameCount(/* trimStartFrames= */ 0, /* trimEndFrames= */ 1024);
+      processors =
+          new AudioProcessor[] {
+            new ResamplingAudioProcessor(), channelMappingProcessor, trimmingProcessor
+          };
+    }
+    List<AudioProcessor> activeProcessors = configure(processors, inputAudioFormat);
+    ByteBuffer inputBuffer = createInputBuffer(input);
+
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      inputBuffer.rewind();
+      ByteBuffer buffer = inputBuffer;
+      for (AudioProcessor processor : activeProcessors) {
+        processor.queueInput(buffer);
+        buffer = processor.getOutput();
+      }
+    }
+    long elapsedTimeNs = Math.max(1, System.nanoTime() - startTimeNs);
+    return (double) input.length * iterations * C.NANOS_PER_SECOND / elapsedTimeNs;
+  }
+
+  /**
+   * Queues {@code input} through {@code processors} in buffers of 10 ms, then queues end of stream
+   * and returns all output.
+   */
+  private static byte[] process(
+      AudioProcessor[] processors,
+      AudioFormat inputAudioFormat,
+      byte[] input,
+      boolean reconfigureBeforeEndOfStream)
+      throws Exception {
+    List<AudioProcessor> activeProcessors = configure(processors, inputAudioFormat);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ByteBuffer inputBuffer = createInputBuffer(input);
+    int bufferSize = BUFFER_FRAMES * inputAudioFormat.bytesPerFrame;
+    for (int position = 0; position < input.length; position += bufferSize) {
+      inputBuffer.limit(Math.min(position + bufferSize, input.length));
+      queueThrough(activeProcessors, /* startIndex= */ 0, inputBuffer, output);
+    }
+
+    if (reconfigureBeforeEndOfStream) {
+      // Reconfiguring signals a gapless transition, so audio in the end buffer is trimmed.
+      AudioFormat audioFormat = inputAudioFormat;
+      for (AudioProcessor processor : activeProcessors) {
+        audioFormat = processor.configure(audioFormat);
+      }
+    }
+    for (int i = 0; i < activeProcessors.size(); i++) {
+      AudioProcessor processor = activeProcessors.get(i);
+      processor.queueEndOfStream();
+      queueThrough(activeProcessors, i + 1, processor.getOutput(), output);
+      assertThat(processor.isEnded()).isTrue();
+    }
+    return output.toByteArray();
+  }
+
+  private static List<AudioProcessor> configure(
+      AudioProcessor[] processors, AudioFormat inputAudioFormat) throws Exception {
+    List<AudioProcessor> activeProcessors = new ArrayList<>();
+    AudioFormat audioFormat = inputAudioFormat;
+    for (AudioProcessor processor : processors) {
+      AudioFormat outputAudioFormat = processor.configure(audioFormat);
+      if (processor.isActive()) {
+        activeProcessors.add(processor);
+        audioFormat = outputAudioFormat;
+      }
+      processor.flush();
+    }
+    return activeProcessors;
+  }
+
+  private static void queueThrough(
+      List<AudioProcessor> processors,
+      int startIndex,
+      ByteBuffer buffer,
+      ByteArrayOutputStream output) {
+    for (int i = startIndex; i < processors.size(); i++) {
+      AudioProcessor processor = processors.get(i);
+      processor.queueInput(buffer);
+      assertThat(buffer.hasRemaining()).isFalse();
+      buffer = processor.getOutput();
+    }
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    output.write(bytes, /* off= */ 0, bytes.length);
+  }
+
+  private static byte[] createRandomInput(AudioFormat audioFormat, int frameCount) {
+    byte[] input = new byte[frameCount * audioFormat.bytesPerFrame];
+    new Random(/* seed= */ 0).nextBytes(input);
+    return input;
+  }
+
+  private static ByteBuffer createInputBuffer(byte[] input) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(input.length).order(ByteOrder.nativeOrder());
+    buffer.put(input).flip();
+    return buffer;
+  }
+}
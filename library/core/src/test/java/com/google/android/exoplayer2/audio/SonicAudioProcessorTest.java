@@ -129,6 +129,32 @@ public final class SonicAudioProcessorTest {
     } catch (UnhandledAudioFormatException e) {
       // Expected.
     }
+    try {
+      sonicAudioProcessor.configure(
+          new AudioFormat(
+              /* sampleRate= */ 44100,
+              /* channelCount= */ 2,
+              /* encoding= */ C.ENCODING_PCM_FLOAT));
+      fail();
+    } catch (UnhandledAudioFormatException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testFloatEngineSupportsFloatInput() throws Exception {
+    sonicAudioProcessor = new SonicAudioProcessor(/* useFloatEngine= */ true);
+    sonicAudioProcessor.setSpeed(1.5f);
+
+    AudioFormat outputAudioFormat =
+        sonicAudioProcessor.configure(
+            new AudioFormat(
+                /* sampleRate= */ 44100,
+                /* channelCount= */ 2,
+                /* encoding= */ C.ENCODING_PCM_FLOAT));
+
+    assertThat(sonicAudioProcessor.isActive()).isTrue();
+    assertThat(outputAudioFormat.encoding).isEqualTo(C.ENCODING_PCM_FLOAT);
   }
 
 }
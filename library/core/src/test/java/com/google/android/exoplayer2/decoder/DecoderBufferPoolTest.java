@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.decoder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link DecoderBufferPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class DecoderBufferPoolTest {
+
+  @Test
+  public void acquire_roundsCapacityUpToSizeClass() {
+    DecoderBufferPool pool =
+        new DecoderBufferPool(/* maxPooledBytes= */ 1 << 20, /* targetPooledBytes= */ 0);
+
+    assertThat(pool.acquire(/* minimumCapacity= */ 1).capacity()).isEqualTo(1024);
+    assertThat(pool.acquire(/* minimumCapacity= */ 1024).capacity()).isEqualTo(1024);
+    assertThat(pool.acquire(/* minimumCapacity= */ 1025).capacity()).isEqualTo(2048);
+    assertThat(pool.acquire(/* minimumCapacity= */ 1025).isDirect()).isTrue();
+  }
+
+  @Test
+  public void acquire_afterRelease_reusesClearedBigEndianBuffer() {
+    DecoderBufferPool pool =
+        new DecoderBufferPool(/* maxPooledBytes= */ 1 << 20, /* targetPooledBytes= */ 0);
+    ByteBuffer buffer = pool.acquire(/* minimumCapacity= */ 3000);
+    buffer.order(ByteOrder.LITTLE_ENDIAN).position(100);
+
+    pool.release(buffer);
+    assertThat(pool.getPooledBytes()).isEqualTo(4096);
+    ByteBuffer reusedBuffer = pool.acquire(/* minimumCapacity= */ 2049);
+
+    assertThat(reusedBuffer).isSameInstanceAs(buffer);
+    assertThat(reusedBuffer.position()).isEqualTo(0);
+    assertThat(reusedBuffer.limit()).isEqualTo(4096);
+    assertThat(reusedBuffer.order()).isEqualTo(ByteOrder.BIG_ENDIAN);
+    assertThat(pool.getPooledBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void release_ignoresBuffersThatCannotBePooled() {
+    DecoderBufferPool pool =
+        new DecoderBufferPool(/* maxPooledBytes= */ 4096, /* targetPooledBytes= */ 0);
+
+    pool.release(ByteBuffer.allocate(1024));
+    pool.release(ByteBuffer.allocateDirect(1000));
+    pool.release(ByteBuffer.allocateDirect(512));
+    pool.release(ByteBuffer.allocateDirect(8192));
+
+    assertThat(pool.getPooledBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void release_whenFull_dropsBuffer() {
+    DecoderBufferPool pool =
+        new DecoderBufferPool(/* maxPooledBytes= */ 3072, /* targetPooledBytes= */ 0);
+
+    pool.release(pool.acquire(/* minimumCapacity= */ 2048));
+    pool.release(pool.acquire(/* minimumCapacity= */ 2048));
+    pool.release(pool.acquire(/* minimumCapacity= */ 1024));
+
+    assertThat(pool.getPooledBytes()).isEqualTo(3072);
+  }
+
+  @Test
+  public void trim_discardsLargestBuffersFirst() {
+    DecoderBufferPool pool =
+        new DecoderBufferPool(/* maxPooledBytes= */ 1 << 20, /* targetPooledBytes= */ 2048);
+    ByteBuffer smallBuffer = ByteBuffer.allocateDirect(1024);
+    pool.release(smallBuffer);
+    pool.release(ByteBuffer.allocateDirect(1024));
+    pool.release(ByteBuffer.allocateDirect(8192));
+
+    pool.trim();
+
+    assertThat(pool.getPooledBytes()).isEqualTo(2048);
+    assertThat(pool.acquire(/* minimumCapacity= */ 8192)).isNotSameInstanceAs(smallBuffer);
+    assertThat(pool.getPooledBytes()).isEqualTo(2048);
+  }
+
+  @Test
+  public void pooledDecoderInputBuffer_returnsReplacedAndReleasedDataToPool() {
+    DecoderBufferPool pool = DecoderBufferPool.getInstance();
+    DecoderInputBuffer inputBuffer =
+        new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT_POOLED);
+
+    inputBuffer.ensureSpaceForWrite(/* length= */ 1024);
+    ByteBuffer initialData = inputBuffer.data;
+    initialData.put((byte) 1);
+    inputBuffer.ensureSpaceForWrite(/* length= */ 2048);
+    ByteBuffer replacementData = inputBuffer.data;
+
+    assertThat(replacementData.capacity()).isEqualTo(4096);
+    assertThat(replacementData.position()).isEqualTo(1);
+    assertThat(replacementData.get(0)).isEqualTo(1);
+    assertThat(pool.acquire(/* minimumCapacity= */ 1024)).isSameInstanceAs(initialData);
+
+    inputBuffer.releaseData();
+
+    assertThat(inputBuffer.data).isNull();
+    assertThat(pool.acquire(/* minimumCapacity= */ 4096)).isSameInstanceAs(replacementData);
+  }
+}
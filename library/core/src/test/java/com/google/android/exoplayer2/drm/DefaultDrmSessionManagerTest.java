@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.drm;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit test for {@link DefaultDrmSessionManager}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class DefaultDrmSessionManagerTest {
+
+  private static final long SESSION_POOL_MAX_AGE_MS = 60_000;
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Mock private ExoMediaDrm<ExoMediaCrypto> mediaDrm;
+  private Looper playbackLooper;
+  private DefaultDrmSessionManager<ExoMediaCrypto> drmSessionManager;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    when(mediaDrm.openSession()).thenReturn(new byte[] {1, 2, 3});
+    when(mediaDrm.getKeyRequest(any(), any(), anyInt(), any()))
+        .thenReturn(
+            new ExoMediaDrm.KeyRequest(/* data= */ new byte[0], /* licenseServerUrl= */ ""));
+    playbackLooper = Looper.getMainLooper();
+    drmSessionManager =
+        new DefaultDrmSessionManager.Builder()
+            .setUuidAndExoMediaDrmProvider(
+                C.WIDEVINE_UUID, new ExoMediaDrm.AppManagedProvider<>(mediaDrm))
+            .setMultiSession(true)
+            .setSessionPoolSize(2)
+            .setSessionPoolMaxAgeMs(SESSION_POOL_MAX_AGE_MS)
+            .build(new LocalMediaDrmCallback(/* keyResponse= */ new byte[] {4, 5, 6}));
+  }
+
+  @Test
+  public void prefetchSession_loadsKeysBeforeAcquisition() throws Exception {
+    drmSessionManager.prefetchSession(playbackLooper, newDrmInitData(/* data= */ 1));
+    waitForKeyRequests(/* count= */ 1);
+
+    drmSessionManager.prepare();
+    DrmSession<ExoMediaCrypto> session =
+        drmSessionManager.acquireSession(playbackLooper, newDrmInitData(/* data= */ 1));
+
+    assertThat(session.getState()).isEqualTo(DrmSession.STATE_OPENED_WITH_KEYS);
+    verify(mediaDrm, times(1)).openSession();
+    verify(mediaDrm, times(1)).getKeyRequest(any(), any(), anyInt(), any());
+  }
+
+  @Test
+  public void acquireSession_afterFailedPrefetch_createsNewSession() throws Exception {
+    when(mediaDrm.provideKeyResponse(any(), any()))
+        .thenThrow(new IllegalStateException())
+        .thenReturn(null);
+    drmSessionManager.prefetchSession(playbackLooper, newDrmInitData(/* data= */ 1));
+    waitForKeyRequests(/* count= */ 1);
+
+    drmSessionManager.prepare();
+    DrmSession<ExoMediaCrypto> session =
+        drmSessionManager.acquireSession(playbackLooper, newDrmInitData(/* data= */ 1));
+    waitForKeyRequests(/* count= */ 2);
+
+    assertThat(session.getState()).isEqualTo(DrmSession.STATE_OPENED_WITH_KEYS);
+    verify(mediaDrm, times(2)).openSession();
+    verify(mediaDrm, times(1)).closeSession(any());
+  }
+
+  @Test
+  public void acquireSession_afterRelease_reusesPooledSession() throws Exception {
+    drmSessionManager.prepare();
+    DrmSession<ExoMediaCrypto> session =
+        drmSessionManager.acquireSession(playbackLooper, newDrmInitData(/* data= */ 1));
+    waitForKeyRequests(/* count= */ 1);
+    session.release();
+    drmSessionManager.release();
+
+    drmSessionManager.prepare();
+    DrmSession<ExoMediaCrypto> reacquiredSession =
+        drmSessionManager.acquireSession(playbackLooper, newDrmInitData(/* data= */ 1));
+
+    assertThat(reacquiredSession).isSameInstanceAs(session);
+    assertThat(reacquiredSession.getState()).isEqualTo(DrmSession.STATE_OPENED_WITH_KEYS);
+    verify(mediaDrm, times(1)).getKeyRequest(any(), any(), anyInt(), any());
+  }
+
+  @Test
+  public void prefetchSession_overPoolSize_evictsLeastRecentlyUsedSession() throws Exception {
+    drmSessionManager.prefetchSession(playbackLooper, newDrmInitData(/* data= */ 1));
+    waitForKeyRequests(/* count= */ 1);
+    drmSessionManager.prefetchSession(playbackLooper, newDrmInitData(/* data= */ 2));
+    waitForKeyRequests(/* count= */ 2);
+    drmSessionManager.prefetchSession(playbackLooper, newDrmInitData(/* data= */ 3));
+    waitForKeyRequests(/* count= */ 3);
+
+    verify(mediaDrm, times(1)).closeSession(any());
+    verify(mediaDrm, times(0)).release();
+  }
+
+  @Test
+  public void pooledSessions_afterMaxAge_areReleased() throws Exception {
+    drmSessionManager.prefetchSession(playbackLooper, newDrmInitData(/* data= */ 1));
+    waitForKeyRequests(/* count= */ 1);
+
+    shadowOf(playbackLooper).idleFor(SESSION_POOL_MAX_AGE_MS, TimeUnit.MILLISECONDS);
+
+    verify(mediaDrm, times(1)).closeSession(any());
+    verify(mediaDrm, times(1)).release();
+  }
+
+  @Test
+  public void releasePooledSessions_releasesMediaDrm() throws Exception {
+    drmSessionManager.prefetchSession(playbackLooper, newDrmInitData(/* data= */ 1));
+    waitForKeyRequests(/* count= */ 1);
+
+    drmSessionManager.releasePooledSessions();
+    shadowOf(playbackLooper).idle();
+
+    verify(mediaDrm, times(1)).closeSession(any());
+    verify(mediaDrm, times(1)).release();
+  }
+
+  /**
+   * Runs the playback looper until {@code count} key responses have been provided, as key requests
+   * are executed on a background thread.
+   */
+  private void waitForKeyRequests(int count) throws Exception {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (true) {
+      shadowOf(playbackLooper).idle();
+      try {
+        verify(mediaDrm, times(count)).provideKeyResponse(any(), any());
+        return;
+      } catch (AssertionError e) {
+        if (System.currentTimeMillis() > deadlineMs) {
+          throw e;
+        }
+        Thread.sleep(/* millis= */ 1);
+      }
+    }
+  }
+
+  private static DrmInitData newDrmInitData(int data) {
+    return new DrmInitData(
+        new SchemeData(C.WIDEVINE_UUID, MimeTypes.VIDEO_MP4, /* data= */ new byte[] {(byte) data}));
+  }
+}
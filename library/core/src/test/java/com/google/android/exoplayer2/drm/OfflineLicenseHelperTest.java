@@ -25,7 +25,11 @@ import android.util.Pair;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -148,6 +152,74 @@ public class OfflineLicenseHelperTest {
     assertThat(licenseDurationRemainingSec.second).isEqualTo(playbackDuration);
   }
 
+  @Test
+  public void downloadLicenses_returnsKeySetIdForEachContent() throws Exception {
+    setDefaultStubKeySetId();
+    List<DrmInitData> drmInitDatas = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      drmInitDatas.add(newDrmInitData());
+    }
+
+    List<OfflineLicenseHelper.LicenseResult> results =
+        offlineLicenseHelper.downloadLicenses(drmInitDatas, /* maxParallelism= */ 2);
+
+    assertThat(results).hasSize(5);
+    for (OfflineLicenseHelper.LicenseResult result : results) {
+      assertThat(result.error).isNull();
+      assertOfflineLicenseKeySetIdEqual(new byte[] {2, 5, 8}, result.keySetId);
+    }
+  }
+
+  @Test
+  public void downloadLicenses_acquiresExoMediaDrmForEachParallelRequest() throws Exception {
+    setDefaultStubKeySetId();
+    AtomicInteger acquireCount = new AtomicInteger();
+    OfflineLicenseHelper<ExoMediaCrypto> helper =
+        new OfflineLicenseHelper<>(
+            C.WIDEVINE_UUID,
+            uuid -> {
+              acquireCount.incrementAndGet();
+              return mediaDrm;
+            },
+            mediaDrmCallback,
+            /* optionalKeyRequestParameters= */ null);
+    List<DrmInitData> drmInitDatas = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      drmInitDatas.add(newDrmInitData());
+    }
+
+    List<OfflineLicenseHelper.LicenseResult> results =
+        helper.downloadLicenses(drmInitDatas, /* maxParallelism= */ 2);
+    helper.release();
+
+    assertThat(results).hasSize(5);
+    assertThat(acquireCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void renewExpiringLicenses_onlyRenewsLicensesBelowThreshold() throws Exception {
+    setStubLicenseAndPlaybackDurationValues(1000, 200);
+    byte[] renewedKeySetId = {6, 7, 0, 1, 4};
+    setStubKeySetId(renewedKeySetId);
+    byte[] keySetId = {2, 5, 8};
+
+    List<OfflineLicenseHelper.LicenseResult> notExpiringResults =
+        offlineLicenseHelper.renewExpiringLicenses(
+            Collections.singletonList(keySetId),
+            /* minLicenseDurationRemainingSec= */ 500,
+            /* maxParallelism= */ 2);
+    List<OfflineLicenseHelper.LicenseResult> expiringResults =
+        offlineLicenseHelper.renewExpiringLicenses(
+            Collections.singletonList(keySetId),
+            /* minLicenseDurationRemainingSec= */ 2000,
+            /* maxParallelism= */ 2);
+
+    assertThat(notExpiringResults.get(0).keySetId).isSameInstanceAs(keySetId);
+    assertThat(notExpiringResults.get(0).renewed).isFalse();
+    assertOfflineLicenseKeySetIdEqual(renewedKeySetId, expiringResults.get(0).keySetId);
+    assertThat(expiringResults.get(0).renewed).isTrue();
+  }
+
   private void setDefaultStubKeySetId()
       throws android.media.NotProvisionedException, android.media.DeniedByServerException {
     setStubKeySetId(new byte[] {2, 5, 8});
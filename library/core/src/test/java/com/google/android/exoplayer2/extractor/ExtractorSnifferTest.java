@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.extractor.wav.WavExtractor;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link ExtractorSniffer}. */
+@RunWith(AndroidJUnit4.class)
+public final class ExtractorSnifferTest {
+
+  private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+  @Test
+  public void sniff_withoutHints_selectsSameExtractorAsSequentialSniffing() throws Exception {
+    assertSniffedClass("mkv/sample.mkv", MatroskaExtractor.class);
+    assertSniffedClass("mp4/sample.mp4", Mp4Extractor.class);
+    assertSniffedClass("mp3/bear.mp3", Mp3Extractor.class);
+    assertSniffedClass("ts/sample.ts", TsExtractor.class);
+    assertSniffedClass("wav/sample.wav", WavExtractor.class);
+  }
+
+  @Test
+  public void sniff_withMimeTypeHint_triesHintedExtractorFirst() throws Exception {
+    RecordingExtractor unhintedExtractor = new RecordingExtractor();
+    Extractor[] extractors = new Extractor[] {unhintedExtractor, new Mp3Extractor()};
+    FakeExtractorInput input = createInput("mp3/bear.mp3");
+
+    Extractor extractor =
+        ExtractorSniffer.sniff(
+            extractors,
+            input,
+            Uri.parse("https://example.com/media"),
+            Collections.singletonMap(
+                "content-type", Collections.singletonList("audio/mpeg; charset=binary")));
+
+    assertThat(extractor).isSameInstanceAs(extractors[1]);
+    assertThat(unhintedExtractor.sniffCount).isEqualTo(0);
+    assertThat(input.getPeekPosition()).isEqualTo(0);
+  }
+
+  @Test
+  public void sniff_withFileExtensionHint_triesHintedExtractorFirst() throws Exception {
+    RecordingExtractor unhintedExtractor = new RecordingExtractor();
+    Extractor[] extractors = new Extractor[] {unhintedExtractor, new Mp3Extractor()};
+
+    Extractor extractor =
+        ExtractorSniffer.sniff(
+            extractors,
+            createInput("mp3/bear.mp3"),
+            Uri.parse("https://example.com/media/BEAR.MP3?token=1"),
+            NO_HEADERS);
+
+    assertThat(extractor).isSameInstanceAs(extractors[1]);
+    assertThat(unhintedExtractor.sniffCount).isEqualTo(0);
+  }
+
+  @Test
+  public void sniff_withShortPrefix_sniffsInputBeyondPrefix() throws Exception {
+    Extractor[] extractors = new DefaultExtractorsFactory().createExtractors();
+    FakeExtractorInput input = createInput("mp3/bear.mp3");
+
+    Extractor extractor =
+        ExtractorSniffer.sniff(
+            extractors, input, /* uri= */ null, NO_HEADERS, /* prefixLength= */ 16);
+
+    assertThat(extractor).isInstanceOf(Mp3Extractor.class);
+    // Mp3Extractor skips leading ID3 data when sniffing, but the peek position is still reset.
+    assertThat(input.getPeekPosition()).isEqualTo(input.getPosition());
+  }
+
+  @Test
+  public void sniff_withUnrecognizedInput_returnsNull() throws Exception {
+    Extractor[] extractors = new DefaultExtractorsFactory().createExtractors();
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder().setData(new byte[] {0, 1, 2, 3, 4}).build();
+
+    assertThat(ExtractorSniffer.sniff(extractors, input, /* uri= */ null, NO_HEADERS)).isNull();
+    assertThat(input.getPeekPosition()).isEqualTo(0);
+  }
+
+  private static void assertSniffedClass(String fileName, Class<?> expectedClass)
+      throws Exception {
+    Extractor extractor =
+        ExtractorSniffer.sniff(
+            new DefaultExtractorsFactory().createExtractors(),
+            createInput(fileName),
+            /* uri= */ null,
+            NO_HEADERS);
+    assertThat(extractor).isInstanceOf(expectedClass);
+  }
+
+  private static FakeExtractorInput createInput(String fileName) throws Exception {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), fileName);
+    return new FakeExtractorInput.Builder().setData(data).setSimulatePartialReads(true).build();
+  }
+
+  /** An extractor that counts calls to {@link #sniff(ExtractorInput)} and never sniffs true. */
+  private static final class RecordingExtractor implements Extractor {
+
+    public int sniffCount;
+
+    @Override
+    public boolean sniff(ExtractorInput input) {
+      sniffCount++;
+      return false;
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {}
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {}
+
+    @Override
+    public void release() {}
+  }
+}
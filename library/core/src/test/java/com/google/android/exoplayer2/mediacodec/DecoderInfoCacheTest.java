@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.media.MediaCodecInfo.CodecProfileLevel;
+import android.os.Build;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import com.google.android.exoplayer2.video.ColorInfo;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.util.ReflectionHelpers;
+
+/** Unit test for {@link DecoderInfoCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class DecoderInfoCacheTest {
+
+  private static final String TEST_MIME_TYPE = "video/x-decoder-info-cache-test";
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = Util.createTempFile(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    MediaCodecUtil.setDecoderInfoCache(null);
+    file.delete();
+  }
+
+  @Test
+  public void decoderInfos_arePersisted() throws Exception {
+    DecoderInfoCache decoderInfoCache = new DecoderInfoCache(file);
+    MediaCodecInfo decoderInfo = createDecoderInfo("OMX.test.avc", MimeTypes.VIDEO_H264);
+    decoderInfoCache.putDecoderInfos(
+        MimeTypes.VIDEO_H264,
+        /* secure= */ true,
+        /* tunneling= */ false,
+        Collections.singletonList(decoderInfo));
+    decoderInfoCache.flush();
+
+    DecoderInfoCache restoredDecoderInfoCache = new DecoderInfoCache(file);
+    List<MediaCodecInfo> restoredDecoderInfos =
+        restoredDecoderInfoCache.getDecoderInfos(
+            MimeTypes.VIDEO_H264, /* secure= */ true, /* tunneling= */ false);
+
+    assertThat(restoredDecoderInfos).hasSize(1);
+    MediaCodecInfo restoredDecoderInfo = restoredDecoderInfos.get(0);
+    assertThat(restoredDecoderInfo.name).isEqualTo("OMX.test.avc");
+    assertThat(restoredDecoderInfo.mimeType).isEqualTo(MimeTypes.VIDEO_H264);
+    assertThat(restoredDecoderInfo.codecMimeType).isEqualTo(MimeTypes.VIDEO_H264);
+    assertThat(restoredDecoderInfo.hardwareAccelerated).isTrue();
+    assertThat(restoredDecoderInfo.softwareOnly).isFalse();
+    assertThat(restoredDecoderInfo.vendor).isTrue();
+    assertThat(restoredDecoderInfo.adaptive).isTrue();
+    assertThat(restoredDecoderInfo.tunneling).isFalse();
+    assertThat(restoredDecoderInfo.secure).isTrue();
+    assertThat(restoredDecoderInfo.getMaxSupportedInstances()).isEqualTo(4);
+    assertThat(restoredDecoderInfo.getProfileLevels()).hasLength(1);
+    assertThat(restoredDecoderInfo.getProfileLevels()[0].profile)
+        .isEqualTo(CodecProfileLevel.AVCProfileHigh);
+    assertThat(restoredDecoderInfo.getProfileLevels()[0].level)
+        .isEqualTo(CodecProfileLevel.AVCLevel41);
+    assertThat(
+            restoredDecoderInfoCache.getDecoderInfos(
+                MimeTypes.VIDEO_H264, /* secure= */ false, /* tunneling= */ false))
+        .isNull();
+  }
+
+  @Test
+  public void formatSupport_isPersisted() throws Exception {
+    DecoderInfoCache decoderInfoCache = new DecoderInfoCache(file);
+    MediaCodecInfo decoderInfo = createDecoderInfo("OMX.test.avc", MimeTypes.VIDEO_H264);
+    Format supportedFormat = createVideoFormat(/* width= */ 1280, /* height= */ 720);
+    Format unsupportedFormat = createVideoFormat(/* width= */ 7680, /* height= */ 4320);
+    decoderInfoCache.putFormatSupport(
+        DecoderInfoCache.getFormatSupportKey(decoderInfo, supportedFormat), true);
+    decoderInfoCache.putFormatSupport(
+        DecoderInfoCache.getFormatSupportKey(decoderInfo, unsupportedFormat), false);
+    decoderInfoCache.flush();
+
+    DecoderInfoCache restoredDecoderInfoCache = new DecoderInfoCache(file);
+
+    assertThat(
+            restoredDecoderInfoCache.getFormatSupport(
+                DecoderInfoCache.getFormatSupportKey(decoderInfo, supportedFormat)))
+        .isTrue();
+    assertThat(
+            restoredDecoderInfoCache.getFormatSupport(
+                DecoderInfoCache.getFormatSupportKey(decoderInfo, unsupportedFormat)))
+        .isFalse();
+    assertThat(
+            restoredDecoderInfoCache.getFormatSupport(
+                DecoderInfoCache.getFormatSupportKey(
+                    decoderInfo, createVideoFormat(/* width= */ 640, /* height= */ 480))))
+        .isNull();
+  }
+
+  @Test
+  public void getFormatSupportKey_dependsOnSampleMimeTypeAndColorInfo() {
+    MediaCodecInfo decoderInfo = createDecoderInfo("OMX.test.hevc", MimeTypes.VIDEO_H265);
+    Format format =
+        createVideoFormat(MimeTypes.VIDEO_H265, "hvc1.2.4.L153.B0", /* colorInfo= */ null);
+    Format dolbyVisionFormat =
+        createVideoFormat(MimeTypes.VIDEO_DOLBY_VISION, "hvc1.2.4.L153.B0", /* colorInfo= */ null);
+    Format hdrFormat =
+        createVideoFormat(
+            MimeTypes.VIDEO_H265,
+            "hvc1.2.4.L153.B0",
+            new ColorInfo(
+                C.COLOR_SPACE_BT2020,
+                C.COLOR_RANGE_LIMITED,
+                C.COLOR_TRANSFER_ST2084,
+                /* hdrStaticInfo= */ null));
+
+    String key = DecoderInfoCache.getFormatSupportKey(decoderInfo, format);
+
+    assertThat(DecoderInfoCache.getFormatSupportKey(decoderInfo, dolbyVisionFormat))
+        .isNotEqualTo(key);
+    assertThat(DecoderInfoCache.getFormatSupportKey(decoderInfo, hdrFormat)).isNotEqualTo(key);
+  }
+
+  @Test
+  public void cache_isInvalidatedByBuildFingerprintChange() throws Exception {
+    DecoderInfoCache decoderInfoCache = new DecoderInfoCache(file);
+    decoderInfoCache.putDecoderInfos(
+        MimeTypes.VIDEO_H264,
+        /* secure= */ false,
+        /* tunneling= */ false,
+        Collections.singletonList(createDecoderInfo("OMX.test.avc", MimeTypes.VIDEO_H264)));
+    decoderInfoCache.flush();
+
+    String fingerprint = Build.FINGERPRINT;
+    ReflectionHelpers.setStaticField(Build.class, "FINGERPRINT", fingerprint + "-updated");
+    DecoderInfoCache restoredDecoderInfoCache;
+    try {
+      restoredDecoderInfoCache = new DecoderInfoCache(file);
+    } finally {
+      ReflectionHelpers.setStaticField(Build.class, "FINGERPRINT", fingerprint);
+    }
+
+    assertThat(
+            restoredDecoderInfoCache.getDecoderInfos(
+                MimeTypes.VIDEO_H264, /* secure= */ false, /* tunneling= */ false))
+        .isNull();
+  }
+
+  @Test
+  public void getDecoderInfos_withDecoderInfoCache_usesCachedDecoderInfos() throws Exception {
+    DecoderInfoCache decoderInfoCache = new DecoderInfoCache(file);
+    decoderInfoCache.putDecoderInfos(
+        TEST_MIME_TYPE,
+        /* secure= */ false,
+        /* tunneling= */ false,
+        Collections.singletonList(createDecoderInfo("OMX.test.decoder", TEST_MIME_TYPE)));
+    decoderInfoCache.flush();
+    MediaCodecUtil.setDecoderInfoCache(new DecoderInfoCache(file));
+
+    List<MediaCodecInfo> decoderInfos =
+        MediaCodecUtil.getDecoderInfos(TEST_MIME_TYPE, /* secure= */ false, /* tunneling= */ false);
+
+    assertThat(decoderInfos).hasSize(1);
+    assertThat(decoderInfos.get(0).name).isEqualTo("OMX.test.decoder");
+  }
+
+  @Test
+  public void isFormatSupported_withDecoderInfoCache_usesCachedResult() throws Exception {
+    DecoderInfoCache decoderInfoCache = new DecoderInfoCache(file);
+    MediaCodecUtil.setDecoderInfoCache(decoderInfoCache);
+    MediaCodecInfo decoderInfo = createDecoderInfo("OMX.test.avc", MimeTypes.VIDEO_H264);
+    Format format = createVideoFormat(/* width= */ 1280, /* height= */ 720);
+    decoderInfoCache.putFormatSupport(
+        DecoderInfoCache.getFormatSupportKey(decoderInfo, format), true);
+
+    // The decoder has no capabilities, so it would not otherwise support the format.
+    assertThat(decoderInfo.isFormatSupported(format)).isTrue();
+  }
+
+  private static MediaCodecInfo createDecoderInfo(String name, String mimeType) {
+    CodecProfileLevel profileLevel = new CodecProfileLevel();
+    profileLevel.profile = CodecProfileLevel.AVCProfileHigh;
+    profileLevel.level = CodecProfileLevel.AVCLevel41;
+    return MediaCodecInfo.newRestoredInstance(
+        name,
+        mimeType,
+        /* codecMimeType= */ mimeType,
+        /* hardwareAccelerated= */ true,
+        /* softwareOnly= */ false,
+        /* vendor= */ true,
+        /* adaptive= */ true,
+        /* tunneling= */ false,
+        /* secure= */ true,
+        new CodecProfileLevel[] {profileLevel},
+        /* maxSupportedInstances= */ 4);
+  }
+
+  private static Format createVideoFormat(int width, int height) {
+    return Format.createVideoSampleFormat(
+        /* id= */ null,
+        MimeTypes.VIDEO_H264,
+        /* codecs= */ null,
+        /* bitrate= */ Format.NO_VALUE,
+        /* maxInputSize= */ Format.NO_VALUE,
+        width,
+        height,
+        /* frameRate= */ Format.NO_VALUE,
+        /* initializationData= */ null,
+        /* drmInitData= */ null);
+  }
+
+  private static Format createVideoFormat(
+      String sampleMimeType, String codecs, @Nullable ColorInfo colorInfo) {
+    return Format.createVideoSampleFormat(
+        /* id= */ null,
+        sampleMimeType,
+        codecs,
+        /* bitrate= */ Format.NO_VALUE,
+        /* maxInputSize= */ Format.NO_VALUE,
+        /* width= */ 1920,
+        /* height= */ 1080,
+        /* frameRate= */ Format.NO_VALUE,
+        /* initializationData= */ null,
+        /* rotationDegrees= */ Format.NO_VALUE,
+        /* pixelWidthHeightRatio= */ Format.NO_VALUE,
+        /* projectionData= */ null,
+        /* stereoMode= */ Format.NO_VALUE,
+        colorInfo,
+        /* drmInitData= */ null);
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.offline;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.drm.ExoMediaCrypto;
+import com.google.android.exoplayer2.drm.ExoMediaDrm;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+import com.google.android.exoplayer2.drm.OfflineLicenseHelper;
+import com.google.android.exoplayer2.drm.WidevineUtil;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit test for {@link OfflineLicenseRenewer}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class OfflineLicenseRenewerTest {
+
+  private static final byte[] KEY_SET_ID = {2, 5, 8};
+  private static final byte[] RENEWED_KEY_SET_ID = {6, 7, 0, 1, 4};
+
+  @Mock private MediaDrmCallback mediaDrmCallback;
+  @Mock private ExoMediaDrm<ExoMediaCrypto> mediaDrm;
+  private ExoDatabaseProvider databaseProvider;
+  private DefaultDownloadIndex downloadIndex;
+  private OfflineLicenseHelper<ExoMediaCrypto> offlineLicenseHelper;
+  private FakeKeySetIdStore keySetIdStore;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    when(mediaDrm.openSession()).thenReturn(new byte[] {1, 2, 3});
+    when(mediaDrm.getKeyRequest(any(), any(), anyInt(), any()))
+        .thenReturn(
+            new ExoMediaDrm.KeyRequest(/* data= */ new byte[0], /* licenseServerUrl= */ ""));
+    when(mediaDrm.provideKeyResponse(any(byte[].class), any())).thenReturn(RENEWED_KEY_SET_ID);
+    HashMap<String, String> keyStatus = new HashMap<>();
+    keyStatus.put(WidevineUtil.PROPERTY_LICENSE_DURATION_REMAINING, "1000");
+    keyStatus.put(WidevineUtil.PROPERTY_PLAYBACK_DURATION_REMAINING, "200");
+    when(mediaDrm.queryKeyStatus(any(byte[].class))).thenReturn(keyStatus);
+    databaseProvider = new ExoDatabaseProvider(ApplicationProvider.getApplicationContext());
+    downloadIndex = new DefaultDownloadIndex(databaseProvider);
+    offlineLicenseHelper =
+        new OfflineLicenseHelper<>(
+            C.WIDEVINE_UUID,
+            new ExoMediaDrm.AppManagedProvider<>(mediaDrm),
+            mediaDrmCallback,
+            /* optionalKeyRequestParameters= */ null);
+    keySetIdStore = new FakeKeySetIdStore();
+  }
+
+  @After
+  public void tearDown() {
+    offlineLicenseHelper.release();
+    databaseProvider.close();
+  }
+
+  @Test
+  public void renewExpiringLicenses_renewsLicensesOfDownloadsWithKeySetIds() throws Exception {
+    downloadIndex.putDownload(
+        new DownloadBuilder("withLicense").setState(Download.STATE_COMPLETED).build());
+    downloadIndex.putDownload(
+        new DownloadBuilder("withoutLicense").setState(Download.STATE_COMPLETED).build());
+    keySetIdStore.keySetIds.put("withLicense", KEY_SET_ID);
+    OfflineLicenseRenewer renewer =
+        createRenewer(/* minLicenseDurationRemainingSec= */ 2000);
+
+    int renewedCount = renewer.renewExpiringLicenses();
+
+    assertThat(renewedCount).isEqualTo(1);
+    assertThat(keySetIdStore.keySetIds).hasSize(1);
+    assertThat(keySetIdStore.keySetIds.get("withLicense")).isEqualTo(RENEWED_KEY_SET_ID);
+  }
+
+  @Test
+  public void renewExpiringLicenses_withEnoughDurationRemaining_doesNotRenew() throws Exception {
+    downloadIndex.putDownload(
+        new DownloadBuilder("withLicense").setState(Download.STATE_COMPLETED).build());
+    keySetIdStore.keySetIds.put("withLicense", KEY_SET_ID);
+    OfflineLicenseRenewer renewer = createRenewer(/* minLicenseDurationRemainingSec= */ 500);
+
+    int renewedCount = renewer.renewExpiringLicenses();
+
+    assertThat(renewedCount).isEqualTo(0);
+    assertThat(keySetIdStore.keySetIds.get("withLicense")).isEqualTo(KEY_SET_ID);
+  }
+
+  private OfflineLicenseRenewer createRenewer(long minLicenseDurationRemainingSec) {
+    return new OfflineLicenseRenewer(
+        downloadIndex,
+        offlineLicenseHelper,
+        keySetIdStore,
+        OfflineLicenseRenewer.DEFAULT_CHECK_INTERVAL_MS,
+        minLicenseDurationRemainingSec,
+        /* maxParallelRenewals= */ 2);
+  }
+
+  private static final class FakeKeySetIdStore implements OfflineLicenseRenewer.KeySetIdStore {
+
+    private final HashMap<String, byte[]> keySetIds;
+
+    private FakeKeySetIdStore() {
+      keySetIds = new HashMap<>();
+    }
+
+    @Override
+    @Nullable
+    public byte[] getKeySetId(Download download) {
+      return keySetIds.get(download.request.id);
+    }
+
+    @Override
+    public void onKeySetIdRenewed(Download download, byte[] keySetId) {
+      keySetIds.put(download.request.id, keySetId);
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.source.SampleMetadataQueue.SampleExtrasHolder;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link LockFreeSampleMetadataQueue}. */
+@RunWith(AndroidJUnit4.class)
+public final class LockFreeSampleMetadataQueueTest {
+
+  private static final Format FORMAT_1 = Format.createSampleFormat("1", "mimeType", 0);
+  private static final Format FORMAT_2 = Format.createSampleFormat("2", "mimeType", 0);
+
+  private LockFreeSampleMetadataQueue queue;
+  private FormatHolder formatHolder;
+  private DecoderInputBuffer inputBuffer;
+  private SampleExtrasHolder extrasHolder;
+
+  @Before
+  public void setUp() {
+    queue = new LockFreeSampleMetadataQueue(DrmSessionManager.getDummyDrmSessionManager());
+    formatHolder = new FormatHolder();
+    inputBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+    extrasHolder = new SampleExtrasHolder();
+  }
+
+  @Test
+  public void readsFormatsAndSamplesInOrder() {
+    queue.format(FORMAT_1);
+    commitKeyframe(/* timeUs= */ 0);
+    queue.format(FORMAT_2);
+    commitKeyframe(/* timeUs= */ 1000);
+
+    assertReadFormat(FORMAT_1);
+    assertReadSample(/* timeUs= */ 0);
+    assertReadFormat(FORMAT_2);
+    assertReadSample(/* timeUs= */ 1000);
+    assertThat(read(/* loadingFinished= */ false)).isEqualTo(C.RESULT_NOTHING_READ);
+    assertThat(queue.getReadIndex()).isEqualTo(2);
+  }
+
+  @Test
+  public void readsUpstreamFormatChangeWhenEmpty() {
+    queue.format(FORMAT_1);
+    commitKeyframe(/* timeUs= */ 0);
+    assertReadFormat(FORMAT_1);
+    assertReadSample(/* timeUs= */ 0);
+
+    queue.format(FORMAT_2);
+
+    assertThat(queue.isReady(/* loadingFinished= */ false)).isTrue();
+    assertReadFormat(FORMAT_2);
+  }
+
+  @Test
+  public void lastSampleQueuedReadsEndOfStream() {
+    queue.format(FORMAT_1);
+    queue.commitSample(
+        /* timeUs= */ 0,
+        C.BUFFER_FLAG_KEY_FRAME | C.BUFFER_FLAG_LAST_SAMPLE,
+        /* offset= */ 0,
+        /* size= */ 1,
+        /* cryptoData= */ null);
+    assertReadFormat(FORMAT_1);
+    assertReadSample(/* timeUs= */ 0);
+
+    assertThat(read(/* loadingFinished= */ false)).isEqualTo(C.RESULT_BUFFER_READ);
+    assertThat(inputBuffer.isEndOfStream()).isTrue();
+  }
+
+  @Test
+  public void spliceDiscardsUnreadSamplesAfterSpliceTime() {
+    queue.format(FORMAT_1);
+    for (int i = 0; i < 4; i++) {
+      commitKeyframe(/* timeUs= */ i * 1000);
+    }
+    assertReadFormat(FORMAT_1);
+    assertReadSample(/* timeUs= */ 0);
+
+    assertThat(queue.attemptSplice(/* timeUs= */ 2000)).isTrue();
+
+    assertThat(queue.getWriteIndex()).isEqualTo(2);
+    assertThat(queue.getLargestQueuedTimestampUs()).isEqualTo(1000);
+    assertThat(queue.attemptSplice(/* timeUs= */ 0)).isFalse();
+  }
+
+  @Test
+  public void spliceDoesNotDiscardReadSamples() {
+    queue.format(FORMAT_1);
+    commitKeyframe(/* timeUs= */ 0);
+    commitKeyframe(/* timeUs= */ 1000);
+    assertReadFormat(FORMAT_1);
+    assertReadSample(/* timeUs= */ 0);
+    assertReadSample(/* timeUs= */ 1000);
+
+    assertThat(queue.attemptSplice(/* timeUs= */ 500)).isFalse();
+    assertThat(queue.getWriteIndex()).isEqualTo(2);
+  }
+
+  @Test
+  public void discardToReadRetainsUnreadSamples() {
+    queue.format(FORMAT_1);
+    for (int i = 0; i < 3; i++) {
+      queue.commitSample(
+          /* timeUs= */ i * 1000,
+          C.BUFFER_FLAG_KEY_FRAME,
+          /* offset= */ i * 10,
+          /* size= */ 10,
+          /* cryptoData= */ null);
+    }
+    assertReadFormat(FORMAT_1);
+    assertReadSample(/* timeUs= */ 0);
+    assertReadSample(/* timeUs= */ 1000);
+
+    assertThat(queue.discardToRead()).isEqualTo(20);
+    assertThat(queue.getFirstIndex()).isEqualTo(2);
+    assertThat(queue.getFirstTimestampUs()).isEqualTo(2000);
+    assertThat(queue.discardToEnd()).isEqualTo(30);
+    assertThat(queue.getReadIndex()).isEqualTo(3);
+  }
+
+  @Test
+  public void growsCapacityWhenFullAndWrapped() {
+    queue.format(FORMAT_1);
+    commitKeyframe(/* timeUs= */ 0);
+    assertReadFormat(FORMAT_1);
+    for (int i = 1; i < 5000; i++) {
+      commitKeyframe(/* timeUs= */ i);
+      assertReadSample(/* timeUs= */ i - 1);
+      if (i % 3 == 0) {
+        queue.discardToRead();
+      }
+    }
+    for (int i = 0; i < 5000; i++) {
+      commitKeyframe(/* timeUs= */ 5000 + i);
+    }
+
+    for (int i = 4999; i < 10000; i++) {
+      assertReadSample(/* timeUs= */ i);
+    }
+    assertThat(read(/* loadingFinished= */ false)).isEqualTo(C.RESULT_NOTHING_READ);
+  }
+
+  @Test
+  public void concurrentProducerAndConsumerSeeAllSamplesInOrder() throws Exception {
+    int sampleCount = 100_000;
+    AtomicReference<Throwable> producerError = new AtomicReference<>();
+    Thread producer =
+        new Thread(
+            () -> {
+              try {
+                queue.format(FORMAT_1);
+                for (int i = 0; i < sampleCount; i++) {
+                  if (i == sampleCount / 2) {
+                    queue.format(FORMAT_2);
+                  }
+                  queue.commitSample(
+                      /* timeUs= */ i,
+                      C.BUFFER_FLAG_KEY_FRAME,
+                      /* offset= */ i,
+                      /* size= */ 1,
+                      /* cryptoData= */ null);
+                }
+              } catch (Throwable e) {
+                producerError.set(e);
+              }
+            });
+    producer.start();
+
+    int expectedTimeUs = 0;
+    Format expectedFormat = FORMAT_1;
+    while (expectedTimeUs < sampleCount) {
+      int result = read(/* loadingFinished= */ false);
+      if (result == C.RESULT_FORMAT_READ) {
+        assertThat(formatHolder.format).isSameInstanceAs(expectedFormat);
+        expectedFormat = FORMAT_2;
+      } else if (result == C.RESULT_BUFFER_READ) {
+        assertThat(inputBuffer.timeUs).isEqualTo(expectedTimeUs);
+        assertThat(extrasHolder.offset).isEqualTo(expectedTimeUs);
+        expectedTimeUs++;
+        if (expectedTimeUs % 100 == 0) {
+          queue.discardToRead();
+        }
+      }
+    }
+    producer.join();
+
+    assertThat(producerError.get()).isNull();
+    assertThat(queue.getReadIndex()).isEqualTo(sampleCount);
+  }
+
+  private void commitKeyframe(long timeUs) {
+    queue.commitSample(
+        timeUs, C.BUFFER_FLAG_KEY_FRAME, /* offset= */ 0, /* size= */ 1, /* cryptoData= */ null);
+  }
+
+  private int read(boolean loadingFinished) {
+    inputBuffer.clear();
+    return queue.read(
+        formatHolder, inputBuffer, /* formatRequired= */ false, loadingFinished, extrasHolder);
+  }
+
+  private void assertReadFormat(Format format) {
+    assertThat(read(/* loadingFinished= */ false)).isEqualTo(C.RESULT_FORMAT_READ);
+    assertThat(formatHolder.format).isSameInstanceAs(format);
+  }
+
+  private void assertReadSample(long timeUs) {
+    assertThat(read(/* loadingFinished= */ false)).isEqualTo(C.RESULT_BUFFER_READ);
+    assertThat(inputBuffer.timeUs).isEqualTo(timeUs);
+  }
+}
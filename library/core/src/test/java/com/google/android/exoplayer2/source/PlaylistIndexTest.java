@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.PlaylistIndex.ChildUid;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinition;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link PlaylistIndex}. */
+@RunWith(AndroidJUnit4.class)
+public final class PlaylistIndexTest {
+
+  @Test
+  public void randomMutations_matchListModel() {
+    Random random = new Random(/* seed= */ 1234);
+    PlaylistIndex index = new PlaylistIndex();
+    List<ChildUid> uids = new ArrayList<>();
+    List<Timeline> timelines = new ArrayList<>();
+
+    for (int i = 0; i < 2000; i++) {
+      int operation = uids.isEmpty() ? 0 : random.nextInt(4);
+      if (operation == 0) {
+        int childIndex = random.nextInt(uids.size() + 1);
+        ChildUid uid = new ChildUid();
+        Timeline timeline = createTimeline(random);
+        index = index.cloneAndInsert(childIndex, uid, timeline);
+        uids.add(childIndex, uid);
+        timelines.add(childIndex, timeline);
+      } else if (operation == 1) {
+        int childIndex = random.nextInt(uids.size());
+        index = index.cloneAndRemove(childIndex);
+        uids.remove(childIndex);
+        timelines.remove(childIndex);
+      } else if (operation == 2) {
+        int currentIndex = random.nextInt(uids.size());
+        int newIndex = random.nextInt(uids.size());
+        index = index.cloneAndMove(currentIndex, newIndex);
+        uids.add(newIndex, uids.remove(currentIndex));
+        timelines.add(newIndex, timelines.remove(currentIndex));
+      } else {
+        int childIndex = random.nextInt(uids.size());
+        Timeline timeline = createTimeline(random);
+        index = index.cloneAndSetTimeline(childIndex, timeline);
+        timelines.set(childIndex, timeline);
+      }
+      if (i % 100 == 0) {
+        assertMatches(index, uids, timelines);
+      }
+    }
+    assertMatches(index, uids, timelines);
+  }
+
+  @Test
+  public void repeatedInsertionAtSamePosition_relabelsAndKeepsOrder() {
+    PlaylistIndex index = new PlaylistIndex();
+    List<ChildUid> uids = new ArrayList<>();
+    List<Timeline> timelines = new ArrayList<>();
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+    for (int i = 0; i < 200; i++) {
+      int childIndex = uids.size() / 2;
+      ChildUid uid = new ChildUid();
+      index = index.cloneAndInsert(childIndex, uid, timeline);
+      uids.add(childIndex, uid);
+      timelines.add(childIndex, timeline);
+    }
+
+    assertMatches(index, uids, timelines);
+  }
+
+  @Test
+  public void olderIndex_isUnchangedByLaterMutations() {
+    Random random = new Random(/* seed= */ 5678);
+    PlaylistIndex index = new PlaylistIndex();
+    List<ChildUid> uids = new ArrayList<>();
+    List<Timeline> timelines = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      ChildUid uid = new ChildUid();
+      Timeline timeline = createTimeline(random);
+      index = index.cloneAndInsert(i, uid, timeline);
+      uids.add(uid);
+      timelines.add(timeline);
+    }
+    PlaylistIndex olderIndex = index;
+
+    for (int i = 0; i < 100; i++) {
+      index = index.cloneAndMove(random.nextInt(50), random.nextInt(50));
+      index = index.cloneAndInsert(/* childIndex= */ 25, new ChildUid(), createTimeline(random));
+      index = index.cloneAndRemove(random.nextInt(51));
+    }
+
+    assertMatches(olderIndex, uids, timelines);
+  }
+
+  @Test
+  public void getChildIndex_forRemovedOrUnknownUid_returnsIndexUnset() {
+    ChildUid uid = new ChildUid();
+    PlaylistIndex index =
+        new PlaylistIndex().cloneAndInsert(/* childIndex= */ 0, uid, new FakeTimeline(1));
+    PlaylistIndex indexWithoutChild = index.cloneAndRemove(/* childIndex= */ 0);
+
+    assertThat(index.getChildIndex(uid)).isEqualTo(0);
+    assertThat(indexWithoutChild.getChildIndex(uid)).isEqualTo(C.INDEX_UNSET);
+    assertThat(index.getChildIndex(new ChildUid())).isEqualTo(C.INDEX_UNSET);
+    assertThat(index.getChildIndex(new Object())).isEqualTo(C.INDEX_UNSET);
+  }
+
+  private static Timeline createTimeline(Random random) {
+    TimelineWindowDefinition[] windowDefinitions =
+        new TimelineWindowDefinition[random.nextInt(3)];
+    for (int i = 0; i < windowDefinitions.length; i++) {
+      windowDefinitions[i] =
+          new TimelineWindowDefinition(/* periodCount= */ 1 + random.nextInt(3), /* id= */ i);
+    }
+    return new FakeTimeline(windowDefinitions);
+  }
+
+  private static void assertMatches(
+      PlaylistIndex index, List<ChildUid> uids, List<Timeline> timelines) {
+    assertThat(index.getChildCount()).isEqualTo(uids.size());
+    int windowCount = 0;
+    int periodCount = 0;
+    for (int i = 0; i < uids.size(); i++) {
+      Timeline timeline = timelines.get(i);
+      assertThat(index.getUid(i)).isSameInstanceAs(uids.get(i));
+      assertThat(index.getTimeline(i)).isSameInstanceAs(timeline);
+      assertThat(index.getChildIndex(uids.get(i))).isEqualTo(i);
+      assertThat(index.getFirstWindowIndex(i)).isEqualTo(windowCount);
+      assertThat(index.getFirstPeriodIndex(i)).isEqualTo(periodCount);
+      for (int j = 0; j < timeline.getWindowCount(); j++) {
+        assertThat(index.getChildIndexByWindowIndex(windowCount + j)).isEqualTo(i);
+      }
+      for (int j = 0; j < timeline.getPeriodCount(); j++) {
+        assertThat(index.getChildIndexByPeriodIndex(periodCount + j)).isEqualTo(i);
+      }
+      windowCount += timeline.getWindowCount();
+      periodCount += timeline.getPeriodCount();
+    }
+    assertThat(index.getWindowCount()).isEqualTo(windowCount);
+    assertThat(index.getPeriodCount()).isEqualTo(periodCount);
+  }
+}
@@ -30,6 +30,7 @@ import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
 import com.google.android.exoplayer2.testutil.FakeClock;
 import com.google.android.exoplayer2.testutil.FakeMediaChunk;
+import com.google.android.exoplayer2.testutil.FakeMediaChunkIterator;
 import com.google.android.exoplayer2.trackselection.TrackSelection.Definition;
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -327,6 +328,91 @@ public final class AdaptiveTrackSelectionTest {
     assertThat(newSize).isEqualTo(2);
   }
 
+  @Test
+  public void testUpdateSelectedTrackWithChunkLookaheadUsesChunkSizes() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    adaptiveTrackSelection = adaptiveTrackSelection(trackGroup);
+    adaptiveTrackSelection.experimental_setChunkLookaheadCount(/* chunkLookaheadCount= */ 3);
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format3);
+
+    // The next chunks of format3 are twice as large as its nominal bitrate suggests.
+    MediaChunkIterator[] mediaChunkIterators =
+        new MediaChunkIterator[] {
+          chunkIterator(/* chunkBitrates= */ 4000, 4000, 4000),
+          chunkIterator(/* chunkBitrates= */ 1000, 1000, 1000),
+          chunkIterator(/* chunkBitrates= */ 500, 500, 500)
+        };
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        mediaChunkIterators);
+
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(adaptiveTrackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void testUpdateSelectedTrackWithChunkLookaheadRejectsLargeNextChunk() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    adaptiveTrackSelection = adaptiveTrackSelection(trackGroup);
+    adaptiveTrackSelection.experimental_setChunkLookaheadCount(/* chunkLookaheadCount= */ 3);
+
+    // The average bitrate of the next chunks of format3 fits the bandwidth, but the first chunk
+    // can't be loaded before it needs to be played.
+    MediaChunkIterator[] mediaChunkIterators =
+        new MediaChunkIterator[] {
+          chunkIterator(/* chunkBitrates= */ 3000, 1000, 1000),
+          chunkIterator(/* chunkBitrates= */ 1000, 1000, 1000),
+          chunkIterator(/* chunkBitrates= */ 500, 500, 500)
+        };
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        mediaChunkIterators);
+
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format2);
+  }
+
+  @Test
+  public void testUpdateSelectedTrackWithoutChunkLookaheadIgnoresChunkSizes() {
+    Format format1 = videoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2000L);
+    adaptiveTrackSelection = adaptiveTrackSelection(trackGroup);
+
+    MediaChunkIterator[] mediaChunkIterators =
+        new MediaChunkIterator[] {
+          chunkIterator(/* chunkBitrates= */ 4000, 4000, 4000),
+          chunkIterator(/* chunkBitrates= */ 1000, 1000, 1000),
+          chunkIterator(/* chunkBitrates= */ 500, 500, 500)
+        };
+    adaptiveTrackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        mediaChunkIterators);
+
+    assertThat(adaptiveTrackSelection.getSelectedFormat()).isEqualTo(format3);
+  }
+
   private AdaptiveTrackSelection adaptiveTrackSelection(TrackGroup trackGroup) {
     return adaptiveTrackSelectionWithMinDurationForQualityIncreaseMs(
         trackGroup, AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS);
@@ -405,6 +491,17 @@ public final class AdaptiveTrackSelectionTest {
     return listIndices;
   }
 
+  private static FakeMediaChunkIterator chunkIterator(int... chunkBitrates) {
+    // Chunks with a duration of one second each.
+    long[] chunkTimeBoundariesSec = new long[chunkBitrates.length + 1];
+    long[] chunkLengths = new long[chunkBitrates.length];
+    for (int i = 0; i < chunkBitrates.length; i++) {
+      chunkTimeBoundariesSec[i + 1] = i + 1;
+      chunkLengths[i] = chunkBitrates[i] / C.BITS_PER_BYTE;
+    }
+    return new FakeMediaChunkIterator(chunkTimeBoundariesSec, chunkLengths);
+  }
+
   private static Format videoFormat(int bitrate, int width, int height) {
     return Format.createVideoSampleFormat(
         /* id= */ null,
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeMediaChunk;
+import com.google.android.exoplayer2.testutil.FakeMediaChunkIterator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+/** Unit test for {@link BolaTrackSelection}. */
+@RunWith(AndroidJUnit4.class)
+public final class BolaTrackSelectionTest {
+
+  private static final int MIN_BUFFER_MS = 10_000;
+  private static final int BUFFER_TARGET_MS = 30_000;
+  private static final float BANDWIDTH_FRACTION = 0.5f;
+  private static final int MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS = 10_000;
+
+  /**
+   * Factor between bitrates is always the same (=2.2). With the buffer levels above, format1 is
+   * selected below ~14.3s of buffer, format2 between ~14.3s and ~24.3s, and format3 above.
+   */
+  private static final Format format1 =
+      createVideoFormat(/* bitrate= */ 500, /* width= */ 320, /* height= */ 240);
+
+  private static final Format format2 =
+      createVideoFormat(/* bitrate= */ 1100, /* width= */ 640, /* height= */ 480);
+  private static final Format format3 =
+      createVideoFormat(/* bitrate= */ 2420, /* width= */ 960, /* height= */ 720);
+
+  private static final MediaChunkIterator[] THREE_EMPTY_MEDIA_CHUNK_ITERATORS =
+      new MediaChunkIterator[] {
+        MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY
+      };
+
+  @Mock private BandwidthMeter mockBandwidthMeter;
+  private FakeClock fakeClock;
+  private TrackSelection trackSelection;
+
+  @Before
+  public void setUp() {
+    initMocks(this);
+    fakeClock = new FakeClock(/* initialTimeMs= */ 0);
+    trackSelection =
+        new BolaTrackSelection.Factory(
+                MIN_BUFFER_MS,
+                BUFFER_TARGET_MS,
+                BANDWIDTH_FRACTION,
+                MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+                /* minTimeBetweenBufferReevaluationMs= */ 2000,
+                fakeClock)
+            .createTrackSelections(
+                new TrackSelection.Definition[] {
+                  new TrackSelection.Definition(
+                      new TrackGroup(format1, format2, format3), /* tracks= */ 0, 1, 2)
+                },
+                mockBandwidthMeter)[0];
+    trackSelection.enable();
+  }
+
+  @Test
+  public void updateSelectedTrack_usesBandwidthEstimateForInitialSelection() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format2));
+
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_inSteadyState_selectsUsingBufferLevel() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format3));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+    updateSelectedTrack(/* bufferedDurationMs= */ BUFFER_TARGET_MS);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+
+    updateSelectedTrack(/* bufferedDurationMs= */ 20_000);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+
+    updateSelectedTrack(/* bufferedDurationMs= */ MIN_BUFFER_MS);
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+  }
+
+  @Test
+  public void updateSelectedTrack_withLargeBufferAndLowBandwidth_doesNotSwitchUp() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format1));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+
+    updateSelectedTrack(/* bufferedDurationMs= */ BUFFER_TARGET_MS);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_withLargeNextChunks_usesChunkSizes() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format2));
+    // The next chunks of format2 and format3 are three times larger than their nominal bitrates.
+    MediaChunkIterator[] mediaChunkIterators =
+        new MediaChunkIterator[] {
+          createChunkIterator(/* bitrate= */ 3 * format3.bitrate),
+          createChunkIterator(/* bitrate= */ 3 * format2.bitrate),
+          createChunkIterator(format1.bitrate)
+        };
+
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        mediaChunkIterators);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+  }
+
+  @Test
+  public void evaluateQueueSize_discardsChunksBelowBufferBasedSelection() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format3));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+    updateSelectedTrack(/* bufferedDurationMs= */ BUFFER_TARGET_MS);
+    List<FakeMediaChunk> queue = new ArrayList<>();
+    queue.add(new FakeMediaChunk(format1, /* startTimeUs= */ 0, /* endTimeUs= */ 10_000_000));
+    queue.add(
+        new FakeMediaChunk(format1, /* startTimeUs= */ 10_000_000, /* endTimeUs= */ 20_000_000));
+    queue.add(
+        new FakeMediaChunk(format1, /* startTimeUs= */ 20_000_000, /* endTimeUs= */ 30_000_000));
+
+    int queueSize = trackSelection.evaluateQueueSize(/* playbackPositionUs= */ 0, queue);
+
+    // The first two chunks are kept, because the buffer level at their start is too low to select
+    // a track of higher quality.
+    assertThat(queueSize).isEqualTo(2);
+  }
+
+  @Test
+  public void evaluateQueueSize_withLowBandwidth_keepsQueue() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format1));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+    updateSelectedTrack(/* bufferedDurationMs= */ BUFFER_TARGET_MS);
+    List<FakeMediaChunk> queue = new ArrayList<>();
+    queue.add(new FakeMediaChunk(format1, /* startTimeUs= */ 0, /* endTimeUs= */ 10_000_000));
+    queue.add(
+        new FakeMediaChunk(format1, /* startTimeUs= */ 10_000_000, /* endTimeUs= */ 20_000_000));
+    queue.add(
+        new FakeMediaChunk(format1, /* startTimeUs= */ 20_000_000, /* endTimeUs= */ 30_000_000));
+
+    int queueSize = trackSelection.evaluateQueueSize(/* playbackPositionUs= */ 0, queue);
+
+    assertThat(queueSize).isEqualTo(3);
+  }
+
+  private void updateSelectedTrack(long bufferedDurationMs) {
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ C.msToUs(bufferedDurationMs),
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        THREE_EMPTY_MEDIA_CHUNK_ITERATORS);
+  }
+
+  private static FakeMediaChunkIterator createChunkIterator(int bitrate) {
+    // A single chunk with a duration of 10 seconds.
+    return new FakeMediaChunkIterator(
+        /* chunkTimeBoundariesSec= */ new long[] {0, 10},
+        /* chunkLengths= */ new long[] {bitrate * 10L / C.BITS_PER_BYTE});
+  }
+
+  private static Format createVideoFormat(int bitrate, int width, int height) {
+    return Format.createVideoSampleFormat(
+        /* id= */ null,
+        /* sampleMimeType= */ MimeTypes.VIDEO_H264,
+        /* codecs= */ null,
+        /* bitrate= */ bitrate,
+        /* maxInputSize= */ Format.NO_VALUE,
+        /* width= */ width,
+        /* height= */ height,
+        /* frameRate= */ Format.NO_VALUE,
+        /* initializationData= */ null,
+        /* drmInitData= */ null);
+  }
+
+  private static long getBitrateEstimateEnoughFor(Format format) {
+    return (long) (format.bitrate / BANDWIDTH_FRACTION) + 1;
+  }
+}
@@ -28,6 +28,8 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.testutil.FakeClock;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
@@ -557,6 +559,162 @@ public final class DefaultBandwidthMeterTest {
     assertThat(initialEstimateWithoutBuilder).isLessThan(50_000_000L);
   }
 
+  @Test
+  public void bitrateEstimateStore_providesInitialEstimateOfNextSession() {
+    setActiveNetworkInfo(networkInfo4g);
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    BitrateEstimateStore bitrateEstimateStore =
+        new SharedPreferencesBitrateEstimateStore(ApplicationProvider.getApplicationContext());
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBitrateEstimateStore(bitrateEstimateStore)
+            .setClock(clock)
+            .build();
+    long initialEstimate = bandwidthMeter.getBitrateEstimate();
+    long[] bitrateEstimates = simulateTransfers(bandwidthMeter, clock);
+    // Switching to another network type stores the latest estimate.
+    bandwidthMeter.setNetworkTypeOverride(C.NETWORK_TYPE_WIFI);
+
+    DefaultBandwidthMeter nextSessionBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBitrateEstimateStore(bitrateEstimateStore)
+            .build();
+
+    long lastEstimate = bitrateEstimates[SIMULATED_TRANSFER_COUNT - 1];
+    assertThat(lastEstimate).isNotEqualTo(initialEstimate);
+    assertThat(nextSessionBandwidthMeter.getBitrateEstimate()).isEqualTo(lastEstimate);
+    assertThat(bitrateEstimateStore.getBitrateEstimate(C.NETWORK_TYPE_2G))
+        .isEqualTo(BandwidthEstimator.NO_ESTIMATE);
+  }
+
+  @Test
+  public void bitrateEstimateStore_initialEstimateSetByApp_takesPrecedence() {
+    setActiveNetworkInfo(networkInfo4g);
+    BitrateEstimateStore bitrateEstimateStore =
+        new SharedPreferencesBitrateEstimateStore(ApplicationProvider.getApplicationContext());
+    bitrateEstimateStore.setBitrateEstimate(
+        C.NETWORK_TYPE_4G, /* bitrateEstimate= */ 1000, /* timeMs= */ System.currentTimeMillis());
+
+    DefaultBandwidthMeter bandwidthMeterWithInitialEstimate =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBitrateEstimateStore(bitrateEstimateStore)
+            .setInitialBitrateEstimate(123456789)
+            .build();
+    DefaultBandwidthMeter bandwidthMeterWith4gInitialEstimate =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBitrateEstimateStore(bitrateEstimateStore)
+            .setInitialBitrateEstimate(C.NETWORK_TYPE_4G, 123456789)
+            .build();
+    DefaultBandwidthMeter bandwidthMeterWithWifiInitialEstimate =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBitrateEstimateStore(bitrateEstimateStore)
+            .setInitialBitrateEstimate(C.NETWORK_TYPE_WIFI, 123456789)
+            .build();
+
+    assertThat(bandwidthMeterWithInitialEstimate.getBitrateEstimate()).isEqualTo(123456789);
+    assertThat(bandwidthMeterWith4gInitialEstimate.getBitrateEstimate()).isEqualTo(123456789);
+    assertThat(bandwidthMeterWithWifiInitialEstimate.getBitrateEstimate()).isEqualTo(1000);
+  }
+
+  @Test
+  public void bitrateEstimateStore_estimateOlderThanMaxAge_isIgnored() {
+    setActiveNetworkInfo(networkInfo4g);
+    BitrateEstimateStore bitrateEstimateStore =
+        new SharedPreferencesBitrateEstimateStore(ApplicationProvider.getApplicationContext());
+    long initialEstimate =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .build()
+            .getBitrateEstimate();
+    bitrateEstimateStore.setBitrateEstimate(
+        C.NETWORK_TYPE_4G,
+        /* bitrateEstimate= */ 1000,
+        /* timeMs= */ System.currentTimeMillis() - 60_000);
+
+    DefaultBandwidthMeter bandwidthMeterWithShortMaxAge =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBitrateEstimateStore(bitrateEstimateStore)
+            .setMaxStoredBitrateEstimateAgeMs(30_000)
+            .build();
+    DefaultBandwidthMeter bandwidthMeterWithDefaultMaxAge =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBitrateEstimateStore(bitrateEstimateStore)
+            .build();
+
+    assertThat(bandwidthMeterWithShortMaxAge.getBitrateEstimate()).isEqualTo(initialEstimate);
+    assertThat(bandwidthMeterWithDefaultMaxAge.getBitrateEstimate()).isEqualTo(1000);
+  }
+
+  @Test
+  public void bandwidthEstimator_isUsedForEstimates() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    BandwidthEstimator bandwidthEstimator =
+        new BandwidthEstimator() {
+          private long sampleCount;
+
+          @Override
+          public void addSample(long bytesTransferred, long elapsedTimeMs, long nowMs) {
+            sampleCount++;
+          }
+
+          @Override
+          public long getBitrateEstimate(long nowMs) {
+            return sampleCount * 1000;
+          }
+
+          @Override
+          public void reset() {
+            sampleCount = 0;
+          }
+        };
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBandwidthEstimator(bandwidthEstimator)
+            .setClock(clock)
+            .build();
+
+    long[] bitrateEstimates = simulateTransfers(bandwidthMeter, clock);
+
+    assertThat(bitrateEstimates[SIMULATED_TRANSFER_COUNT - 1]).isEqualTo(100_000);
+  }
+
+  @Test
+  public void transferLatency_isReportedToBandwidthEstimator() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    List<Long> latencies = new ArrayList<>();
+    BandwidthEstimator bandwidthEstimator =
+        new BandwidthEstimator() {
+          @Override
+          public void addSample(long bytesTransferred, long elapsedTimeMs, long nowMs) {}
+
+          @Override
+          public void addLatencySample(long latencyMs, long nowMs) {
+            latencies.add(latencyMs);
+          }
+
+          @Override
+          public long getBitrateEstimate(long nowMs) {
+            return NO_ESTIMATE;
+          }
+
+          @Override
+          public void reset() {}
+        };
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBandwidthEstimator(bandwidthEstimator)
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://dummy.com"));
+
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(150);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertThat(latencies).containsExactly(150L);
+  }
+
   private void setActiveNetworkInfo(NetworkInfo networkInfo) {
     Shadows.shadowOf(connectivityManager).setActiveNetworkInfo(networkInfo);
   }
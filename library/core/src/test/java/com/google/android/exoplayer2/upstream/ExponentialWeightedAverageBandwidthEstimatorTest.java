@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link ExponentialWeightedAverageBandwidthEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public final class ExponentialWeightedAverageBandwidthEstimatorTest {
+
+  @Test
+  public void getBitrateEstimate_withoutSamples_returnsNoEstimate() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator();
+
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0))
+        .isEqualTo(BandwidthEstimator.NO_ESTIMATE);
+  }
+
+  @Test
+  public void getBitrateEstimate_withConstantBitrate_returnsBitrate() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator();
+
+    // 125_000 bytes per second = 1 Mbps.
+    estimator.addSample(/* bytesTransferred= */ 125_000, /* elapsedTimeMs= */ 1000, /* nowMs= */ 0);
+    estimator.addSample(/* bytesTransferred= */ 62_500, /* elapsedTimeMs= */ 500, /* nowMs= */ 0);
+
+    long bitrateEstimate = estimator.getBitrateEstimate(/* nowMs= */ 0);
+    assertThat((double) bitrateEstimate).isWithin(1).of(1_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_afterBandwidthDrop_followsFastAverage() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator(
+            /* fastHalfLifeMs= */ 2000, /* slowHalfLifeMs= */ 5000, /* minSampleBytes= */ 0);
+    for (int i = 0; i < 100; i++) {
+      estimator.addSample(/* bytesTransferred= */ 1_250_000, /* elapsedTimeMs= */ 1000, 0);
+    }
+
+    estimator.addSample(/* bytesTransferred= */ 125_000, /* elapsedTimeMs= */ 2000, 0);
+
+    // After one fast half-life at 0.5 Mbps, the fast average is halfway between 10 and 0.5 Mbps.
+    long bitrateEstimate = estimator.getBitrateEstimate(/* nowMs= */ 0);
+    assertThat((double) bitrateEstimate).isWithin(1000).of(5_250_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_afterBandwidthBurst_followsSlowAverage() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator(
+            /* fastHalfLifeMs= */ 2000, /* slowHalfLifeMs= */ 5000, /* minSampleBytes= */ 0);
+    for (int i = 0; i < 100; i++) {
+      estimator.addSample(/* bytesTransferred= */ 125_000, /* elapsedTimeMs= */ 1000, 0);
+    }
+
+    estimator.addSample(/* bytesTransferred= */ 12_500_000, /* elapsedTimeMs= */ 5000, 0);
+
+    // After one slow half-life at 20 Mbps, the slow average is halfway between 1 and 20 Mbps.
+    long bitrateEstimate = estimator.getBitrateEstimate(/* nowMs= */ 0);
+    assertThat((double) bitrateEstimate).isWithin(1000).of(10_500_000);
+  }
+
+  @Test
+  public void addSample_withFewBytes_isIgnored() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator();
+
+    estimator.addSample(/* bytesTransferred= */ 1000, /* elapsedTimeMs= */ 1000, /* nowMs= */ 0);
+
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0))
+        .isEqualTo(BandwidthEstimator.NO_ESTIMATE);
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link FileDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class FileDataSourceTest {
+
+  private static final int FILE_LENGTH = 1024;
+
+  private File tempFolder;
+  private byte[] data;
+  private Uri uri;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    data = TestUtil.buildTestData(FILE_LENGTH);
+    uri = writeFile("file", data);
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void read_readsFileContent() throws Exception {
+    TestUtil.assertDataSourceContent(
+        new FileDataSource(), new DataSpec(uri), data, /* expectKnownLength= */ true);
+  }
+
+  @Test
+  public void read_memoryMapped_readsFileContent() throws Exception {
+    FileDataSource dataSource =
+        new FileDataSource(/* memoryMapped= */ true, /* channelCache= */ null);
+
+    TestUtil.assertDataSourceContent(
+        dataSource, new DataSpec(uri), data, /* expectKnownLength= */ true);
+  }
+
+  @Test
+  public void read_memoryMappedWithPositionAndLength_readsRange() throws Exception {
+    FileDataSource dataSource =
+        new FileDataSource(/* memoryMapped= */ true, /* channelCache= */ null);
+    DataSpec dataSpec =
+        new DataSpec(uri, /* absoluteStreamPosition= */ 100, /* length= */ 200, /* key= */ null);
+
+    TestUtil.assertDataSourceContent(
+        dataSource, dataSpec, Arrays.copyOfRange(data, 100, 300), /* expectKnownLength= */ true);
+  }
+
+  @Test
+  public void read_memoryMappedWithLengthBeyondEndOfFile_endsAtEndOfFile() throws Exception {
+    FileDataSource dataSource =
+        new FileDataSource(/* memoryMapped= */ true, /* channelCache= */ null);
+    DataSpec dataSpec =
+        new DataSpec(uri, /* absoluteStreamPosition= */ 1000, /* length= */ 100, /* key= */ null);
+
+    assertThat(dataSource.open(dataSpec)).isEqualTo(100);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 1000, FILE_LENGTH));
+  }
+
+  @Test
+  public void open_memoryMappedWithPositionBeyondEndOfFile_throwsException() throws Exception {
+    FileDataSource dataSource =
+        new FileDataSource(/* memoryMapped= */ true, /* channelCache= */ null);
+
+    try {
+      dataSource.open(
+          new DataSpec(
+              uri,
+              /* absoluteStreamPosition= */ FILE_LENGTH + 1,
+              /* length= */ C.LENGTH_UNSET,
+              /* key= */ null));
+      fail();
+    } catch (FileDataSource.FileDataSourceException e) {
+      // Expected.
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void read_withChannelCache_reusesChannelUntilEvicted() throws Exception {
+    FileChannelCache channelCache = new FileChannelCache(/* maxOpenChannels= */ 1);
+    Uri otherUri = writeFile("other", TestUtil.buildTestData(FILE_LENGTH, /* seed= */ 1));
+    FileDataSource dataSource1 = new FileDataSource(/* memoryMapped= */ true, channelCache);
+    FileDataSource dataSource2 = new FileDataSource(/* memoryMapped= */ true, channelCache);
+
+    dataSource1.open(new DataSpec(uri));
+    dataSource2.open(new DataSpec(uri));
+    int idleChannelCountWhileInUse = channelCache.getIdleChannelCount();
+    dataSource1.close();
+    dataSource2.close();
+    int idleChannelCountAfterClose = channelCache.getIdleChannelCount();
+    dataSource1.open(new DataSpec(otherUri));
+    dataSource1.close();
+
+    assertThat(idleChannelCountWhileInUse).isEqualTo(0);
+    assertThat(idleChannelCountAfterClose).isEqualTo(1);
+    // Reading the other file evicts the least recently used channel.
+    assertThat(channelCache.getIdleChannelCount()).isEqualTo(1);
+    TestUtil.assertDataSourceContent(
+        dataSource2, new DataSpec(uri), data, /* expectKnownLength= */ true);
+  }
+
+  @Test
+  public void clear_closesChannelOnlyAfterRelease() throws Exception {
+    FileChannelCache channelCache = new FileChannelCache();
+    FileDataSource dataSource = new FileDataSource(/* memoryMapped= */ true, channelCache);
+    dataSource.open(new DataSpec(uri));
+
+    channelCache.clear();
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(channelCache.getIdleChannelCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void onSpanTouched_withRenamedSpanFile_reusesChannelForNewPath() throws Exception {
+    FileChannelCache channelCache = new FileChannelCache();
+    FileDataSource dataSource = new FileDataSource(/* memoryMapped= */ true, channelCache);
+    File file = new File(tempFolder, "file");
+    File renamedFile = new File(tempFolder, "renamed");
+    dataSource.open(new DataSpec(uri));
+    dataSource.close();
+
+    assertThat(file.renameTo(renamedFile)).isTrue();
+    channelCache.onSpanTouched(
+        mock(Cache.class), createCacheSpan(file), createCacheSpan(renamedFile));
+
+    TestUtil.assertDataSourceContent(
+        dataSource, new DataSpec(Uri.fromFile(renamedFile)), data, /* expectKnownLength= */ true);
+    assertThat(channelCache.getIdleChannelCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void onSpanRemoved_closesChannel() throws Exception {
+    FileChannelCache channelCache = new FileChannelCache();
+    FileDataSource dataSource = new FileDataSource(/* memoryMapped= */ true, channelCache);
+    dataSource.open(new DataSpec(uri));
+    dataSource.close();
+
+    channelCache.onSpanRemoved(mock(Cache.class), createCacheSpan(new File(tempFolder, "file")));
+
+    assertThat(channelCache.getIdleChannelCount()).isEqualTo(0);
+  }
+
+  private Uri writeFile(String name, byte[] data) throws IOException {
+    File file = new File(tempFolder, name);
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(data);
+    }
+    return Uri.fromFile(file);
+  }
+
+  private static CacheSpan createCacheSpan(File file) {
+    return new CacheSpan(
+        /* key= */ "key",
+        /* position= */ 0,
+        /* length= */ FILE_LENGTH,
+        /* lastTouchTimestamp= */ 0,
+        file);
+  }
+}
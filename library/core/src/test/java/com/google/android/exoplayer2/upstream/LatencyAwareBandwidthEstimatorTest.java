@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link LatencyAwareBandwidthEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public final class LatencyAwareBandwidthEstimatorTest {
+
+  @Test
+  public void getBitrateEstimate_withoutLatency_returnsThroughput() {
+    LatencyAwareBandwidthEstimator estimator = new LatencyAwareBandwidthEstimator();
+
+    estimator.addSample(/* bytesTransferred= */ 125_000, /* elapsedTimeMs= */ 1000, /* nowMs= */ 0);
+
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0)).isEqualTo(1_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_withLatency_includesLatencyInTransferTime() {
+    LatencyAwareBandwidthEstimator estimator = new LatencyAwareBandwidthEstimator();
+
+    estimator.addLatencySample(/* latencyMs= */ 1000, /* nowMs= */ 0);
+    estimator.addSample(/* bytesTransferred= */ 125_000, /* elapsedTimeMs= */ 1000, /* nowMs= */ 0);
+
+    // Loading 1 Mbit takes one second of latency plus one second of transfer.
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0)).isEqualTo(500_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_averagesLatencies() {
+    LatencyAwareBandwidthEstimator estimator =
+        new LatencyAwareBandwidthEstimator(
+            new SlidingPercentileBandwidthEstimator(/* maxWeight= */ 2000),
+            /* smoothingFactor= */ 0.5f);
+
+    estimator.addLatencySample(/* latencyMs= */ 0, /* nowMs= */ 0);
+    estimator.addLatencySample(/* latencyMs= */ 2000, /* nowMs= */ 0);
+    estimator.addSample(/* bytesTransferred= */ 125_000, /* elapsedTimeMs= */ 1000, /* nowMs= */ 0);
+
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0)).isEqualTo(500_000);
+  }
+
+  @Test
+  public void reset_clearsLatency() {
+    LatencyAwareBandwidthEstimator estimator = new LatencyAwareBandwidthEstimator();
+    estimator.addLatencySample(/* latencyMs= */ 1000, /* nowMs= */ 0);
+    estimator.addSample(/* bytesTransferred= */ 125_000, /* elapsedTimeMs= */ 1000, /* nowMs= */ 0);
+
+    estimator.reset();
+    estimator.addSample(/* bytesTransferred= */ 125_000, /* elapsedTimeMs= */ 1000, /* nowMs= */ 0);
+
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0)).isEqualTo(1_000_000);
+  }
+}
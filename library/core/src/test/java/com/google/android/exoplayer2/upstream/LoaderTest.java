@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.ConditionVariable;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit test for {@link Loader}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class LoaderTest {
+
+  private static final String THREAD_NAME_PREFIX = "LoaderTest:";
+  private static final long TIMEOUT_MS = 10_000;
+
+  private ExecutorService sharedExecutor;
+
+  @Before
+  public void setUp() {
+    sharedExecutor =
+        Util.newBoundedThreadPool(
+            THREAD_NAME_PREFIX, /* maxThreadCount= */ 1, /* keepAliveMs= */ 1_000);
+  }
+
+  @After
+  public void tearDown() {
+    sharedExecutor.shutdown();
+  }
+
+  @Test
+  public void startLoading_withSharedExecutor_loadsOnSharedThread() throws Exception {
+    Loader loader1 = new Loader("Loader1", sharedExecutor);
+    Loader loader2 = new Loader("Loader2", sharedExecutor);
+    ThreadRecordingLoadable loadable1 = new ThreadRecordingLoadable();
+    ThreadRecordingLoadable loadable2 = new ThreadRecordingLoadable();
+    RecordingCallback callback1 = new RecordingCallback();
+    RecordingCallback callback2 = new RecordingCallback();
+
+    loader1.startLoading(loadable1, callback1, /* defaultMinRetryCount= */ 0);
+    loader2.startLoading(loadable2, callback2, /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> callback1.completed && callback2.completed);
+    loader1.release();
+    loader2.release();
+
+    assertThat(loadable1.thread).isNotNull();
+    assertThat(loadable1.thread.getName()).startsWith(THREAD_NAME_PREFIX);
+    assertThat(loadable2.thread).isSameInstanceAs(loadable1.thread);
+  }
+
+  @Test
+  public void release_withSharedExecutor_callsReleaseCallbackAfterCanceledLoadEnds()
+      throws Exception {
+    Loader loader = new Loader("Loader", sharedExecutor);
+    BlockingLoadable loadable = new BlockingLoadable();
+    loader.startLoading(loadable, new RecordingCallback(), /* defaultMinRetryCount= */ 0);
+    loadable.loadStarted.block();
+
+    boolean[] loadEndedBeforeRelease = new boolean[1];
+    ConditionVariable released = new ConditionVariable();
+    loader.release(
+        () -> {
+          loadEndedBeforeRelease[0] = loadable.loadEnded;
+          released.open();
+        });
+
+    assertThat(released.block(TIMEOUT_MS)).isTrue();
+    assertThat(loadEndedBeforeRelease[0]).isTrue();
+  }
+
+  @Test
+  public void release_withSharedExecutor_queuesReleaseCallbackBehindLoadOfSameLoader()
+      throws Exception {
+    Loader loader1 = new Loader("Loader1", sharedExecutor);
+    Loader loader2 = new Loader("Loader2", sharedExecutor);
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    ConditionVariable allowLoad1ToEnd = new ConditionVariable();
+    GatedLoadable loadable1 = new GatedLoadable(allowLoad1ToEnd, () -> events.add("load1"));
+    ThreadRecordingLoadable loadable2 = new ThreadRecordingLoadable(() -> events.add("load2"));
+    ConditionVariable released = new ConditionVariable();
+    loader1.startLoading(loadable1, new RecordingCallback(), /* defaultMinRetryCount= */ 0);
+    loadable1.loadStarted.block();
+
+    loader1.release(
+        () -> {
+          events.add("release1");
+          released.open();
+        });
+    loader2.startLoading(loadable2, new RecordingCallback(), /* defaultMinRetryCount= */ 0);
+    allowLoad1ToEnd.open();
+
+    assertThat(released.block(TIMEOUT_MS)).isTrue();
+    loader2.release();
+    // The release task of the first loader is held back until its load has ended, rather than
+    // being queued on the shared executor ahead of the load of the second loader.
+    assertThat(events).containsExactly("load1", "load2", "release1").inOrder();
+  }
+
+  @Test
+  public void cancelLoading_withSharedExecutor_doesNotInterruptNextLoadOnThread()
+      throws Exception {
+    InterruptPreservingExecutor executor = new InterruptPreservingExecutor();
+    Loader loader = new Loader("Loader", executor);
+    InterruptIgnoringLoadable loadable1 = new InterruptIgnoringLoadable();
+    ThreadRecordingLoadable loadable2 = new ThreadRecordingLoadable();
+    RecordingCallback callback1 = new RecordingCallback();
+    RecordingCallback callback2 = new RecordingCallback();
+    loader.startLoading(loadable1, callback1, /* defaultMinRetryCount= */ 0);
+    loadable1.loadStarted.block();
+
+    // The first load is interrupted by the cancellation, but completes normally regardless, as if
+    // the interrupt raced with its completion.
+    loader.cancelLoading();
+    runMainLooperUntil(() -> callback1.canceled);
+    loader.startLoading(loadable2, callback2, /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> callback2.completed);
+    loader.release();
+    executor.release();
+
+    assertThat(loadable1.wasInterrupted).isTrue();
+    assertThat(loadable2.thread).isSameInstanceAs(loadable1.thread);
+    assertThat(loadable2.wasInterrupted).isFalse();
+  }
+
+  private static void runMainLooperUntil(Condition condition) throws Exception {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!condition.isTrue()) {
+      if (System.currentTimeMillis() > deadlineMs) {
+        throw new TimeoutException();
+      }
+      shadowOf(Looper.getMainLooper()).idle();
+      Thread.sleep(1);
+    }
+  }
+
+  private interface Condition {
+    boolean isTrue();
+  }
+
+  private static final class ThreadRecordingLoadable implements Loader.Loadable {
+
+    private final Runnable onLoad;
+
+    @Nullable public volatile Thread thread;
+    public volatile boolean wasInterrupted;
+
+    public ThreadRecordingLoadable() {
+      this(/* onLoad= */ () -> {});
+    }
+
+    public ThreadRecordingLoadable(Runnable onLoad) {
+      this.onLoad = onLoad;
+    }
+
+    @Override
+    public void cancelLoad() {}
+
+    @Override
+    public void load() {
+      thread = Thread.currentThread();
+      wasInterrupted = Thread.currentThread().isInterrupted();
+      onLoad.run();
+    }
+  }
+
+  private static final class BlockingLoadable implements Loader.Loadable {
+
+    public final ConditionVariable loadStarted;
+    private final ConditionVariable loadCanceled;
+
+    public volatile boolean loadEnded;
+
+    public BlockingLoadable() {
+      loadStarted = new ConditionVariable();
+      loadCanceled = new ConditionVariable();
+    }
+
+    @Override
+    public void cancelLoad() {
+      loadCanceled.open();
+    }
+
+    @Override
+    public void load() {
+      loadStarted.open();
+      loadCanceled.block();
+      loadEnded = true;
+    }
+  }
+
+  /** A loadable that ignores cancellation, and ends once its gate is opened. */
+  private static final class GatedLoadable implements Loader.Loadable {
+
+    public final ConditionVariable loadStarted;
+    private final ConditionVariable gate;
+    private final Runnable onLoadEnded;
+
+    public GatedLoadable(ConditionVariable gate, Runnable onLoadEnded) {
+      this.gate = gate;
+      this.onLoadEnded = onLoadEnded;
+      loadStarted = new ConditionVariable();
+    }
+
+    @Override
+    public void cancelLoad() {}
+
+    @Override
+    public void load() {
+      loadStarted.open();
+      gate.block();
+      onLoadEnded.run();
+    }
+  }
+
+  /** A loadable that waits to be interrupted by cancellation, and then completes normally. */
+  private static final class InterruptIgnoringLoadable implements Loader.Loadable {
+
+    public final ConditionVariable loadStarted;
+
+    @Nullable public volatile Thread thread;
+    public volatile boolean wasInterrupted;
+
+    public InterruptIgnoringLoadable() {
+      loadStarted = new ConditionVariable();
+    }
+
+    @Override
+    public void cancelLoad() {}
+
+    @Override
+    public void load() {
+      thread = Thread.currentThread();
+      loadStarted.open();
+      long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+      while (!Thread.currentThread().isInterrupted()) {
+        if (System.currentTimeMillis() > deadlineMs) {
+          return;
+        }
+        Thread.yield();
+      }
+      // Return without clearing the interrupt, so that it's still pending when the task ends.
+      wasInterrupted = true;
+    }
+  }
+
+  /**
+   * A single thread executor that, unlike {@link java.util.concurrent.ThreadPoolExecutor}, doesn't
+   * clear the interrupted status of its thread between tasks.
+   */
+  private static final class InterruptPreservingExecutor implements Executor {
+
+    private final ConcurrentLinkedQueue<Runnable> tasks;
+
+    private volatile boolean released;
+
+    public InterruptPreservingExecutor() {
+      tasks = new ConcurrentLinkedQueue<>();
+      new Thread(this::runTasks, THREAD_NAME_PREFIX + "InterruptPreserving").start();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    public void release() {
+      released = true;
+    }
+
+    private void runTasks() {
+      while (!released) {
+        @Nullable Runnable task = tasks.poll();
+        if (task != null) {
+          task.run();
+        } else {
+          Thread.yield();
+        }
+      }
+    }
+  }
+
+  private static final class RecordingCallback implements Loader.Callback<Loader.Loadable> {
+
+    public boolean completed;
+    public boolean canceled;
+
+    @Override
+    public void onLoadCompleted(
+        Loader.Loadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      completed = true;
+    }
+
+    @Override
+    public void onLoadCanceled(
+        Loader.Loadable loadable, long elapsedRealtimeMs, long loadDurationMs, boolean released) {
+      canceled = true;
+    }
+
+    @Override
+    public Loader.LoadErrorAction onLoadError(
+        Loader.Loadable loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        IOException error,
+        int errorCount) {
+      return Loader.DONT_RETRY;
+    }
+  }
+}
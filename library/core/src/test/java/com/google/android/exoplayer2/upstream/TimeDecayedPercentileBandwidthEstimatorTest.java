@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link TimeDecayedPercentileBandwidthEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public final class TimeDecayedPercentileBandwidthEstimatorTest {
+
+  @Test
+  public void getBitrateEstimate_withoutSamples_returnsNoEstimate() {
+    TimeDecayedPercentileBandwidthEstimator estimator =
+        new TimeDecayedPercentileBandwidthEstimator();
+
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0))
+        .isEqualTo(BandwidthEstimator.NO_ESTIMATE);
+  }
+
+  @Test
+  public void getBitrateEstimate_withEqualSampleAges_returnsWeightedMedian() {
+    TimeDecayedPercentileBandwidthEstimator estimator =
+        new TimeDecayedPercentileBandwidthEstimator();
+
+    estimator.addSample(/* bytesTransferred= */ 10_000, /* elapsedTimeMs= */ 80, /* nowMs= */ 0);
+    estimator.addSample(/* bytesTransferred= */ 40_000, /* elapsedTimeMs= */ 160, /* nowMs= */ 0);
+    estimator.addSample(/* bytesTransferred= */ 10_000, /* elapsedTimeMs= */ 20, /* nowMs= */ 0);
+
+    // The 2 Mbps sample has half of the total weight.
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0)).isEqualTo(2_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_prefersRecentSamples() {
+    TimeDecayedPercentileBandwidthEstimator estimator =
+        new TimeDecayedPercentileBandwidthEstimator(
+            /* maxWeight= */ 10_000, /* halfLifeMs= */ 1000, /* percentile= */ 0.5f);
+    estimator.addSample(/* bytesTransferred= */ 40_000, /* elapsedTimeMs= */ 40, /* nowMs= */ 0);
+    estimator.addSample(/* bytesTransferred= */ 10_000, /* elapsedTimeMs= */ 80, /* nowMs= */ 0);
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0)).isEqualTo(8_000_000);
+
+    estimator.addSample(
+        /* bytesTransferred= */ 10_000, /* elapsedTimeMs= */ 80, /* nowMs= */ 3000);
+
+    // The weight of the older samples has decayed to an eighth.
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 3000)).isEqualTo(1_000_000);
+  }
+
+  @Test
+  public void getBitrateEstimate_discardsVeryOldSamples() {
+    TimeDecayedPercentileBandwidthEstimator estimator =
+        new TimeDecayedPercentileBandwidthEstimator(
+            /* maxWeight= */ 10_000, /* halfLifeMs= */ 1000, /* percentile= */ 1f);
+    estimator.addSample(/* bytesTransferred= */ 40_000, /* elapsedTimeMs= */ 40, /* nowMs= */ 0);
+    estimator.addSample(
+        /* bytesTransferred= */ 10_000, /* elapsedTimeMs= */ 80, /* nowMs= */ 10_000);
+
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 10_000)).isEqualTo(1_000_000);
+  }
+
+  @Test
+  public void reset_clearsSamples() {
+    TimeDecayedPercentileBandwidthEstimator estimator =
+        new TimeDecayedPercentileBandwidthEstimator();
+    estimator.addSample(/* bytesTransferred= */ 10_000, /* elapsedTimeMs= */ 80, /* nowMs= */ 0);
+
+    estimator.reset();
+
+    assertThat(estimator.getBitrateEstimate(/* nowMs= */ 0))
+        .isEqualTo(BandwidthEstimator.NO_ESTIMATE);
+  }
+}
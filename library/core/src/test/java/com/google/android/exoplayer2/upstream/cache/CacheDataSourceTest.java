@@ -28,8 +28,10 @@ import com.google.android.exoplayer2.testutil.CacheAsserts;
 import com.google.android.exoplayer2.testutil.FakeDataSet.FakeData;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
 import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 import java.io.IOException;
@@ -501,6 +503,117 @@ public final class CacheDataSourceTest {
     cacheDataSource.close();
   }
 
+  @Test
+  public void testReadsRepeatedlyReadSpansFromMemory() throws Exception {
+    assertCacheAndRead(boundedDataSpec, /* unknownLength= */ false);
+    RecordingEventListener eventListener = new RecordingEventListener();
+    MemorySpanCache memorySpanCache = new MemorySpanCache();
+    CacheDataSource cacheDataSource =
+        createCacheDataSourceWithMemorySpanCache(memorySpanCache, eventListener);
+
+    // The first read only marks the spans as candidates. The second read adds them to memory.
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    int memoryHitCountAfterDiskReads = eventListener.memoryHitCount;
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+
+    assertThat(memoryHitCountAfterDiskReads).isEqualTo(0);
+    assertThat(eventListener.memoryHitCount).isEqualTo(4);
+    assertThat(eventListener.memoryMissCount).isEqualTo(8);
+    assertThat(eventListener.memoryBytesRead).isEqualTo((long) TEST_DATA.length);
+    assertThat(eventListener.cachedBytesRead).isEqualTo(3L * TEST_DATA.length);
+    assertThat(memorySpanCache.getSizeBytes()).isEqualTo((long) TEST_DATA.length);
+  }
+
+  @Test
+  public void testReadsPartialSpansFromMemory() throws Exception {
+    assertCacheAndRead(boundedDataSpec, /* unknownLength= */ false);
+    CacheDataSource cacheDataSource =
+        createCacheDataSourceWithMemorySpanCache(
+            new MemorySpanCache(), new RecordingEventListener());
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+
+    CacheAsserts.assertReadData(
+        cacheDataSource,
+        buildDataSpec(/* position= */ 4, /* length= */ 4),
+        Arrays.copyOfRange(TEST_DATA, 4, 8));
+  }
+
+  @Test
+  public void testMemorySpanCacheEvictsLeastRecentlyUsedSpans() throws Exception {
+    assertCacheAndRead(boundedDataSpec, /* unknownLength= */ false);
+    RecordingEventListener eventListener = new RecordingEventListener();
+    MemorySpanCache memorySpanCache =
+        new MemorySpanCache(
+            /* maxSizeBytes= */ 2 * CACHE_FRAGMENT_SIZE,
+            /* maxSpanSizeBytes= */ CACHE_FRAGMENT_SIZE);
+    CacheDataSource cacheDataSource =
+        createCacheDataSourceWithMemorySpanCache(memorySpanCache, eventListener);
+
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+
+    // Only the last two spans, of 3 and 1 bytes, are still held in memory.
+    assertThat(eventListener.memoryHitCount).isEqualTo(2);
+    assertThat(eventListener.memoryBytesRead).isEqualTo(CACHE_FRAGMENT_SIZE + 1L);
+    assertThat(memorySpanCache.getSizeBytes()).isAtMost(2L * CACHE_FRAGMENT_SIZE);
+  }
+
+  @Test
+  public void testReadsTouchedSpansFromMemoryWithLeastRecentlyUsedEvictor() throws Exception {
+    // Without a database provider, the cache renames a span file each time the span is touched.
+    cache.release();
+    cache = new SimpleCache(tempFolder, new LeastRecentlyUsedCacheEvictor(Long.MAX_VALUE));
+    assertCacheAndRead(boundedDataSpec, /* unknownLength= */ false);
+    RecordingEventListener eventListener = new RecordingEventListener();
+    MemorySpanCache memorySpanCache = new MemorySpanCache();
+    CacheDataSource cacheDataSource =
+        createCacheDataSourceWithMemorySpanCache(memorySpanCache, eventListener);
+
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+
+    assertThat(eventListener.memoryHitCount).isEqualTo(4);
+    assertThat(eventListener.memoryBytesRead).isEqualTo((long) TEST_DATA.length);
+    assertThat(memorySpanCache.getSizeBytes()).isEqualTo((long) TEST_DATA.length);
+  }
+
+  @Test
+  public void testMemorySpanCacheDropsSpansRemovedFromCache() throws Exception {
+    assertCacheAndRead(boundedDataSpec, /* unknownLength= */ false);
+    MemorySpanCache memorySpanCache = new MemorySpanCache();
+    CacheDataSource cacheDataSource =
+        createCacheDataSourceWithMemorySpanCache(memorySpanCache, new RecordingEventListener());
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    long sizeBytesBeforeRemoval = memorySpanCache.getSizeBytes();
+
+    CacheUtil.remove(cache, defaultCacheKey);
+
+    assertThat(sizeBytesBeforeRemoval).isEqualTo((long) TEST_DATA.length);
+    assertThat(memorySpanCache.getSizeBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testReadingSpansIntoMemoryIsNotReportedToTransferListeners() throws Exception {
+    assertCacheAndRead(boundedDataSpec, /* unknownLength= */ false);
+    CacheDataSource cacheDataSource =
+        createCacheDataSourceWithMemorySpanCache(
+            new MemorySpanCache(), new RecordingEventListener());
+    CountingTransferListener transferListener = new CountingTransferListener();
+    cacheDataSource.addTransferListener(transferListener);
+
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+    CacheAsserts.assertReadData(cacheDataSource, boundedDataSpec, TEST_DATA);
+
+    assertThat(transferListener.bytesTransferred).isEqualTo(3L * TEST_DATA.length);
+    assertThat(transferListener.transferStartCount).isEqualTo(transferListener.transferEndCount);
+  }
+
   private void assertCacheAndRead(DataSpec dataSpec, boolean unknownLength) throws IOException {
     assertCacheAndRead(dataSpec, unknownLength, /* cacheKeyFactory= */ null);
   }
@@ -615,6 +728,23 @@ public final class CacheDataSourceTest {
         cacheKeyFactory);
   }
 
+  private CacheDataSource createCacheDataSourceWithMemorySpanCache(
+      MemorySpanCache memorySpanCache, CacheDataSource.EventListener eventListener) {
+    upstreamDataSource
+        .getDataSet()
+        .newDefaultData()
+        .appendReadError(new IOException("Shouldn't read from upstream"));
+    return new CacheDataSource(
+        cache,
+        upstreamDataSource,
+        new FileDataSource(),
+        new CacheDataSink(cache, CACHE_FRAGMENT_SIZE),
+        CacheDataSource.FLAG_BLOCK_ON_CACHE,
+        eventListener,
+        /* cacheKeyFactory= */ null,
+        memorySpanCache);
+  }
+
   private DataSpec buildDataSpec(boolean unbounded, @Nullable String key) {
     return buildDataSpec(/* position= */ 0, unbounded ? C.LENGTH_UNSET : TEST_DATA.length, key);
   }
@@ -632,4 +762,54 @@ public final class CacheDataSourceTest {
         DataSpec.FLAG_ALLOW_CACHE_FRAGMENTATION,
         httpRequestHeaders);
   }
+
+  private static final class RecordingEventListener implements CacheDataSource.EventListener {
+
+    public long cachedBytesRead;
+    public int memoryHitCount;
+    public int memoryMissCount;
+    public long memoryBytesRead;
+
+    @Override
+    public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+      this.cachedBytesRead += cachedBytesRead;
+    }
+
+    @Override
+    public void onCacheIgnored(int reason) {}
+
+    @Override
+    public void onMemorySpanCacheRead(
+        int memoryHitCount, int memoryMissCount, long memoryBytesRead) {
+      this.memoryHitCount += memoryHitCount;
+      this.memoryMissCount += memoryMissCount;
+      this.memoryBytesRead += memoryBytesRead;
+    }
+  }
+
+  private static final class CountingTransferListener implements TransferListener {
+
+    public int transferStartCount;
+    public int transferEndCount;
+    public long bytesTransferred;
+
+    @Override
+    public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {}
+
+    @Override
+    public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      transferStartCount++;
+    }
+
+    @Override
+    public void onBytesTransferred(
+        DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+      this.bytesTransferred += bytesTransferred;
+    }
+
+    @Override
+    public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      transferEndCount++;
+    }
+  }
 }
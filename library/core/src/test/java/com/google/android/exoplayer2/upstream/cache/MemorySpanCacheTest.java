@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MemorySpanCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class MemorySpanCacheTest {
+
+  private static final int SPAN_SIZE_BYTES = 10;
+
+  private Cache cache;
+  private MemorySpanCache memorySpanCache;
+
+  @Before
+  public void setUp() {
+    cache = mock(Cache.class);
+    when(cache.isCached(anyString(), anyLong(), anyLong())).thenReturn(true);
+    memorySpanCache =
+        new MemorySpanCache(
+            /* maxSizeBytes= */ 2 * SPAN_SIZE_BYTES, /* maxSpanSizeBytes= */ SPAN_SIZE_BYTES);
+  }
+
+  @Test
+  public void put_addsCacheListenerOncePerKey() {
+    memorySpanCache.put(cache, createSpan("key", /* position= */ 0), new byte[SPAN_SIZE_BYTES]);
+    memorySpanCache.put(
+        cache, createSpan("key", /* position= */ SPAN_SIZE_BYTES), new byte[SPAN_SIZE_BYTES]);
+
+    verify(cache).addListener(eq("key"), any());
+    verify(cache, never()).removeListener(anyString(), any());
+  }
+
+  @Test
+  public void put_evictingLastSpanOfKey_removesCacheListener() {
+    memorySpanCache.put(cache, createSpan("key1", /* position= */ 0), new byte[SPAN_SIZE_BYTES]);
+    memorySpanCache.put(cache, createSpan("key2", /* position= */ 0), new byte[SPAN_SIZE_BYTES]);
+    memorySpanCache.put(
+        cache, createSpan("key2", /* position= */ SPAN_SIZE_BYTES), new byte[SPAN_SIZE_BYTES]);
+
+    verify(cache).removeListener(eq("key1"), any());
+    verify(cache, never()).removeListener(eq("key2"), any());
+    assertThat(memorySpanCache.getSizeBytes()).isEqualTo(2L * SPAN_SIZE_BYTES);
+  }
+
+  @Test
+  public void put_spanNoLongerCached_removesCacheListener() {
+    CacheSpan span = createSpan("key", /* position= */ 0);
+    when(cache.isCached("key", span.position, span.length)).thenReturn(false);
+
+    memorySpanCache.put(cache, span, new byte[SPAN_SIZE_BYTES]);
+
+    verify(cache).removeListener(eq("key"), any());
+    assertThat(memorySpanCache.get(span)).isNull();
+  }
+
+  @Test
+  public void clear_removesAllCacheListeners() {
+    memorySpanCache.put(cache, createSpan("key1", /* position= */ 0), new byte[SPAN_SIZE_BYTES]);
+    memorySpanCache.put(cache, createSpan("key2", /* position= */ 0), new byte[SPAN_SIZE_BYTES]);
+
+    memorySpanCache.clear();
+
+    verify(cache).removeListener(eq("key1"), any());
+    verify(cache).removeListener(eq("key2"), any());
+    assertThat(memorySpanCache.getSizeBytes()).isEqualTo(0);
+  }
+
+  private static CacheSpan createSpan(String key, long position) {
+    return new CacheSpan(key, position, SPAN_SIZE_BYTES);
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link InMemoryPlaybackInstrumentation}. */
+@RunWith(AndroidJUnit4.class)
+public class InMemoryPlaybackInstrumentationTest {
+
+  private InMemoryPlaybackInstrumentation instrumentation;
+
+  @Before
+  public void setUp() {
+    instrumentation = new InMemoryPlaybackInstrumentation();
+  }
+
+  @After
+  public void tearDown() {
+    TraceUtil.setPlaybackInstrumentation(PlaybackInstrumentation.NONE);
+  }
+
+  @Test
+  public void testStageStatistics() {
+    instrumentation.onStageCompleted(PlaybackInstrumentation.STAGE_RENDERER_RENDER, 100);
+    instrumentation.onStageCompleted(PlaybackInstrumentation.STAGE_RENDERER_RENDER, 300);
+    instrumentation.onStageCompleted(PlaybackInstrumentation.STAGE_LOAD, 1000);
+
+    assertThat(instrumentation.getStageCount(PlaybackInstrumentation.STAGE_RENDERER_RENDER))
+        .isEqualTo(2);
+    assertThat(
+            instrumentation.getStageTotalDurationNs(PlaybackInstrumentation.STAGE_RENDERER_RENDER))
+        .isEqualTo(400);
+    assertThat(instrumentation.getStageMaxDurationNs(PlaybackInstrumentation.STAGE_RENDERER_RENDER))
+        .isEqualTo(300);
+    assertThat(instrumentation.getStageCount(PlaybackInstrumentation.STAGE_LOAD)).isEqualTo(1);
+    assertThat(instrumentation.getStageCount(PlaybackInstrumentation.STAGE_SAMPLE_READ))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void testSmallDurationPercentilesAreExact() {
+    for (int i = 0; i < 10; i++) {
+      instrumentation.onStageCompleted(PlaybackInstrumentation.STAGE_SAMPLE_READ, i);
+    }
+
+    assertThat(
+            instrumentation.getStageDurationPercentileNs(
+                PlaybackInstrumentation.STAGE_SAMPLE_READ, /* percentile= */ 50))
+        .isEqualTo(4);
+    assertThat(
+            instrumentation.getStageDurationPercentileNs(
+                PlaybackInstrumentation.STAGE_SAMPLE_READ, /* percentile= */ 100))
+        .isEqualTo(9);
+  }
+
+  @Test
+  public void testLargeDurationPercentilesAreWithinRelativeError() {
+    for (int i = 1; i <= 1000; i++) {
+      instrumentation.onStageCompleted(PlaybackInstrumentation.STAGE_DO_SOME_WORK, i * 1000L);
+    }
+
+    long p90 =
+        instrumentation.getStageDurationPercentileNs(
+            PlaybackInstrumentation.STAGE_DO_SOME_WORK, /* percentile= */ 90);
+    assertThat(p90).isAtLeast(900_000L);
+    assertThat(p90)
+        .isAtMost(900_000L + 900_000L / InMemoryPlaybackInstrumentation.SUB_BUCKET_COUNT);
+    assertThat(
+            instrumentation.getStageDurationPercentileNs(
+                PlaybackInstrumentation.STAGE_DO_SOME_WORK, /* percentile= */ 100))
+        .isEqualTo(1_000_000L);
+  }
+
+  @Test
+  public void testPercentileWithoutSamplesIsZero() {
+    assertThat(
+            instrumentation.getStageDurationPercentileNs(
+                PlaybackInstrumentation.STAGE_LOAD, /* percentile= */ 50))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void testCounters() {
+    instrumentation.onCounterIncremented(PlaybackInstrumentation.COUNTER_CHUNK_BYTES_LOADED, 10);
+    instrumentation.onCounterIncremented(PlaybackInstrumentation.COUNTER_CHUNK_BYTES_LOADED, 5);
+
+    assertThat(instrumentation.getCounterValue(PlaybackInstrumentation.COUNTER_CHUNK_BYTES_LOADED))
+        .isEqualTo(15);
+    assertThat(instrumentation.getCounterValue(PlaybackInstrumentation.COUNTER_LOAD_ERRORS))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void testReset() {
+    instrumentation.onStageCompleted(PlaybackInstrumentation.STAGE_LOAD, 1000);
+    instrumentation.onCounterIncremented(PlaybackInstrumentation.COUNTER_LOADS_COMPLETED, 1);
+
+    instrumentation.reset();
+
+    assertThat(instrumentation.getStageCount(PlaybackInstrumentation.STAGE_LOAD)).isEqualTo(0);
+    assertThat(instrumentation.getStageMaxDurationNs(PlaybackInstrumentation.STAGE_LOAD))
+        .isEqualTo(0);
+    assertThat(instrumentation.getCounterValue(PlaybackInstrumentation.COUNTER_LOADS_COMPLETED))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void testTraceUtilReportsToInstrumentationOnlyWhenEnabled() {
+    TraceUtil.setPlaybackInstrumentation(instrumentation);
+    long startTimeNs = TraceUtil.startStage();
+    TraceUtil.endStage(PlaybackInstrumentation.STAGE_LOAD, startTimeNs);
+    TraceUtil.incrementCounter(PlaybackInstrumentation.COUNTER_SAMPLES_READ, 1);
+
+    instrumentation.setEnabled(false);
+    long disabledStartTimeNs = TraceUtil.startStage();
+    TraceUtil.endStage(PlaybackInstrumentation.STAGE_LOAD, disabledStartTimeNs);
+    TraceUtil.incrementCounter(PlaybackInstrumentation.COUNTER_SAMPLES_READ, 1);
+
+    assertThat(disabledStartTimeNs).isEqualTo(C.TIME_UNSET);
+    assertThat(instrumentation.getStageCount(PlaybackInstrumentation.STAGE_LOAD)).isEqualTo(1);
+    assertThat(instrumentation.getCounterValue(PlaybackInstrumentation.COUNTER_SAMPLES_READ))
+        .isEqualTo(1);
+  }
+}
@@ -1021,6 +1021,7 @@ public final class DashMediaSource extends BaseMediaSource {
         new DashTimeline(
             manifest.availabilityStartTimeMs,
             windowStartTimeMs,
+            elapsedRealtimeOffsetMs != 0 ? elapsedRealtimeOffsetMs : C.TIME_UNSET,
             firstPeriodId,
             currentStartTimeUs,
             windowDurationUs,
@@ -1169,6 +1170,7 @@ public final class DashMediaSource extends BaseMediaSource {
 
     private final long presentationStartTimeMs;
     private final long windowStartTimeMs;
+    private final long elapsedRealtimeEpochOffsetMs;
 
     private final int firstPeriodId;
     private final long offsetInFirstPeriodUs;
@@ -1180,6 +1182,7 @@ public final class DashMediaSource extends BaseMediaSource {
     public DashTimeline(
         long presentationStartTimeMs,
         long windowStartTimeMs,
+        long elapsedRealtimeEpochOffsetMs,
         int firstPeriodId,
         long offsetInFirstPeriodUs,
         long windowDurationUs,
@@ -1188,6 +1191,7 @@ public final class DashMediaSource extends BaseMediaSource {
         @Nullable Object windowTag) {
       this.presentationStartTimeMs = presentationStartTimeMs;
       this.windowStartTimeMs = windowStartTimeMs;
+      this.elapsedRealtimeEpochOffsetMs = elapsedRealtimeEpochOffsetMs;
       this.firstPeriodId = firstPeriodId;
       this.offsetInFirstPeriodUs = offsetInFirstPeriodUs;
       this.windowDurationUs = windowDurationUs;
@@ -1227,6 +1231,7 @@ public final class DashMediaSource extends BaseMediaSource {
           manifest,
           presentationStartTimeMs,
           windowStartTimeMs,
+          elapsedRealtimeEpochOffsetMs,
           /* isSeekable= */ true,
           /* isDynamic= */ isMovingLiveWindow(manifest),
           /* isLive= */ manifest.dynamic,
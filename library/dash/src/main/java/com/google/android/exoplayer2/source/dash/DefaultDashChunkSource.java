@@ -335,7 +335,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
     long lastAvailableSegmentNum =
         representationHolder.getLastAvailableSegmentNum(manifest, periodIndex, nowUnixTimeUs);
 
-    updateLiveEdgeTimeUs(representationHolder, lastAvailableSegmentNum);
+    updateLiveEdgeTimeUs(representationHolder, lastAvailableSegmentNum, nowUnixTimeUs);
 
     long segmentNum =
         getSegmentNum(
@@ -469,9 +469,21 @@ public class DefaultDashChunkSource implements DashChunkSource {
   }
 
   private void updateLiveEdgeTimeUs(
-      RepresentationHolder representationHolder, long lastAvailableSegmentNum) {
-    liveEdgeTimeUs = manifest.dynamic
-        ? representationHolder.getSegmentEndTimeUs(lastAvailableSegmentNum) : C.TIME_UNSET;
+      RepresentationHolder representationHolder, long lastAvailableSegmentNum, long nowUnixTimeUs) {
+    if (!manifest.dynamic) {
+      liveEdgeTimeUs = C.TIME_UNSET;
+      return;
+    }
+    liveEdgeTimeUs = representationHolder.getSegmentEndTimeUs(lastAvailableSegmentNum);
+    if (!representationHolder.representation.availabilityTimeComplete) {
+      // The last available segment may still be being written, in which case media is only
+      // available up to the current time.
+      long nowPeriodTimeUs =
+          nowUnixTimeUs
+              - C.msToUs(manifest.availabilityStartTimeMs)
+              - C.msToUs(manifest.getPeriod(periodIndex).startMs);
+      liveEdgeTimeUs = Math.min(liveEdgeTimeUs, nowPeriodTimeUs);
+    }
   }
 
   private long getNowUnixTimeUs() {
@@ -774,9 +786,10 @@ public class DefaultDashChunkSource implements DashChunkSource {
         long liveEdgeTimeUs = nowUnixTimeUs - C.msToUs(manifest.availabilityStartTimeMs);
         long periodStartUs = C.msToUs(manifest.getPeriod(periodIndex).startMs);
         long liveEdgeTimeInPeriodUs = liveEdgeTimeUs - periodStartUs;
-        // getSegmentNum(liveEdgeTimeInPeriodUs) will not be completed yet, so subtract one to get
-        // the index of the last completed segment.
-        return getSegmentNum(liveEdgeTimeInPeriodUs) - 1;
+        // Segments become available availabilityTimeOffsetUs before their end time. The segment
+        // containing the adjusted live edge will not be available yet, so subtract one to get the
+        // index of the last available segment.
+        return getSegmentNum(liveEdgeTimeInPeriodUs + representation.availabilityTimeOffsetUs) - 1;
       }
       return getFirstSegmentNum() + availableSegmentCount - 1;
     }
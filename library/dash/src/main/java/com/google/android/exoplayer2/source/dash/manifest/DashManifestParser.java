@@ -738,6 +738,11 @@ public class DashManifestParser extends DefaultHandler
         parent != null ? parent.presentationTimeOffset : 0);
     long duration = parseLong(xpp, "duration", parent != null ? parent.duration : C.TIME_UNSET);
     long startNumber = parseLong(xpp, "startNumber", parent != null ? parent.startNumber : 1);
+    long availabilityTimeOffsetUs =
+        parseAvailabilityTimeOffsetUs(xpp, parent != null ? parent.availabilityTimeOffsetUs : 0);
+    boolean availabilityTimeComplete =
+        parseBoolean(
+            xpp, "availabilityTimeComplete", parent == null || parent.availabilityTimeComplete);
 
     RangedUri initialization = null;
     List<SegmentTimelineElement> timeline = null;
@@ -765,8 +770,16 @@ public class DashManifestParser extends DefaultHandler
       segments = segments != null ? segments : parent.mediaSegments;
     }
 
-    return buildSegmentList(initialization, timescale, presentationTimeOffset,
-        startNumber, duration, timeline, segments);
+    return buildSegmentList(
+        initialization,
+        timescale,
+        presentationTimeOffset,
+        startNumber,
+        duration,
+        timeline,
+        segments,
+        availabilityTimeOffsetUs,
+        availabilityTimeComplete);
   }
 
   protected SegmentList buildSegmentList(
@@ -777,8 +790,38 @@ public class DashManifestParser extends DefaultHandler
       long duration,
       @Nullable List<SegmentTimelineElement> timeline,
       @Nullable List<RangedUri> segments) {
-    return new SegmentList(initialization, timescale, presentationTimeOffset,
-        startNumber, duration, timeline, segments);
+    return buildSegmentList(
+        initialization,
+        timescale,
+        presentationTimeOffset,
+        startNumber,
+        duration,
+        timeline,
+        segments,
+        /* availabilityTimeOffsetUs= */ 0,
+        /* availabilityTimeComplete= */ true);
+  }
+
+  protected SegmentList buildSegmentList(
+      RangedUri initialization,
+      long timescale,
+      long presentationTimeOffset,
+      long startNumber,
+      long duration,
+      @Nullable List<SegmentTimelineElement> timeline,
+      @Nullable List<RangedUri> segments,
+      long availabilityTimeOffsetUs,
+      boolean availabilityTimeComplete) {
+    return new SegmentList(
+        initialization,
+        timescale,
+        presentationTimeOffset,
+        startNumber,
+        duration,
+        timeline,
+        segments,
+        availabilityTimeOffsetUs,
+        availabilityTimeComplete);
   }
 
   protected SegmentTemplate parseSegmentTemplate(
@@ -794,6 +837,11 @@ public class DashManifestParser extends DefaultHandler
     long startNumber = parseLong(xpp, "startNumber", parent != null ? parent.startNumber : 1);
     long endNumber =
         parseLastSegmentNumberSupplementalProperty(adaptationSetSupplementalProperties);
+    long availabilityTimeOffsetUs =
+        parseAvailabilityTimeOffsetUs(xpp, parent != null ? parent.availabilityTimeOffsetUs : 0);
+    boolean availabilityTimeComplete =
+        parseBoolean(
+            xpp, "availabilityTimeComplete", parent == null || parent.availabilityTimeComplete);
 
     UrlTemplate mediaTemplate = parseUrlTemplate(xpp, "media",
         parent != null ? parent.mediaTemplate : null);
@@ -828,7 +876,9 @@ public class DashManifestParser extends DefaultHandler
         duration,
         timeline,
         initializationTemplate,
-        mediaTemplate);
+        mediaTemplate,
+        availabilityTimeOffsetUs,
+        availabilityTimeComplete);
   }
 
   protected SegmentTemplate buildSegmentTemplate(
@@ -841,6 +891,32 @@ public class DashManifestParser extends DefaultHandler
       List<SegmentTimelineElement> timeline,
       @Nullable UrlTemplate initializationTemplate,
       @Nullable UrlTemplate mediaTemplate) {
+    return buildSegmentTemplate(
+        initialization,
+        timescale,
+        presentationTimeOffset,
+        startNumber,
+        endNumber,
+        duration,
+        timeline,
+        initializationTemplate,
+        mediaTemplate,
+        /* availabilityTimeOffsetUs= */ 0,
+        /* availabilityTimeComplete= */ true);
+  }
+
+  protected SegmentTemplate buildSegmentTemplate(
+      RangedUri initialization,
+      long timescale,
+      long presentationTimeOffset,
+      long startNumber,
+      long endNumber,
+      long duration,
+      List<SegmentTimelineElement> timeline,
+      @Nullable UrlTemplate initializationTemplate,
+      @Nullable UrlTemplate mediaTemplate,
+      long availabilityTimeOffsetUs,
+      boolean availabilityTimeComplete) {
     return new SegmentTemplate(
         initialization,
         timescale,
@@ -850,7 +926,9 @@ public class DashManifestParser extends DefaultHandler
         duration,
         timeline,
         initializationTemplate,
-        mediaTemplate);
+        mediaTemplate,
+        availabilityTimeOffsetUs,
+        availabilityTimeComplete);
   }
 
   /**
@@ -1553,6 +1631,31 @@ public class DashManifestParser extends DefaultHandler
     return value == null ? defaultValue : value;
   }
 
+  protected static boolean parseBoolean(XmlPullParser xpp, String name, boolean defaultValue) {
+    String value = xpp.getAttributeValue(null, name);
+    return value == null ? defaultValue : Boolean.parseBoolean(value);
+  }
+
+  /**
+   * Parses the availabilityTimeOffset attribute of a segment base element.
+   *
+   * @param xpp The parser from which to read.
+   * @param parentAvailabilityTimeOffsetUs The offset inherited from the parent element, in
+   *     microseconds.
+   * @return The parsed offset in microseconds, or {@code parentAvailabilityTimeOffsetUs} if the
+   *     attribute is absent or infinite.
+   */
+  protected static long parseAvailabilityTimeOffsetUs(
+      XmlPullParser xpp, long parentAvailabilityTimeOffsetUs) {
+    String value = xpp.getAttributeValue(null, "availabilityTimeOffset");
+    if (value == null || "INF".equals(value)) {
+      // An infinite offset means that all segments are available, which is only signaled for
+      // content whose availability isn't derived from the current time.
+      return parentAvailabilityTimeOffsetUs;
+    }
+    return Math.round(Double.parseDouble(value) * C.MICROS_PER_SECOND);
+  }
+
   /**
    * Parses the number of channels from the value attribute of an AudioElementConfiguration with
    * schemeIdUri "tag:dolby.com,2014:dash:audio_channel_configuration:2011", as defined by table E.5
@@ -54,6 +54,13 @@ public abstract class Representation {
    * The offset of the presentation timestamps in the media stream relative to media time.
    */
   public final long presentationTimeOffsetUs;
+  /**
+   * The offset by which segments become available before the end of their duration, in
+   * microseconds.
+   */
+  public final long availabilityTimeOffsetUs;
+  /** Whether segments are complete when they become available. */
+  public final boolean availabilityTimeComplete;
   /** The in-band event streams in the representation. May be empty. */
   public final List<Descriptor> inbandEventStreams;
 
@@ -145,6 +152,8 @@ public abstract class Representation {
             : Collections.unmodifiableList(inbandEventStreams);
     initializationUri = segmentBase.getInitialization(this);
     presentationTimeOffsetUs = segmentBase.getPresentationTimeOffsetUs();
+    availabilityTimeOffsetUs = segmentBase.getAvailabilityTimeOffsetUs();
+    availabilityTimeComplete = segmentBase.isAvailabilityTimeComplete();
   }
 
   /**
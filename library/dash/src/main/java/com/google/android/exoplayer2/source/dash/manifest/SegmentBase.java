@@ -63,6 +63,22 @@ public abstract class SegmentBase {
     return Util.scaleLargeTimestamp(presentationTimeOffset, C.MICROS_PER_SECOND, timescale);
   }
 
+  /**
+   * Returns the offset by which segments become available before the end of their duration, in
+   * microseconds.
+   */
+  public long getAvailabilityTimeOffsetUs() {
+    return 0;
+  }
+
+  /**
+   * Returns whether segments are complete when they become available. If false, segments may be
+   * requested once available, but are still being written and will be delivered progressively.
+   */
+  public boolean isAvailabilityTimeComplete() {
+    return true;
+  }
+
   /**
    * A {@link SegmentBase} that defines a single segment.
    */
@@ -117,6 +133,8 @@ public abstract class SegmentBase {
     /* package */ final long startNumber;
     /* package */ final long duration;
     /* package */ @Nullable final List<SegmentTimelineElement> segmentTimeline;
+    /* package */ final long availabilityTimeOffsetUs;
+    /* package */ final boolean availabilityTimeComplete;
 
     /**
      * @param initialization A {@link RangedUri} corresponding to initialization data, if such data
@@ -139,10 +157,59 @@ public abstract class SegmentBase {
         long startNumber,
         long duration,
         @Nullable List<SegmentTimelineElement> segmentTimeline) {
+      this(
+          initialization,
+          timescale,
+          presentationTimeOffset,
+          startNumber,
+          duration,
+          segmentTimeline,
+          /* availabilityTimeOffsetUs= */ 0,
+          /* availabilityTimeComplete= */ true);
+    }
+
+    /**
+     * @param initialization A {@link RangedUri} corresponding to initialization data, if such data
+     *     exists.
+     * @param timescale The timescale in units per second.
+     * @param presentationTimeOffset The presentation time offset. The value in seconds is the
+     *     division of this value and {@code timescale}.
+     * @param startNumber The sequence number of the first segment.
+     * @param duration The duration of each segment in the case of fixed duration segments. The
+     *     value in seconds is the division of this value and {@code timescale}. If {@code
+     *     segmentTimeline} is non-null then this parameter is ignored.
+     * @param segmentTimeline A segment timeline corresponding to the segments. If null, then
+     *     segments are assumed to be of fixed duration as specified by the {@code duration}
+     *     parameter.
+     * @param availabilityTimeOffsetUs The offset by which segments become available before the end
+     *     of their duration, in microseconds.
+     * @param availabilityTimeComplete Whether segments are complete when they become available.
+     */
+    public MultiSegmentBase(
+        @Nullable RangedUri initialization,
+        long timescale,
+        long presentationTimeOffset,
+        long startNumber,
+        long duration,
+        @Nullable List<SegmentTimelineElement> segmentTimeline,
+        long availabilityTimeOffsetUs,
+        boolean availabilityTimeComplete) {
       super(initialization, timescale, presentationTimeOffset);
       this.startNumber = startNumber;
       this.duration = duration;
       this.segmentTimeline = segmentTimeline;
+      this.availabilityTimeOffsetUs = availabilityTimeOffsetUs;
+      this.availabilityTimeComplete = availabilityTimeComplete;
+    }
+
+    @Override
+    public long getAvailabilityTimeOffsetUs() {
+      return availabilityTimeOffsetUs;
+    }
+
+    @Override
+    public boolean isAvailabilityTimeComplete() {
+      return availabilityTimeComplete;
     }
 
     /** @see DashSegmentIndex#getSegmentNum(long, long) */
@@ -263,8 +330,55 @@ public abstract class SegmentBase {
         long duration,
         @Nullable List<SegmentTimelineElement> segmentTimeline,
         @Nullable List<RangedUri> mediaSegments) {
-      super(initialization, timescale, presentationTimeOffset, startNumber, duration,
-          segmentTimeline);
+      this(
+          initialization,
+          timescale,
+          presentationTimeOffset,
+          startNumber,
+          duration,
+          segmentTimeline,
+          mediaSegments,
+          /* availabilityTimeOffsetUs= */ 0,
+          /* availabilityTimeComplete= */ true);
+    }
+
+    /**
+     * @param initialization A {@link RangedUri} corresponding to initialization data, if such data
+     *     exists.
+     * @param timescale The timescale in units per second.
+     * @param presentationTimeOffset The presentation time offset. The value in seconds is the
+     *     division of this value and {@code timescale}.
+     * @param startNumber The sequence number of the first segment.
+     * @param duration The duration of each segment in the case of fixed duration segments. The
+     *     value in seconds is the division of this value and {@code timescale}. If {@code
+     *     segmentTimeline} is non-null then this parameter is ignored.
+     * @param segmentTimeline A segment timeline corresponding to the segments. If null, then
+     *     segments are assumed to be of fixed duration as specified by the {@code duration}
+     *     parameter.
+     * @param mediaSegments A list of {@link RangedUri}s indicating the locations of the segments.
+     * @param availabilityTimeOffsetUs The offset by which segments become available before the end
+     *     of their duration, in microseconds.
+     * @param availabilityTimeComplete Whether segments are complete when they become available.
+     */
+    public SegmentList(
+        RangedUri initialization,
+        long timescale,
+        long presentationTimeOffset,
+        long startNumber,
+        long duration,
+        @Nullable List<SegmentTimelineElement> segmentTimeline,
+        @Nullable List<RangedUri> mediaSegments,
+        long availabilityTimeOffsetUs,
+        boolean availabilityTimeComplete) {
+      super(
+          initialization,
+          timescale,
+          presentationTimeOffset,
+          startNumber,
+          duration,
+          segmentTimeline,
+          availabilityTimeOffsetUs,
+          availabilityTimeComplete);
       this.mediaSegments = mediaSegments;
     }
 
@@ -326,13 +440,66 @@ public abstract class SegmentBase {
         @Nullable List<SegmentTimelineElement> segmentTimeline,
         @Nullable UrlTemplate initializationTemplate,
         @Nullable UrlTemplate mediaTemplate) {
+      this(
+          initialization,
+          timescale,
+          presentationTimeOffset,
+          startNumber,
+          endNumber,
+          duration,
+          segmentTimeline,
+          initializationTemplate,
+          mediaTemplate,
+          /* availabilityTimeOffsetUs= */ 0,
+          /* availabilityTimeComplete= */ true);
+    }
+
+    /**
+     * @param initialization A {@link RangedUri} corresponding to initialization data, if such data
+     *     exists. The value of this parameter is ignored if {@code initializationTemplate} is
+     *     non-null.
+     * @param timescale The timescale in units per second.
+     * @param presentationTimeOffset The presentation time offset. The value in seconds is the
+     *     division of this value and {@code timescale}.
+     * @param startNumber The sequence number of the first segment.
+     * @param endNumber The sequence number of the last segment as specified by the
+     *     SupplementalProperty with schemeIdUri="http://dashif.org/guidelines/last-segment-number",
+     *     or {@link C#INDEX_UNSET}.
+     * @param duration The duration of each segment in the case of fixed duration segments. The
+     *     value in seconds is the division of this value and {@code timescale}. If {@code
+     *     segmentTimeline} is non-null then this parameter is ignored.
+     * @param segmentTimeline A segment timeline corresponding to the segments. If null, then
+     *     segments are assumed to be of fixed duration as specified by the {@code duration}
+     *     parameter.
+     * @param initializationTemplate A template defining the location of initialization data, if
+     *     such data exists. If non-null then the {@code initialization} parameter is ignored. If
+     *     null then {@code initialization} will be used.
+     * @param mediaTemplate A template defining the location of each media segment.
+     * @param availabilityTimeOffsetUs The offset by which segments become available before the end
+     *     of their duration, in microseconds.
+     * @param availabilityTimeComplete Whether segments are complete when they become available.
+     */
+    public SegmentTemplate(
+        RangedUri initialization,
+        long timescale,
+        long presentationTimeOffset,
+        long startNumber,
+        long endNumber,
+        long duration,
+        @Nullable List<SegmentTimelineElement> segmentTimeline,
+        @Nullable UrlTemplate initializationTemplate,
+        @Nullable UrlTemplate mediaTemplate,
+        long availabilityTimeOffsetUs,
+        boolean availabilityTimeComplete) {
       super(
           initialization,
           timescale,
           presentationTimeOffset,
           startNumber,
           duration,
-          segmentTimeline);
+          segmentTimeline,
+          availabilityTimeOffsetUs,
+          availabilityTimeComplete);
       this.initializationTemplate = initializationTemplate;
       this.mediaTemplate = mediaTemplate;
       this.endNumber = endNumber;
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.dash.DefaultDashChunkSource.RepresentationHolder;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultDashChunkSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultDashChunkSourceTest {
+
+  private static final long NOW_UNIX_TIME_US = 9_500_000;
+
+  @Test
+  public void getLastAvailableSegmentNum_returnsLastCompleteSegment() throws IOException {
+    DashManifest manifest = parseLiveManifest(/* segmentTemplateAttributes= */ "");
+    RepresentationHolder representationHolder = createRepresentationHolder(manifest);
+
+    // Segments 1 to 4 cover [0s, 8s) and are complete. Segment 5 ends at 10s.
+    assertThat(
+            representationHolder.getLastAvailableSegmentNum(
+                manifest, /* periodIndex= */ 0, NOW_UNIX_TIME_US))
+        .isEqualTo(4);
+  }
+
+  @Test
+  public void getLastAvailableSegmentNum_withAvailabilityTimeOffset_includesSegmentInProgress()
+      throws IOException {
+    DashManifest manifest =
+        parseLiveManifest(
+            /* segmentTemplateAttributes= */ "availabilityTimeOffset=\"1.9\" "
+                + "availabilityTimeComplete=\"false\"");
+    RepresentationHolder representationHolder = createRepresentationHolder(manifest);
+
+    // Segment 5 ends at 10s but becomes available 1.9s earlier, while it's still being written.
+    assertThat(
+            representationHolder.getLastAvailableSegmentNum(
+                manifest, /* periodIndex= */ 0, NOW_UNIX_TIME_US))
+        .isEqualTo(5);
+    assertThat(representationHolder.representation.availabilityTimeComplete).isFalse();
+  }
+
+  private static DashManifest parseLiveManifest(String segmentTemplateAttributes)
+      throws IOException {
+    String manifest =
+        "<MPD type=\"dynamic\" availabilityStartTime=\"1970-01-01T00:00:00Z\" "
+            + "timeShiftBufferDepth=\"PT60S\" minimumUpdatePeriod=\"PT2S\">"
+            + "<Period start=\"PT0S\"><AdaptationSet mimeType=\"video/mp4\">"
+            + "<SegmentTemplate timescale=\"1000\" duration=\"2000\" startNumber=\"1\" "
+            + "media=\"$Number$.m4s\" "
+            + segmentTemplateAttributes
+            + "/>"
+            + "<Representation id=\"0\" bandwidth=\"1000000\"/>"
+            + "</AdaptationSet></Period></MPD>";
+    return new DashManifestParser()
+        .parse(
+            Uri.parse("https://example.com/test.mpd"),
+            new ByteArrayInputStream(Util.getUtf8Bytes(manifest)));
+  }
+
+  private static RepresentationHolder createRepresentationHolder(DashManifest manifest) {
+    Representation representation =
+        manifest.getPeriod(0).adaptationSets.get(0).representations.get(0);
+    return new RepresentationHolder(
+        manifest.getPeriodDurationUs(0),
+        C.TRACK_TYPE_VIDEO,
+        representation,
+        /* enableEventMessageTrack= */ false,
+        /* closedCaptionFormats= */ Collections.emptyList(),
+        /* playerEmsgTrackOutput= */ null);
+  }
+}
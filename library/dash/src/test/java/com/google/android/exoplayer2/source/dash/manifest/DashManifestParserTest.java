@@ -267,6 +267,53 @@ public class DashManifestParserTest {
     assertNextTag(xpp);
   }
 
+  @Test
+  public void parseSegmentTemplate_availabilityTimeOffset() throws Exception {
+    DashManifestParser parser = new DashManifestParser();
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTemplate duration=\"2000\" timescale=\"1000\" media=\"$Number$.m4s\" "
+                + "availabilityTimeOffset=\"1.9\" availabilityTimeComplete=\"false\"/>"
+                + "<SegmentTemplate startNumber=\"10\"/>"
+                + NEXT_TAG));
+    xpp.next();
+
+    SegmentBase.SegmentTemplate parent =
+        parser.parseSegmentTemplate(
+            xpp, /* parent= */ null, Collections.emptyList(), /* periodDurationMs= */ 10000);
+    xpp.next();
+    SegmentBase.SegmentTemplate child =
+        parser.parseSegmentTemplate(
+            xpp, parent, Collections.emptyList(), /* periodDurationMs= */ 10000);
+
+    assertThat(parent.getAvailabilityTimeOffsetUs()).isEqualTo(1_900_000);
+    assertThat(parent.isAvailabilityTimeComplete()).isFalse();
+    assertThat(child.getAvailabilityTimeOffsetUs()).isEqualTo(1_900_000);
+    assertThat(child.isAvailabilityTimeComplete()).isFalse();
+    assertNextTag(xpp);
+  }
+
+  @Test
+  public void parseSegmentTemplate_withoutAvailabilityTimeOffset_segmentsAvailableWhenComplete()
+      throws Exception {
+    DashManifestParser parser = new DashManifestParser();
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTemplate duration=\"2000\" timescale=\"1000\" media=\"$Number$.m4s\"/>"
+                + NEXT_TAG));
+    xpp.next();
+
+    SegmentBase.SegmentTemplate segmentTemplate =
+        parser.parseSegmentTemplate(
+            xpp, /* parent= */ null, Collections.emptyList(), /* periodDurationMs= */ 10000);
+
+    assertThat(segmentTemplate.getAvailabilityTimeOffsetUs()).isEqualTo(0);
+    assertThat(segmentTemplate.isAvailabilityTimeComplete()).isTrue();
+    assertNextTag(xpp);
+  }
+
   @Test
   public void parseLabel() throws Exception {
     DashManifestParser parser = new DashManifestParser();
@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.source.hls;
 
 import android.net.Uri;
 import android.os.SystemClock;
+import android.util.Pair;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
@@ -28,7 +29,9 @@ import com.google.android.exoplayer2.source.chunk.DataChunk;
 import com.google.android.exoplayer2.source.chunk.MediaChunk;
 import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.SegmentBase;
 import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistTracker;
 import com.google.android.exoplayer2.trackselection.BaseTrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
@@ -278,9 +281,11 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     // Select the chunk.
     long startOfPlaylistInPeriodUs =
         mediaPlaylist.startTimeUs - playlistTracker.getInitialStartTimeUs();
-    long chunkMediaSequence =
-        getChunkMediaSequence(
+    Pair<Long, Integer> nextMediaSequenceAndPartIndex =
+        getNextMediaSequenceAndPartIndex(
             previous, switchingTrack, mediaPlaylist, startOfPlaylistInPeriodUs, loadPositionUs);
+    long chunkMediaSequence = nextMediaSequenceAndPartIndex.first;
+    int partIndex = nextMediaSequenceAndPartIndex.second;
     if (chunkMediaSequence < mediaPlaylist.mediaSequence && previous != null && switchingTrack) {
         // We try getting the next chunk without adapting in case that's the reason for falling
         // behind the live window.
@@ -293,7 +298,15 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       Assertions.checkNotNull(mediaPlaylist);
         startOfPlaylistInPeriodUs =
             mediaPlaylist.startTimeUs - playlistTracker.getInitialStartTimeUs();
-        chunkMediaSequence = previous.getNextChunkIndex();
+        nextMediaSequenceAndPartIndex =
+            getNextMediaSequenceAndPartIndex(
+                previous,
+                /* switchingTrack= */ false,
+                mediaPlaylist,
+                startOfPlaylistInPeriodUs,
+                loadPositionUs);
+        chunkMediaSequence = nextMediaSequenceAndPartIndex.first;
+        partIndex = nextMediaSequenceAndPartIndex.second;
     }
 
     if (chunkMediaSequence < mediaPlaylist.mediaSequence) {
@@ -301,15 +314,21 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return;
     }
 
-    int segmentIndexInPlaylist = (int) (chunkMediaSequence - mediaPlaylist.mediaSequence);
-    int availableSegmentCount = mediaPlaylist.segments.size();
-    if (segmentIndexInPlaylist >= availableSegmentCount) {
+    @Nullable
+    SegmentBaseHolder segmentBaseHolder =
+        getNextSegmentHolder(mediaPlaylist, chunkMediaSequence, partIndex);
+    if (segmentBaseHolder == null) {
+      int availableSegmentCount = mediaPlaylist.segments.size();
       if (mediaPlaylist.hasEndTag) {
         if (allowEndOfStream || availableSegmentCount == 0) {
           out.endOfStream = true;
           return;
         }
-        segmentIndexInPlaylist = availableSegmentCount - 1;
+        segmentBaseHolder =
+            new SegmentBaseHolder(
+                mediaPlaylist.segments.get(availableSegmentCount - 1),
+                mediaPlaylist.mediaSequence + availableSegmentCount - 1,
+                /* partIndex= */ C.INDEX_UNSET);
       } else /* Live */ {
         out.playlistUrl = selectedPlaylistUrl;
         seenExpectedPlaylistError &= selectedPlaylistUrl.equals(expectedPlaylistUrl);
@@ -322,7 +341,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     expectedPlaylistUrl = null;
 
     // Handle encryption.
-    HlsMediaPlaylist.Segment segment = mediaPlaylist.segments.get(segmentIndexInPlaylist);
+    SegmentBase segment = segmentBaseHolder.segmentBase;
 
     // Check if the segment or its initialization segment are fully encrypted.
     Uri initSegmentKeyUri = getFullEncryptionKeyUri(mediaPlaylist, segment.initializationSegment);
@@ -343,7 +362,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             playlistFormats[selectedTrackIndex],
             startOfPlaylistInPeriodUs,
             mediaPlaylist,
-            segmentIndexInPlaylist,
+            segmentBaseHolder.segmentBase,
+            segmentBaseHolder.mediaSequence,
+            segmentBaseHolder.partIndex,
             selectedPlaylistUrl,
             muxedCaptionFormats,
             trackSelection.getSelectionReason(),
@@ -438,8 +459,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           playlist.startTimeUs - playlistTracker.getInitialStartTimeUs();
       boolean switchingTrack = trackIndex != oldTrackIndex;
       long chunkMediaSequence =
-          getChunkMediaSequence(
-              previous, switchingTrack, playlist, startOfPlaylistInPeriodUs, loadPositionUs);
+          getNextMediaSequenceAndPartIndex(
+                  previous, switchingTrack, playlist, startOfPlaylistInPeriodUs, loadPositionUs)
+              .first;
       if (chunkMediaSequence < playlist.mediaSequence) {
         chunkIterators[i] = MediaChunkIterator.EMPTY;
         continue;
@@ -454,18 +476,20 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   // Private methods.
 
   /**
-   * Returns the media sequence number of the segment to load next in {@code mediaPlaylist}.
+   * Returns the media sequence number of the segment to load next in {@code mediaPlaylist}, and the
+   * index of the part to load within that segment.
    *
-   * @param previous The last (at least partially) loaded segment.
+   * @param previous The last (at least partially) loaded segment or part.
    * @param switchingTrack Whether the segment to load is not preceded by a segment in the same
    *     track.
    * @param mediaPlaylist The media playlist to which the segment to load belongs.
    * @param startOfPlaylistInPeriodUs The start of {@code mediaPlaylist} relative to the period
    *     start in microseconds.
    * @param loadPositionUs The current load position relative to the period start in microseconds.
-   * @return The media sequence of the segment to load.
+   * @return The media sequence of the segment to load, and the index of the part to load within
+   *     that segment, or {@link C#INDEX_UNSET} to load the segment from its start.
    */
-  private long getChunkMediaSequence(
+  private Pair<Long, Integer> getNextMediaSequenceAndPartIndex(
       @Nullable HlsMediaChunk previous,
       boolean switchingTrack,
       HlsMediaPlaylist mediaPlaylist,
@@ -477,19 +501,92 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
           (previous == null || independentSegments) ? loadPositionUs : previous.startTimeUs;
       if (!mediaPlaylist.hasEndTag && targetPositionInPeriodUs >= endOfPlaylistInPeriodUs) {
         // If the playlist is too old to contain the chunk, we need to refresh it.
-        return mediaPlaylist.mediaSequence + mediaPlaylist.segments.size();
+        int completePartCount = mediaPlaylist.getCompletePartCount();
+        return Pair.create(
+            mediaPlaylist.mediaSequence + mediaPlaylist.segments.size(),
+            completePartCount > 0 ? completePartCount : C.INDEX_UNSET);
       }
       long targetPositionInPlaylistUs = targetPositionInPeriodUs - startOfPlaylistInPeriodUs;
-      return Util.binarySearchFloor(
+      int segmentIndexInPlaylist =
+          Util.binarySearchFloor(
               mediaPlaylist.segments,
               /* value= */ targetPositionInPlaylistUs,
               /* inclusive= */ true,
-              /* stayInBounds= */ !playlistTracker.isLive() || previous == null)
-          + mediaPlaylist.mediaSequence;
+              /* stayInBounds= */ !playlistTracker.isLive() || previous == null);
+      long mediaSequence = segmentIndexInPlaylist + mediaPlaylist.mediaSequence;
+      int partIndex = C.INDEX_UNSET;
+      if (segmentIndexInPlaylist >= 0) {
+        // Start from an independent part containing the target position if there is one, so that
+        // loading does not have to start from the beginning of the segment.
+        Segment segment = mediaPlaylist.segments.get(segmentIndexInPlaylist);
+        boolean inTrailingParts =
+            targetPositionInPlaylistUs >= segment.relativeStartTimeUs + segment.durationUs;
+        List<Part> parts = inTrailingParts ? mediaPlaylist.trailingParts : segment.parts;
+        int independentPartIndex = getIndependentPartIndex(parts, targetPositionInPlaylistUs);
+        if (independentPartIndex != C.INDEX_UNSET) {
+          partIndex = independentPartIndex;
+          mediaSequence += inTrailingParts ? 1 : 0;
+        }
+      }
+      return Pair.create(mediaSequence, partIndex);
     }
     // We ignore the case of previous not having loaded completely, in which case we load the next
-    // segment.
-    return previous.getNextChunkIndex();
+    // segment or part.
+    return previous.partIndex == C.INDEX_UNSET
+        ? Pair.create(previous.getNextChunkIndex(), C.INDEX_UNSET)
+        : Pair.create(previous.chunkIndex, previous.partIndex + 1);
+  }
+
+  /**
+   * Returns the segment or part identified by {@code mediaSequence} and {@code partIndex}, or null
+   * if it is not yet available in {@code mediaPlaylist}.
+   */
+  @Nullable
+  private static SegmentBaseHolder getNextSegmentHolder(
+      HlsMediaPlaylist mediaPlaylist, long mediaSequence, int partIndex) {
+    int segmentIndexInPlaylist = (int) (mediaSequence - mediaPlaylist.mediaSequence);
+    List<Segment> segments = mediaPlaylist.segments;
+    if (segmentIndexInPlaylist == segments.size()) {
+      // The segment isn't complete yet, so it can only be loaded part by part.
+      int index = partIndex != C.INDEX_UNSET ? partIndex : 0;
+      return index < mediaPlaylist.trailingParts.size()
+          ? new SegmentBaseHolder(mediaPlaylist.trailingParts.get(index), mediaSequence, index)
+          : null;
+    } else if (segmentIndexInPlaylist > segments.size()) {
+      return null;
+    }
+    Segment segment = segments.get(segmentIndexInPlaylist);
+    if (partIndex == C.INDEX_UNSET) {
+      return new SegmentBaseHolder(segment, mediaSequence, /* partIndex= */ C.INDEX_UNSET);
+    } else if (partIndex < segment.parts.size()) {
+      return new SegmentBaseHolder(segment.parts.get(partIndex), mediaSequence, partIndex);
+    } else if (segmentIndexInPlaylist + 1 < segments.size()) {
+      // All parts of the segment have been loaded. The next segment is complete, so load it whole.
+      return new SegmentBaseHolder(
+          segments.get(segmentIndexInPlaylist + 1), mediaSequence + 1, C.INDEX_UNSET);
+    } else if (!mediaPlaylist.trailingParts.isEmpty()) {
+      return new SegmentBaseHolder(
+          mediaPlaylist.trailingParts.get(0), mediaSequence + 1, /* partIndex= */ 0);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the index of the last independent part in {@code parts} that starts at or before the
+   * part containing {@code positionUs}, or {@link C#INDEX_UNSET} if there is no such part.
+   */
+  private static int getIndependentPartIndex(List<Part> parts, long positionUs) {
+    int partIndex = C.INDEX_UNSET;
+    for (int i = 0; i < parts.size(); i++) {
+      Part part = parts.get(i);
+      if (part.relativeStartTimeUs > positionUs) {
+        break;
+      }
+      if (part.isIndependent) {
+        partIndex = i;
+      }
+    }
+    return partIndex;
   }
 
   private long resolveTimeToLiveEdgeUs(long playbackPositionUs) {
@@ -531,7 +628,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   }
 
   @Nullable
-  private static Uri getFullEncryptionKeyUri(HlsMediaPlaylist playlist, @Nullable Segment segment) {
+  private static Uri getFullEncryptionKeyUri(
+      HlsMediaPlaylist playlist, @Nullable SegmentBase segment) {
     if (segment == null || segment.fullSegmentEncryptionKeyUri == null) {
       return null;
     }
@@ -620,6 +718,23 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
   }
 
+  /** Holds a segment or part, together with its position in the playlist. */
+  private static final class SegmentBaseHolder {
+
+    /** The segment or part. */
+    public final SegmentBase segmentBase;
+    /** The media sequence number of the segment, or of the segment to which the part belongs. */
+    public final long mediaSequence;
+    /** The index of the part in its segment, or {@link C#INDEX_UNSET} for a full segment. */
+    public final int partIndex;
+
+    public SegmentBaseHolder(SegmentBase segmentBase, long mediaSequence, int partIndex) {
+      this.segmentBase = segmentBase;
+      this.mediaSequence = mediaSequence;
+      this.partIndex = partIndex;
+    }
+  }
+
   /** {@link MediaChunkIterator} wrapping a {@link HlsMediaPlaylist}. */
   private static final class HlsMediaPlaylistSegmentIterator extends BaseMediaChunkIterator {
 
@@ -59,6 +59,11 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * @param format The chunk format.
    * @param startOfPlaylistInPeriodUs The position of the playlist in the period in microseconds.
    * @param mediaPlaylist The media playlist from which this chunk was obtained.
+   * @param segmentBase The segment or part of {@code mediaPlaylist} to load.
+   * @param mediaSequence The media sequence number of the segment, or of the segment to which the
+   *     part belongs.
+   * @param partIndex The index of the part in its segment, or {@link C#INDEX_UNSET} if {@code
+   *     segmentBase} is a full segment.
    * @param playlistUrl The url of the playlist from which this chunk was obtained.
    * @param muxedCaptionFormats List of muxed caption {@link Format}s. Null if no closed caption
    *     information is available in the master playlist.
@@ -78,7 +83,9 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       Format format,
       long startOfPlaylistInPeriodUs,
       HlsMediaPlaylist mediaPlaylist,
-      int segmentIndexInPlaylist,
+      HlsMediaPlaylist.SegmentBase segmentBase,
+      long mediaSequence,
+      int partIndex,
       Uri playlistUrl,
       @Nullable List<Format> muxedCaptionFormats,
       int trackSelectionReason,
@@ -88,23 +95,22 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       @Nullable HlsMediaChunk previousChunk,
       @Nullable byte[] mediaSegmentKey,
       @Nullable byte[] initSegmentKey) {
-    // Media segment.
-    HlsMediaPlaylist.Segment mediaSegment = mediaPlaylist.segments.get(segmentIndexInPlaylist);
+    // Media segment or part.
     DataSpec dataSpec =
         new DataSpec(
-            UriUtil.resolveToUri(mediaPlaylist.baseUri, mediaSegment.url),
-            mediaSegment.byterangeOffset,
-            mediaSegment.byterangeLength,
+            UriUtil.resolveToUri(mediaPlaylist.baseUri, segmentBase.url),
+            segmentBase.byterangeOffset,
+            segmentBase.byterangeLength,
             /* key= */ null);
     boolean mediaSegmentEncrypted = mediaSegmentKey != null;
     byte[] mediaSegmentIv =
         mediaSegmentEncrypted
-            ? getEncryptionIvArray(Assertions.checkNotNull(mediaSegment.encryptionIV))
+            ? getEncryptionIvArray(Assertions.checkNotNull(segmentBase.encryptionIV))
             : null;
     DataSource mediaDataSource = buildDataSource(dataSource, mediaSegmentKey, mediaSegmentIv);
 
     // Init segment.
-    HlsMediaPlaylist.Segment initSegment = mediaSegment.initializationSegment;
+    HlsMediaPlaylist.Segment initSegment = segmentBase.initializationSegment;
     DataSpec initDataSpec = null;
     boolean initSegmentEncrypted = false;
     DataSource initDataSource = null;
@@ -124,10 +130,10 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       initDataSource = buildDataSource(dataSource, initSegmentKey, initSegmentIv);
     }
 
-    long segmentStartTimeInPeriodUs = startOfPlaylistInPeriodUs + mediaSegment.relativeStartTimeUs;
-    long segmentEndTimeInPeriodUs = segmentStartTimeInPeriodUs + mediaSegment.durationUs;
+    long segmentStartTimeInPeriodUs = startOfPlaylistInPeriodUs + segmentBase.relativeStartTimeUs;
+    long segmentEndTimeInPeriodUs = segmentStartTimeInPeriodUs + segmentBase.durationUs;
     int discontinuitySequenceNumber =
-        mediaPlaylist.discontinuitySequence + mediaSegment.relativeDiscontinuitySequence;
+        mediaPlaylist.discontinuitySequence + segmentBase.relativeDiscontinuitySequence;
 
     Extractor previousExtractor = null;
     Id3Decoder id3Decoder;
@@ -165,12 +171,13 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         trackSelectionData,
         segmentStartTimeInPeriodUs,
         segmentEndTimeInPeriodUs,
-        /* chunkMediaSequence= */ mediaPlaylist.mediaSequence + segmentIndexInPlaylist,
+        /* chunkMediaSequence= */ mediaSequence,
+        partIndex,
         discontinuitySequenceNumber,
-        mediaSegment.hasGapTag,
+        segmentBase.hasGapTag,
         isMasterTimestampSource,
         /* timestampAdjuster= */ timestampAdjusterProvider.getAdjuster(discontinuitySequenceNumber),
-        mediaSegment.drmInitData,
+        segmentBase.drmInitData,
         previousExtractor,
         id3Decoder,
         scratchId3Data,
@@ -196,6 +203,12 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   /** The url of the playlist from which this chunk was obtained. */
   public final Uri playlistUrl;
 
+  /**
+   * The index of the part in the segment {@link #chunkIndex}, or {@link C#INDEX_UNSET} if the chunk
+   * is a full segment.
+   */
+  public final int partIndex;
+
   @Nullable private final DataSource initDataSource;
   @Nullable private final DataSpec initDataSpec;
   @Nullable private final Extractor previousExtractor;
@@ -238,6 +251,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       long startTimeUs,
       long endTimeUs,
       long chunkMediaSequence,
+      int partIndex,
       int discontinuitySequenceNumber,
       boolean hasGapTag,
       boolean isMasterTimestampSource,
@@ -257,6 +271,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         endTimeUs,
         chunkMediaSequence);
     this.mediaSegmentEncrypted = mediaSegmentEncrypted;
+    this.partIndex = partIndex;
     this.discontinuitySequenceNumber = discontinuitySequenceNumber;
     this.initDataSpec = initDataSpec;
     this.initDataSource = initDataSource;
@@ -77,6 +77,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
   private final boolean allowChunklessPreparation;
   private final @HlsMediaSource.MetadataType int metadataType;
   private final boolean useSessionKeys;
+  private final boolean useLockFreeSampleQueues;
 
   @Nullable private Callback callback;
   private int pendingPrepareCount;
@@ -106,6 +107,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
    *     SequenceableLoader}s for when this media source loads data from multiple streams.
    * @param allowChunklessPreparation Whether chunkless preparation is allowed.
    * @param useSessionKeys Whether to use #EXT-X-SESSION-KEY tags.
+   * @param useLockFreeSampleQueues Whether sample queues should hand sample metadata from the
+   *     loading thread to the playback thread without locking.
    */
   public HlsMediaPeriod(
       HlsExtractorFactory extractorFactory,
@@ -119,7 +122,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       boolean allowChunklessPreparation,
       @HlsMediaSource.MetadataType int metadataType,
-      boolean useSessionKeys) {
+      boolean useSessionKeys,
+      boolean useLockFreeSampleQueues) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
     this.dataSourceFactory = dataSourceFactory;
@@ -132,6 +136,7 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.useLockFreeSampleQueues = useLockFreeSampleQueues;
     compositeSequenceableLoader =
         compositeSequenceableLoaderFactory.createCompositeSequenceableLoader();
     streamWrapperIndices = new IdentityHashMap<>();
@@ -761,7 +766,8 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
         drmSessionManager,
         loadErrorHandlingPolicy,
         eventDispatcher,
-        metadataType);
+        metadataType,
+        useLockFreeSampleQueues);
   }
 
   private static Map<String, DrmInitData> deriveOverridingDrmInitData(
@@ -99,6 +99,7 @@ public final class HlsMediaSource extends BaseMediaSource
     private boolean allowChunklessPreparation;
     @MetadataType private int metadataType;
     private boolean useSessionKeys;
+    private boolean useLockFreeSampleQueues;
     private boolean isCreateCalled;
     @Nullable private Object tag;
 
@@ -310,6 +311,24 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets whether sample queues should hand sample metadata from the loading thread to the
+     * playback thread without locking. The default value is {@code false}.
+     *
+     * <p>This can reduce overhead on both threads for streams with many samples, such as streams
+     * with ID3 or caption tracks. This method is experimental, and will be renamed or removed in a
+     * future release.
+     *
+     * @param useLockFreeSampleQueues Whether to use lock-free sample queues.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory experimental_setUseLockFreeSampleQueues(boolean useLockFreeSampleQueues) {
+      Assertions.checkState(!isCreateCalled);
+      this.useLockFreeSampleQueues = useLockFreeSampleQueues;
+      return this;
+    }
+
     /**
      * @deprecated Use {@link #createMediaSource(Uri)} and {@link #addEventListener(Handler,
      *     MediaSourceEventListener)} instead.
@@ -350,6 +369,7 @@ public final class HlsMediaSource extends BaseMediaSource
           allowChunklessPreparation,
           metadataType,
           useSessionKeys,
+          useLockFreeSampleQueues,
           tag);
     }
 
@@ -376,6 +396,7 @@ public final class HlsMediaSource extends BaseMediaSource
   private final boolean allowChunklessPreparation;
   private final @MetadataType int metadataType;
   private final boolean useSessionKeys;
+  private final boolean useLockFreeSampleQueues;
   private final HlsPlaylistTracker playlistTracker;
   @Nullable private final Object tag;
 
@@ -392,6 +413,7 @@ public final class HlsMediaSource extends BaseMediaSource
       boolean allowChunklessPreparation,
       @MetadataType int metadataType,
       boolean useSessionKeys,
+      boolean useLockFreeSampleQueues,
       @Nullable Object tag) {
     this.manifestUri = manifestUri;
     this.dataSourceFactory = dataSourceFactory;
@@ -403,6 +425,7 @@ public final class HlsMediaSource extends BaseMediaSource
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.useLockFreeSampleQueues = useLockFreeSampleQueues;
     this.tag = tag;
   }
 
@@ -440,7 +463,8 @@ public final class HlsMediaSource extends BaseMediaSource
         compositeSequenceableLoaderFactory,
         allowChunklessPreparation,
         metadataType,
-        useSessionKeys);
+        useSessionKeys,
+        useLockFreeSampleQueues);
   }
 
   @Override
@@ -478,7 +502,12 @@ public final class HlsMediaSource extends BaseMediaSource
       List<HlsMediaPlaylist.Segment> segments = playlist.segments;
       if (windowDefaultStartPositionUs == C.TIME_UNSET) {
         windowDefaultStartPositionUs = 0;
-        if (!segments.isEmpty()) {
+        long partHoldBackUs = playlist.serverControl.partHoldBackUs;
+        if (playlist.partTargetDurationUs != C.TIME_UNSET && partHoldBackUs != C.TIME_UNSET) {
+          // The playlist is loaded part by part, so playback can start as close to the live edge
+          // as the server allows.
+          windowDefaultStartPositionUs = Math.max(0, playlist.durationUs - partHoldBackUs);
+        } else if (!segments.isEmpty()) {
           int defaultStartSegmentIndex = Math.max(0, segments.size() - 3);
           // We attempt to set the default start position to be at least twice the target duration
           // behind the live edge.
@@ -117,6 +117,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   private final Loader loader;
   private final EventDispatcher eventDispatcher;
   private final @HlsMediaSource.MetadataType int metadataType;
+  private final boolean useLockFreeSampleQueues;
   private final HlsChunkSource.HlsChunkHolder nextChunkHolder;
   private final ArrayList<HlsMediaChunk> mediaChunks;
   private final List<HlsMediaChunk> readOnlyMediaChunks;
@@ -178,6 +179,9 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    *     DrmSessions} with.
    * @param loadErrorHandlingPolicy A {@link LoadErrorHandlingPolicy}.
    * @param eventDispatcher A dispatcher to notify of events.
+   * @param metadataType The type of metadata to extract from the period.
+   * @param useLockFreeSampleQueues Whether sample queues should hand sample metadata from the
+   *     loading thread to the playback thread without locking.
    */
   public HlsSampleStreamWrapper(
       int trackType,
@@ -190,7 +194,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       DrmSessionManager<?> drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       EventDispatcher eventDispatcher,
-      @HlsMediaSource.MetadataType int metadataType) {
+      @HlsMediaSource.MetadataType int metadataType,
+      boolean useLockFreeSampleQueues) {
     this.trackType = trackType;
     this.callback = callback;
     this.chunkSource = chunkSource;
@@ -201,6 +206,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.eventDispatcher = eventDispatcher;
     this.metadataType = metadataType;
+    this.useLockFreeSampleQueues = useLockFreeSampleQueues;
     loader = new Loader("Loader:HlsSampleStreamWrapper");
     nextChunkHolder = new HlsChunkSource.HlsChunkHolder();
     sampleQueueTrackIds = new int[0];
@@ -911,7 +917,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     int trackCount = sampleQueues.length;
 
     SampleQueue trackOutput =
-        new FormatAdjustingSampleQueue(allocator, drmSessionManager, overridingDrmInitData);
+        new FormatAdjustingSampleQueue(
+            allocator, drmSessionManager, overridingDrmInitData, useLockFreeSampleQueues);
     trackOutput.setSampleOffsetUs(sampleOffsetUs);
     trackOutput.sourceId(chunkUid);
     trackOutput.setUpstreamFormatChangeListener(this);
@@ -1170,8 +1177,12 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     for (int i = 0; i < sampleQueueCount; i++) {
       SampleQueue sampleQueue = sampleQueues[i];
       sampleQueue.rewind();
-      boolean seekInsideQueue = sampleQueue.advanceTo(positionUs, true, false)
-          != SampleQueue.ADVANCE_FAILED;
+      // Seeking beyond the end of the queues isn't allowed, even inside the chunk that's being
+      // loaded, as the next sample to be loaded may not be a keyframe.
+      boolean seekInsideQueue =
+          sampleQueue.advanceTo(
+                  positionUs, /* toKeyframe= */ true, /* allowTimeBeyondBuffer= */ false)
+              != SampleQueue.ADVANCE_FAILED;
       // If we have AV tracks then an in-queue seek is successful if the seek into every AV queue
       // is successful. We ignore whether seeks within non-AV queues are successful in this case, as
       // they may be sparse or poorly interleaved. If we only have non-AV tracks then a seek is
@@ -1287,8 +1298,9 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     public FormatAdjustingSampleQueue(
         Allocator allocator,
         DrmSessionManager<?> drmSessionManager,
-        Map<String, DrmInitData> overridingDrmInitData) {
-      super(allocator, drmSessionManager);
+        Map<String, DrmInitData> overridingDrmInitData,
+        boolean useLockFreeMetadataQueue) {
+      super(allocator, drmSessionManager, useLockFreeMetadataQueue);
       this.overridingDrmInitData = overridingDrmInitData;
     }
 
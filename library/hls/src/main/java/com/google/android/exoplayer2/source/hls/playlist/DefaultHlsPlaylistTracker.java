@@ -49,6 +49,11 @@ public final class DefaultHlsPlaylistTracker
    */
   public static final double DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT = 3.5;
 
+  /** Query parameter requesting a playlist that contains the given media sequence number. */
+  private static final String BLOCK_MSN_PARAM = "_HLS_msn";
+  /** Query parameter requesting a playlist that contains the given part of the segment. */
+  private static final String BLOCK_PART_PARAM = "_HLS_part";
+
   private final HlsDataSourceFactory dataSourceFactory;
   private final HlsPlaylistParserFactory playlistParserFactory;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
@@ -447,7 +452,7 @@ public final class DefaultHlsPlaylistTracker
 
     private final Uri playlistUrl;
     private final Loader mediaPlaylistLoader;
-    private final ParsingLoadable<HlsPlaylist> mediaPlaylistLoadable;
+    private final DataSource mediaPlaylistDataSource;
 
     @Nullable private HlsMediaPlaylist playlistSnapshot;
     private long lastSnapshotLoadMs;
@@ -460,12 +465,7 @@ public final class DefaultHlsPlaylistTracker
     public MediaPlaylistBundle(Uri playlistUrl) {
       this.playlistUrl = playlistUrl;
       mediaPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MediaPlaylist");
-      mediaPlaylistLoadable =
-          new ParsingLoadable<>(
-              dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST),
-              playlistUrl,
-              C.DATA_TYPE_MANIFEST,
-              mediaPlaylistParser);
+      mediaPlaylistDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST);
     }
 
     @Nullable
@@ -605,6 +605,12 @@ public final class DefaultHlsPlaylistTracker
     // Internal methods.
 
     private void loadPlaylistImmediately() {
+      ParsingLoadable<HlsPlaylist> mediaPlaylistLoadable =
+          new ParsingLoadable<>(
+              mediaPlaylistDataSource,
+              getMediaPlaylistUriForReload(),
+              C.DATA_TYPE_MANIFEST,
+              mediaPlaylistParser);
       long elapsedRealtime =
           mediaPlaylistLoader.startLoading(
               mediaPlaylistLoadable,
@@ -647,14 +653,23 @@ public final class DefaultHlsPlaylistTracker
           }
         }
       }
-      // Do not allow the playlist to load again within the target duration if we obtained a new
-      // snapshot, or half the target duration otherwise.
-      earliestNextLoadTimeMs =
-          currentTimeMs
-              + C.usToMs(
-                  playlistSnapshot != oldPlaylist
-                      ? playlistSnapshot.targetDurationUs
-                      : (playlistSnapshot.targetDurationUs / 2));
+      if (playlistSnapshot != oldPlaylist && playlistSnapshot.serverControl.canBlockReload) {
+        // The server holds the next request until the playlist has been updated, so it can be
+        // issued straight away.
+        earliestNextLoadTimeMs = currentTimeMs;
+      } else {
+        // Do not allow the playlist to load again within the target duration if we obtained a new
+        // snapshot, or half the target duration otherwise. Playlists containing parts are updated
+        // every part target duration instead.
+        long refreshIntervalUs =
+            playlistSnapshot.partTargetDurationUs != C.TIME_UNSET
+                ? playlistSnapshot.partTargetDurationUs
+                : playlistSnapshot.targetDurationUs;
+        earliestNextLoadTimeMs =
+            currentTimeMs
+                + C.usToMs(
+                    playlistSnapshot != oldPlaylist ? refreshIntervalUs : (refreshIntervalUs / 2));
+      }
       // Schedule a load if this is the primary playlist and it doesn't have an end tag. Else the
       // next load will be scheduled when refreshPlaylist is called, or when this playlist becomes
       // the primary.
@@ -663,6 +678,28 @@ public final class DefaultHlsPlaylistTracker
       }
     }
 
+    /**
+     * Returns the {@link Uri} from which the playlist should be reloaded. If the server supports
+     * blocking playlist reload, delivery directives are added so that the server responds once the
+     * playlist contains the segment or part following the current snapshot.
+     */
+    private Uri getMediaPlaylistUriForReload() {
+      if (playlistSnapshot == null
+          || playlistSnapshot.hasEndTag
+          || !playlistSnapshot.serverControl.canBlockReload) {
+        return playlistUrl;
+      }
+      Uri.Builder uriBuilder = playlistUrl.buildUpon();
+      uriBuilder.appendQueryParameter(
+          BLOCK_MSN_PARAM,
+          String.valueOf(playlistSnapshot.mediaSequence + playlistSnapshot.segments.size()));
+      if (playlistSnapshot.partTargetDurationUs != C.TIME_UNSET) {
+        uriBuilder.appendQueryParameter(
+            BLOCK_PART_PARAM, String.valueOf(playlistSnapshot.getCompletePartCount()));
+      }
+      return uriBuilder.build();
+    }
+
     /**
      * Blacklists the playlist.
      *
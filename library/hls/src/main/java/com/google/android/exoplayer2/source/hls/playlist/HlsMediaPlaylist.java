@@ -30,58 +30,15 @@ import java.util.List;
 public final class HlsMediaPlaylist extends HlsPlaylist {
 
   /** Media segment reference. */
-  @SuppressWarnings("ComparableType")
-  public static final class Segment implements Comparable<Long> {
+  public static final class Segment extends SegmentBase {
 
-    /**
-     * The url of the segment.
-     */
-    public final String url;
-    /**
-     * The media initialization section for this segment, as defined by #EXT-X-MAP. May be null if
-     * the media playlist does not define a media section for this segment. The same instance is
-     * used for all segments that share an EXT-X-MAP tag.
-     */
-    @Nullable public final Segment initializationSegment;
-    /** The duration of the segment in microseconds, as defined by #EXTINF. */
-    public final long durationUs;
     /** The human readable title of the segment. */
     public final String title;
     /**
-     * The number of #EXT-X-DISCONTINUITY tags in the playlist before the segment.
-     */
-    public final int relativeDiscontinuitySequence;
-    /**
-     * The start time of the segment in microseconds, relative to the start of the playlist.
-     */
-    public final long relativeStartTimeUs;
-    /**
-     * DRM initialization data for sample decryption, or null if the segment does not use CDM-DRM
-     * protection.
-     */
-    @Nullable public final DrmInitData drmInitData;
-    /**
-     * The encryption identity key uri as defined by #EXT-X-KEY, or null if the segment does not use
-     * full segment encryption with identity key.
-     */
-    @Nullable public final String fullSegmentEncryptionKeyUri;
-    /**
-     * The encryption initialization vector as defined by #EXT-X-KEY, or null if the segment is not
-     * encrypted.
-     */
-    @Nullable public final String encryptionIV;
-    /**
-     * The segment's byte range offset, as defined by #EXT-X-BYTERANGE.
-     */
-    public final long byterangeOffset;
-    /**
-     * The segment's byte range length, as defined by #EXT-X-BYTERANGE, or {@link C#LENGTH_UNSET} if
-     * no byte range is specified.
+     * The parts belonging to this segment, as defined by #EXT-X-PART. Empty if the playlist does
+     * not define parts for this segment.
      */
-    public final long byterangeLength;
-
-    /** Whether the segment is tagged with #EXT-X-GAP. */
-    public final boolean hasGapTag;
+    public final List<Part> parts;
 
     /**
      * @param uri See {@link #url}.
@@ -138,9 +95,191 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         long byterangeOffset,
         long byterangeLength,
         boolean hasGapTag) {
+      this(
+          url,
+          initializationSegment,
+          title,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag,
+          /* parts= */ Collections.emptyList());
+    }
+
+    /**
+     * @param url See {@link #url}.
+     * @param initializationSegment See {@link #initializationSegment}.
+     * @param title See {@link #title}.
+     * @param durationUs See {@link #durationUs}.
+     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
+     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
+     * @param drmInitData See {@link #drmInitData}.
+     * @param fullSegmentEncryptionKeyUri See {@link #fullSegmentEncryptionKeyUri}.
+     * @param encryptionIV See {@link #encryptionIV}.
+     * @param byterangeOffset See {@link #byterangeOffset}.
+     * @param byterangeLength See {@link #byterangeLength}.
+     * @param hasGapTag See {@link #hasGapTag}.
+     * @param parts See {@link #parts}.
+     */
+    public Segment(
+        String url,
+        @Nullable Segment initializationSegment,
+        String title,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        @Nullable DrmInitData drmInitData,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV,
+        long byterangeOffset,
+        long byterangeLength,
+        boolean hasGapTag,
+        List<Part> parts) {
+      super(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag);
+      this.title = title;
+      this.parts = Collections.unmodifiableList(parts);
+    }
+  }
+
+  /** A partial segment, as defined by #EXT-X-PART or #EXT-X-PRELOAD-HINT. */
+  public static final class Part extends SegmentBase {
+
+    /** Whether the part is tagged with INDEPENDENT=YES. */
+    public final boolean isIndependent;
+    /**
+     * Whether the part is a hint for a part that is not yet available, as defined by
+     * #EXT-X-PRELOAD-HINT. The duration of a preload hint is unknown and is set to 0.
+     */
+    public final boolean isPreload;
+
+    /**
+     * @param url See {@link #url}.
+     * @param initializationSegment See {@link #initializationSegment}.
+     * @param durationUs See {@link #durationUs}.
+     * @param relativeDiscontinuitySequence See {@link #relativeDiscontinuitySequence}.
+     * @param relativeStartTimeUs See {@link #relativeStartTimeUs}.
+     * @param drmInitData See {@link #drmInitData}.
+     * @param fullSegmentEncryptionKeyUri See {@link #fullSegmentEncryptionKeyUri}.
+     * @param encryptionIV See {@link #encryptionIV}.
+     * @param byterangeOffset See {@link #byterangeOffset}.
+     * @param byterangeLength See {@link #byterangeLength}.
+     * @param hasGapTag See {@link #hasGapTag}.
+     * @param isIndependent See {@link #isIndependent}.
+     * @param isPreload See {@link #isPreload}.
+     */
+    public Part(
+        String url,
+        @Nullable Segment initializationSegment,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        @Nullable DrmInitData drmInitData,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV,
+        long byterangeOffset,
+        long byterangeLength,
+        boolean hasGapTag,
+        boolean isIndependent,
+        boolean isPreload) {
+      super(
+          url,
+          initializationSegment,
+          durationUs,
+          relativeDiscontinuitySequence,
+          relativeStartTimeUs,
+          drmInitData,
+          fullSegmentEncryptionKeyUri,
+          encryptionIV,
+          byterangeOffset,
+          byterangeLength,
+          hasGapTag);
+      this.isIndependent = isIndependent;
+      this.isPreload = isPreload;
+    }
+  }
+
+  /** The properties shared by {@link Segment segments} and {@link Part parts}. */
+  @SuppressWarnings("ComparableType")
+  public static class SegmentBase implements Comparable<Long> {
+
+    /**
+     * The url of the segment.
+     */
+    public final String url;
+    /**
+     * The media initialization section for this segment, as defined by #EXT-X-MAP. May be null if
+     * the media playlist does not define a media section for this segment. The same instance is
+     * used for all segments that share an EXT-X-MAP tag.
+     */
+    @Nullable public final Segment initializationSegment;
+    /** The duration of the segment in microseconds, as defined by #EXTINF or #EXT-X-PART. */
+    public final long durationUs;
+    /**
+     * The number of #EXT-X-DISCONTINUITY tags in the playlist before the segment.
+     */
+    public final int relativeDiscontinuitySequence;
+    /**
+     * The start time of the segment in microseconds, relative to the start of the playlist.
+     */
+    public final long relativeStartTimeUs;
+    /**
+     * DRM initialization data for sample decryption, or null if the segment does not use CDM-DRM
+     * protection.
+     */
+    @Nullable public final DrmInitData drmInitData;
+    /**
+     * The encryption identity key uri as defined by #EXT-X-KEY, or null if the segment does not use
+     * full segment encryption with identity key.
+     */
+    @Nullable public final String fullSegmentEncryptionKeyUri;
+    /**
+     * The encryption initialization vector as defined by #EXT-X-KEY, or null if the segment is not
+     * encrypted.
+     */
+    @Nullable public final String encryptionIV;
+    /**
+     * The segment's byte range offset, as defined by #EXT-X-BYTERANGE.
+     */
+    public final long byterangeOffset;
+    /**
+     * The segment's byte range length, as defined by #EXT-X-BYTERANGE, or {@link C#LENGTH_UNSET} if
+     * no byte range is specified.
+     */
+    public final long byterangeLength;
+
+    /** Whether the segment is tagged with #EXT-X-GAP. */
+    public final boolean hasGapTag;
+
+    private SegmentBase(
+        String url,
+        @Nullable Segment initializationSegment,
+        long durationUs,
+        int relativeDiscontinuitySequence,
+        long relativeStartTimeUs,
+        @Nullable DrmInitData drmInitData,
+        @Nullable String fullSegmentEncryptionKeyUri,
+        @Nullable String encryptionIV,
+        long byterangeOffset,
+        long byterangeLength,
+        boolean hasGapTag) {
       this.url = url;
       this.initializationSegment = initializationSegment;
-      this.title = title;
       this.durationUs = durationUs;
       this.relativeDiscontinuitySequence = relativeDiscontinuitySequence;
       this.relativeStartTimeUs = relativeStartTimeUs;
@@ -160,6 +299,53 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
 
   }
 
+  /** Server control attributes, as defined by #EXT-X-SERVER-CONTROL. */
+  public static final class ServerControl {
+
+    /** Server control attributes for a playlist that has no #EXT-X-SERVER-CONTROL tag. */
+    public static final ServerControl DEFAULT =
+        new ServerControl(
+            /* skipUntilUs= */ C.TIME_UNSET,
+            /* holdBackUs= */ C.TIME_UNSET,
+            /* partHoldBackUs= */ C.TIME_UNSET,
+            /* canBlockReload= */ false);
+
+    /**
+     * The skip boundary for delta playlist updates in microseconds, as defined by CAN-SKIP-UNTIL,
+     * or {@link C#TIME_UNSET} if delta updates are not supported.
+     */
+    public final long skipUntilUs;
+    /**
+     * The minimum distance from the end of the playlist at which playback should start, in
+     * microseconds, as defined by HOLD-BACK, or {@link C#TIME_UNSET} if not specified.
+     */
+    public final long holdBackUs;
+    /**
+     * The minimum distance from the end of the playlist at which playback should start when
+     * playing in low latency mode, in microseconds, as defined by PART-HOLD-BACK, or {@link
+     * C#TIME_UNSET} if not specified.
+     */
+    public final long partHoldBackUs;
+    /**
+     * Whether the server supports blocking playlist reload, as defined by CAN-BLOCK-RELOAD.
+     */
+    public final boolean canBlockReload;
+
+    /**
+     * @param skipUntilUs See {@link #skipUntilUs}.
+     * @param holdBackUs See {@link #holdBackUs}.
+     * @param partHoldBackUs See {@link #partHoldBackUs}.
+     * @param canBlockReload See {@link #canBlockReload}.
+     */
+    public ServerControl(
+        long skipUntilUs, long holdBackUs, long partHoldBackUs, boolean canBlockReload) {
+      this.skipUntilUs = skipUntilUs;
+      this.holdBackUs = holdBackUs;
+      this.partHoldBackUs = partHoldBackUs;
+      this.canBlockReload = canBlockReload;
+    }
+  }
+
   /**
    * Type of the playlist, as defined by #EXT-X-PLAYLIST-TYPE. One of {@link
    * #PLAYLIST_TYPE_UNKNOWN}, {@link #PLAYLIST_TYPE_VOD} or {@link #PLAYLIST_TYPE_EVENT}.
@@ -227,7 +413,20 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
    */
   public final List<Segment> segments;
   /**
-   * The total duration of the playlist in microseconds.
+   * The parts of the segment that follows the last entry of {@link #segments}, which is not yet
+   * complete. The last part may be a {@link Part#isPreload preload hint}.
+   */
+  public final List<Part> trailingParts;
+  /**
+   * The target duration of parts in microseconds, as defined by #EXT-X-PART-INF, or {@link
+   * C#TIME_UNSET} if the playlist does not contain parts.
+   */
+  public final long partTargetDurationUs;
+  /** The server control attributes, as defined by #EXT-X-SERVER-CONTROL. */
+  public final ServerControl serverControl;
+  /**
+   * The total duration of the playlist in microseconds, including the duration of any {@link
+   * #trailingParts}.
    */
   public final long durationUs;
 
@@ -264,6 +463,66 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
       boolean hasProgramDateTime,
       @Nullable DrmInitData protectionSchemes,
       List<Segment> segments) {
+    this(
+        playlistType,
+        baseUri,
+        tags,
+        startOffsetUs,
+        startTimeUs,
+        hasDiscontinuitySequence,
+        discontinuitySequence,
+        mediaSequence,
+        version,
+        targetDurationUs,
+        /* partTargetDurationUs= */ C.TIME_UNSET,
+        hasIndependentSegments,
+        hasEndTag,
+        hasProgramDateTime,
+        protectionSchemes,
+        segments,
+        /* trailingParts= */ Collections.emptyList(),
+        ServerControl.DEFAULT);
+  }
+
+  /**
+   * @param playlistType See {@link #playlistType}.
+   * @param baseUri See {@link #baseUri}.
+   * @param tags See {@link #tags}.
+   * @param startOffsetUs See {@link #startOffsetUs}.
+   * @param startTimeUs See {@link #startTimeUs}.
+   * @param hasDiscontinuitySequence See {@link #hasDiscontinuitySequence}.
+   * @param discontinuitySequence See {@link #discontinuitySequence}.
+   * @param mediaSequence See {@link #mediaSequence}.
+   * @param version See {@link #version}.
+   * @param targetDurationUs See {@link #targetDurationUs}.
+   * @param partTargetDurationUs See {@link #partTargetDurationUs}.
+   * @param hasIndependentSegments See {@link #hasIndependentSegments}.
+   * @param hasEndTag See {@link #hasEndTag}.
+   * @param protectionSchemes See {@link #protectionSchemes}.
+   * @param hasProgramDateTime See {@link #hasProgramDateTime}.
+   * @param segments See {@link #segments}.
+   * @param trailingParts See {@link #trailingParts}.
+   * @param serverControl See {@link #serverControl}.
+   */
+  public HlsMediaPlaylist(
+      @PlaylistType int playlistType,
+      String baseUri,
+      List<String> tags,
+      long startOffsetUs,
+      long startTimeUs,
+      boolean hasDiscontinuitySequence,
+      int discontinuitySequence,
+      long mediaSequence,
+      int version,
+      long targetDurationUs,
+      long partTargetDurationUs,
+      boolean hasIndependentSegments,
+      boolean hasEndTag,
+      boolean hasProgramDateTime,
+      @Nullable DrmInitData protectionSchemes,
+      List<Segment> segments,
+      List<Part> trailingParts,
+      ServerControl serverControl) {
     super(baseUri, tags, hasIndependentSegments);
     this.playlistType = playlistType;
     this.startTimeUs = startTimeUs;
@@ -272,16 +531,23 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     this.mediaSequence = mediaSequence;
     this.version = version;
     this.targetDurationUs = targetDurationUs;
+    this.partTargetDurationUs = partTargetDurationUs;
     this.hasEndTag = hasEndTag;
     this.hasProgramDateTime = hasProgramDateTime;
     this.protectionSchemes = protectionSchemes;
     this.segments = Collections.unmodifiableList(segments);
+    this.trailingParts = Collections.unmodifiableList(trailingParts);
+    this.serverControl = serverControl;
+    long durationUs = 0;
     if (!segments.isEmpty()) {
       Segment last = segments.get(segments.size() - 1);
       durationUs = last.relativeStartTimeUs + last.durationUs;
-    } else {
-      durationUs = 0;
     }
+    if (!trailingParts.isEmpty()) {
+      Part last = trailingParts.get(trailingParts.size() - 1);
+      durationUs = Math.max(durationUs, last.relativeStartTimeUs + last.durationUs);
+    }
+    this.durationUs = durationUs;
     this.startOffsetUs = startOffsetUs == C.TIME_UNSET ? C.TIME_UNSET
         : startOffsetUs >= 0 ? startOffsetUs : durationUs + startOffsetUs;
   }
@@ -307,8 +573,13 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     // The media sequences are equal.
     int segmentCount = segments.size();
     int otherSegmentCount = other.segments.size();
-    return segmentCount > otherSegmentCount
-        || (segmentCount == otherSegmentCount && hasEndTag && !other.hasEndTag);
+    if (segmentCount != otherSegmentCount) {
+      return segmentCount > otherSegmentCount;
+    }
+    int partCount = getCompletePartCount();
+    int otherPartCount = other.getCompletePartCount();
+    return partCount > otherPartCount
+        || (partCount == otherPartCount && hasEndTag && !other.hasEndTag);
   }
 
   /**
@@ -339,11 +610,14 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         mediaSequence,
         version,
         targetDurationUs,
+        partTargetDurationUs,
         hasIndependentSegments,
         hasEndTag,
         hasProgramDateTime,
         protectionSchemes,
-        segments);
+        segments,
+        trailingParts,
+        serverControl);
   }
 
   /**
@@ -365,11 +639,25 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         mediaSequence,
         version,
         targetDurationUs,
+        partTargetDurationUs,
         hasIndependentSegments,
         /* hasEndTag= */ true,
         hasProgramDateTime,
         protectionSchemes,
-        segments);
+        segments,
+        trailingParts,
+        serverControl);
   }
 
+  /**
+   * Returns the number of {@link #trailingParts} that have been published, not counting a trailing
+   * {@link Part#isPreload preload hint}. This is the index of the next part to be published in the
+   * segment following {@link #segments}.
+   */
+  public int getCompletePartCount() {
+    int partCount = trailingParts.size();
+    return partCount > 0 && trailingParts.get(partCount - 1).isPreload
+        ? partCount - 1
+        : partCount;
+  }
 }
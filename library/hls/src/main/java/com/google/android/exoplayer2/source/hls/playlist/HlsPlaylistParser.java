@@ -31,7 +31,9 @@ import com.google.android.exoplayer2.source.hls.HlsTrackMetadataEntry;
 import com.google.android.exoplayer2.source.hls.HlsTrackMetadataEntry.VariantInfo;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist.Rendition;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist.Variant;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.ServerControl;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -84,11 +86,17 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   private static final String TAG_SESSION_KEY = "#EXT-X-SESSION-KEY";
   private static final String TAG_BYTERANGE = "#EXT-X-BYTERANGE";
   private static final String TAG_GAP = "#EXT-X-GAP";
+  private static final String TAG_SERVER_CONTROL = "#EXT-X-SERVER-CONTROL";
+  private static final String TAG_PART_INF = "#EXT-X-PART-INF";
+  private static final String TAG_PART = "#EXT-X-PART";
+  private static final String TAG_PRELOAD_HINT = "#EXT-X-PRELOAD-HINT";
 
   private static final String TYPE_AUDIO = "AUDIO";
   private static final String TYPE_VIDEO = "VIDEO";
   private static final String TYPE_SUBTITLES = "SUBTITLES";
   private static final String TYPE_CLOSED_CAPTIONS = "CLOSED-CAPTIONS";
+  private static final String TYPE_PART = "PART";
+  private static final String TYPE_MAP = "MAP";
 
   private static final String METHOD_NONE = "NONE";
   private static final String METHOD_AES_128 = "AES-128";
@@ -134,6 +142,19 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       + ":(\\d+(?:@\\d+)?)\\b");
   private static final Pattern REGEX_ATTR_BYTERANGE =
       Pattern.compile("BYTERANGE=\"(\\d+(?:@\\d+)?)\\b\"");
+  private static final Pattern REGEX_BYTERANGE_START = Pattern.compile("BYTERANGE-START=(\\d+)\\b");
+  private static final Pattern REGEX_BYTERANGE_LENGTH =
+      Pattern.compile("BYTERANGE-LENGTH=(\\d+)\\b");
+  private static final Pattern REGEX_ATTR_DURATION = Pattern.compile("[:,]DURATION=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_PART_TARGET_DURATION =
+      Pattern.compile("PART-TARGET=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_HOLD_BACK = Pattern.compile("[:,]HOLD-BACK=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_PART_HOLD_BACK =
+      Pattern.compile("PART-HOLD-BACK=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_CAN_SKIP_UNTIL =
+      Pattern.compile("CAN-SKIP-UNTIL=([\\d\\.]+)\\b");
+  private static final Pattern REGEX_PRELOAD_HINT_TYPE =
+      Pattern.compile("TYPE=(" + TYPE_PART + "|" + TYPE_MAP + ")");
   private static final Pattern REGEX_METHOD =
       Pattern.compile(
           "METHOD=("
@@ -164,6 +185,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   private static final Pattern REGEX_AUTOSELECT = compileBooleanAttrPattern("AUTOSELECT");
   private static final Pattern REGEX_DEFAULT = compileBooleanAttrPattern("DEFAULT");
   private static final Pattern REGEX_FORCED = compileBooleanAttrPattern("FORCED");
+  private static final Pattern REGEX_INDEPENDENT = compileBooleanAttrPattern("INDEPENDENT");
+  private static final Pattern REGEX_GAP = compileBooleanAttrPattern("GAP");
+  private static final Pattern REGEX_CAN_BLOCK_RELOAD =
+      compileBooleanAttrPattern("CAN-BLOCK-RELOAD");
   private static final Pattern REGEX_VALUE = Pattern.compile("VALUE=\"(.+?)\"");
   private static final Pattern REGEX_IMPORT = Pattern.compile("IMPORT=\"(.+?)\"");
   private static final Pattern REGEX_VARIABLE_REFERENCE =
@@ -213,7 +238,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
             || line.startsWith(TAG_BYTERANGE)
             || line.equals(TAG_DISCONTINUITY)
             || line.equals(TAG_DISCONTINUITY_SEQUENCE)
-            || line.equals(TAG_ENDLIST)) {
+            || line.equals(TAG_ENDLIST)
+            || line.startsWith(TAG_PART)) {
           extraLines.add(line);
           return parseMediaPlaylist(
               masterPlaylist, new LineIterator(extraLines, reader), uri.toString());
@@ -581,7 +607,11 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     Segment initializationSegment = null;
     HashMap<String, String> variableDefinitions = new HashMap<>();
     List<Segment> segments = new ArrayList<>();
+    List<Part> trailingParts = new ArrayList<>();
+    @Nullable Part preloadPart = null;
     List<String> tags = new ArrayList<>();
+    long partTargetDurationUs = C.TIME_UNSET;
+    ServerControl serverControl = ServerControl.DEFAULT;
 
     long segmentDurationUs = 0;
     String segmentTitle = "";
@@ -594,6 +624,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     long segmentByteRangeLength = C.LENGTH_UNSET;
     long segmentMediaSequence = 0;
     boolean hasGapTag = false;
+    long partStartTimeUs = 0;
+    long partByteRangeOffset = 0;
 
     DrmInitData playlistProtectionSchemes = null;
     String fullSegmentEncryptionKeyUri = null;
@@ -647,6 +679,77 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         segmentByteRangeLength = C.LENGTH_UNSET;
       } else if (line.startsWith(TAG_TARGET_DURATION)) {
         targetDurationUs = parseIntAttr(line, REGEX_TARGET_DURATION) * C.MICROS_PER_SECOND;
+      } else if (line.startsWith(TAG_SERVER_CONTROL)) {
+        serverControl = parseServerControl(line);
+      } else if (line.startsWith(TAG_PART_INF)) {
+        partTargetDurationUs =
+            (long) (parseDoubleAttr(line, REGEX_PART_TARGET_DURATION) * C.MICROS_PER_SECOND);
+      } else if (line.startsWith(TAG_PART)) {
+        String url = parseStringAttr(line, REGEX_URI, variableDefinitions);
+        long partDurationUs =
+            (long) (parseDoubleAttr(line, REGEX_ATTR_DURATION) * C.MICROS_PER_SECOND);
+        long partByteRangeLength = C.LENGTH_UNSET;
+        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE, variableDefinitions);
+        if (byteRange != null) {
+          String[] splitByteRange = byteRange.split("@");
+          partByteRangeLength = Long.parseLong(splitByteRange[0]);
+          if (splitByteRange.length > 1) {
+            partByteRangeOffset = Long.parseLong(splitByteRange[1]);
+          }
+        } else {
+          partByteRangeOffset = 0;
+        }
+        if (cachedDrmInitData == null && !currentSchemeDatas.isEmpty()) {
+          SchemeData[] schemeDatas = currentSchemeDatas.values().toArray(new SchemeData[0]);
+          cachedDrmInitData = new DrmInitData(encryptionScheme, schemeDatas);
+          if (playlistProtectionSchemes == null) {
+            playlistProtectionSchemes = getPlaylistProtectionSchemes(encryptionScheme, schemeDatas);
+          }
+        }
+        trailingParts.add(
+            new Part(
+                url,
+                initializationSegment,
+                partDurationUs,
+                relativeDiscontinuitySequence,
+                partStartTimeUs,
+                cachedDrmInitData,
+                fullSegmentEncryptionKeyUri,
+                getSegmentEncryptionIV(
+                    segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV),
+                partByteRangeOffset,
+                partByteRangeLength,
+                /* hasGapTag= */ parseOptionalBooleanAttribute(line, REGEX_GAP, false),
+                /* isIndependent= */ parseOptionalBooleanAttribute(line, REGEX_INDEPENDENT, false),
+                /* isPreload= */ false));
+        partStartTimeUs += partDurationUs;
+        if (partByteRangeLength != C.LENGTH_UNSET) {
+          partByteRangeOffset += partByteRangeLength;
+        }
+      } else if (line.startsWith(TAG_PRELOAD_HINT)) {
+        String type = parseOptionalStringAttr(line, REGEX_PRELOAD_HINT_TYPE, variableDefinitions);
+        if (TYPE_PART.equals(type)) {
+          // Only hints for parts are used. Hints for initialization sections are ignored.
+          long byteRangeStart = parseOptionalLongAttr(line, REGEX_BYTERANGE_START, 0);
+          long byteRangeLength =
+              parseOptionalLongAttr(line, REGEX_BYTERANGE_LENGTH, C.LENGTH_UNSET);
+          preloadPart =
+              new Part(
+                  parseStringAttr(line, REGEX_URI, variableDefinitions),
+                  initializationSegment,
+                  /* durationUs= */ 0,
+                  relativeDiscontinuitySequence,
+                  partStartTimeUs,
+                  cachedDrmInitData,
+                  fullSegmentEncryptionKeyUri,
+                  getSegmentEncryptionIV(
+                      segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV),
+                  byteRangeStart,
+                  byteRangeLength,
+                  /* hasGapTag= */ false,
+                  /* isIndependent= */ false,
+                  /* isPreload= */ true);
+        }
       } else if (line.startsWith(TAG_MEDIA_SEQUENCE)) {
         mediaSequence = parseLongAttr(line, REGEX_MEDIA_SEQUENCE);
         segmentMediaSequence = mediaSequence;
@@ -725,15 +828,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       } else if (line.equals(TAG_ENDLIST)) {
         hasEndTag = true;
       } else if (!line.startsWith("#")) {
-        String segmentEncryptionIV;
-        if (fullSegmentEncryptionKeyUri == null) {
-          segmentEncryptionIV = null;
-        } else if (fullSegmentEncryptionIV != null) {
-          segmentEncryptionIV = fullSegmentEncryptionIV;
-        } else {
-          segmentEncryptionIV = Long.toHexString(segmentMediaSequence);
-        }
-
+        String segmentEncryptionIV =
+            getSegmentEncryptionIV(
+                segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV);
         segmentMediaSequence++;
         if (segmentByteRangeLength == C.LENGTH_UNSET) {
           segmentByteRangeOffset = 0;
@@ -743,11 +840,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           SchemeData[] schemeDatas = currentSchemeDatas.values().toArray(new SchemeData[0]);
           cachedDrmInitData = new DrmInitData(encryptionScheme, schemeDatas);
           if (playlistProtectionSchemes == null) {
-            SchemeData[] playlistSchemeDatas = new SchemeData[schemeDatas.length];
-            for (int i = 0; i < schemeDatas.length; i++) {
-              playlistSchemeDatas[i] = schemeDatas[i].copyWithData(null);
-            }
-            playlistProtectionSchemes = new DrmInitData(encryptionScheme, playlistSchemeDatas);
+            playlistProtectionSchemes = getPlaylistProtectionSchemes(encryptionScheme, schemeDatas);
           }
         }
 
@@ -764,8 +857,12 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
                 segmentEncryptionIV,
                 segmentByteRangeOffset,
                 segmentByteRangeLength,
-                hasGapTag));
+                hasGapTag,
+                trailingParts));
         segmentStartTimeUs += segmentDurationUs;
+        partStartTimeUs = segmentStartTimeUs;
+        partByteRangeOffset = 0;
+        trailingParts = new ArrayList<>();
         segmentDurationUs = 0;
         segmentTitle = "";
         if (segmentByteRangeLength != C.LENGTH_UNSET) {
@@ -775,6 +872,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         hasGapTag = false;
       }
     }
+    if (preloadPart != null && !hasEndTag) {
+      trailingParts.add(preloadPart);
+    }
     return new HlsMediaPlaylist(
         playlistType,
         baseUri,
@@ -786,11 +886,51 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         mediaSequence,
         version,
         targetDurationUs,
+        partTargetDurationUs,
         hasIndependentSegmentsTag,
         hasEndTag,
         /* hasProgramDateTime= */ playlistStartTimeUs != 0,
         playlistProtectionSchemes,
-        segments);
+        segments,
+        trailingParts,
+        serverControl);
+  }
+
+  private static ServerControl parseServerControl(String line) {
+    double skipUntilSeconds = parseOptionalDoubleAttr(line, REGEX_CAN_SKIP_UNTIL, C.TIME_UNSET);
+    double holdBackSeconds = parseOptionalDoubleAttr(line, REGEX_HOLD_BACK, C.TIME_UNSET);
+    double partHoldBackSeconds = parseOptionalDoubleAttr(line, REGEX_PART_HOLD_BACK, C.TIME_UNSET);
+    return new ServerControl(
+        /* skipUntilUs= */ secondsToUs(skipUntilSeconds),
+        /* holdBackUs= */ secondsToUs(holdBackSeconds),
+        /* partHoldBackUs= */ secondsToUs(partHoldBackSeconds),
+        /* canBlockReload= */ parseOptionalBooleanAttribute(line, REGEX_CAN_BLOCK_RELOAD, false));
+  }
+
+  private static long secondsToUs(double seconds) {
+    return seconds == C.TIME_UNSET ? C.TIME_UNSET : (long) (seconds * C.MICROS_PER_SECOND);
+  }
+
+  @Nullable
+  private static String getSegmentEncryptionIV(
+      long segmentMediaSequence,
+      @Nullable String fullSegmentEncryptionKeyUri,
+      @Nullable String fullSegmentEncryptionIV) {
+    if (fullSegmentEncryptionKeyUri == null) {
+      return null;
+    } else if (fullSegmentEncryptionIV != null) {
+      return fullSegmentEncryptionIV;
+    }
+    return Long.toHexString(segmentMediaSequence);
+  }
+
+  private static DrmInitData getPlaylistProtectionSchemes(
+      @Nullable String encryptionScheme, SchemeData[] schemeDatas) {
+    SchemeData[] playlistSchemeDatas = new SchemeData[schemeDatas.length];
+    for (int i = 0; i < schemeDatas.length; i++) {
+      playlistSchemeDatas[i] = schemeDatas[i].copyWithData(null);
+    }
+    return new DrmInitData(encryptionScheme, playlistSchemeDatas);
   }
 
   @C.SelectionFlags
@@ -877,10 +1017,27 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return Long.parseLong(parseStringAttr(line, pattern, Collections.emptyMap()));
   }
 
+  private static long parseOptionalLongAttr(String line, Pattern pattern, long defaultValue) {
+    Matcher matcher = pattern.matcher(line);
+    if (matcher.find()) {
+      return Long.parseLong(matcher.group(1));
+    }
+    return defaultValue;
+  }
+
   private static double parseDoubleAttr(String line, Pattern pattern) throws ParserException {
     return Double.parseDouble(parseStringAttr(line, pattern, Collections.emptyMap()));
   }
 
+  private static double parseOptionalDoubleAttr(
+      String line, Pattern pattern, double defaultValue) {
+    Matcher matcher = pattern.matcher(line);
+    if (matcher.find()) {
+      return Double.parseDouble(matcher.group(1));
+    }
+    return defaultValue;
+  }
+
   private static String parseStringAttr(
       String line, Pattern pattern, Map<String, String> variableDefinitions)
       throws ParserException {
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.net.Uri;
+import android.os.ConditionVariable;
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit test for {@link HlsSampleStreamWrapper}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class HlsSampleStreamWrapperTest {
+
+  private static final Uri PLAYLIST_URI = Uri.parse("https://example.com/test.m3u8");
+  private static final String PLAYLIST =
+      "#EXTM3U\n"
+          + "#EXT-X-TARGETDURATION:10\n"
+          + "#EXT-X-MEDIA-SEQUENCE:0\n"
+          + "#EXTINF:10.0,\n"
+          + "segment0.ts\n"
+          + "#EXT-X-ENDLIST\n";
+  private static final Format VIDEO_FORMAT =
+      Format.createVideoSampleFormat(
+          /* id= */ null,
+          MimeTypes.VIDEO_H264,
+          /* codecs= */ null,
+          /* bitrate= */ Format.NO_VALUE,
+          /* maxInputSize= */ Format.NO_VALUE,
+          /* width= */ 1280,
+          /* height= */ 720,
+          /* frameRate= */ Format.NO_VALUE,
+          /* initializationData= */ null,
+          /* drmInitData= */ null);
+
+  private BlockingExtractor extractor;
+  private HlsSampleStreamWrapper sampleStreamWrapper;
+
+  @Before
+  public void setUp() throws Exception {
+    extractor = new BlockingExtractor(/* lastSampleTimeUs= */ 4_000_000);
+    HlsMediaPlaylist mediaPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(PLAYLIST_URI, new ByteArrayInputStream(Util.getUtf8Bytes(PLAYLIST)));
+    FakeDataSet fakeDataSet = new FakeDataSet();
+    fakeDataSet.newDefaultData().appendReadData(/* length= */ 100);
+    HlsMediaChunk mediaChunk =
+        HlsMediaChunk.createInstance(
+            (previousExtractor,
+                uri,
+                format,
+                muxedCaptionFormats,
+                drmInitData,
+                timestampAdjuster,
+                responseHeaders,
+                sniffingExtractorInput) ->
+                new HlsExtractorFactory.Result(
+                    extractor, /* isPackedAudioExtractor= */ false, /* isReusable= */ false),
+            new FakeDataSource(fakeDataSet),
+            VIDEO_FORMAT,
+            /* startOfPlaylistInPeriodUs= */ 0,
+            mediaPlaylist,
+            mediaPlaylist.segments.get(0),
+            /* mediaSequence= */ 0,
+            /* partIndex= */ C.INDEX_UNSET,
+            PLAYLIST_URI,
+            /* muxedCaptionFormats= */ null,
+            C.SELECTION_REASON_INITIAL,
+            /* trackSelectionData= */ null,
+            /* isMasterTimestampSource= */ true,
+            new TimestampAdjusterProvider(),
+            /* previousChunk= */ null,
+            /* mediaSegmentKey= */ null,
+            /* initSegmentKey= */ null);
+    HlsChunkSource chunkSource = mock(HlsChunkSource.class);
+    when(chunkSource.getTrackGroup()).thenReturn(new TrackGroup(VIDEO_FORMAT));
+    doAnswer(
+            invocation -> {
+              HlsChunkSource.HlsChunkHolder holder = invocation.getArgument(4);
+              holder.chunk = mediaChunk;
+              return null;
+            })
+        .when(chunkSource)
+        .getNextChunk(anyLong(), anyLong(), anyList(), anyBoolean(), any());
+    sampleStreamWrapper =
+        new HlsSampleStreamWrapper(
+            C.TRACK_TYPE_DEFAULT,
+            mock(HlsSampleStreamWrapper.Callback.class),
+            chunkSource,
+            /* overridingDrmInitData= */ Collections.emptyMap(),
+            new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+            /* positionUs= */ 0,
+            /* muxedAudioFormat= */ null,
+            DrmSessionManager.getDummyDrmSessionManager(),
+            new DefaultLoadErrorHandlingPolicy(),
+            new EventDispatcher(),
+            HlsMediaSource.METADATA_TYPE_ID3,
+            /* useLockFreeSampleQueues= */ false);
+  }
+
+  @After
+  public void tearDown() {
+    extractor.unblock();
+    sampleStreamWrapper.release();
+  }
+
+  @Test
+  public void seekToUs_pastBufferedSamplesInsideLoadingChunk_resets() {
+    sampleStreamWrapper.continueLoading(/* positionUs= */ 0);
+    extractor.waitForSamples();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    // The chunk that's being loaded spans the seek position, but there's no buffered keyframe at or
+    // after it.
+    boolean reset =
+        sampleStreamWrapper.seekToUs(/* positionUs= */ 6_000_000, /* forceReset= */ false);
+
+    assertThat(reset).isTrue();
+  }
+
+  @Test
+  public void seekToUs_insideBufferedSamples_seeksInBuffer() {
+    sampleStreamWrapper.continueLoading(/* positionUs= */ 0);
+    extractor.waitForSamples();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    boolean reset = sampleStreamWrapper.seekToUs(/* positionUs= */ 0, /* forceReset= */ false);
+
+    assertThat(reset).isFalse();
+  }
+
+  /**
+   * Extractor that outputs a keyframe at time zero followed by one non-keyframe per second, and
+   * then blocks so that the chunk being loaded stays incomplete.
+   */
+  private static final class BlockingExtractor implements Extractor {
+
+    private final long lastSampleTimeUs;
+    private final ConditionVariable samplesOutput;
+    private final ConditionVariable unblocked;
+
+    private TrackOutput trackOutput;
+
+    public BlockingExtractor(long lastSampleTimeUs) {
+      this.lastSampleTimeUs = lastSampleTimeUs;
+      samplesOutput = new ConditionVariable();
+      unblocked = new ConditionVariable();
+    }
+
+    public void waitForSamples() {
+      samplesOutput.block();
+    }
+
+    public void unblock() {
+      unblocked.open();
+    }
+
+    @Override
+    public boolean sniff(ExtractorInput input) {
+      return true;
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {
+      trackOutput = output.track(/* id= */ 0, C.TRACK_TYPE_VIDEO);
+      output.endTracks();
+    }
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition)
+        throws IOException, InterruptedException {
+      trackOutput.format(VIDEO_FORMAT);
+      for (long timeUs = 0; timeUs <= lastSampleTimeUs; timeUs += C.MICROS_PER_SECOND) {
+        trackOutput.sampleData(new ParsableByteArray(/* limit= */ 1), /* length= */ 1);
+        trackOutput.sampleMetadata(
+            timeUs,
+            timeUs == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0,
+            /* size= */ 1,
+            /* offset= */ 0,
+            /* encryptionData= */ null);
+      }
+      samplesOutput.open();
+      unblocked.block();
+      return RESULT_END_OF_INPUT;
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {
+      // Do nothing.
+    }
+
+    @Override
+    public void release() {
+      // Do nothing.
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.net.Uri;
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.source.hls.HlsDataSourceFactory;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/**
+ * Unit test for {@link DefaultHlsPlaylistTracker}, loading playlists from a fake server that
+ * answers requests according to their delivery directives.
+ */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class DefaultHlsPlaylistTrackerTest {
+
+  private static final String PLAYLIST_URI = "https://example.com/low-latency.m3u8";
+  private static final long TIMEOUT_MS = 10_000;
+
+  private static final String PLAYLIST_HEADER =
+      "#EXTM3U\n"
+          + "#EXT-X-TARGETDURATION:4\n"
+          + "#EXT-X-PART-INF:PART-TARGET=1\n"
+          + "#EXT-X-MEDIA-SEQUENCE:10\n"
+          + "#EXTINF:4,\n"
+          + "segment10.ts\n";
+  private static final String BLOCKING_SERVER_CONTROL =
+      "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=3\n";
+
+  private FakeDataSet fakeDataSet;
+  private List<FakeDataSource> dataSources;
+  private List<HlsMediaPlaylist> primaryPlaylists;
+  private DefaultHlsPlaylistTracker playlistTracker;
+
+  @Before
+  public void setUp() {
+    fakeDataSet = new FakeDataSet();
+    dataSources = new ArrayList<>();
+    primaryPlaylists = new ArrayList<>();
+    FakeDataSource.Factory fakeDataSourceFactory =
+        new FakeDataSource.Factory().setFakeDataSet(fakeDataSet);
+    HlsDataSourceFactory dataSourceFactory =
+        dataType -> {
+          FakeDataSource dataSource = fakeDataSourceFactory.createDataSource();
+          dataSources.add(dataSource);
+          return dataSource;
+        };
+    playlistTracker =
+        new DefaultHlsPlaylistTracker(
+            dataSourceFactory,
+            new DefaultLoadErrorHandlingPolicy(),
+            new DefaultHlsPlaylistParserFactory());
+  }
+
+  @After
+  public void tearDown() {
+    playlistTracker.stop();
+  }
+
+  @Test
+  public void blockingReload_requestsNextPartAndReloadsWithoutDelay() throws Exception {
+    fakeDataSet.setData(
+        PLAYLIST_URI,
+        Util.getUtf8Bytes(
+            PLAYLIST_HEADER
+                + BLOCKING_SERVER_CONTROL
+                + "#EXT-X-PART:DURATION=1,URI=\"11.0.ts\"\n"));
+    fakeDataSet.setData(
+        PLAYLIST_URI + "?_HLS_msn=11&_HLS_part=1",
+        Util.getUtf8Bytes(
+            PLAYLIST_HEADER
+                + BLOCKING_SERVER_CONTROL
+                + "#EXT-X-PART:DURATION=1,URI=\"11.0.ts\"\n"
+                + "#EXT-X-PART:DURATION=1,URI=\"11.1.ts\"\n"
+                + "#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"11.2.ts\"\n"));
+    fakeDataSet.setData(
+        PLAYLIST_URI + "?_HLS_msn=11&_HLS_part=2",
+        Util.getUtf8Bytes(
+            PLAYLIST_HEADER
+                + BLOCKING_SERVER_CONTROL
+                + "#EXT-X-PART:DURATION=1,URI=\"11.0.ts\"\n"
+                + "#EXT-X-PART:DURATION=1,URI=\"11.1.ts\"\n"
+                + "#EXT-X-PART:DURATION=1,URI=\"11.2.ts\"\n"
+                + "#EXT-X-PART:DURATION=1,URI=\"11.3.ts\"\n"
+                + "#EXTINF:4,\n"
+                + "segment11.ts\n"));
+
+    playlistTracker.start(Uri.parse(PLAYLIST_URI), new EventDispatcher(), primaryPlaylists::add);
+    runMainLooperUntilPrimaryPlaylistCount(3);
+
+    assertThat(primaryPlaylists.get(0).trailingParts).hasSize(1);
+    assertThat(primaryPlaylists.get(1).trailingParts).hasSize(3);
+    HlsMediaPlaylist lastPlaylist = primaryPlaylists.get(2);
+    assertThat(lastPlaylist.segments).hasSize(2);
+    assertThat(lastPlaylist.segments.get(1).parts).hasSize(4);
+    assertThat(lastPlaylist.trailingParts).isEmpty();
+    assertThat(getRequestedUris())
+        .containsAtLeast(
+            PLAYLIST_URI,
+            PLAYLIST_URI + "?_HLS_msn=11&_HLS_part=1",
+            PLAYLIST_URI + "?_HLS_msn=11&_HLS_part=2")
+        .inOrder();
+  }
+
+  @Test
+  public void reloadWithoutBlocking_reloadsPlaylistAfterPartTargetDuration() throws Exception {
+    fakeDataSet.setData(
+        PLAYLIST_URI,
+        Util.getUtf8Bytes(PLAYLIST_HEADER + "#EXT-X-PART:DURATION=1,URI=\"11.0.ts\"\n"));
+
+    playlistTracker.start(Uri.parse(PLAYLIST_URI), new EventDispatcher(), primaryPlaylists::add);
+    runMainLooperUntilPrimaryPlaylistCount(1);
+    fakeDataSet.setData(
+        PLAYLIST_URI,
+        Util.getUtf8Bytes(
+            PLAYLIST_HEADER
+                + "#EXT-X-PART:DURATION=1,URI=\"11.0.ts\"\n"
+                + "#EXT-X-PART:DURATION=1,URI=\"11.1.ts\"\n"));
+    // The first reload is scheduled one part target duration after the first load.
+    shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.SECONDS);
+    runMainLooperUntilPrimaryPlaylistCount(2);
+
+    assertThat(primaryPlaylists.get(1).trailingParts).hasSize(2);
+    assertThat(getRequestedUris()).doesNotContain(PLAYLIST_URI + "?_HLS_msn=11&_HLS_part=1");
+  }
+
+  /**
+   * Runs the main looper until {@code count} primary playlists have been received, as playlists
+   * are loaded on a background thread.
+   */
+  private void runMainLooperUntilPrimaryPlaylistCount(int count) throws Exception {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (primaryPlaylists.size() < count) {
+      if (System.currentTimeMillis() > deadlineMs) {
+        throw new TimeoutException();
+      }
+      shadowOf(Looper.getMainLooper()).idle();
+      Thread.sleep(/* millis= */ 1);
+    }
+  }
+
+  private List<String> getRequestedUris() {
+    List<String> requestedUris = new ArrayList<>();
+    for (FakeDataSource dataSource : dataSources) {
+      for (DataSpec dataSpec : dataSource.getAndClearOpenedDataSpecs()) {
+        requestedUris.add(dataSpec.uri.toString());
+      }
+    }
+    return requestedUris;
+  }
+}
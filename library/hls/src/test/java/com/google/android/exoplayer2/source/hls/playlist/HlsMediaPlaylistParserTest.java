@@ -22,6 +22,7 @@ import android.net.Uri;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Part;
 import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist.Segment;
 import com.google.android.exoplayer2.util.Util;
 import java.io.ByteArrayInputStream;
@@ -528,4 +529,103 @@ public class HlsMediaPlaylistParserTest {
       assertThat(playlist.segments.get(i - 1).url).isEqualTo("long_path" + i + ".ts");
     }
   }
+
+  @Test
+  public void testParseLowLatencyPlaylist() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/low-latency.m3u8");
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=1.0,HOLD-BACK=12.0,"
+            + "CAN-SKIP-UNTIL=24.0\n"
+            + "#EXT-X-PART-INF:PART-TARGET=0.5\n"
+            + "#EXT-X-MEDIA-SEQUENCE:266\n"
+            + "#EXTINF:4.0,\n"
+            + "fileSequence266.mp4\n"
+            + "#EXT-X-PART:DURATION=0.5,URI=\"filePart267.0.mp4\",INDEPENDENT=YES\n"
+            + "#EXT-X-PART:DURATION=0.5,URI=\"filePart267.1.mp4\"\n"
+            + "#EXTINF:1.0,\n"
+            + "fileSequence267.mp4\n"
+            + "#EXT-X-PART:DURATION=0.5,URI=\"fileSequence268.mp4\",BYTERANGE=\"1000@0\","
+            + "INDEPENDENT=YES\n"
+            + "#EXT-X-PART:DURATION=0.5,URI=\"fileSequence268.mp4\",BYTERANGE=\"800\",GAP=YES\n"
+            + "#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"fileSequence268.mp4\",BYTERANGE-START=1800\n";
+    InputStream inputStream = new ByteArrayInputStream(Util.getUtf8Bytes(playlistString));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, inputStream);
+
+    assertThat(playlist.partTargetDurationUs).isEqualTo(500000);
+    assertThat(playlist.serverControl.canBlockReload).isTrue();
+    assertThat(playlist.serverControl.holdBackUs).isEqualTo(12000000);
+    assertThat(playlist.serverControl.partHoldBackUs).isEqualTo(1000000);
+    assertThat(playlist.serverControl.skipUntilUs).isEqualTo(24000000);
+
+    List<Segment> segments = playlist.segments;
+    assertThat(segments).hasSize(2);
+    assertThat(segments.get(0).parts).isEmpty();
+    List<Part> parts = segments.get(1).parts;
+    assertThat(parts).hasSize(2);
+    assertThat(parts.get(0).url).isEqualTo("filePart267.0.mp4");
+    assertThat(parts.get(0).relativeStartTimeUs).isEqualTo(4000000);
+    assertThat(parts.get(0).isIndependent).isTrue();
+    assertThat(parts.get(1).url).isEqualTo("filePart267.1.mp4");
+    assertThat(parts.get(1).relativeStartTimeUs).isEqualTo(4500000);
+    assertThat(parts.get(1).isIndependent).isFalse();
+
+    List<Part> trailingParts = playlist.trailingParts;
+    assertThat(trailingParts).hasSize(3);
+    assertThat(trailingParts.get(0).relativeStartTimeUs).isEqualTo(5000000);
+    assertThat(trailingParts.get(0).byterangeOffset).isEqualTo(0);
+    assertThat(trailingParts.get(0).byterangeLength).isEqualTo(1000);
+    assertThat(trailingParts.get(1).byterangeOffset).isEqualTo(1000);
+    assertThat(trailingParts.get(1).byterangeLength).isEqualTo(800);
+    assertThat(trailingParts.get(1).hasGapTag).isTrue();
+    Part preloadPart = trailingParts.get(2);
+    assertThat(preloadPart.isPreload).isTrue();
+    assertThat(preloadPart.url).isEqualTo("fileSequence268.mp4");
+    assertThat(preloadPart.relativeStartTimeUs).isEqualTo(6000000);
+    assertThat(preloadPart.byterangeOffset).isEqualTo(1800);
+    assertThat(preloadPart.byterangeLength).isEqualTo(C.LENGTH_UNSET);
+    assertThat(playlist.durationUs).isEqualTo(6000000);
+  }
+
+  @Test
+  public void testIsNewerThan_withMoreParts_returnsTrue() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/low-latency.m3u8");
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-PART-INF:PART-TARGET=1\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXTINF:4,\n"
+            + "segment10.ts\n"
+            + "#EXT-X-PART:DURATION=1,URI=\"part11.0.ts\"\n";
+    String newerPlaylistString =
+        playlistString
+            + "#EXT-X-PART:DURATION=1,URI=\"part11.1.ts\"\n"
+            + "#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part11.2.ts\"\n";
+    String preloadOnlyPlaylistString =
+        playlistString + "#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part11.1.ts\"\n";
+
+    HlsPlaylistParser parser = new HlsPlaylistParser();
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            parser.parse(
+                playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+    HlsMediaPlaylist newerPlaylist =
+        (HlsMediaPlaylist)
+            parser.parse(
+                playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(newerPlaylistString)));
+    HlsMediaPlaylist preloadOnlyPlaylist =
+        (HlsMediaPlaylist)
+            parser.parse(
+                playlistUri,
+                new ByteArrayInputStream(Util.getUtf8Bytes(preloadOnlyPlaylistString)));
+
+    assertThat(newerPlaylist.isNewerThan(playlist)).isTrue();
+    assertThat(playlist.isNewerThan(newerPlaylist)).isFalse();
+    assertThat(preloadOnlyPlaylist.isNewerThan(playlist)).isFalse();
+  }
 }
@@ -16,9 +16,11 @@
 package com.google.android.exoplayer2.testutil;
 
 import android.os.Looper;
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.BasePlayer;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.LivePlaybackSpeedControl;
 import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.PlayerMessage;
@@ -265,4 +267,25 @@ public abstract class StubExoPlayer extends BasePlayer implements ExoPlayer {
   public void setForegroundMode(boolean foregroundMode) {
     throw new UnsupportedOperationException();
   }
+
+  @Override
+  public void experimental_setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void experimental_setPreloadDurationMs(long preloadDurationMs) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void experimental_setSeekInBufferEnabled(boolean seekInBufferEnabled) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void experimental_setLivePlaybackSpeedControl(
+      @Nullable LivePlaybackSpeedControl livePlaybackSpeedControl) {
+    throw new UnsupportedOperationException();
+  }
 }